@@ -0,0 +1,246 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.customer.Account;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Overview: AccountStressBenchmark is a utility class that hammers one Account from several threads and checks that no
+ * update is lost and the balance never goes below zero, comparing its compare-and-set updates with a synchronized
+ * baseline. Each thread credits 1.00 or debits 0.75 with a fee of 0.25 at random, starting from a small balance so
+ * that many debits are refused; the threads count the cents they credited and debited, and the final balance must
+ * equal the opening balance plus the credits less the debits. A second phase only debits, from a balance that covers
+ * a fraction of the attempts, and checks that exactly that balance is paid out.
+ *
+ * Usage: give the number of threads and the operations per thread, which default to 4 threads and 1m operations, for
+ * example
+ * java -cp target/classes coe528.bankingapp.bench.AccountStressBenchmark 8 1m
+ *
+ * Abstraction Function:
+ * Not applicable, as AccountStressBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as AccountStressBenchmark has no state.
+ */
+public final class AccountStressBenchmark {
+    // The opening balance of the mixed phase, in cents
+    private static final long OPENING_CENTS = 1_000;
+    // The amount credited by a credit, in dollars
+    private static final double CREDIT = 1.00;
+    // The cents added by a credit
+    private static final long CREDIT_CENTS = 100;
+    // The amount removed by a debit, in dollars
+    private static final double DEBIT = 0.75;
+    // The fee charged with a debit, in dollars
+    private static final double FEE = 0.25;
+    // The cents removed by a debit and its fee
+    private static final long DEBIT_CENTS = 100;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private AccountStressBenchmark() {
+    }
+
+    /**
+     * Overview: Target is the account a stress run updates.
+     */
+    private interface Target {
+        /**
+         * Adds an amount to the balance and returns the balance before it.
+         */
+        double credit(double amount);
+
+        /**
+         * Removes an amount and a fee if the balance covers them, returning the balance before, or -1 if it does not.
+         */
+        double tryDebit(double amount, double fee);
+
+        /**
+         * Returns the balance in cents.
+         */
+        long cents();
+    }
+
+    /**
+     * Overview: SynchronizedAccount is a mutable baseline balance kept in cents and updated under its monitor, the way
+     * Account would be made safe with locks.
+     *
+     * Abstraction Function:
+     * Represents a balance of 'cents' / 100 dollars.
+     *
+     * Representation Invariant:
+     * 'cents' must be non-negative.
+     */
+    private static final class SynchronizedAccount implements Target {
+        // The balance in cents
+        private long cents;
+
+        SynchronizedAccount(long cents) {
+            this.cents = cents;
+        }
+
+        @Override
+        public synchronized double credit(double amount) {
+            long previous = cents;
+            cents += Math.round(amount * 100);
+            return previous / 100.0;
+        }
+
+        @Override
+        public synchronized double tryDebit(double amount, double fee) {
+            long remove = Math.round(amount * 100) + Math.round(fee * 100);
+            if (cents < remove) {
+                return -1;
+            }
+            long previous = cents;
+            cents -= remove;
+            return previous / 100.0;
+        }
+
+        @Override
+        public synchronized long cents() {
+            return cents;
+        }
+    }
+
+    /**
+     * Runs both phases against Account and the synchronized baseline.
+     *
+     * @param args the number of threads and the operations per thread
+     * @throws Exception if a thread is interrupted
+     * @throws IllegalStateException if an update is lost or the balance goes below zero
+     * @effects prints the throughput of each phase for each account
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Benchmarks.parseSize(args[0]) : 4;
+        int operations = args.length > 1 ? Benchmarks.parseSize(args[1]) : 1_000_000;
+        Benchmarks.warmUp(() -> {
+            run(threads, operations / 10, true);
+            run(threads, operations / 10, false);
+        });
+        Benchmarks.print("-- " + threads + " threads, " + operations + " operations each");
+        run(threads, operations, true);
+        run(threads, operations, false);
+    }
+
+    /**
+     * Runs both phases against a new account of the given kind.
+     */
+    private static void run(int threads, int operations, boolean compareAndSet) throws Exception {
+        String name = compareAndSet ? "Account" : "synchronized";
+        Target mixed = compareAndSet ? wrap(new Account(OPENING_CENTS / 100.0)) : new SynchronizedAccount(OPENING_CENTS);
+        long[] net = new long[threads];
+        long nanos = runThreads(threads, thread -> {
+            SplittableRandom random = new SplittableRandom(thread);
+            long change = 0;
+            for (int i = 0; i < operations; i++) {
+                if (random.nextBoolean()) {
+                    mixed.credit(CREDIT);
+                    change += CREDIT_CENTS;
+                } else {
+                    double previous = mixed.tryDebit(DEBIT, FEE);
+                    if (previous >= 0) {
+                        Benchmarks.check(Math.round(previous * 100) >= DEBIT_CENTS, "debited " + previous + " below zero");
+                        change -= DEBIT_CENTS;
+                    }
+                }
+            }
+            net[thread] = change;
+        });
+        long expected = OPENING_CENTS;
+        for (long change : net) {
+            expected += change;
+        }
+        Benchmarks.check(mixed.cents() == expected, name + " balance is " + mixed.cents() + " cents, not " + expected);
+        Benchmarks.report(name + " credit and debit", (long) threads * operations, nanos);
+
+        long covered = (long) threads * operations / 2 * DEBIT_CENTS; // Covers half of the debits
+        Target drained = compareAndSet ? wrap(new Account(covered / 100.0)) : new SynchronizedAccount(covered);
+        long[] paid = new long[threads];
+        nanos = runThreads(threads, thread -> {
+            long debited = 0;
+            for (int i = 0; i < operations; i++) {
+                if (drained.tryDebit(DEBIT, FEE) >= 0) {
+                    debited += DEBIT_CENTS;
+                }
+            }
+            paid[thread] = debited;
+        });
+        long total = 0;
+        for (long debited : paid) {
+            total += debited;
+        }
+        Benchmarks.check(total == covered && drained.cents() == 0,
+                name + " paid out " + total + " of " + covered + " cents, leaving " + drained.cents());
+        Benchmarks.report(name + " debit until empty", (long) threads * operations, nanos);
+    }
+
+    /**
+     * Overview: Worker is the loop one thread of a stress run executes.
+     */
+    private interface Worker {
+        /**
+         * Runs the loop of the thread with the given index.
+         */
+        void run(int thread);
+    }
+
+    /**
+     * Runs the worker on the given number of threads started together, and returns how long they took, failing if any
+     * of them failed.
+     */
+    private static long runThreads(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            running[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "bankingapp-stress-" + i);
+            running[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return nanos;
+    }
+
+    /**
+     * Returns a target that updates the given account.
+     */
+    private static Target wrap(Account account) {
+        return new Target() {
+            @Override
+            public double credit(double amount) {
+                return account.credit(amount);
+            }
+
+            @Override
+            public double tryDebit(double amount, double fee) {
+                return account.tryDebit(amount, fee);
+            }
+
+            @Override
+            public long cents() {
+                return account.getBalanceCents();
+            }
+        };
+    }
+}
@@ -0,0 +1,239 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.data.FileManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Overview: Benchmarks is a utility class holding what the benchmark drivers of this package share: reading the sizes
+ * to run from the command line, timing a step and printing its throughput, measuring the heap in use, and working in
+ * scratch directories so that a benchmark never touches the application's accounts.
+ * The drivers are plain main classes timed with System.nanoTime after a warm-up run, so their numbers compare the
+ * designs they measure on one machine rather than give precise costs per operation. Run them with a heap large enough
+ * for the biggest size, for example
+ * java -Xmx2g -cp target/classes coe528.bankingapp.bench.MappedStoreBenchmark 10k 100k 1m
+ *
+ * Abstraction Function:
+ * Not applicable, as Benchmarks only holds whether reports are printed.
+ *
+ * Representation Invariant:
+ * Not applicable, as any value of 'silent' is valid.
+ */
+public final class Benchmarks {
+    // True while a warm-up run is measured, so its steps are not printed
+    private static volatile boolean silent;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private Benchmarks() {
+    }
+
+    /**
+     * Overview: Step is a piece of work a benchmark times.
+     */
+    public interface Step {
+        /**
+         * Runs the step.
+         *
+         * @throws Exception if the step fails, which ends the benchmark
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * Returns the sizes given on the command line, or the default sizes if none are given.
+     * A size is a count with an optional "k" or "m" suffix for thousands or millions, such as 100k or 1m.
+     *
+     * @param args the command-line arguments
+     * @param defaults the sizes to run when no argument is given
+     * @return the sizes to run, in order
+     * @throws NumberFormatException if an argument is not a size
+     * @requires args != null && defaults != null
+     */
+    public static int[] sizes(String[] args, int... defaults) {
+        if (args.length == 0) {
+            return defaults;
+        }
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = parseSize(args[i]);
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the count a size argument stands for.
+     *
+     * @param text the size, with an optional "k" or "m" suffix
+     * @return the count
+     * @throws NumberFormatException if the text is not a positive size
+     * @requires text != null
+     */
+    public static int parseSize(String text) {
+        String size = text.trim().toLowerCase(Locale.ROOT);
+        int multiplier = 1;
+        if (size.endsWith("k")) {
+            multiplier = 1_000;
+        } else if (size.endsWith("m")) {
+            multiplier = 1_000_000;
+        }
+        int count = Math.multiplyExact(Integer.parseInt(multiplier == 1 ? size : size.substring(0, size.length() - 1)), multiplier);
+        if (count <= 0) {
+            throw new NumberFormatException("Size must be positive: " + text);
+        }
+        return count;
+    }
+
+    /**
+     * Runs a step and returns how long it took.
+     *
+     * @param step the step to run
+     * @return the time the step took, in nanoseconds
+     * @throws Exception if the step fails
+     * @requires step != null
+     */
+    public static long time(Step step) throws Exception {
+        long start = System.nanoTime();
+        step.run();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs a step and prints how long it took and its throughput, unless a warm-up run is being measured.
+     *
+     * @param label what the step does
+     * @param operations the number of operations the step performs
+     * @param step the step to run
+     * @return the time the step took, in nanoseconds
+     * @throws Exception if the step fails
+     * @requires label != null && operations > 0 && step != null
+     */
+    public static long measure(String label, long operations, Step step) throws Exception {
+        long nanos = time(step);
+        report(label, operations, nanos);
+        return nanos;
+    }
+
+    /**
+     * Prints how long a step took and its throughput, unless a warm-up run is being measured.
+     *
+     * @param label what the step did
+     * @param operations the number of operations the step performed
+     * @param nanos the time the step took, in nanoseconds
+     * @requires label != null && operations > 0
+     */
+    public static void report(String label, long operations, long nanos) {
+        if (!silent) {
+            System.out.printf(Locale.ROOT, "%-48s %,12d ops %10.1f ms %,14.0f ops/s %,10.0f ns/op%n", label, operations,
+                    nanos / 1e6, operations * 1e9 / Math.max(nanos, 1), (double) nanos / operations);
+        }
+    }
+
+    /**
+     * Prints a line, unless a warm-up run is being measured.
+     *
+     * @param line the line to print
+     * @requires line != null
+     */
+    public static void print(String line) {
+        if (!silent) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Runs a step as a warm-up, without printing its reports, so that the measured runs use compiled code.
+     *
+     * @param step the warm-up run
+     * @throws Exception if the step fails
+     * @requires step != null
+     */
+    public static void warmUp(Step step) throws Exception {
+        silent = true;
+        try {
+            step.run();
+        } finally {
+            silent = false;
+        }
+    }
+
+    /**
+     * Fails the benchmark if a result is wrong, so that a broken implementation cannot report good numbers.
+     *
+     * @param condition whether the result is right
+     * @param message what is wrong if it is not
+     * @throws IllegalStateException if the condition is false
+     */
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("Benchmark result is wrong: " + message);
+        }
+    }
+
+    /**
+     * Returns the bytes of heap in use after collecting garbage.
+     *
+     * @return the used heap, in bytes
+     */
+    public static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 4; i++) { // Collect until the used heap stops shrinking
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                break;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * Creates an empty scratch directory in the system's temporary directory.
+     *
+     * @param prefix the prefix of the directory's name
+     * @return the new directory
+     * @throws IOException if the directory cannot be created
+     * @requires prefix != null
+     */
+    public static File createScratchDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     *
+     * @param file the file or directory to delete
+     * @requires file != null
+     * @effects deletes the file and, if it is a directory, every file below it
+     */
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Checks that the working directory holds no customer accounts, since the application's data files are found
+     * relative to the working directory and a benchmark going through them adds, changes and removes accounts.
+     *
+     * @throws IllegalStateException if the customer directory under the working directory is not empty
+     */
+    public static void requireScratchWorkingDirectory() {
+        File customers = FileManager.getCustomerDirectory();
+        String[] entries = customers.list();
+        if (entries != null && entries.length > 0) {
+            throw new IllegalStateException("This benchmark adds and removes accounts through the application's data "
+                    + "files; run it from an empty scratch directory, not one with accounts in " + customers);
+        }
+    }
+}
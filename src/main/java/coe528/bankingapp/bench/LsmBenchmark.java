@@ -0,0 +1,124 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.FileStorageEngine;
+import coe528.bankingapp.data.JournalRecord;
+import coe528.bankingapp.data.LsmStorageEngine;
+import coe528.bankingapp.data.StorageEngine;
+
+import java.io.File;
+import java.util.SplittableRandom;
+
+/**
+ * Overview: LsmBenchmark is a utility class that measures the log-structured merge engine against the text-file engine
+ * for a write-heavy day. With the given number of accounts it times saving every account, depositing into accounts at
+ * random through updateBalance, loading accounts at random, and scanning every account, and checks that the scan sees
+ * every deposit. The log-structured merge engine uses the memtable size and compaction threshold of the application's
+ * "bankingapp.lsm.*" system properties.
+ *
+ * Usage: run it from an empty scratch directory, since the text-file engine keeps its files relative to the working
+ * directory and only one can be open per run; give the number of accounts, which defaults to 100k, for example
+ * java -Xmx1g -cp /path/to/target/classes coe528.bankingapp.bench.LsmBenchmark 1m
+ * The text-file engine's files are left in the working directory afterwards.
+ *
+ * Abstraction Function:
+ * Not applicable, as LsmBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as LsmBenchmark has no state.
+ */
+public final class LsmBenchmark {
+    // The amount of each deposit
+    private static final double DEPOSIT = 1;
+    // The size of the warm-up run, which only the log-structured merge engine gets
+    private static final int WARM_UP_SIZE = 10_000;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private LsmBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark with the given number of accounts.
+     *
+     * @param args the number of accounts
+     * @throws Exception if an engine cannot be opened or written
+     * @throws IllegalStateException if the working directory holds customer accounts
+     * @effects prints the time and throughput of each step for each engine, and leaves the text-file engine's files in
+     *          the working directory
+     */
+    public static void main(String[] args) throws Exception {
+        Benchmarks.requireScratchWorkingDirectory();
+        int size = Benchmarks.sizes(args, 100_000)[0];
+        Benchmarks.warmUp(() -> runLsm(WARM_UP_SIZE));
+        runLsm(size);
+        Benchmarks.print("-- " + size + " accounts, text-file engine");
+        try (StorageEngine engine = new FileStorageEngine()) {
+            run(engine, size);
+        }
+    }
+
+    /**
+     * Measures the log-structured merge engine in a scratch directory that is deleted afterwards.
+     */
+    private static void runLsm(int size) throws Exception {
+        Benchmarks.print("-- " + size + " accounts, log-structured merge engine");
+        File directory = Benchmarks.createScratchDirectory("bankingapp-lsm");
+        try (StorageEngine engine = new LsmStorageEngine(directory, Long.getLong("bankingapp.lsm.memtableBytes",
+                4L * 1024 * 1024), Integer.getInteger("bankingapp.lsm.compactionThreshold", 4),
+                Boolean.getBoolean("bankingapp.lsm.syncWrites"))) {
+            run(engine, size);
+        } finally {
+            Benchmarks.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Measures an empty engine with the given number of accounts.
+     */
+    private static void run(StorageEngine engine, int size) throws Exception {
+        double[] balances = new double[size];
+        Benchmarks.measure("save", size, () -> {
+            for (int i = 0; i < size; i++) {
+                balances[i] = 100 + i % 30_000;
+                engine.save(new AccountRecord(username(i), "password" + i, balances[i],
+                        AccountRecord.levelOf(balances[i]), i));
+            }
+        });
+        SplittableRandom random = new SplittableRandom(42);
+        Benchmarks.measure("random deposit", size, () -> {
+            for (int i = 0; i < size; i++) {
+                int customer = random.nextInt(size);
+                balances[customer] += DEPOSIT;
+                double balance = balances[customer];
+                engine.updateBalance(username(customer), JournalRecord.Operation.DEPOSIT, DEPOSIT, 0, () -> balance,
+                        AccountRecord.levelOf(balance));
+            }
+        });
+        Benchmarks.measure("random load", size, () -> {
+            for (int i = 0; i < size; i++) {
+                int customer = random.nextInt(size);
+                AccountRecord record = engine.load(username(customer));
+                Benchmarks.check(record != null && record.getBalance() == balances[customer],
+                        "wrong balance for " + username(customer));
+            }
+        });
+        Benchmarks.measure("scan", size, () -> {
+            int[] seen = {0};
+            engine.forEach(record -> {
+                Benchmarks.check(record.getBalance() == balances[record.getCustomerNumber()],
+                        "wrong balance for " + record.getUsername());
+                seen[0]++;
+            });
+            Benchmarks.check(seen[0] == size, "scan saw " + seen[0] + " accounts");
+        });
+    }
+
+    /**
+     * Returns the username of the account with the given customer number.
+     */
+    private static String username(int customerNumber) {
+        return "customer" + customerNumber;
+    }
+}
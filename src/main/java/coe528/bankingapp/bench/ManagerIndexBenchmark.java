@@ -0,0 +1,127 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.manager.CustomerOrder;
+import coe528.bankingapp.manager.Manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Overview: ManagerIndexBenchmark is a utility class that measures the Manager's customer indexes. With the given
+ * number of customers it times adding every customer, looking customers up at random by username and by customer
+ * number, reading the first page and pages at random offsets in balance order, and removing every customer. For
+ * comparison it also times lookups by a linear scan of a list, which is how the Manager found customers before it had
+ * indexes; the scan is only run a thousand times, since a million scans of a million customers would take hours.
+ * The accounts are kept in the in-memory storage engine unless "bankingapp.storage" names another one, so that the
+ * indexes rather than the storage are measured; "bankingapp.manager.lazy" selects the Manager's lazy mode as usual.
+ *
+ * Usage: run it from an empty scratch directory, since the Manager writes its details relative to the working
+ * directory; give the number of customers, which defaults to 1m, for example
+ * java -Xmx2g -cp /path/to/target/classes coe528.bankingapp.bench.ManagerIndexBenchmark 1m
+ *
+ * Abstraction Function:
+ * Not applicable, as ManagerIndexBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as ManagerIndexBenchmark has no state.
+ */
+public final class ManagerIndexBenchmark {
+    // The number of linear scans timed for comparison
+    private static final int SCANS = 1_000;
+    // The number of first pages read
+    private static final int PAGES = 1_000;
+    // The number of pages read at random offsets, which cost time in proportion to their offset
+    private static final int RANDOM_PAGES = 100;
+    // The number of customers on a page
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private ManagerIndexBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark with the given number of customers.
+     *
+     * @param args the number of customers
+     * @throws Exception if a step fails
+     * @throws IllegalStateException if the working directory holds customer accounts
+     * @effects prints the time and throughput of each step
+     */
+    public static void main(String[] args) throws Exception {
+        Benchmarks.requireScratchWorkingDirectory();
+        if (System.getProperty("bankingapp.storage") == null) {
+            System.setProperty("bankingapp.storage", "memory");
+        }
+        int size = Benchmarks.sizes(args, 1_000_000)[0];
+        Manager manager = new Manager("admin", "admin");
+        Benchmarks.print("-- " + size + " customers, " + (manager.isLazy() ? "lazy" : "eager") + " manager, "
+                + System.getProperty("bankingapp.storage") + " storage");
+
+        Customer[] customers = new Customer[size];
+        for (int i = 0; i < size; i++) {
+            customers[i] = new Customer("customer" + i, "password" + i, 100 + i % 30_000);
+        }
+        Benchmarks.measure("add", size, () -> {
+            for (Customer customer : customers) {
+                manager.addCustomer(customer);
+            }
+        });
+        Benchmarks.check(manager.getCustomerCount() == size, manager.getCustomerCount() + " customers added");
+
+        SplittableRandom random = new SplittableRandom(42);
+        Benchmarks.measure("random lookup by username", size, () -> {
+            for (int i = 0; i < size; i++) {
+                String username = customers[random.nextInt(size)].getUsername();
+                Benchmarks.check(manager.getCustomer(username) != null, username + " not found");
+            }
+        });
+        Benchmarks.measure("random lookup by customer number", size, () -> {
+            for (int i = 0; i < size; i++) {
+                int customerNumber = customers[random.nextInt(size)].getCustomerNumber();
+                Benchmarks.check(manager.getCustomer(customerNumber) != null, customerNumber + " not found");
+            }
+        });
+        Benchmarks.measure("first page of " + PAGE_SIZE + " by balance", PAGES, () -> {
+            for (int i = 0; i < PAGES; i++) {
+                List<Customer> page = manager.getCustomerPage(CustomerOrder.BALANCE, true, null, 0, PAGE_SIZE);
+                Benchmarks.check(page.size() == Math.min(PAGE_SIZE, size), "page has " + page.size() + " customers");
+            }
+        });
+        Benchmarks.measure("random page of " + PAGE_SIZE + " by balance", RANDOM_PAGES, () -> {
+            for (int i = 0; i < RANDOM_PAGES; i++) {
+                int offset = random.nextInt(Math.max(1, size - PAGE_SIZE));
+                List<Customer> page = manager.getCustomerPage(CustomerOrder.BALANCE, true, null, offset, PAGE_SIZE);
+                Benchmarks.check(page.size() == Math.min(PAGE_SIZE, size), "page has " + page.size() + " customers");
+            }
+        });
+
+        List<Customer> list = new ArrayList<>(manager.getCustomers());
+        int scans = Math.min(SCANS, size);
+        Benchmarks.measure("random lookup by linear scan", scans, () -> {
+            for (int i = 0; i < scans; i++) {
+                String username = customers[random.nextInt(size)].getUsername();
+                Customer found = null;
+                for (Customer customer : list) {
+                    if (customer.getUsername().equals(username)) {
+                        found = customer;
+                        break;
+                    }
+                }
+                Benchmarks.check(found != null, username + " not found");
+            }
+        });
+        list.clear();
+
+        Benchmarks.measure("remove", size, () -> {
+            for (Customer customer : customers) {
+                manager.removeCustomer(customer.getUsername());
+            }
+        });
+        Benchmarks.check(manager.getCustomerCount() == 0, manager.getCustomerCount() + " customers left");
+        Benchmarks.check(manager.repOk(), "the manager's indexes are inconsistent");
+    }
+}
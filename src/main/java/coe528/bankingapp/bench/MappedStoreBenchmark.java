@@ -0,0 +1,184 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.AccountRecordCodec;
+import coe528.bankingapp.data.MappedAccountStore;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Overview: MappedStoreBenchmark is a utility class that measures the memory-mapped account store against one text
+ * file per account, the layout FileStorageEngine uses. For each size it times putting every account, looking up
+ * accounts by username at random, updating balances at random, scanning every account, and reopening the store,
+ * which rebuilds its username index from the file. The text files are only measured up to TEXT_BASELINE_LIMIT
+ * accounts, since creating a million small files takes minutes and mostly measures the file system.
+ *
+ * Usage: give the sizes to run, which default to 10k, 100k and 1m, for example
+ * java -Xmx1g -cp target/classes coe528.bankingapp.bench.MappedStoreBenchmark 10k 100k 1m
+ *
+ * Abstraction Function:
+ * Not applicable, as MappedStoreBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as MappedStoreBenchmark has no state.
+ */
+public final class MappedStoreBenchmark {
+    // The largest size the text files are measured at
+    private static final int TEXT_BASELINE_LIMIT = 100_000;
+    // The size of the warm-up run
+    private static final int WARM_UP_SIZE = 10_000;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private MappedStoreBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark at each given size.
+     *
+     * @param args the sizes to run
+     * @throws Exception if the store or a file cannot be written
+     * @effects prints the time and throughput of each step at each size
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Benchmarks.sizes(args, 10_000, 100_000, 1_000_000);
+        Benchmarks.warmUp(() -> run(WARM_UP_SIZE));
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    /**
+     * Measures both layouts with the given number of accounts, in a scratch directory that is deleted afterwards.
+     */
+    private static void run(int size) throws Exception {
+        Benchmarks.print("-- " + size + " accounts");
+        File directory = Benchmarks.createScratchDirectory("bankingapp-mmap");
+        try {
+            runMapped(new File(directory, "accounts.map"), size);
+            if (size <= TEXT_BASELINE_LIMIT) {
+                File customers = new File(directory, "customers");
+                customers.mkdir();
+                runText(customers, size);
+            }
+        } finally {
+            Benchmarks.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Measures the memory-mapped store.
+     */
+    private static void runMapped(File file, int size) throws Exception {
+        MappedAccountStore[] store = {new MappedAccountStore(file, 1024)};
+        try {
+            Benchmarks.measure("mmap put", size, () -> {
+                for (int i = 0; i < size; i++) {
+                    store[0].put(record(i));
+                }
+                store[0].force();
+            });
+            SplittableRandom random = new SplittableRandom(42);
+            Benchmarks.measure("mmap random get by username", size, () -> {
+                for (int i = 0; i < size; i++) {
+                    Benchmarks.check(store[0].get(username(random.nextInt(size))) != null, "account missing");
+                }
+            });
+            Benchmarks.measure("mmap random balance update", size, () -> {
+                for (int i = 0; i < size; i++) {
+                    int slot = store[0].slotOf(username(random.nextInt(size)));
+                    double balance = store[0].getBalance(slot) + 1;
+                    store[0].updateBalance(slot, balance, AccountRecord.levelOf(balance));
+                }
+                store[0].force();
+            });
+            Benchmarks.measure("mmap scan", size, () -> {
+                int[] seen = {0};
+                store[0].forEach(record -> seen[0]++);
+                Benchmarks.check(seen[0] == size, "scan saw " + seen[0] + " accounts");
+            });
+            store[0].close();
+            Benchmarks.measure("mmap reopen", size, () -> store[0] = new MappedAccountStore(file, 1024));
+            Benchmarks.check(store[0].size() == size, "reopened store has " + store[0].size() + " accounts");
+        } finally {
+            store[0].close();
+        }
+    }
+
+    /**
+     * Measures one text file per account, read and written whole as the file engine does.
+     */
+    private static void runText(File directory, int size) throws Exception {
+        Benchmarks.measure("text put", size, () -> {
+            for (int i = 0; i < size; i++) {
+                write(directory, record(i));
+            }
+        });
+        SplittableRandom random = new SplittableRandom(42);
+        Benchmarks.measure("text random get by username", size, () -> {
+            for (int i = 0; i < size; i++) {
+                Benchmarks.check(read(directory, random.nextInt(size)) != null, "account missing");
+            }
+        });
+        Benchmarks.measure("text random balance update", size, () -> {
+            for (int i = 0; i < size; i++) {
+                AccountRecord record = read(directory, random.nextInt(size));
+                double balance = record.getBalance() + 1;
+                write(directory, record.withBalance(balance, AccountRecord.levelOf(balance)));
+            }
+        });
+        Benchmarks.measure("text scan", size, () -> {
+            File[] files = directory.listFiles();
+            for (File file : files) {
+                AccountRecordCodec.fromText(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), 0);
+            }
+            Benchmarks.check(files.length == size, "scan saw " + files.length + " accounts");
+        });
+    }
+
+    /**
+     * Returns the account with the given customer number.
+     */
+    private static AccountRecord record(int customerNumber) {
+        double balance = 100 + customerNumber % 30_000;
+        return new AccountRecord(username(customerNumber), "password" + customerNumber, balance,
+                AccountRecord.levelOf(balance), customerNumber);
+    }
+
+    /**
+     * Returns the username of the account with the given customer number.
+     */
+    private static String username(int customerNumber) {
+        return "customer" + customerNumber;
+    }
+
+    /**
+     * Writes an account to its text file.
+     */
+    private static void write(File directory, AccountRecord record) throws Exception {
+        String text = "Username: " + record.getUsername() + "\nPassword: " + record.getPassword() + "\nBalance: "
+                + record.getBalance() + "\nLevel: " + record.getLevel() + "\nCustomer Number: "
+                + record.getCustomerNumber();
+        Files.write(path(directory, record.getUsername()), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the account with the given customer number from its text file.
+     */
+    private static AccountRecord read(File directory, int customerNumber) throws Exception {
+        Path path = path(directory, username(customerNumber));
+        return AccountRecordCodec.fromText(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), customerNumber);
+    }
+
+    /**
+     * Returns the text file of the customer with the given username.
+     */
+    private static Path path(File directory, String username) {
+        return new File(directory, username + ".txt").toPath();
+    }
+}
@@ -0,0 +1,130 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.AccountRecordCodec;
+import coe528.bankingapp.data.AllocationProbe;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Overview: RecordParseBenchmark is a utility class that measures the cost of reading account files in the "Key: value"
+ * text format against the binary format of AccountRecordCodec. Records are held in memory, so only the parsing is
+ * measured: text records are decoded from UTF-8 and parsed by AccountRecordCodec.fromText, and binary records are
+ * decoded by AccountRecordCodec.decode, as FileManager does with the content of a file. For each size it prints the
+ * time and the bytes allocated per record of encoding and of parsing each format.
+ *
+ * Usage: give the sizes to run, which default to 100k and 1m, for example
+ * java -Xmx1g -cp target/classes coe528.bankingapp.bench.RecordParseBenchmark 100k 1m
+ *
+ * Abstraction Function:
+ * Not applicable, as RecordParseBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as RecordParseBenchmark has no state.
+ */
+public final class RecordParseBenchmark {
+    // The size of the warm-up run
+    private static final int WARM_UP_SIZE = 100_000;
+    // Measures the bytes the benchmark thread allocates
+    private static final AllocationProbe PROBE = new AllocationProbe();
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private RecordParseBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark at each given size.
+     *
+     * @param args the sizes to run
+     * @throws Exception if a record cannot be parsed
+     * @effects prints the time and allocation of encoding and parsing each format at each size
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Benchmarks.sizes(args, 100_000, 1_000_000);
+        if (!PROBE.isSupported()) {
+            System.out.println("This JVM does not count allocated bytes; allocations are reported as 0");
+        }
+        Benchmarks.warmUp(() -> run(WARM_UP_SIZE));
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    /**
+     * Measures both formats with the given number of records.
+     */
+    private static void run(int size) throws Exception {
+        Benchmarks.print("-- " + size + " records");
+        AccountRecord[] records = new AccountRecord[size];
+        double expected = 0;
+        for (int i = 0; i < size; i++) {
+            double balance = 100 + i % 30_000 + 0.25;
+            records[i] = new AccountRecord("customer" + i, "password" + i, balance, AccountRecord.levelOf(balance), i);
+            expected += balance;
+        }
+
+        byte[][] text = new byte[size][];
+        measure("text encode", size, () -> {
+            for (int i = 0; i < size; i++) {
+                text[i] = toText(records[i]).getBytes(StandardCharsets.UTF_8);
+            }
+        });
+        byte[][] binary = new byte[size][];
+        ByteBuffer buffer = ByteBuffer.allocate(AccountRecordCodec.MAX_RECORD_BYTES);
+        measure("binary encode", size, () -> {
+            for (int i = 0; i < size; i++) {
+                buffer.clear();
+                AccountRecordCodec.encode(records[i], buffer);
+                binary[i] = new byte[buffer.position()];
+                buffer.flip();
+                buffer.get(binary[i]);
+            }
+        });
+
+        double[] total = {0, 0};
+        measure("text parse", size, () -> {
+            for (int i = 0; i < size; i++) {
+                total[0] += AccountRecordCodec.fromText(new String(text[i], StandardCharsets.UTF_8), i).getBalance();
+            }
+        });
+        measure("binary parse", size, () -> {
+            for (int i = 0; i < size; i++) {
+                total[1] += AccountRecordCodec.decode(ByteBuffer.wrap(binary[i])).getBalance();
+            }
+        });
+        Benchmarks.check(total[0] == expected && total[1] == expected, "parsed balances differ from the records");
+
+        long textBytes = 0;
+        long binaryBytes = 0;
+        for (int i = 0; i < size; i++) {
+            textBytes += text[i].length;
+            binaryBytes += binary[i].length;
+        }
+        Benchmarks.print(String.format(Locale.ROOT, "record size: text %.1f bytes, binary %.1f bytes",
+                (double) textBytes / size, (double) binaryBytes / size));
+    }
+
+    /**
+     * Runs a step, printing its time as Benchmarks.measure does and the bytes it allocated per record.
+     */
+    private static void measure(String label, int size, Benchmarks.Step step) throws Exception {
+        long start = PROBE.allocatedBytes();
+        Benchmarks.measure(label, size, step);
+        long allocated = PROBE.allocatedBetween(start, PROBE.allocatedBytes());
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s %,12.1f bytes per record", label + " allocated",
+                (double) allocated / size));
+    }
+
+    /**
+     * Returns the text format of a record, as FileStorageEngine wrote it.
+     */
+    private static String toText(AccountRecord record) {
+        return "Username: " + record.getUsername() + "\nPassword: " + record.getPassword() + "\nBalance: "
+                + record.getBalance() + "\nLevel: " + record.getLevel() + "\nCustomer Number: "
+                + record.getCustomerNumber();
+    }
+}
@@ -0,0 +1,253 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.customer.BatchResult;
+import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.customer.SequencerStatistics;
+import coe528.bankingapp.customer.TransactionSequencer;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.JournalRecord.Operation;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Overview: SequencerBenchmark is a utility class that measures the TransactionSequencer and prints its statistics:
+ * the publish throughput, how the journal stage batched the commands, and the percentiles of the latency from
+ * publishing a command to its being stored and notified. In the first run several producers publish deposits,
+ * withdrawals and purchases at random customers without waiting for them; in the second they call Customer.deposit
+ * and withdraw, which go through the sequencer shared by every customer and wait for each outcome. After each run it
+ * checks that the customers' balances equal their opening balances plus the changes reported applied, and that the
+ * stored balances equal the customers' balances.
+ * The accounts are kept in the in-memory storage engine unless "bankingapp.storage" names another one, and
+ * "bankingapp.sequencer" is set to true unless it is given, so that the customers' operations go through the shared
+ * sequencer; with it set to false the second run measures the operations applied on the calling threads instead.
+ *
+ * Usage: give the number of producers and the commands each publishes, which default to 4 producers and 1m commands;
+ * the second run makes a tenth as many calls, since each waits for its outcome, for example
+ * java -cp target/classes coe528.bankingapp.bench.SequencerBenchmark 8 1m
+ * With another storage engine, run it from an empty scratch directory, since the engines keep their files relative to
+ * the working directory.
+ *
+ * Abstraction Function:
+ * Not applicable, as SequencerBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as SequencerBenchmark has no state.
+ */
+public final class SequencerBenchmark {
+    // The number of customers the commands are spread over
+    private static final int CUSTOMERS = 1_000;
+    // The opening balance of every customer, in dollars
+    private static final double OPENING_BALANCE = 1_000;
+    // The amounts of a deposit, a withdrawal and a purchase, in dollars
+    private static final double DEPOSIT = 1.00;
+    private static final double WITHDRAWAL = 0.50;
+    private static final double PURCHASE = 0.75;
+
+    // The number of customers created so far, which keeps usernames unique across runs
+    private static int created;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private SequencerBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark with published commands and with customer operations.
+     *
+     * @param args the number of producers and the commands each publishes
+     * @throws Exception if a thread is interrupted
+     * @throws IllegalStateException if a balance differs from the opening balance plus the applied changes, or a stored
+     *         balance differs from a customer's balance
+     * @effects prints the throughput and the sequencer statistics of each run
+     */
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("bankingapp.storage") == null) {
+            System.setProperty("bankingapp.storage", "memory");
+        } else {
+            Benchmarks.requireScratchWorkingDirectory();
+        }
+        if (System.getProperty("bankingapp.sequencer") == null) {
+            System.setProperty("bankingapp.sequencer", "true"); // Read when the Customer class is initialized
+        }
+        int producers = args.length > 0 ? Benchmarks.parseSize(args[0]) : 4;
+        int commands = args.length > 1 ? Benchmarks.parseSize(args[1]) : 1_000_000;
+        Benchmarks.warmUp(() -> runPublish(producers, commands / 10));
+        Benchmarks.print("-- " + producers + " producers, " + System.getProperty("bankingapp.storage") + " storage");
+        runPublish(producers, commands);
+        runCustomerOperations(producers, commands / 10);
+        StorageEngines.shutdown();
+    }
+
+    /**
+     * Publishes commands from several producers to a new sequencer without waiting for them, then checks the balances.
+     */
+    private static void runPublish(int producers, int commands) throws Exception {
+        Customer[] customers = createCustomers();
+        long[] appliedCents = new long[1]; // Written only by the journal thread
+        TransactionSequencer sequencer = new TransactionSequencer((sequence, customer, operation, amount, status, fee,
+                                                                   balance) -> {
+            if (status == BatchResult.Status.APPLIED) {
+                long cents = Math.round(amount * 100);
+                appliedCents[0] += operation == Operation.DEPOSIT ? cents : -cents - Math.round(fee * 100);
+            }
+        });
+        long nanos = runThreads(producers, producer -> {
+            SplittableRandom random = new SplittableRandom(producer);
+            for (int i = 0; i < commands; i++) {
+                Customer customer = customers[random.nextInt(CUSTOMERS)];
+                int kind = random.nextInt(10);
+                if (kind < 5) {
+                    sequencer.publish(customer, Operation.DEPOSIT, DEPOSIT);
+                } else if (kind < 8) {
+                    sequencer.publish(customer, Operation.WITHDRAW, WITHDRAWAL);
+                } else {
+                    sequencer.publish(customer, Operation.PURCHASE, PURCHASE);
+                }
+            }
+        });
+        sequencer.close(); // Waits for every published command to be stored
+        SequencerStatistics statistics = sequencer.getStatistics();
+        Benchmarks.check(statistics.getCompletedCount() == (long) producers * commands,
+                statistics.getCompletedCount() + " of " + (long) producers * commands + " commands completed");
+        checkBalances(customers, appliedCents[0]);
+        Benchmarks.report("publish", (long) producers * commands, nanos);
+        printStatistics(statistics);
+    }
+
+    /**
+     * Makes deposits and withdrawals through Customer from several threads, each waiting for its outcome, then checks
+     * the balances.
+     */
+    private static void runCustomerOperations(int producers, int calls) throws Exception {
+        Customer[] customers = createCustomers();
+        long[] netCents = new long[producers];
+        long nanos = runThreads(producers, producer -> {
+            SplittableRandom random = new SplittableRandom(producer);
+            long net = 0;
+            for (int i = 0; i < calls; i++) {
+                Customer customer = customers[random.nextInt(CUSTOMERS)];
+                if (random.nextBoolean()) {
+                    customer.deposit(DEPOSIT);
+                    net += Math.round(DEPOSIT * 100);
+                } else {
+                    try {
+                        customer.withdraw(WITHDRAWAL);
+                        net -= Math.round(WITHDRAWAL * 100);
+                    } catch (IllegalStateException e) {
+                        // Insufficient funds; the account is unchanged
+                    }
+                }
+            }
+            netCents[producer] = net;
+        });
+        long net = 0;
+        for (long cents : netCents) {
+            net += cents;
+        }
+        checkBalances(customers, net);
+        SequencerStatistics statistics = Customer.getSequencerStatistics();
+        Benchmarks.report(statistics != null ? "Customer.deposit and withdraw, sequenced"
+                : "Customer.deposit and withdraw, on the calling threads", (long) producers * calls, nanos);
+        if (statistics != null) {
+            printStatistics(statistics);
+        }
+    }
+
+    /**
+     * Creates the customers of a run and stores their accounts.
+     */
+    private static Customer[] createCustomers() {
+        StorageEngine storage = StorageEngines.get();
+        Customer[] customers = new Customer[CUSTOMERS];
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers[i] = new Customer("sequenced" + created++, "password", OPENING_BALANCE);
+            storage.save(new AccountRecord(customers[i].getUsername(), customers[i].getPassword(), OPENING_BALANCE,
+                    customers[i].getCustomerLevel(), customers[i].getCustomerNumber()));
+        }
+        return customers;
+    }
+
+    /**
+     * Checks that the customers hold their opening balances plus the given change, and that their stored balances
+     * equal their balances, then deletes their accounts.
+     */
+    private static void checkBalances(Customer[] customers, long changeCents) {
+        StorageEngine storage = StorageEngines.get();
+        long closingCents = 0;
+        for (Customer customer : customers) {
+            closingCents += Math.round(customer.getBalance() * 100);
+            AccountRecord stored = storage.load(customer.getUsername());
+            Benchmarks.check(stored != null && stored.getBalance() == customer.getBalance(),
+                    customer.getUsername() + " is stored with " + (stored == null ? null : stored.getBalance())
+                            + " but has " + customer.getBalance());
+            storage.delete(customer.getUsername());
+        }
+        long expected = Math.round(OPENING_BALANCE * 100) * customers.length + changeCents;
+        Benchmarks.check(closingCents == expected, "the customers hold " + closingCents + " cents, not " + expected);
+    }
+
+    /**
+     * Prints the publish throughput, the batching and the latency percentiles of a sequencer.
+     */
+    private static void printStatistics(SequencerStatistics statistics) {
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s %,12.0f commands/s", "published since the sequencer started",
+                statistics.getPublishThroughput()));
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s %,12d commands, %,d batches (avg %.1f, max %,d)",
+                "completed", statistics.getCompletedCount(), statistics.getBatchCount(),
+                statistics.getAverageBatchSize(), statistics.getMaxBatchSize()));
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s %,12d commands", "rejected", statistics.getRejectedCount()));
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                "latency from publish to stored", statistics.getP50Nanos() / 1e3, statistics.getP90Nanos() / 1e3,
+                statistics.getP99Nanos() / 1e3, statistics.getP999Nanos() / 1e3, statistics.getMaxLatencyNanos() / 1e3));
+    }
+
+    /**
+     * Overview: Worker is the loop one thread of a run executes.
+     */
+    private interface Worker {
+        /**
+         * Runs the loop of the thread with the given index.
+         */
+        void run(int thread);
+    }
+
+    /**
+     * Runs the worker on the given number of threads started together, and returns how long they took, failing if any
+     * of them failed.
+     */
+    private static long runThreads(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] running = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            running[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "bankingapp-producer-" + i);
+            running[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return nanos;
+    }
+}
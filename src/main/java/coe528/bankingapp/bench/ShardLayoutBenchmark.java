@@ -0,0 +1,121 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.data.ShardedLayout;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+
+/**
+ * Overview: ShardLayoutBenchmark is a utility class that measures customer directories in the flat layout against
+ * sharded layouts with one and two levels of two hex digits. For each size and layout it times creating one small
+ * file per customer, reading customers' files at random through ShardedLayout.locate, and listing every file by
+ * walking the shard directories as FileManager does.
+ *
+ * Usage: give the sizes to run, which default to 100k and 1m, for example
+ * java -cp target/classes coe528.bankingapp.bench.ShardLayoutBenchmark 100k 1m
+ * The directories are created in the system's temporary directory, which needs room for three times the largest size
+ * in small files.
+ *
+ * Abstraction Function:
+ * Not applicable, as ShardLayoutBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as ShardLayoutBenchmark has no state.
+ */
+public final class ShardLayoutBenchmark {
+    // The layouts measured
+    private static final ShardedLayout[] LAYOUTS = {ShardedLayout.FLAT, new ShardedLayout(1, 2), new ShardedLayout(2, 2)};
+    // The size of the warm-up run
+    private static final int WARM_UP_SIZE = 10_000;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private ShardLayoutBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark at each given size.
+     *
+     * @param args the sizes to run
+     * @throws Exception if a file cannot be written or read
+     * @effects prints the time and throughput of each step for each layout at each size
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Benchmarks.sizes(args, 100_000, 1_000_000);
+        Benchmarks.warmUp(() -> run(WARM_UP_SIZE));
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    /**
+     * Measures every layout with the given number of customers.
+     */
+    private static void run(int size) throws Exception {
+        for (ShardedLayout layout : LAYOUTS) {
+            Benchmarks.print("-- " + size + " customers, " + layout);
+            File root = Benchmarks.createScratchDirectory("bankingapp-shards");
+            try {
+                run(root, layout, size);
+            } finally {
+                Benchmarks.deleteRecursively(root);
+            }
+        }
+    }
+
+    /**
+     * Measures one layout in the given directory.
+     */
+    private static void run(File root, ShardedLayout layout, int size) throws Exception {
+        Benchmarks.measure("create", size, () -> {
+            for (int i = 0; i < size; i++) {
+                String filename = filename(i);
+                File file = layout.locate(root, filename);
+                File parent = file.getParentFile();
+                if (!parent.exists()) {
+                    parent.mkdirs();
+                }
+                Files.write(file.toPath(), ("Username: customer" + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        SplittableRandom random = new SplittableRandom(42);
+        Benchmarks.measure("random lookup", size, () -> {
+            for (int i = 0; i < size; i++) {
+                byte[] content = Files.readAllBytes(layout.locate(root, filename(random.nextInt(size))).toPath());
+                Benchmarks.check(content.length > 0, "empty customer file");
+            }
+        });
+        Benchmarks.measure("list", size, () -> {
+            int listed = count(root, layout.getLevels());
+            Benchmarks.check(listed == size, "listed " + listed + " files");
+        });
+    }
+
+    /**
+     * Returns the number of files in the shard directories the given number of levels below a directory.
+     */
+    private static int count(File directory, int levels) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        if (levels == 0) {
+            return files.length;
+        }
+        int count = 0;
+        for (File file : files) {
+            count += count(file, levels - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the file name of the customer with the given customer number.
+     */
+    private static String filename(int customerNumber) {
+        return "customer" + customerNumber + ".txt";
+    }
+}
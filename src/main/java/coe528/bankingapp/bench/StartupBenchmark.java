@@ -0,0 +1,167 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
+import coe528.bankingapp.manager.Manager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Overview: StartupBenchmark is a utility class that measures how long the application takes to let a customer log in,
+ * and how much heap it then holds, with the Manager loading every customer eagerly against loading them lazily.
+ * It stores the given number of accounts in the configured storage engine, then starts a new JVM for each mode that
+ * constructs the Manager as the login screen does and logs a stored customer in the way the login screen does. Each
+ * JVM reports the time from its main method to the completed login, its uptime at that point, which includes starting
+ * the JVM, and the heap in use after collecting garbage while the Manager is still reachable.
+ *
+ * Usage: run it from an empty scratch directory, since the storage engines keep their files relative to the working
+ * directory, with "bankingapp.storage" naming a persistent engine, which defaults to "file"; give the number of
+ * accounts, which defaults to 100k, for example
+ * java -Xmx2g -Dbankingapp.storage=file -cp /path/to/target/classes coe528.bankingapp.bench.StartupBenchmark 1m
+ * The child JVMs get the same JVM options, so -Xmx sets their heap too. The accounts are left in the working directory.
+ *
+ * Abstraction Function:
+ * Not applicable, as StartupBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as StartupBenchmark has no state.
+ */
+public final class StartupBenchmark {
+    // The argument that makes the main method measure a login rather than start the benchmark
+    private static final String CHILD_ARGUMENT = "--login";
+    // The start of the line a child JVM reports its measurements on
+    private static final String RESULT_PREFIX = "startup-result ";
+    // The number of accounts saved together
+    private static final int SAVE_BATCH = 10_000;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private StartupBenchmark() {
+    }
+
+    /**
+     * Stores the accounts and measures a login in a new JVM for each mode, or, in a child JVM, measures the login.
+     *
+     * @param args the number of accounts, or CHILD_ARGUMENT and the username and password to log in with in a child JVM
+     * @throws Exception if the accounts cannot be stored or a child JVM fails
+     * @throws IllegalStateException if the working directory holds customer accounts or the storage engine is in memory
+     * @effects stores the accounts and prints the time to the first login and the heap in use for each mode
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals(CHILD_ARGUMENT)) {
+            login(args[1], args[2]);
+            return;
+        }
+        Benchmarks.requireScratchWorkingDirectory();
+        String kind = System.getProperty("bankingapp.storage", "file");
+        if (kind.equals("memory")) {
+            throw new IllegalStateException("The in-memory storage engine keeps no accounts between JVMs");
+        }
+        int size = Benchmarks.sizes(args, 100_000)[0];
+        try (StorageEngine engine = StorageEngines.open(kind)) {
+            Benchmarks.measure("store " + size + " accounts in " + kind + " storage", size, () -> {
+                List<AccountRecord> batch = new ArrayList<>(SAVE_BATCH);
+                for (int i = 0; i < size; i++) {
+                    double balance = 100 + i % 30_000;
+                    batch.add(new AccountRecord(username(i), password(i), balance, AccountRecord.levelOf(balance), i));
+                    if (batch.size() == SAVE_BATCH || i == size - 1) {
+                        engine.saveAll(batch);
+                        batch.clear();
+                    }
+                }
+            });
+        }
+        for (boolean lazy : new boolean[] {false, true}) {
+            String result = runChild(kind, lazy, username(size / 2), password(size / 2));
+            String[] fields = result.split(" ");
+            System.out.printf(Locale.ROOT, "%-6s first login %,10.1f ms after main, %,10d ms after JVM start,"
+                    + " %,8.1f MB heap in use, %,9d customers resident%n", lazy ? "lazy" : "eager",
+                    Long.parseLong(fields[0]) / 1e6, Long.parseLong(fields[1]), Long.parseLong(fields[2]) / 1e6,
+                    Integer.parseInt(fields[3]));
+        }
+    }
+
+    /**
+     * Starts a JVM that logs a customer in with the Manager in the given mode, and returns the measurements it reports.
+     */
+    private static String runChild(String kind, boolean lazy, String username, String password) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-Dbankingapp.storage=") && !option.startsWith("-Dbankingapp.manager.lazy=")
+                    && !option.startsWith("-agentlib:jdwp")) {
+                command.add(option);
+            }
+        }
+        command.add("-Dbankingapp.storage=" + kind);
+        command.add("-Dbankingapp.manager.lazy=" + lazy);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupBenchmark.class.getName());
+        command.add(CHILD_ARGUMENT);
+        command.add(username);
+        command.add(password);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    result = line.substring(RESULT_PREFIX.length());
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("The " + (lazy ? "lazy" : "eager") + " login failed:\n" + output);
+        }
+        return result;
+    }
+
+    /**
+     * Constructs the Manager and logs the customer in as the login screen does, then reports the measurements.
+     */
+    private static void login(String username, String password) {
+        long start = System.nanoTime();
+        Manager manager = new Manager("admin", "admin");
+        Benchmarks.check(StorageEngines.get().load(username) != null, username + " is not stored");
+        Customer customer = manager.getCustomer(username);
+        Benchmarks.check(customer != null, username + " was not loaded");
+        customer.login(username, password);
+        Benchmarks.check(customer.isLoggedIn(), username + " could not log in");
+        long loginNanos = System.nanoTime() - start;
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        long heapBytes = Benchmarks.usedHeapBytes();
+        System.out.println(RESULT_PREFIX + loginNanos + " " + uptimeMillis + " " + heapBytes + " "
+                + manager.getResidentCustomerCount());
+        StorageEngines.shutdown();
+        System.exit(0); // The storage engine may leave threads that would keep the JVM running
+    }
+
+    /**
+     * Returns the username of the account with the given customer number.
+     */
+    private static String username(int customerNumber) {
+        return "customer" + customerNumber;
+    }
+
+    /**
+     * Returns the password of the account with the given customer number.
+     */
+    private static String password(int customerNumber) {
+        return "password" + customerNumber;
+    }
+}
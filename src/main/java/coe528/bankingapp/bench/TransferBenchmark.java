@@ -0,0 +1,183 @@
+package coe528.bankingapp.bench;
+
+import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.customer.TransferService;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Overview: TransferBenchmark is a utility class that measures the throughput of concurrent transfers between
+ * customers under contention. Several threads transfer 1.00 between random pairs of customers, either spread over many
+ * accounts or concentrated on a few hot ones, through a TransferService with one stripe lock, which serializes every
+ * transfer, and with 64 stripes, and through Customer.transferTo, which uses the application's shared service. Half of
+ * the customers are Platinum, who pay no fee, and half Silver, who pay one and run out of money on the hot accounts,
+ * so refused transfers are exercised too. After each run it checks that the money held plus the fees charged equals
+ * the money at the start, and that the stored balances equal the customers' balances.
+ * The accounts are kept in the in-memory storage engine unless "bankingapp.storage" names another one.
+ *
+ * Usage: give the number of threads and the transfers per thread, which default to 4 threads and 250k transfers, for
+ * example
+ * java -cp target/classes coe528.bankingapp.bench.TransferBenchmark 8 250k
+ * With another storage engine, run it from an empty scratch directory, since the engines keep their files relative to
+ * the working directory.
+ *
+ * Abstraction Function:
+ * Not applicable, as TransferBenchmark has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as TransferBenchmark has no state.
+ */
+public final class TransferBenchmark {
+    // The number of customers transfers are spread over
+    private static final int SPREAD_CUSTOMERS = 10_000;
+    // The number of hot customers every transfer is concentrated on
+    private static final int HOT_CUSTOMERS = 8;
+    // The amount of each transfer, in dollars
+    private static final double AMOUNT = 1.00;
+    // The opening balance of a Platinum customer, who pays no fee
+    private static final double PLATINUM_BALANCE = 1_000_000;
+    // The opening balance of a Silver customer, who pays a fee
+    private static final double SILVER_BALANCE = 9_000;
+    // The stripe counts measured
+    private static final int[] STRIPES = {1, 64};
+
+    // The number of customers created so far, which keeps usernames unique across runs
+    private static int created;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private TransferBenchmark() {
+    }
+
+    /**
+     * Overview: Transfers is the way a run moves money between two customers.
+     */
+    private interface Transfers {
+        /**
+         * Transfers the amount from the sender to the recipient and returns the fee charged.
+         */
+        double transfer(Customer sender, Customer recipient, double amount);
+    }
+
+    /**
+     * Runs the benchmark with accounts spread out and with hot accounts, for each stripe count and for transferTo.
+     *
+     * @param args the number of threads and the transfers per thread
+     * @throws Exception if a thread is interrupted
+     * @throws IllegalStateException if money is created or lost, or a stored balance differs from a customer's balance
+     * @effects prints the throughput and the refused transfers of each run
+     */
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("bankingapp.storage") == null) {
+            System.setProperty("bankingapp.storage", "memory");
+        } else {
+            Benchmarks.requireScratchWorkingDirectory();
+        }
+        int threads = args.length > 0 ? Benchmarks.parseSize(args[0]) : 4;
+        int transfers = args.length > 1 ? Benchmarks.parseSize(args[1]) : 250_000;
+        Benchmarks.warmUp(() -> runAll(threads, transfers / 10));
+        Benchmarks.print("-- " + threads + " threads, " + transfers + " transfers each, "
+                + System.getProperty("bankingapp.storage") + " storage");
+        runAll(threads, transfers);
+        StorageEngines.shutdown();
+    }
+
+    /**
+     * Runs every combination of accounts and transfer services.
+     */
+    private static void runAll(int threads, int transfers) throws Exception {
+        for (int customers : new int[] {SPREAD_CUSTOMERS, HOT_CUSTOMERS}) {
+            String accounts = customers == HOT_CUSTOMERS ? customers + " hot accounts" : customers + " accounts";
+            for (int stripes : STRIPES) {
+                TransferService service = new TransferService(stripes);
+                run(accounts + ", " + stripes + (stripes == 1 ? " stripe" : " stripes"), customers, threads, transfers,
+                        service::transfer);
+            }
+            run(accounts + ", Customer.transferTo", customers, threads, transfers,
+                    (sender, recipient, amount) -> sender.transferTo(recipient, amount));
+        }
+    }
+
+    /**
+     * Transfers money between new customers on several threads, then checks that no money was created or lost.
+     */
+    private static void run(String label, int count, int threads, int transfers, Transfers service) throws Exception {
+        StorageEngine storage = StorageEngines.get();
+        Customer[] customers = new Customer[count];
+        long openingCents = 0;
+        for (int i = 0; i < count; i++) {
+            double balance = i % 2 == 0 ? PLATINUM_BALANCE : SILVER_BALANCE;
+            customers[i] = new Customer("transfer" + created++, "password", balance);
+            storage.save(new AccountRecord(customers[i].getUsername(), customers[i].getPassword(), balance,
+                    customers[i].getCustomerLevel(), customers[i].getCustomerNumber()));
+            openingCents += Math.round(balance * 100);
+        }
+
+        long[] feeCents = new long[threads];
+        long[] refused = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] running = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            running[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(thread);
+                try {
+                    start.await();
+                    for (int i = 0; i < transfers; i++) {
+                        int sender = random.nextInt(count);
+                        int recipient = random.nextInt(count - 1);
+                        recipient += recipient >= sender ? 1 : 0; // Never the sender
+                        try {
+                            feeCents[thread] += Math.round(service.transfer(customers[sender], customers[recipient],
+                                    AMOUNT) * 100);
+                        } catch (IllegalStateException e) {
+                            refused[thread]++; // Insufficient funds
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "bankingapp-transfer-" + t);
+            running[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        long closingCents = 0;
+        for (Customer customer : customers) {
+            closingCents += Math.round(customer.getBalance() * 100);
+            AccountRecord stored = storage.load(customer.getUsername());
+            Benchmarks.check(stored != null && stored.getBalance() == customer.getBalance(),
+                    customer.getUsername() + " is stored with " + (stored == null ? null : stored.getBalance())
+                            + " but has " + customer.getBalance());
+            storage.delete(customer.getUsername());
+        }
+        long fees = 0;
+        long refusals = 0;
+        for (int t = 0; t < threads; t++) {
+            fees += feeCents[t];
+            refusals += refused[t];
+        }
+        Benchmarks.check(closingCents + fees == openingCents,
+                (openingCents - closingCents - fees) + " cents went missing");
+        Benchmarks.report(label, (long) threads * transfers, nanos);
+        Benchmarks.print(String.format(Locale.ROOT, "  %-46s %,12d transfers", "refused for insufficient funds", refusals));
+    }
+}
@@ -1,27 +1,50 @@
 package coe528.bankingapp.customer;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * Overview: Account is a mutable class that represents a bank account with a balance.
  * An Account has a balance that can be increased or decreased.
+ * The balance is held as a whole number of cents in a long and changed with compare-and-set loops, so concurrent
+ * credits and debits never lose an update and a debit can never overdraw the account, without any lock.
+ * Amounts are rounded to the nearest cent, and amounts and balances are bounded by MAX_AMOUNT, so every balance is
+ * exactly representable as a double and no sum overflows.
 
  * Abstraction Function:
- * Represents a bank account as an Account object where the balance of the account is represented by the 'balance' field.
+ * Represents a bank account as an Account object where the balance of the account is 'cents' / 100 dollars.
 
  * Representation Invariant:
- * The 'balance' field must always be non-negative (balance >= 0).
+ * The 'cents' field must always be non-negative (cents >= 0).
  */
 
 public class Account {
-    // The current balance of the account
-    private double balance;
+    // The largest amount, and the largest balance, in dollars: 2^53 - 1 cents, the largest count a double holds exactly
+    public static final double MAX_AMOUNT = ((1L << 53) - 1) / 100.0;
+    // The largest amount or balance in cents
+    private static final long MAX_CENTS = (1L << 53) - 1;
+    // Compare-and-set access to the 'cents' field
+    private static final VarHandle CENTS;
+
+    static {
+        try {
+            CENTS = MethodHandles.lookup().findVarHandle(Account.class, "cents", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The current balance of the account, in cents
+    private volatile long cents;
 
     /**
      * Constructs a new Account with the specified initial balance.
      *
      * @param initialAmount the initial balance of the account
+     * @throws IllegalArgumentException if the initial amount is not finite or is larger than MAX_AMOUNT
      */
     public Account(double initialAmount) {
-        this.balance = initialAmount;
+        this.cents = toCents(initialAmount);
     }
 
     /**
@@ -31,19 +54,121 @@ public class Account {
      * @effects returns the current balance of the account
      */
     public double getBalance() {
-        return balance;
+        return toDollars(cents);
     }
 
     /**
-     * Sets the balance of the account to the specified amount.
+     * Returns the current balance of the account in cents.
+     *
+     * @return the current balance of the account in cents
+     */
+    public long getBalanceCents() {
+        return cents;
+    }
+
+    /**
+     * Sets the balance of the account to the specified amount, replacing any concurrent change.
      *
      * @param newBalance the new balance of the account
+     * @throws IllegalArgumentException if the new balance is not finite or is larger than MAX_AMOUNT
      * @requires newBalance >= 0
      * @modifies this
      * @effects updates the balance of the account
      */
     public void setBalance(double newBalance) {
-        this.balance = newBalance;
+        cents = toCents(newBalance);
+    }
+
+    /**
+     * Atomically adds an amount to the balance.
+     *
+     * @param amount the amount to add
+     * @return the balance of the account right before the amount was added
+     * @throws IllegalArgumentException if the amount is not finite or the balance would exceed MAX_AMOUNT, in which
+     *         case the balance is unchanged
+     * @requires amount >= 0
+     * @modifies this
+     * @effects adds the amount to the balance
+     */
+    public double credit(double amount) {
+        long add = toCents(amount);
+        long current;
+        do {
+            current = cents;
+            if (current > MAX_CENTS - add) {
+                throw new IllegalArgumentException(String.format("The balance cannot exceed %.2f", MAX_AMOUNT));
+            }
+        } while (!CENTS.compareAndSet(this, current, current + add));
+        return toDollars(current);
+    }
+
+    /**
+     * Atomically removes an amount and a fee from the balance if the balance covers both.
+     *
+     * @param amount the amount to remove
+     * @param fee the fee to remove with the amount
+     * @return the balance of the account right before the debit, or -1 if the balance did not cover the amount and
+     *         the fee, in which case the balance is unchanged
+     * @throws IllegalArgumentException if the amount or the fee is not finite or is larger than MAX_AMOUNT
+     * @requires amount >= 0 && fee >= 0
+     * @modifies this
+     * @effects removes the amount and the fee from the balance if the balance is at least their sum
+     */
+    public double tryDebit(double amount, double fee) {
+        long remove = toCents(amount) + toCents(fee);
+        long current;
+        do {
+            current = cents;
+            if (current < remove) {
+                return -1;
+            }
+        } while (!CENTS.compareAndSet(this, current, current - remove));
+        return toDollars(current);
+    }
+
+    /**
+     * Rounds an amount of dollars to the nearest cent, the precision balances are kept and stored at.
+     *
+     * @param amount the amount to round
+     * @return the amount rounded to the nearest cent
+     * @throws IllegalArgumentException if the amount is not finite or its magnitude is larger than MAX_AMOUNT
+     */
+    public static double roundToCents(double amount) {
+        return toDollars(toCents(amount));
+    }
+
+    /**
+     * Returns whether an amount can be rounded to cents and applied to an account.
+     *
+     * @param amount the amount to check
+     * @return true if the amount is finite and its magnitude is at most MAX_AMOUNT
+     */
+    static boolean isValidAmount(double amount) {
+        return Double.isFinite(amount) && Math.abs(amount) <= MAX_AMOUNT;
+    }
+
+    /**
+     * Converts an amount of dollars to the nearest whole number of cents, rejecting amounts out of range.
+     *
+     * @param amount the amount in dollars
+     * @return the amount in whole cents
+     * @throws IllegalArgumentException if the amount is not finite or its magnitude is larger than MAX_AMOUNT
+     */
+    static long toCents(double amount) {
+        if (!isValidAmount(amount)) {
+            throw new IllegalArgumentException(String.format("Amount must be a finite number no larger than %.2f", MAX_AMOUNT));
+        }
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Converts a number of cents to dollars.
+     *
+     * @param cents the amount in cents
+     * @return the amount in dollars
+     */
+    static double toDollars(long cents) {
+        return cents / 100.0;
     }
 
     /**
@@ -53,7 +178,7 @@ public class Account {
      * @effects returns a boolean indicating if the account balance is non-negative
      */
     public boolean repOk() {
-        return balance >= 0;
+        return cents >= 0;
     }
 
     /**
@@ -65,7 +190,7 @@ public class Account {
     @Override
     public String toString() {
         return "Account{" +
-                "balance=" + balance +
+                "balance=" + getBalance() +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package coe528.bankingapp.customer;
+
+/**
+ * This interface represents an observer of the balance of a customer's account.
+ * It is notified after every operation that changes the balance, so that indexes over customers can be kept up to date.
+ * This interface is immutable as it only provides the contract for the methods without any state.
+ */
+public interface BalanceListener {
+
+    /**
+     * Called after the balance of a customer's account has changed.
+     * The customer's new balance and level can be read from the customer.
+     *
+     * @param customer the customer whose balance changed
+     * @param oldBalance the balance before the change
+     * @param oldLevel the level of the customer before the change
+     * @requires customer != null && oldLevel != null
+     */
+    void balanceChanged(Customer customer, double oldBalance, String oldLevel);
+}
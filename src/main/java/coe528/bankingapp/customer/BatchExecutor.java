@@ -0,0 +1,202 @@
+package coe528.bankingapp.customer;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.JournalRecord;
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Overview: BatchExecutor is a utility class that applies a batch of deposits, withdrawals and purchases, such as a
+ * file handed over by an upstream system, to many accounts at once.
+ * The operations are partitioned by account, keeping the order of each account's operations, and the partitions are
+ * applied in parallel on a shared ForkJoinPool. Each operation is checked and applied with the same rules as
+ * Customer.deposit, withdraw and purchase, but the changes of a partition are stored with one
+ * StorageEngine.updateBalances call once the partition is done, instead of once per operation, and the customer's
+ * balance listener is notified once per partition.
+ * The number of threads is set with the system property bankingapp.batch.parallelism and defaults to the number of
+ * processors.
+ */
+public final class BatchExecutor {
+    // System property setting the number of batch threads
+    private static final String PARALLELISM_PROPERTY = "bankingapp.batch.parallelism";
+
+    // The pool the partitions are applied on
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1,
+            Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private BatchExecutor() {
+    }
+
+    /**
+     * Applies a batch of operations and returns the result of each.
+     * Operations on the same account are applied in the order they appear in the batch; operations on different
+     * accounts are applied in parallel, in no particular order. A rejected operation leaves its account unchanged and
+     * does not stop the operations after it.
+     *
+     * @param operations the operations to apply
+     * @param customers finds the customer with a username, returning null if there is none; must be thread-safe
+     * @return the result of each operation, in the order of the operations
+     * @requires operations != null && customers != null && no operation is null
+     * @modifies the customers of the operations
+     * @effects applies every operation that is valid and covered by its account's balance, stores the changes of
+     *          each account as one unit and notifies each changed customer's balance listener once
+     */
+    public static List<BatchResult> execute(List<BatchOperation> operations, Function<String, Customer> customers) {
+        BatchResult[] results = new BatchResult[operations.size()];
+        Map<String, List<Integer>> partitions = new LinkedHashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            partitions.computeIfAbsent(operations.get(i).getUsername(), username -> new ArrayList<>()).add(i);
+        }
+        List<PartitionTask> tasks = new ArrayList<>(partitions.size());
+        for (List<Integer> partition : partitions.values()) {
+            tasks.add(new PartitionTask(operations, partition, customers, results));
+        }
+        if (!tasks.isEmpty()) {
+            POOL.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Returns the number of threads partitions are applied on.
+     *
+     * @return the parallelism of the executor
+     */
+    public static int getParallelism() {
+        return POOL.getParallelism();
+    }
+
+    /**
+     * Overview: PartitionTask is a task that applies, in order, the operations of a batch on one account.
+     */
+    private static final class PartitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The operations of the batch
+        private final List<BatchOperation> operations;
+        // The positions in the batch of the operations on the account, in order
+        private final List<Integer> partition;
+        // Finds the customer with a username
+        private final Function<String, Customer> customers;
+        // The results of the batch, by position
+        private final BatchResult[] results;
+
+        PartitionTask(List<BatchOperation> operations, List<Integer> partition, Function<String, Customer> customers,
+                      BatchResult[] results) {
+            this.operations = operations;
+            this.partition = partition;
+            this.customers = customers;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            Customer customer = customers.apply(operations.get(partition.get(0)).getUsername());
+            if (customer == null) {
+                for (int i : partition) {
+                    results[i] = rejected(operations.get(i), BatchResult.Status.UNKNOWN_ACCOUNT);
+                }
+                return;
+            }
+            double firstBalance = Double.NaN;
+            List<JournalRecord> records = new ArrayList<>(partition.size());
+            long change = customer.storage.beginChange();
+            try {
+                for (int i : partition) {
+                    BatchOperation operation = operations.get(i);
+                    results[i] = apply(customer, operation);
+                    if (results[i].isApplied()) {
+                        BatchResult result = results[i];
+                        if (records.isEmpty()) {
+                            firstBalance = Account.toDollars(Account.toCents(result.getBalance())
+                                    - delta(operation, result.getFee()));
+                        }
+                        records.add(new JournalRecord(0, customer.getUsername(), operation.getOperation(),
+                                Account.roundToCents(operation.getAmount()), result.getFee(), result.getBalance()));
+                    }
+                }
+                if (!records.isEmpty()) {
+                    customer.storage.updateBalances(records);
+                }
+            } finally {
+                customer.storage.endChange(change);
+            }
+            if (!records.isEmpty()) {
+                customer.notifyBalanceChanged(firstBalance, AccountRecord.levelOf(firstBalance));
+            }
+        }
+
+        /**
+         * Applies one operation to the customer's account in memory, with the rules of Customer.deposit, withdraw
+         * and purchase, rounding its amount to the nearest cent.
+         */
+        private static BatchResult apply(Customer customer, BatchOperation operation) {
+            if (!Account.isValidAmount(operation.getAmount())) {
+                return rejected(operation, BatchResult.Status.INVALID);
+            }
+            double amount = Account.roundToCents(operation.getAmount());
+            double fee = 0;
+            double oldBalance;
+            switch (operation.getOperation()) {
+                case DEPOSIT:
+                    if (!(amount >= 0)) {
+                        return rejected(operation, BatchResult.Status.INVALID);
+                    }
+                    try {
+                        oldBalance = customer.account.credit(amount);
+                    } catch (IllegalArgumentException e) {
+                        return rejected(operation, BatchResult.Status.INVALID);
+                    }
+                    break;
+                case WITHDRAW:
+                case PURCHASE:
+                    if (!(amount > 0)) {
+                        return rejected(operation, BatchResult.Status.INVALID);
+                    }
+                    if (operation.getOperation() == Operation.PURCHASE) {
+                        fee = customer.currentFee();
+                    }
+                    oldBalance = customer.account.tryDebit(amount, fee);
+                    if (oldBalance < 0) {
+                        return rejected(operation, BatchResult.Status.INSUFFICIENT_FUNDS);
+                    }
+                    break;
+                default:
+                    return rejected(operation, BatchResult.Status.INVALID);
+            }
+            return new BatchResult(operation, BatchResult.Status.APPLIED, fee,
+                    Account.toDollars(Account.toCents(oldBalance) + delta(operation, fee)));
+        }
+
+        /**
+         * Returns the change in cents an applied operation made to its account's balance.
+         */
+        private static long delta(BatchOperation operation, double fee) {
+            long amount = Account.toCents(Account.roundToCents(operation.getAmount()));
+            return operation.getOperation() == Operation.DEPOSIT ? amount : -amount - Account.toCents(fee);
+        }
+
+        /**
+         * Returns the result of an operation that was not applied.
+         */
+        private static BatchResult rejected(BatchOperation operation, BatchResult.Status status) {
+            return new BatchResult(operation, status, 0, Double.NaN);
+        }
+    }
+}
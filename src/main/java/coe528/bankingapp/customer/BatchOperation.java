@@ -0,0 +1,84 @@
+package coe528.bankingapp.customer;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+/**
+ * Overview: BatchOperation is an immutable class that represents one operation of a batch handed to BatchExecutor:
+ * a deposit, withdrawal or purchase of an amount on the account of a username.
+ *
+ * Abstraction Function:
+ * Represents the operation 'operation' of 'amount' on the account of the customer 'username'.
+ *
+ * Representation Invariant:
+ * The 'username' and 'operation' fields must be non-null.
+ */
+public final class BatchOperation {
+    // The username of the account the operation applies to
+    private final String username;
+    // The operation to apply, which BatchExecutor only accepts if it is a DEPOSIT, WITHDRAW or PURCHASE
+    private final Operation operation;
+    // The amount of the operation
+    private final double amount;
+
+    /**
+     * Constructs a new BatchOperation.
+     *
+     * @param username the username of the account the operation applies to
+     * @param operation the operation to apply
+     * @param amount the amount of the operation
+     * @requires username != null && operation != null
+     */
+    public BatchOperation(String username, Operation operation, double amount) {
+        this.username = username;
+        this.operation = operation;
+        this.amount = amount;
+    }
+
+    /**
+     * Returns the username of the account the operation applies to.
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the operation to apply.
+     *
+     * @return the operation
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the amount of the operation.
+     *
+     * @return the amount
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns a string representation of the BatchOperation.
+     *
+     * @return a string representation of the BatchOperation
+     * @effects returns a string that represents the BatchOperation
+     */
+    @Override
+    public String toString() {
+        return operation + " $" + amount + " on " + username;
+    }
+
+    /**
+     * Checks the representation invariant of the BatchOperation.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return username != null && operation != null;
+    }
+}
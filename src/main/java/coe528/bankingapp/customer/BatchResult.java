@@ -0,0 +1,132 @@
+package coe528.bankingapp.customer;
+
+/**
+ * Overview: BatchResult is an immutable class that represents the outcome of one operation of a batch: whether it was
+ * applied and, if so, the fee charged and the balance of the account right after it.
+ *
+ * Abstraction Function:
+ * Represents the outcome 'status' of 'operation', which left the account with 'balance' after charging 'fee' if it
+ * was applied.
+ *
+ * Representation Invariant:
+ * The 'operation' and 'status' fields must be non-null. If 'status' is not APPLIED or STORAGE_FAILED, 'fee' is 0 and
+ * 'balance' is NaN.
+ */
+public final class BatchResult {
+
+    /**
+     * The outcomes of an operation of a batch.
+     */
+    public enum Status {
+        // The operation was applied
+        APPLIED,
+        // The balance did not cover the withdrawal or the purchase and its fee, so the account is unchanged
+        INSUFFICIENT_FUNDS,
+        // The amount is not allowed for the operation, or the operation is not a deposit, withdrawal or purchase
+        INVALID,
+        // No customer has the username of the operation
+        UNKNOWN_ACCOUNT,
+        // The operation was applied to the account in memory but storing it failed, so a restart loses it
+        STORAGE_FAILED
+    }
+
+    // The operation the result is of
+    private final BatchOperation operation;
+    // The outcome of the operation
+    private final Status status;
+    // The fee charged, or 0 if the operation was not applied
+    private final double fee;
+    // The balance of the account right after the operation, or NaN if it was not applied
+    private final double balance;
+
+    /**
+     * Constructs a new BatchResult.
+     *
+     * @param operation the operation the result is of
+     * @param status the outcome of the operation
+     * @param fee the fee charged, or 0 if the operation was not applied
+     * @param balance the balance of the account right after the operation, or NaN if it was not applied
+     * @requires operation != null && status != null
+     */
+    public BatchResult(BatchOperation operation, Status status, double fee, double balance) {
+        this.operation = operation;
+        this.status = status;
+        this.fee = fee;
+        this.balance = balance;
+    }
+
+    /**
+     * Returns the operation the result is of.
+     *
+     * @return the operation
+     */
+    public BatchOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the outcome of the operation.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks if the operation was applied.
+     *
+     * @return true if the status is APPLIED
+     */
+    public boolean isApplied() {
+        return status == Status.APPLIED;
+    }
+
+    /**
+     * Checks if the operation changed the account in memory, whether or not it was stored.
+     *
+     * @return true if the status is APPLIED or STORAGE_FAILED
+     */
+    public boolean changedBalance() {
+        return status == Status.APPLIED || status == Status.STORAGE_FAILED;
+    }
+
+    /**
+     * Returns the fee charged for the operation.
+     *
+     * @return the fee, or 0 if the operation was not applied
+     */
+    public double getFee() {
+        return fee;
+    }
+
+    /**
+     * Returns the balance of the account right after the operation.
+     *
+     * @return the balance, or NaN if the operation did not change the balance
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Returns a string representation of the BatchResult.
+     *
+     * @return a string representation of the BatchResult
+     * @effects returns a string that represents the BatchResult
+     */
+    @Override
+    public String toString() {
+        return operation + ": " + status + (changedBalance() ? ", fee $" + fee + ", balance $" + balance : "");
+    }
+
+    /**
+     * Checks the representation invariant of the BatchResult.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return operation != null && status != null && (changedBalance() || (fee == 0 && Double.isNaN(balance)));
+    }
+}
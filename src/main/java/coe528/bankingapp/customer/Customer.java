@@ -1,13 +1,20 @@
 package coe528.bankingapp.customer;
 
-import coe528.bankingapp.data.FileManager;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
+import coe528.bankingapp.data.JournalRecord.Operation;
 import coe528.bankingapp.templates.AbstractUser;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
  * Overview: Customer is a mutable class that represents a customer in the banking application.
  * A Customer has a username, password, account with a balance, and a customer level.
+ * If the system property "bankingapp.sequencer" is true, deposits, withdrawals and purchases are applied and stored
+ * by a TransactionSequencer shared by every customer, and each call waits for its outcome; otherwise they are applied
+ * on the calling thread.
 
  * Abstraction Function:
  * Represents a customer in the banking application as a Customer object where the username, password, account balance, and customer level are represented by the respective fields.
@@ -21,15 +28,22 @@ public class Customer extends AbstractUser {
     private static final String ROLE = "Customer";
     // The level of the customer
     private final CustomerLevel customerLevel;
-    // The account of the customer
-    private final Account account;
+    // The account of the customer, debited and credited directly by TransferService
+    final Account account;
 
     // The number of the customer
     private int customerNumber ;
-    // The count of customers
-    private static int customerCount = 0;
-    // The file manager instance
-    FileManager fileManager;
+    // The count of customers, updated atomically because customers are loaded on several threads
+    private static final AtomicInteger customerCount = new AtomicInteger();
+    // The storage engine the customer's account is saved in
+    StorageEngine storage;
+    // The listener notified of balance changes, or null
+    private volatile BalanceListener balanceListener;
+    // The service moving money between customers
+    private static final TransferService TRANSFERS = new TransferService(Integer.getInteger("bankingapp.transfer.stripes", 64));
+    // The sequencer deposits, withdrawals and purchases go through, or null to apply them on the calling thread
+    private static final TransactionSequencer SEQUENCER = Boolean.getBoolean("bankingapp.sequencer")
+            ? new TransactionSequencer(null) : null;
     // Logger instance
 
     /**
@@ -39,96 +53,243 @@ public class Customer extends AbstractUser {
      * @param username the username of the customer
      * @param password the password of the customer
      * @param initialAmount the initial amount in the customer's account
+     * @throws IllegalArgumentException if the initial amount is not finite or is larger than Account.MAX_AMOUNT
      */
     public Customer(String username, String password, double initialAmount) {
+        this(username, password, initialAmount, customerCount.getAndIncrement());
+    }
+
+    /**
+     * Constructs a Customer for an account loaded from storage, keeping its stored customer number.
+     * Customers created afterwards are numbered past the highest number loaded.
+     *
+     * @param username the username of the customer
+     * @param password the password of the customer
+     * @param initialAmount the balance of the customer's account
+     * @param customerNumber the stored number of the customer
+     * @requires customerNumber >= 0
+     */
+    public Customer(String username, String password, double initialAmount, int customerNumber) {
         super(username, password);
         account = new Account(initialAmount);
         if(!account.repOk()) {
             account.setBalance(0);
         }
         customerLevel = new CustomerLevel(account);
-        customerNumber = customerCount;
-        customerCount++;
-        fileManager = new FileManager();
+        this.customerNumber = customerNumber;
+        reserveCustomerNumber(customerNumber);
+        storage = StorageEngines.get();
+    }
+
+    /**
+     * Makes customers created afterwards be numbered past the specified number, for example because an account with
+     * that number is stored but not loaded.
+     *
+     * @param customerNumber the number to reserve
+     * @requires customerNumber >= 0
+     * @effects customers created afterwards get numbers greater than customerNumber
+     */
+    public static void reserveCustomerNumber(int customerNumber) {
+        customerCount.accumulateAndGet(customerNumber + 1, Math::max);
     }
 
     /**
      * Deposits the specified amount into the customer's account.
+     * The amount is rounded to the nearest cent before it is applied and recorded.
      *
      * @param amount the amount to deposit
-     * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalArgumentException if the amount is negative, not finite, or would raise the balance past
+     *         Account.MAX_AMOUNT
      * @requires amount >= 0
      * @modifies this
-     * @effects updates the balance of the account by adding the specified amount
+     * @effects updates the balance of the account by adding the specified amount and records the deposit
      */
     public void deposit(double amount) {
+        amount = Account.roundToCents(amount);
         if (amount < 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        account.setBalance(account.getBalance() + amount);
-
-        String customerData = "Username: " + getUsername() + "\nPassword: " + getPassword() + "\nBalance: " + getBalance() + "\nLevel: " + customerLevel.getLevel();
-
-        fileManager.writeToFile(getUsername() + ".txt", customerData);
+        if (SEQUENCER != null) {
+            execute(Operation.DEPOSIT, amount);
+            return;
+        }
+        double oldBalance = account.credit(amount);
+        persist(Operation.DEPOSIT, amount, 0);
+        notifyBalanceChanged(oldBalance, AccountRecord.levelOf(oldBalance));
     }
 
     /**
      * Withdraws the specified amount from the customer's account.
+     * The balance is checked and debited in one atomic step, so concurrent withdrawals cannot overdraw the account.
+     * The amount is rounded to the nearest cent before it is applied and recorded.
      *
      * @param amount the amount to withdraw
-     * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalArgumentException if the amount is less than a cent or not finite
      * @throws IllegalStateException if the withdrawal would result in a negative balance
      * @requires amount > 0 and account.getBalance() - amount - customerLevel.getFee() >= 0
      * @modifies this
-     * @effects updates the balance of the account by subtracting the specified amount
+     * @effects updates the balance of the account by subtracting the specified amount and records the withdrawal
      */
     public void withdraw(double amount) {
+        amount = Account.roundToCents(amount);
         if (amount <= 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        else if (account.getBalance() - amount < 0) {
-            throw new IllegalStateException("Insufficient funds");
+        if (SEQUENCER != null) {
+            execute(Operation.WITHDRAW, amount);
+            return;
         }
-        else{
-            account.setBalance(account.getBalance() - amount);
-            String customerData = "Username: " + getUsername() + "\n" +
-                    "Password: " + getPassword() + "\n" +
-                    "Balance: " + getBalance() + "\n" +
-                    "Level: " + customerLevel.getLevel()+ "\n" +
-                    "Customer Number: " + customerNumber + "\n" +
-                    "Role: " + ROLE;
-            fileManager.writeToFile(getUsername() + ".txt", customerData);
+        double oldBalance = account.tryDebit(amount, 0);
+        if (oldBalance < 0) {
+            throw new IllegalStateException("Insufficient funds");
         }
+        persist(Operation.WITHDRAW, amount, 0);
+        notifyBalanceChanged(oldBalance, AccountRecord.levelOf(oldBalance));
     }
 
     /**
      * Purchases an item with the specified amount from the customer's account.
+     * The fee is that of the customer's level when the purchase starts; the balance is checked and debited in one
+     * atomic step, so concurrent purchases cannot overdraw the account. The amount is rounded to the nearest cent
+     * before it is applied and recorded.
      *
      * @param amount the amount to withdraw
-     * @throws IllegalArgumentException if the amount is negative
+     * @throws IllegalArgumentException if the amount is less than a cent or not finite
      * @throws IllegalStateException if the purchase would result in a negative balance
      * @requires amount > 0 and account.getBalance() - amount - customerLevel.getFee() >= 0
      * @modifies this
-     * @effects updates the balance of the account by subtracting the specified amount and the fee
+     * @effects updates the balance of the account by subtracting the specified amount and the fee and records the purchase
      */
     public void purchase(double amount) {
+        amount = Account.roundToCents(amount);
         if (amount <= 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
-        else if (account.getBalance() - amount - customerLevel.getFee() < 0) {
+        if (SEQUENCER != null) {
+            execute(Operation.PURCHASE, amount);
+            return;
+        }
+        double fee = currentFee();
+        double oldBalance = account.tryDebit(amount, fee);
+        if (oldBalance < 0) {
             throw new IllegalStateException("Insufficient funds");
         }
-        else{
-            account.setBalance(account.getBalance() - amount - customerLevel.getFee());
-            String customerData = "Username: " + getUsername() + "\n" +
-                    "Password: " + getPassword() + "\n" +
-                    "Balance: " + getBalance() + "\n" +
-                    "Level: " + customerLevel.getLevel()+ "\n" +
-                    "Customer Number: " + customerNumber + "\n" +
-                    "Role: " + ROLE;
-            fileManager.writeToFile(getUsername() + ".txt", customerData);
+        persist(Operation.PURCHASE, amount, fee);
+        notifyBalanceChanged(oldBalance, AccountRecord.levelOf(oldBalance));
+    }
+    /**
+     * Transfers the specified amount from this customer's account to another customer's account.
+     * This customer pays the fee of its level on top of the amount.
+     *
+     * @param recipient the customer receiving the amount
+     * @param amount the amount to transfer
+     * @return the fee charged
+     * @throws IllegalArgumentException if the amount is not positive or the recipient is this customer
+     * @throws IllegalStateException if the transfer would result in a negative balance
+     * @requires recipient != null and account.getBalance() - amount - customerLevel.getFee() >= 0
+     * @modifies this, recipient
+     * @effects moves the amount from this account to the recipient's, subtracts the fee from this account and records
+     *          both changes as one unit
+     */
+    public double transferTo(Customer recipient, double amount) {
+        return TRANSFERS.transfer(this, recipient, amount);
+    }
+
+    /**
+     * Returns the fee of the customer's level for the current balance.
+     *
+     * @return the fee charged for a purchase or a transfer
+     */
+    double currentFee() {
+        customerLevel.getLevel(); // Bring the level, and with it the fee, up to date with the balance
+        return customerLevel.getFee();
+    }
+
+    /**
+     * Sets the balance of the customer's account to a balance already stored, for example by another instance of the
+     * application, so the change is not recorded again.
+     *
+     * @param balance the stored balance of the account
+     * @requires balance >= 0
+     * @modifies this
+     * @effects sets the balance of the account and notifies the balance listener
+     */
+    public void applyStoredBalance(double balance) {
+        double oldBalance = account.getBalance();
+        String oldLevel = customerLevel.getLevel();
+        account.setBalance(balance);
+        notifyBalanceChanged(oldBalance, oldLevel);
+    }
+
+    /**
+     * Returns the statistics of the sequencer deposits, withdrawals and purchases go through.
+     *
+     * @return the statistics of the shared sequencer, or null if operations are applied on the calling thread
+     */
+    public static SequencerStatistics getSequencerStatistics() {
+        return SEQUENCER == null ? null : SEQUENCER.getStatistics();
+    }
+
+    /**
+     * Applies an operation through the shared sequencer, which stores it and notifies the balance listener, and turns
+     * its outcome into the exceptions of deposit, withdraw and purchase.
+     *
+     * @param operation the operation to apply
+     * @param amount the amount of the operation, already rounded to the nearest cent
+     * @throws IllegalArgumentException if the amount is not allowed or the balance would exceed Account.MAX_AMOUNT
+     * @throws IllegalStateException if the balance does not cover the amount and the fee
+     * @modifies this
+     * @effects applies and stores the operation, unless it is refused
+     */
+    private void execute(Operation operation, double amount) {
+        BatchResult result = SEQUENCER.execute(this, operation, amount);
+        switch (result.getStatus()) {
+            case INSUFFICIENT_FUNDS:
+                throw new IllegalStateException("Insufficient funds");
+            case INVALID:
+                throw new IllegalArgumentException("Invalid amount: " + amount);
+            default:
+                break; // Applied; a storage failure is logged by the sequencer, as the storage engine logs it otherwise
         }
     }
+
+    /**
+     * Records a balance change in the storage engine.
+     *
+     * @param operation the operation that changed the balance
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @modifies this
+     * @effects stores the operation and the customer's new balance and level
+     */
+    private void persist(Operation operation, double amount, double fee) {
+        storage.updateBalance(getUsername(), operation, amount, fee, account::getBalance, customerLevel.getLevel());
+    }
+
+    /**
+     * Notifies the balance listener, if there is one, of a balance change.
+     *
+     * @param oldBalance the balance before the change
+     * @param oldLevel the level before the change
+     */
+    void notifyBalanceChanged(double oldBalance, String oldLevel) {
+        BalanceListener listener = balanceListener;
+        if (listener != null) {
+            listener.balanceChanged(this, oldBalance, oldLevel);
+        }
+    }
+
+    /**
+     * Sets the listener notified after every balance change, replacing any previous listener.
+     *
+     * @param listener the listener to notify, or null for none
+     * @modifies this
+     * @effects makes the listener receive the customer's balance changes
+     */
+    public void setBalanceListener(BalanceListener listener) {
+        balanceListener = listener;
+    }
+
     /**
      * Returns the level of the customer.
      *
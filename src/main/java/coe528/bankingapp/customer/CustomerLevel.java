@@ -1,5 +1,7 @@
 package coe528.bankingapp.customer;
 
+import coe528.bankingapp.data.AccountRecord;
+
 /**
  * Overview: The CustomerLevel class is a mutable class that represents the level of a customer in a banking application.
  * The level is determined by the balance in the customer's account. The level can be one of three types: Silver, Gold, or Platinum.
@@ -12,6 +14,16 @@ package coe528.bankingapp.customer;
  * RI(c) = c.account != null && c.state != null && c.state.getFee() >= 0
  */
 public class CustomerLevel {
+    // The lowest balance of a Gold customer
+    public static final double GOLD_THRESHOLD = AccountRecord.GOLD_THRESHOLD;
+    // The lowest balance of a Platinum customer
+    public static final double PLATINUM_THRESHOLD = AccountRecord.PLATINUM_THRESHOLD;
+
+    // The states of the levels, shared by every customer because nothing changes a state after it is constructed
+    private static final CustomerLevelState SILVER = new SilverLevelState();
+    private static final CustomerLevelState GOLD = new GoldLevelState();
+    private static final CustomerLevelState PLATINUM = new PlatinumLevelState();
+
     private CustomerLevelState state;  // The current state of the customer level
     private final Account account;  // The account associated with this customer level
 
@@ -39,12 +51,12 @@ public class CustomerLevel {
      * @modifies this
      */
     private void determineLevelAndFee() {
-        if (account.getBalance() < 10000) {
-            state = new SilverLevelState();
-        } else if (account.getBalance() >= 10000 && account.getBalance() < 20000) {
-            state = new GoldLevelState();
-        } else if (account.getBalance() >= 20000) {
-            state = new PlatinumLevelState();
+        if (account.getBalance() < GOLD_THRESHOLD) {
+            state = SILVER;
+        } else if (account.getBalance() >= GOLD_THRESHOLD && account.getBalance() < PLATINUM_THRESHOLD) {
+            state = GOLD;
+        } else if (account.getBalance() >= PLATINUM_THRESHOLD) {
+            state = PLATINUM;
         }
     }
 
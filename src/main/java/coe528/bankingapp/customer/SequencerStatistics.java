@@ -0,0 +1,195 @@
+package coe528.bankingapp.customer;
+
+/**
+ * Overview: SequencerStatistics is an immutable class that represents a snapshot of the work done by a
+ * TransactionSequencer: how many commands were published, completed and rejected, how fast they were published, how
+ * the journal stage batched them, and percentiles of their end-to-end latency from being published to being stored
+ * and notified. Latencies are read from a histogram whose buckets are at most an eighth of their value wide, and each
+ * percentile is reported as the upper bound of its bucket.
+ *
+ * Abstraction Function:
+ * Represents the 'published' commands published in 'elapsedNanos', of which 'completed' were stored and notified in
+ * 'batches' batches of at most 'maxBatchSize' commands, 'rejected' of them without changing their account, with
+ * end-to-end latencies whose median, 90th, 99th and 99.9th percentiles and maximum are the corresponding fields.
+ *
+ * Representation Invariant:
+ * All fields must be non-negative, 'completed' must be at most 'published', 'rejected' must be at most 'completed',
+ * and the latency percentiles must not decrease from p50Nanos to maxLatencyNanos.
+ */
+public final class SequencerStatistics {
+    // The number of commands published
+    private final long published;
+    // The number of commands stored and notified
+    private final long completed;
+    // The number of completed commands that were rejected
+    private final long rejected;
+    // The number of batches of the journal stage
+    private final long batches;
+    // The largest number of commands in one batch
+    private final long maxBatchSize;
+    // The time from the start of the sequencer to the snapshot
+    private final long elapsedNanos;
+    // The percentiles of the end-to-end latency
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    // The largest end-to-end latency
+    private final long maxLatencyNanos;
+
+    /**
+     * Constructs a new SequencerStatistics from the counters of a sequencer.
+     *
+     * @requires every argument >= 0 && completed <= published && rejected <= completed &&
+     *           p50Nanos <= p90Nanos <= p99Nanos <= p999Nanos <= maxLatencyNanos
+     */
+    SequencerStatistics(long published, long completed, long rejected, long batches, long maxBatchSize,
+                        long elapsedNanos, long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos,
+                        long maxLatencyNanos) {
+        this.published = published;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.batches = batches;
+        this.maxBatchSize = maxBatchSize;
+        this.elapsedNanos = elapsedNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    /**
+     * Returns the number of commands published.
+     *
+     * @return the number of commands published
+     */
+    public long getPublishedCount() {
+        return published;
+    }
+
+    /**
+     * Returns the number of commands stored and notified, including the rejected ones.
+     *
+     * @return the number of commands completed
+     */
+    public long getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * Returns the number of completed commands that were rejected, for insufficient funds or an invalid amount.
+     *
+     * @return the number of commands rejected
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Returns the number of batches the journal stage stored.
+     *
+     * @return the number of batches
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Returns the largest number of commands the journal stage stored in one batch.
+     *
+     * @return the largest batch size
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the average number of commands the journal stage stored in one batch.
+     *
+     * @return the average batch size, or 0 if no batch was stored
+     */
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) completed / batches;
+    }
+
+    /**
+     * Returns the number of commands published per second since the sequencer started.
+     *
+     * @return the publish throughput, in commands per second
+     */
+    public double getPublishThroughput() {
+        return elapsedNanos == 0 ? 0 : published * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Returns the median end-to-end latency.
+     *
+     * @return the median latency in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Returns the 90th percentile of the end-to-end latency.
+     *
+     * @return the 90th percentile latency in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Returns the 99th percentile of the end-to-end latency.
+     *
+     * @return the 99th percentile latency in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the end-to-end latency.
+     *
+     * @return the 99.9th percentile latency in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * Returns the largest end-to-end latency.
+     *
+     * @return the largest latency in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Returns a string representation of the SequencerStatistics.
+     *
+     * @return a string representation of the SequencerStatistics
+     * @effects returns a string that represents the SequencerStatistics
+     */
+    @Override
+    public String toString() {
+        return String.format("%d published (%.0f/s), %d completed, %d rejected, %d batches (avg %.1f, max %d), "
+                        + "latency p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                published, getPublishThroughput(), completed, rejected, batches, getAverageBatchSize(), maxBatchSize,
+                p50Nanos / 1e3, p90Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3, maxLatencyNanos / 1e3);
+    }
+
+    /**
+     * Checks the representation invariant of the SequencerStatistics.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return rejected >= 0 && batches >= 0 && maxBatchSize >= 0 && elapsedNanos >= 0 && p50Nanos >= 0
+                && rejected <= completed && completed <= published
+                && p50Nanos <= p90Nanos && p90Nanos <= p99Nanos && p99Nanos <= p999Nanos && p999Nanos <= maxLatencyNanos;
+    }
+}
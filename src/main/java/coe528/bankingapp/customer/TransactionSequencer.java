@@ -0,0 +1,552 @@
+package coe528.bankingapp.customer;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.JournalRecord;
+import coe528.bankingapp.data.JournalRecord.Operation;
+import coe528.bankingapp.data.StorageEngine;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Overview: TransactionSequencer is a mutable class that executes deposits, withdrawals and purchases in the style of
+ * a ring-buffer disruptor, as an alternative to calling Customer.deposit, withdraw and purchase from many threads.
+ * Producers claim the next sequence number and write their command into the slot it maps to in a ring of slots
+ * allocated once, so publishing allocates nothing and takes no lock. One business thread applies the commands in
+ * sequence order to the accounts, with the rules of Customer.deposit, withdraw and purchase; since every command goes
+ * through that one thread, commands on a hot account never contend with each other. A journal thread follows it,
+ * taking every command the business thread has applied as one batch: it stores the batch's changes with one
+ * StorageEngine.updateBalances call per storage engine, then notifies the customers' balance listeners and the
+ * sequencer's listener, and only then frees the batch's slots for producers to reuse. Commands whose changes the
+ * storage engine fails to store are reported as STORAGE_FAILED rather than APPLIED. The business thread starts a
+ * StorageEngine change for every command before applying it and the journal thread ends it once the command is stored,
+ * so an engine reading balances in the background never journals one that includes a change stored after it.
+ * A producer finding the ring full
+ * waits for the journal thread. The threads spin, then yield, then park briefly while waiting, trading a little
+ * latency when idle for no lock handoffs when busy.
+ * The ring holds bankingapp.sequencer.ringSize slots by default, rounded up to a power of two.
+ * Customer sends its deposits, withdrawals and purchases through a shared sequencer, waiting for each with execute,
+ * when bankingapp.sequencer is true.
+ *
+ * Abstraction Function:
+ * Represents the commands with sequence numbers 0 to claimed: those up to 'completed' are applied, stored and
+ * notified, those from completed + 1 to 'processed' are applied and waiting to be stored, and the rest are waiting
+ * to be applied; the command with sequence s is held in slots[s & mask] once available[s & mask] == s.
+ *
+ * Representation Invariant:
+ * The 'slots' field must have a power-of-two length with no null element, 'mask' must be slots.length - 1,
+ * 'available' must have the same length as 'slots', and completed <= processed <= claimed.get() must hold.
+ */
+public final class TransactionSequencer implements Closeable {
+    // Logger instance
+    private static final Logger LOGGER = Logger.getLogger(TransactionSequencer.class.getName());
+    // The number of busy spins before a waiting thread starts yielding
+    private static final int SPIN_TRIES = 100;
+    // The number of yields before a waiting thread starts parking
+    private static final int YIELD_TRIES = 100;
+    // How long a waiting thread parks at a time
+    private static final long PARK_NANOS = 50_000;
+    // The number of latency histogram buckets for each power of two
+    private static final int SUB_BUCKETS = 8;
+    // The number of latency histogram buckets, enough for any non-negative long
+    private static final int BUCKETS = 2 * SUB_BUCKETS + (63 - 3) * SUB_BUCKETS;
+
+    /**
+     * Receives the outcome of every command. It is called from the journal thread, in sequence order, after the
+     * command's change is stored; it should return quickly, since the ring cannot reuse the slot until it does.
+     */
+    public interface Listener {
+        /**
+         * Reports the outcome of a command.
+         *
+         * @param sequence the sequence number of the command
+         * @param customer the customer of the command
+         * @param operation the operation of the command
+         * @param amount the amount of the command, rounded to the nearest cent if it was a valid amount
+         * @param status APPLIED, INSUFFICIENT_FUNDS, INVALID, or STORAGE_FAILED if the command was applied in memory
+         *               but storing it failed
+         * @param fee the fee charged, or 0 if the command was not applied
+         * @param balance the balance right after the command, or NaN if it was not applied
+         */
+        void commandCompleted(long sequence, Customer customer, Operation operation, double amount,
+                              BatchResult.Status status, double fee, double balance);
+    }
+
+    // The ring of slots
+    private final Slot[] slots;
+    // The mask selecting a slot from a sequence number
+    private final int mask;
+    // The sequence number of the command published into each slot, or -1 if none is
+    private final AtomicLongArray available;
+    // The last sequence number claimed by a producer
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // The last sequence number applied by the business thread
+    private volatile long processed = -1;
+    // The last sequence number stored and notified by the journal thread
+    private volatile long completed = -1;
+    // False once the sequencer is closed
+    private volatile boolean running = true;
+    // The listener receiving the outcome of every command, or null
+    private final Listener listener;
+    // The thread applying the commands
+    private final Thread businessThread;
+    // The thread storing and notifying the applied commands
+    private final Thread journalThread;
+
+    // The statistics, written only by the journal thread
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(BUCKETS);
+    private volatile long rejected;
+    private volatile long batches;
+    private volatile long maxBatchSize;
+    private volatile long maxLatencyNanos;
+
+    /**
+     * Constructs a new TransactionSequencer with the default ring size and starts its threads.
+     *
+     * @param listener the listener receiving the outcome of every command, or null
+     */
+    public TransactionSequencer(Listener listener) {
+        this(Integer.getInteger("bankingapp.sequencer.ringSize", 16384), listener);
+    }
+
+    /**
+     * Constructs a new TransactionSequencer and starts its threads.
+     *
+     * @param ringSize the smallest number of slots, rounded up to a power of two
+     * @param listener the listener receiving the outcome of every command, or null
+     * @requires ringSize > 0
+     */
+    public TransactionSequencer(int ringSize, Listener listener) {
+        slots = new Slot[ringSize <= 1 ? 1 : Integer.highestOneBit(ringSize - 1) << 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        mask = slots.length - 1;
+        available = new AtomicLongArray(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            available.set(i, -1);
+        }
+        this.listener = listener;
+        businessThread = new Thread(this::runBusinessLogic, "bankingapp-sequencer-business");
+        journalThread = new Thread(this::runJournal, "bankingapp-sequencer-journal");
+        businessThread.setDaemon(true);
+        journalThread.setDaemon(true);
+        businessThread.start();
+        journalThread.start();
+    }
+
+    /**
+     * Publishes a command to be applied after every command published before it. Safe to call from any number of
+     * threads; it waits while the ring is full.
+     *
+     * @param customer the customer whose account the command applies to
+     * @param operation DEPOSIT, WITHDRAW or PURCHASE; any other operation is rejected as INVALID
+     * @param amount the amount of the command
+     * @return the sequence number of the command
+     * @throws IllegalStateException if the sequencer is closed
+     * @requires customer != null && operation != null
+     * @effects makes the business thread apply the command, and the journal thread store it and report its outcome
+     */
+    public long publish(Customer customer, Operation operation, double amount) {
+        return publish(customer, operation, amount, null);
+    }
+
+    /**
+     * Publishes a command and waits until it is stored and notified, as a synchronous alternative to publish.
+     *
+     * @param customer the customer whose account the command applies to
+     * @param operation DEPOSIT, WITHDRAW or PURCHASE; any other operation is rejected as INVALID
+     * @param amount the amount of the command
+     * @return the outcome of the command
+     * @throws IllegalStateException if the sequencer is closed
+     * @requires customer != null && operation != null
+     * @effects makes the business thread apply the command and the journal thread store it, and returns its outcome
+     */
+    public BatchResult execute(Customer customer, Operation operation, double amount) {
+        BatchResult[] result = new BatchResult[1];
+        awaitCompleted(publish(customer, operation, amount, result));
+        return result[0]; // Written by the journal thread before it completed the command
+    }
+
+    /**
+     * Publishes a command, with a holder the journal thread puts the command's outcome in, or null for none.
+     */
+    private long publish(Customer customer, Operation operation, double amount, BatchResult[] result) {
+        if (!running) {
+            throw new IllegalStateException("Sequencer is closed");
+        }
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - slots.length;
+        for (int tries = 0; completed < wrapPoint; tries++) {
+            idle(tries);
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.customer = customer;
+        slot.operation = operation;
+        slot.amount = amount;
+        slot.result = result;
+        slot.publishNanos = System.nanoTime();
+        available.set((int) sequence & mask, sequence); // Publishes the slot's fields to the business thread
+        return sequence;
+    }
+
+    /**
+     * Waits until a command and every command before it are stored and notified.
+     *
+     * @param sequence the sequence number returned by publish
+     * @effects returns once the command's outcome has been reported
+     */
+    public void awaitCompleted(long sequence) {
+        for (int tries = 0; completed < sequence; tries++) {
+            idle(tries);
+        }
+    }
+
+    /**
+     * Returns the number of slots in the ring.
+     *
+     * @return the ring size
+     */
+    public int getRingSize() {
+        return slots.length;
+    }
+
+    /**
+     * Returns a snapshot of the sequencer's statistics.
+     *
+     * @return the statistics so far
+     */
+    public SequencerStatistics getStatistics() {
+        long done = completed + 1;
+        long max = maxLatencyNanos;
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyCounts.get(i);
+            total += counts[i];
+        }
+        return new SequencerStatistics(Math.max(claimed.get() + 1, done), done, Math.min(rejected, done), batches,
+                maxBatchSize, System.nanoTime() - startNanos, percentile(counts, total, 0.5, max),
+                percentile(counts, total, 0.9, max), percentile(counts, total, 0.99, max),
+                percentile(counts, total, 0.999, max), max);
+    }
+
+    /**
+     * Stops accepting commands, waits for the commands already published to be stored and notified, and stops the
+     * sequencer's threads.
+     *
+     * @requires no call to publish is in progress or starts until close returns
+     * @modifies this
+     * @effects completes every published command and ends the business and journal threads
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            businessThread.join();
+            journalThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applies the published commands in sequence order until the sequencer is closed and every command is applied.
+     */
+    private void runBusinessLogic() {
+        long next = 0;
+        int tries = 0;
+        while (true) {
+            long end = next;
+            while (available.get((int) end & mask) == end) {
+                apply(slots[(int) end & mask]);
+                end++;
+            }
+            if (end > next) {
+                processed = end - 1;
+                next = end;
+                tries = 0;
+            } else if (!running && next > claimed.get()) {
+                return;
+            } else {
+                idle(tries++);
+            }
+        }
+    }
+
+    /**
+     * Applies one command to its customer's account, with the rules of Customer.deposit, withdraw and purchase,
+     * rounding its amount to the nearest cent.
+     */
+    private static void apply(Slot slot) {
+        slot.change = slot.customer.storage.beginChange();
+        Account account = slot.customer.account;
+        double amount = Double.NaN;
+        if (Account.isValidAmount(slot.amount)) {
+            amount = Account.roundToCents(slot.amount);
+            slot.amount = amount;
+        }
+        slot.fee = 0;
+        slot.status = BatchResult.Status.INVALID;
+        switch (slot.operation) {
+            case DEPOSIT:
+                if (amount >= 0) {
+                    try {
+                        slot.oldBalance = account.credit(amount);
+                        slot.status = BatchResult.Status.APPLIED;
+                    } catch (IllegalArgumentException e) {
+                        // The balance would exceed Account.MAX_AMOUNT; the command stays invalid
+                    }
+                }
+                break;
+            case WITHDRAW:
+            case PURCHASE:
+                if (amount > 0) {
+                    double fee = slot.operation == Operation.PURCHASE ? slot.customer.currentFee() : 0;
+                    slot.oldBalance = account.tryDebit(amount, fee);
+                    if (slot.oldBalance < 0) {
+                        slot.status = BatchResult.Status.INSUFFICIENT_FUNDS;
+                    } else {
+                        slot.fee = fee;
+                        slot.status = BatchResult.Status.APPLIED;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        if (slot.status == BatchResult.Status.APPLIED) {
+            long change = Account.toCents(amount);
+            slot.balance = Account.toDollars(Account.toCents(slot.oldBalance)
+                    + (slot.operation == Operation.DEPOSIT ? change : -change - Account.toCents(slot.fee)));
+        } else {
+            slot.balance = Double.NaN;
+        }
+    }
+
+    /**
+     * Stores and notifies the applied commands in batches until the business thread has ended and every applied
+     * command is stored.
+     */
+    private void runJournal() {
+        List<JournalRecord> records = new ArrayList<>();
+        long next = 0;
+        int tries = 0;
+        while (true) {
+            boolean businessEnded = !businessThread.isAlive();
+            long end = processed;
+            if (end < next) {
+                if (businessEnded) {
+                    return;
+                }
+                idle(tries++);
+                continue;
+            }
+            tries = 0;
+            store(next, end, records);
+            for (long sequence = next; sequence <= end; sequence++) {
+                complete(sequence, slots[(int) sequence & mask]);
+            }
+            batches++;
+            maxBatchSize = Math.max(maxBatchSize, end - next + 1);
+            completed = end; // Frees the batch's slots for producers
+            next = end + 1;
+        }
+    }
+
+    /**
+     * Stores the changes of the applied commands from one sequence number to another, with one updateBalances call
+     * for each run of commands whose customers share a storage engine.
+     */
+    private void store(long from, long to, List<JournalRecord> records) {
+        StorageEngine storage = null;
+        long runStart = from;
+        for (long sequence = from; sequence <= to; sequence++) {
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.status != BatchResult.Status.APPLIED) {
+                continue;
+            }
+            if (slot.customer.storage != storage) {
+                flush(storage, records, runStart, sequence - 1);
+                storage = slot.customer.storage;
+                runStart = sequence;
+            }
+            records.add(new JournalRecord(0, slot.customer.getUsername(), slot.operation, slot.amount, slot.fee,
+                    slot.balance));
+        }
+        flush(storage, records, runStart, to);
+    }
+
+    /**
+     * Stores the records of the applied commands from one sequence number to another in a storage engine and clears
+     * them, marking those commands STORAGE_FAILED if the engine fails.
+     */
+    private void flush(StorageEngine storage, List<JournalRecord> records, long from, long to) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            storage.updateBalances(records);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Storing " + records.size() + " sequenced transactions failed", e);
+            for (long sequence = from; sequence <= to; sequence++) {
+                Slot slot = slots[(int) sequence & mask];
+                if (slot.status == BatchResult.Status.APPLIED) {
+                    slot.status = BatchResult.Status.STORAGE_FAILED;
+                }
+            }
+        }
+        records.clear();
+    }
+
+    /**
+     * Ends the storage change of one stored command, notifies the listeners, hands its outcome to a caller waiting in
+     * execute, records its latency and empties its slot.
+     */
+    private void complete(long sequence, Slot slot) {
+        Customer customer = slot.customer;
+        customer.storage.endChange(slot.change);
+        if (slot.status == BatchResult.Status.APPLIED || slot.status == BatchResult.Status.STORAGE_FAILED) {
+            customer.notifyBalanceChanged(slot.oldBalance, AccountRecord.levelOf(slot.oldBalance)); // Changed in memory
+        } else {
+            rejected++;
+        }
+        if (listener != null) {
+            try {
+                listener.commandCompleted(sequence, customer, slot.operation, slot.amount, slot.status, slot.fee,
+                        slot.balance);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Sequencer listener failed", e);
+            }
+        }
+        if (slot.result != null) {
+            slot.result[0] = new BatchResult(new BatchOperation(customer.getUsername(), slot.operation, slot.amount),
+                    slot.status, slot.fee, slot.balance);
+            slot.result = null;
+        }
+        long latency = System.nanoTime() - slot.publishNanos;
+        int bucket = bucketOf(latency);
+        latencyCounts.lazySet(bucket, latencyCounts.get(bucket) + 1);
+        if (latency > maxLatencyNanos) {
+            maxLatencyNanos = latency;
+        }
+        slot.customer = null; // Do not keep the customer reachable from the ring
+    }
+
+    /**
+     * Returns the latency histogram bucket of a value: values below 2 * SUB_BUCKETS have a bucket each, and every
+     * higher power of two is split into SUB_BUCKETS buckets.
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 3;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value of a latency histogram bucket.
+     */
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return ((long) (bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns a percentile of the latency histogram, no larger than the largest latency.
+     */
+    private static long percentile(long[] counts, long total, double fraction, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Waits a little, longer the more times the caller has waited already.
+     */
+    private static void idle(int tries) {
+        if (tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Overview: Slot is a mutable class that holds one command of the ring and, once it is applied, its outcome.
+     * It is written by a producer before the command is published, then by the business thread, then read by the
+     * journal thread, each handing it to the next through a volatile write.
+     */
+    private static final class Slot {
+        // The command
+        Customer customer;
+        Operation operation;
+        double amount;
+        // When the command was published, from System.nanoTime
+        long publishNanos;
+        // The outcome of the command
+        BatchResult.Status status;
+        double fee;
+        double oldBalance;
+        double balance;
+        // The stamp of the storage change the command was applied in
+        long change;
+        // The holder of the outcome for a caller waiting in execute, or null
+        BatchResult[] result;
+    }
+
+    /**
+     * Returns a string representation of the TransactionSequencer.
+     *
+     * @return a string representation of the TransactionSequencer
+     * @effects returns a string that represents the TransactionSequencer
+     */
+    @Override
+    public String toString() {
+        return "TransactionSequencer with " + slots.length + " slots, " + (claimed.get() + 1) + " published, "
+                + (processed + 1) + " applied, " + (completed + 1) + " completed";
+    }
+
+    /**
+     * Checks the representation invariant of the TransactionSequencer.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        if (slots == null || Integer.bitCount(slots.length) != 1 || mask != slots.length - 1
+                || available.length() != slots.length) {
+            return false;
+        }
+        for (Slot slot : slots) {
+            if (slot == null) {
+                return false;
+            }
+        }
+        long done = completed;
+        long applied = processed;
+        return done <= applied && applied <= claimed.get();
+    }
+}
@@ -0,0 +1,152 @@
+package coe528.bankingapp.customer;
+
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.JournalRecord;
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.util.Arrays;
+
+/**
+ * Overview: TransferService is a mutable class that moves money from one customer's account to another's.
+ * The sender pays the amount plus the fee of its current level, and the recipient receives the amount.
+ * Each customer maps by customer number to one of a fixed table of stripe locks, and a transfer holds the stripes of
+ * both customers, always taking the stripe with the lower index first, so transfers never deadlock, and transfers
+ * between customers on different stripes run in parallel. Under the stripes the sender is debited and the recipient
+ * credited, and both changes are stored with StorageEngine.updateBalances as one unit, so a transfer is never stored
+ * half done. Deposits, withdrawals and purchases do not take the stripes; the sender's debit is atomic against them,
+ * so a transfer still never overdraws the sender.
+ *
+ * Abstraction Function:
+ * Represents a transfer service whose transfers between customers on stripes i and j are serialized by the locks
+ * 'stripes[min(i, j)]' and 'stripes[max(i, j)]'.
+ *
+ * Representation Invariant:
+ * The 'stripes' field must be non-null with a power-of-two length, every element must be non-null, and 'mask' must be
+ * stripes.length - 1.
+ */
+public final class TransferService {
+    // The stripe locks
+    private final Object[] stripes;
+    // The mask selecting a stripe from a mixed customer number
+    private final int mask;
+
+    /**
+     * Constructs a new TransferService with at least the given number of stripes.
+     *
+     * @param stripeCount the smallest number of stripes, rounded up to a power of two
+     * @requires stripeCount > 0
+     */
+    public TransferService(int stripeCount) {
+        stripes = new Object[stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+        mask = stripes.length - 1;
+    }
+
+    /**
+     * Moves an amount from one customer's account to another's, charging the sender the fee of its level.
+     * The amount is rounded to the nearest cent before it is moved and recorded.
+     *
+     * @param sender the customer sending the amount
+     * @param recipient the customer receiving the amount
+     * @param amount the amount to transfer
+     * @return the fee charged to the sender
+     * @throws IllegalArgumentException if the amount is less than a cent or not finite, the sender is the recipient,
+     *         or the recipient's balance would exceed Account.MAX_AMOUNT
+     * @throws IllegalStateException if the sender's balance does not cover the amount and the fee
+     * @requires sender != null && recipient != null
+     * @modifies sender, recipient
+     * @effects subtracts the amount and the fee from the sender's balance, adds the amount to the recipient's balance,
+     *          stores both changes as one unit and notifies both customers' balance listeners
+     */
+    public double transfer(Customer sender, Customer recipient, double amount) {
+        amount = Account.roundToCents(amount);
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        if (sender == recipient || sender.getUsername().equals(recipient.getUsername())) {
+            throw new IllegalArgumentException("Cannot transfer to the same customer");
+        }
+        int first = stripeOf(sender);
+        int second = stripeOf(recipient);
+        double fee;
+        double senderBalance;
+        double recipientBalance;
+        synchronized (stripes[Math.min(first, second)]) {
+            synchronized (stripes[Math.max(first, second)]) {
+                long change = sender.storage.beginChange();
+                try {
+                    fee = sender.currentFee();
+                    senderBalance = sender.account.tryDebit(amount, fee);
+                    if (senderBalance < 0) {
+                        throw new IllegalStateException("Insufficient funds");
+                    }
+                    try {
+                        recipientBalance = recipient.account.credit(amount);
+                    } catch (IllegalArgumentException e) {
+                        sender.account.credit(Account.toDollars(Account.toCents(amount) + Account.toCents(fee)));
+                        throw e;
+                    }
+                    sender.storage.updateBalances(Arrays.asList(
+                            new JournalRecord(0, sender.getUsername(), Operation.TRANSFER_OUT, amount, fee,
+                                    Account.toDollars(Account.toCents(senderBalance) - Account.toCents(amount)
+                                            - Account.toCents(fee))),
+                            new JournalRecord(0, recipient.getUsername(), Operation.TRANSFER_IN, amount, 0,
+                                    Account.toDollars(Account.toCents(recipientBalance) + Account.toCents(amount)))));
+                } finally {
+                    sender.storage.endChange(change);
+                }
+            }
+        }
+        sender.notifyBalanceChanged(senderBalance, AccountRecord.levelOf(senderBalance));
+        recipient.notifyBalanceChanged(recipientBalance, AccountRecord.levelOf(recipientBalance));
+        return fee;
+    }
+
+    /**
+     * Returns the number of stripes.
+     *
+     * @return the number of stripe locks
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns the index of the stripe of a customer, spreading consecutive customer numbers over the stripes.
+     */
+    private int stripeOf(Customer customer) {
+        int hash = customer.getCustomerNumber() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Returns a string representation of the TransferService.
+     *
+     * @return a string representation of the TransferService
+     * @effects returns a string that represents the TransferService
+     */
+    @Override
+    public String toString() {
+        return "TransferService with " + stripes.length + " stripes";
+    }
+
+    /**
+     * Checks the representation invariant of the TransferService.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        if (stripes == null || Integer.bitCount(stripes.length) != 1 || mask != stripes.length - 1) {
+            return false;
+        }
+        for (Object stripe : stripes) {
+            if (stripe == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
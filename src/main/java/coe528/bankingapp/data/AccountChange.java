@@ -0,0 +1,105 @@
+package coe528.bankingapp.data;
+
+/**
+ * Overview: AccountChange is an immutable class that represents a stored account changed from outside the application,
+ * as reported by a storage engine's change listeners. It holds the account as the engine knew it before the change
+ * and as it is after the change; an account that was added has no previous record and one that was removed has no
+ * current record.
+ *
+ * Abstraction Function:
+ * Represents the change of the account of 'username' from 'previous' to 'current', where null stands for no account.
+ *
+ * Representation Invariant:
+ * The 'username' field must be non-null, at least one of 'previous' and 'current' must be non-null, and every non-null
+ * record must be the account of 'username'.
+ */
+public final class AccountChange {
+    // The username of the changed account
+    private final String username;
+    // The account before the change, or null if it was added
+    private final AccountRecord previous;
+    // The account after the change, or null if it was removed
+    private final AccountRecord current;
+
+    /**
+     * Constructs a new AccountChange.
+     *
+     * @param username the username of the changed account
+     * @param previous the account before the change, or null if it was added
+     * @param current the account after the change, or null if it was removed
+     * @requires username != null && (previous != null || current != null)
+     */
+    public AccountChange(String username, AccountRecord previous, AccountRecord current) {
+        this.username = username;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * Returns the username of the changed account.
+     *
+     * @return the username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the account before the change.
+     *
+     * @return the previous account, or null if the account was added
+     */
+    public AccountRecord getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the account after the change.
+     *
+     * @return the current account, or null if the account was removed
+     */
+    public AccountRecord getCurrent() {
+        return current;
+    }
+
+    /**
+     * Checks if the account was added by the change.
+     *
+     * @return true if there was no account before the change
+     */
+    public boolean isAdded() {
+        return previous == null;
+    }
+
+    /**
+     * Checks if the account was removed by the change.
+     *
+     * @return true if there is no account after the change
+     */
+    public boolean isRemoved() {
+        return current == null;
+    }
+
+    /**
+     * Returns a string representation of the AccountChange.
+     *
+     * @return a string representation of the AccountChange
+     * @effects returns a string that represents the AccountChange
+     */
+    @Override
+    public String toString() {
+        return "AccountChange of " + username + ": " + previous + " -> " + current;
+    }
+
+    /**
+     * Checks the representation invariant of the AccountChange.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return username != null && (previous != null || current != null)
+                && (previous == null || username.equals(previous.getUsername()))
+                && (current == null || username.equals(current.getUsername()));
+    }
+}
@@ -0,0 +1,153 @@
+package coe528.bankingapp.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Overview: AccountRecord is an immutable class that represents the stored state of one customer account.
+ * An AccountRecord has the username and password of the customer, the balance of the account, the customer level
+ * and the customer number.
+ *
+ * Abstraction Function:
+ * Represents the persisted account of the customer 'username' with password 'password', holding 'balance' at level
+ * 'level', stored under 'customerNumber'.
+ *
+ * Representation Invariant:
+ * The 'username', 'password' and 'level' fields must be non-null, 'level' must be one of LEVELS and 'customerNumber' must be non-negative.
+ */
+public final class AccountRecord {
+    // The customer levels in the order of their stored ordinal
+    public static final List<String> LEVELS = Arrays.asList("Silver", "Gold", "Platinum");
+    // The lowest balances of a Gold and of a Platinum customer
+    public static final double GOLD_THRESHOLD = 10000;
+    public static final double PLATINUM_THRESHOLD = 20000;
+
+    // The username of the customer
+    private final String username;
+    // The password of the customer
+    private final String password;
+    // The balance of the account
+    private final double balance;
+    // The level of the customer
+    private final String level;
+    // The number of the customer
+    private final int customerNumber;
+
+    /**
+     * Constructs a new AccountRecord.
+     *
+     * @param username the username of the customer
+     * @param password the password of the customer
+     * @param balance the balance of the account
+     * @param level the level of the customer
+     * @param customerNumber the number of the customer
+     * @requires username != null && password != null && LEVELS.contains(level) && customerNumber >= 0
+     */
+    public AccountRecord(String username, String password, double balance, String level, int customerNumber) {
+        this.username = username;
+        this.password = password;
+        this.balance = balance;
+        this.level = level;
+        this.customerNumber = customerNumber;
+    }
+
+    /**
+     * Returns the username of the customer.
+     *
+     * @return the username of the customer
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the password of the customer.
+     *
+     * @return the password of the customer
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Returns the balance of the account.
+     *
+     * @return the balance of the account
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Returns the level of the customer.
+     *
+     * @return the level of the customer
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the ordinal of the level of the customer in LEVELS.
+     *
+     * @return the ordinal of the level
+     */
+    public int getLevelOrdinal() {
+        return LEVELS.indexOf(level);
+    }
+
+    /**
+     * Returns the number of the customer.
+     *
+     * @return the number of the customer
+     */
+    public int getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * Returns the level of a customer holding the given balance.
+     *
+     * @param balance the balance of the account
+     * @return "Silver" below GOLD_THRESHOLD, "Gold" below PLATINUM_THRESHOLD and "Platinum" otherwise
+     */
+    public static String levelOf(double balance) {
+        if (balance < GOLD_THRESHOLD) {
+            return LEVELS.get(0);
+        }
+        return LEVELS.get(balance < PLATINUM_THRESHOLD ? 1 : 2);
+    }
+
+    /**
+     * Returns a copy of this record with the given balance and level.
+     *
+     * @param newBalance the new balance of the account
+     * @param newLevel the new level of the customer
+     * @return a record that differs from this one only in balance and level
+     * @requires LEVELS.contains(newLevel)
+     */
+    public AccountRecord withBalance(double newBalance, String newLevel) {
+        return new AccountRecord(username, password, newBalance, newLevel, customerNumber);
+    }
+
+    /**
+     * Returns a string representation of the AccountRecord.
+     *
+     * @return a string representation of the AccountRecord
+     * @effects returns a string that represents the AccountRecord
+     */
+    @Override
+    public String toString() {
+        return "Username: " + username + ", Customer Number: " + customerNumber + ", Balance: $" + balance + ", Level: " + level;
+    }
+
+    /**
+     * Checks the representation invariant of the AccountRecord.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return username != null && password != null && LEVELS.contains(level) && customerNumber >= 0;
+    }
+}
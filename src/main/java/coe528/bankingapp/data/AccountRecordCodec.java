@@ -0,0 +1,195 @@
+package coe528.bankingapp.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Overview: AccountRecordCodec is a utility class that converts AccountRecords to and from their binary file format,
+ * and reads the older "Key: value" text format.
+ *
+ * A binary record is [byte MAGIC][byte version][short body length] followed by a body of
+ * [int customer number][double balance][byte level ordinal][short username length][username UTF-8 bytes]
+ * [short password length][password UTF-8 bytes]. New versions may only append fields to the body: a reader decodes the
+ * fields it knows and skips the rest using the body length, and fields missing from an older record take defaults.
+ * Strings are encoded straight into the caller's buffer, so encoding allocates nothing.
+ *
+ * Abstraction Function:
+ * Not applicable, as AccountRecordCodec has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as AccountRecordCodec has no state.
+ */
+public final class AccountRecordCodec {
+    // First byte of every binary record; text records start with 'U' instead
+    public static final byte MAGIC = (byte) 0xBA;
+    // The version written by this codec
+    public static final byte VERSION = 1;
+    // Size of the record header: magic, version and body length
+    public static final int HEADER_BYTES = 4;
+    // The largest encoded record
+    public static final int MAX_RECORD_BYTES = HEADER_BYTES + Short.MAX_VALUE;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private AccountRecordCodec() {
+    }
+
+    /**
+     * Encodes a record at the buffer's position.
+     *
+     * @param record the record to encode
+     * @param out the buffer to encode into
+     * @throws java.nio.BufferOverflowException if the buffer has too little room left
+     * @requires record != null && out != null
+     * @modifies out
+     * @effects writes the binary record at the buffer's position and advances the position past it
+     */
+    public static void encode(AccountRecord record, ByteBuffer out) {
+        int start = out.position();
+        out.put(MAGIC);
+        out.put(VERSION);
+        out.putShort((short) 0);
+        out.putInt(record.getCustomerNumber());
+        out.putDouble(record.getBalance());
+        out.put((byte) record.getLevelOrdinal());
+        putString(out, record.getUsername());
+        putString(out, record.getPassword());
+        out.putShort(start + 2, (short) (out.position() - start - HEADER_BYTES));
+    }
+
+    /**
+     * Decodes the record at the buffer's position.
+     *
+     * @param in the buffer to decode from
+     * @return the decoded record
+     * @throws IllegalArgumentException if the buffer does not hold a binary record at its position
+     * @requires in != null
+     * @modifies in
+     * @effects advances the buffer's position past the record, including fields this version does not know
+     */
+    public static AccountRecord decode(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_BYTES || in.get() != MAGIC) {
+            throw new IllegalArgumentException("Not a binary account record");
+        }
+        in.get(); // Version; every version starts with the fields of version 1
+        int end = start + HEADER_BYTES + (in.getShort() & 0xFFFF);
+        int customerNumber = in.getInt();
+        double balance = in.getDouble();
+        int level = in.get();
+        String username = getString(in);
+        String password = getString(in);
+        in.position(end);
+        return new AccountRecord(username, password, balance, AccountRecord.LEVELS.get(level), customerNumber);
+    }
+
+    /**
+     * Checks if the buffer holds a binary record at its position.
+     *
+     * @param in the buffer to check
+     * @return true if the buffer starts with the binary record marker, false otherwise
+     * @requires in != null
+     */
+    public static boolean isBinary(ByteBuffer in) {
+        return in.remaining() > 0 && in.get(in.position()) == MAGIC;
+    }
+
+    /**
+     * Converts a record in the "Key: value" text format to an AccountRecord.
+     * The "Level" and "Customer Number" lines are optional, since older writers did not always emit them.
+     *
+     * @param text the text of the record
+     * @param defaultCustomerNumber the customer number to use if the text has none
+     * @return the converted record
+     * @throws IllegalArgumentException if the text has no username, password or balance
+     * @requires text != null && defaultCustomerNumber >= 0
+     */
+    public static AccountRecord fromText(String text, int defaultCustomerNumber) {
+        String username = null;
+        String password = null;
+        Double balance = null;
+        String level = AccountRecord.LEVELS.get(0);
+        int customerNumber = defaultCustomerNumber;
+        for (String line : text.split("\n")) {
+            int separator = line.indexOf(": ");
+            if (separator < 0) {
+                continue;
+            }
+            String key = line.substring(0, separator);
+            String value = line.substring(separator + 2).trim();
+            try {
+                switch (key) {
+                    case "Username":
+                        username = value;
+                        break;
+                    case "Password":
+                        password = value;
+                        break;
+                    case "Balance":
+                        balance = Double.parseDouble(value);
+                        break;
+                    case "Level":
+                        level = AccountRecord.LEVELS.contains(value) ? value : level;
+                        break;
+                    case "Customer Number":
+                        customerNumber = Integer.parseInt(value);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed " + key + " in account record", e);
+            }
+        }
+        if (username == null || password == null || balance == null) {
+            throw new IllegalArgumentException("Account record is missing its username, password or balance");
+        }
+        return new AccountRecord(username, password, balance, level, customerNumber);
+    }
+
+    /**
+     * Writes a string as a short length followed by its UTF-8 bytes, without creating a byte array.
+     */
+    private static void putString(ByteBuffer out, String value) {
+        int lengthPosition = out.position();
+        out.putShort((short) 0);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?'); // An unpaired surrogate cannot be encoded
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        out.putShort(lengthPosition, (short) (out.position() - lengthPosition - 2));
+    }
+
+    /**
+     * Reads a string written by putString.
+     */
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package coe528.bankingapp.data;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Overview: AllocationProbe is an immutable class that measures how many bytes the current thread allocates on the
+ * heap. It reads the per-thread allocation counter of the JVM, and subtracts the cost of reading the counter itself,
+ * measured once when the probe is created, so that code that allocates nothing measures as zero.
+ *
+ * Abstraction Function:
+ * Represents the allocation counter of the JVM's threads, read through 'threads', with a fixed reading cost 'overhead'.
+ *
+ * Representation Invariant:
+ * 'overhead' must be non-negative, and 'threads' must be non-null if the probe is supported.
+ */
+public class AllocationProbe {
+    // The thread bean with allocation counters, or null if the JVM has none
+    private final com.sun.management.ThreadMXBean threads;
+    // The bytes allocated by one pair of counter readings
+    private final long overhead;
+
+    /**
+     * Constructs a new AllocationProbe and measures the cost of reading the allocation counter.
+     *
+     * @effects enables allocation counting in the JVM if it supports it
+     */
+    public AllocationProbe() {
+        com.sun.management.ThreadMXBean bean = null;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+            } else {
+                bean = null;
+            }
+        }
+        this.threads = bean;
+        long minimum = 0;
+        if (bean != null) {
+            minimum = Long.MAX_VALUE;
+            for (int i = 0; i < 16; i++) { // The first readings may allocate while the counter path warms up
+                long start = allocatedBytes();
+                minimum = Math.min(minimum, allocatedBytes() - start);
+            }
+        }
+        this.overhead = minimum;
+    }
+
+    /**
+     * Checks if the JVM counts the bytes each thread allocates.
+     *
+     * @return true if the probe can measure allocations, false otherwise
+     */
+    public boolean isSupported() {
+        return threads != null;
+    }
+
+    /**
+     * Returns the number of bytes the current thread has allocated so far.
+     *
+     * @return the bytes allocated by the current thread, or 0 if the probe is not supported
+     */
+    public long allocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the bytes allocated between two readings of allocatedBytes, less the cost of the readings.
+     *
+     * @param start a reading taken before the measured code
+     * @param end a reading taken after the measured code
+     * @return the bytes allocated by the measured code
+     * @requires start and end were read on the current thread, with start read first
+     */
+    public long allocatedBetween(long start, long end) {
+        return Math.max(0, end - start - overhead);
+    }
+
+    /**
+     * Returns a string representation of the AllocationProbe.
+     *
+     * @return a string representation of the AllocationProbe
+     * @effects returns a string that represents the AllocationProbe
+     */
+    @Override
+    public String toString() {
+        return isSupported() ? "AllocationProbe with " + overhead + " bytes of overhead" : "AllocationProbe (unsupported)";
+    }
+
+    /**
+     * Checks the representation invariant of the AllocationProbe.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return overhead >= 0;
+    }
+}
@@ -0,0 +1,159 @@
+package coe528.bankingapp.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Overview: BloomFilter is a mutable class that answers whether a key may be in a set, with no false negatives.
+ * A key is added by setting the bits chosen by several hashes of it; a key whose bits are not all set was never added.
+ * With 10 bits per key and 7 hashes about 1% of absent keys are reported as possibly present.
+ *
+ * Abstraction Function:
+ * Represents the set of keys that could have set the bits in 'bits' using 'hashCount' hashes each.
+ *
+ * Representation Invariant:
+ * The 'bits' field must be non-null and non-empty, and 'hashCount' must be positive.
+ */
+public class BloomFilter {
+    // Bits set per key, which gives a false positive rate of about 1%
+    public static final int BITS_PER_KEY = 10;
+    // Number of hashes per key that is best for BITS_PER_KEY
+    private static final int DEFAULT_HASH_COUNT = 7;
+
+    // The bit array
+    private final long[] bits;
+    // The number of bits set per key
+    private final int hashCount;
+
+    /**
+     * Constructs an empty BloomFilter sized for the given number of keys.
+     *
+     * @param expectedKeys the number of keys that will be added
+     * @requires expectedKeys >= 0
+     */
+    public BloomFilter(int expectedKeys) {
+        this(new long[Math.max(1, (int) (((long) expectedKeys * BITS_PER_KEY + 63) / 64))], DEFAULT_HASH_COUNT);
+    }
+
+    /**
+     * Constructs a BloomFilter over the given bits.
+     */
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Adds a key to the filter.
+     *
+     * @param key the key to add
+     * @requires key != null
+     * @modifies this
+     * @effects sets the bits chosen by the key's hashes
+     */
+    public void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks if a key may have been added to the filter.
+     *
+     * @param key the key to check
+     * @return false if the key was certainly not added, true if it may have been
+     * @requires key != null
+     */
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long bitCount = (long) bits.length * 64;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter as [int hash count][int word count][long words].
+     *
+     * @param out the output to write to
+     * @throws IOException if the output cannot be written
+     * @requires out != null
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by writeTo.
+     *
+     * @param in the input to read from
+     * @return the filter read
+     * @throws IOException if the input cannot be read or does not hold a filter
+     * @requires in != null
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int hashCount = in.readInt();
+        int words = in.readInt();
+        if (hashCount <= 0 || words <= 0) {
+            throw new IOException("Corrupt Bloom filter");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashCount);
+    }
+
+    /**
+     * Returns a 64-bit hash of the key's characters, mixed so that both halves are usable as independent hashes.
+     */
+    private static long hash(String key) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h | 1L << 32; // Keep the second hash non-zero so that the probes differ
+    }
+
+    /**
+     * Returns a string representation of the BloomFilter.
+     *
+     * @return a string representation of the BloomFilter
+     * @effects returns a string that represents the BloomFilter
+     */
+    @Override
+    public String toString() {
+        return "BloomFilter of " + bits.length * 64 + " bits with " + hashCount + " hashes";
+    }
+
+    /**
+     * Checks the representation invariant of the BloomFilter.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return bits != null && bits.length > 0 && hashCount > 0;
+    }
+}
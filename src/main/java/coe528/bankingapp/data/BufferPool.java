@@ -0,0 +1,108 @@
+package coe528.bankingapp.data;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Overview: BufferPool is a mutable class that hands out reusable direct ByteBuffers of one fixed size.
+ * Reading into a pooled direct buffer lets the operating system copy file data straight into native memory, and
+ * returning the buffer afterwards means steady-state reads allocate no new buffers.
+ *
+ * Abstraction Function:
+ * Represents the set of idle buffers in 'idle', each 'bufferSize' bytes, of which at most 'maxIdle' are kept.
+ *
+ * Representation Invariant:
+ * The 'idle' field must be non-null, every idle buffer must be direct with capacity 'bufferSize', and 'bufferSize'
+ * and 'maxIdle' must be positive.
+ */
+public class BufferPool {
+    // The size of every buffer
+    private final int bufferSize;
+    // The largest number of idle buffers kept
+    private final int maxIdle;
+    // The idle buffers
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    // The number of idle buffers
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Constructs a new, empty BufferPool.
+     *
+     * @param bufferSize the size of every buffer
+     * @param maxIdle the largest number of idle buffers kept
+     * @requires bufferSize > 0 && maxIdle > 0
+     */
+    public BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return a cleared direct buffer of bufferSize bytes
+     * @modifies this
+     * @effects removes an idle buffer from the pool, or allocates a new one
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer the buffer to return
+     * @requires buffer was acquired from this pool and is not used after this call
+     * @modifies this
+     * @effects keeps the buffer for reuse, unless the pool already holds maxIdle buffers
+     */
+    public void release(ByteBuffer buffer) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(buffer);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the size of every buffer.
+     *
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns a string representation of the BufferPool.
+     *
+     * @return a string representation of the BufferPool
+     * @effects returns a string that represents the BufferPool
+     */
+    @Override
+    public String toString() {
+        return "BufferPool of " + bufferSize + "-byte buffers with " + idleCount.get() + " idle";
+    }
+
+    /**
+     * Checks the representation invariant of the BufferPool.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        for (ByteBuffer buffer : idle) {
+            if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+                return false;
+            }
+        }
+        return bufferSize > 0 && maxIdle > 0;
+    }
+}
@@ -0,0 +1,122 @@
+package coe528.bankingapp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Overview: BulkLoader is a utility class that loads many independent items, such as customer files or accounts, in
+ * parallel on a shared ForkJoinPool. The items are split in halves until each piece is at most CHUNK_SIZE items, so the
+ * pool's work stealing keeps every thread busy even when some items are slower to load than others.
+ * The number of threads is set with the system property bankingapp.loader.parallelism and defaults to the number of
+ * processors.
+ */
+public final class BulkLoader {
+    // System property setting the number of loader threads
+    private static final String PARALLELISM_PROPERTY = "bankingapp.loader.parallelism";
+    // The largest number of items a single task loads without splitting
+    private static final int CHUNK_SIZE = 256;
+
+    // The pool the items are loaded on
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1,
+            Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private BulkLoader() {
+    }
+
+    /**
+     * Receives the progress of a load. It is called from the loader threads, once per finished piece of work.
+     */
+    public interface ProgressListener {
+        /**
+         * Reports how many items are loaded so far.
+         *
+         * @param loaded the number of items loaded so far
+         * @param total the number of items being loaded
+         */
+        void progress(int loaded, int total);
+    }
+
+    /**
+     * Loads the items numbered 0 to count - 1 in parallel and returns them in order.
+     *
+     * @param count the number of items
+     * @param loader loads the item with the given number, returning null if it cannot be loaded; must be thread-safe
+     * @param listener the listener receiving the progress of the load, or null
+     * @return the loaded items in order, with null for each item the loader returned null for
+     * @requires count >= 0 && loader != null
+     * @effects calls the loader once for every item number, on several threads at once
+     */
+    public static <T> List<T> load(int count, IntFunction<? extends T> loader, ProgressListener listener) {
+        Object[] items = new Object[count];
+        if (count > 0) {
+            POOL.invoke(new LoadTask(items, 0, count, loader, listener, new AtomicInteger()));
+        } else if (listener != null) {
+            listener.progress(0, 0);
+        }
+        @SuppressWarnings("unchecked")
+        List<T> loaded = (List<T>) new ArrayList<>(Arrays.asList(items));
+        return loaded;
+    }
+
+    /**
+     * Returns the number of threads items are loaded on.
+     *
+     * @return the parallelism of the loader
+     */
+    public static int getParallelism() {
+        return POOL.getParallelism();
+    }
+
+    /**
+     * Overview: LoadTask is a task that loads the items in a range, splitting the range if it is larger than CHUNK_SIZE.
+     */
+    private static final class LoadTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The array the loaded items are stored in
+        private final Object[] items;
+        // The range of item numbers to load, from inclusive to exclusive
+        private final int from;
+        private final int to;
+        // Loads one item
+        private final IntFunction<?> loader;
+        // The listener receiving the progress of the load, or null
+        private final ProgressListener listener;
+        // The number of items loaded so far by every task of the load
+        private final AtomicInteger loaded;
+
+        LoadTask(Object[] items, int from, int to, IntFunction<?> loader, ProgressListener listener, AtomicInteger loaded) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.loader = loader;
+            this.listener = listener;
+            this.loaded = loaded;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LoadTask(items, from, middle, loader, listener, loaded),
+                        new LoadTask(items, middle, to, loader, listener, loaded));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                items[i] = loader.apply(i);
+            }
+            int done = loaded.addAndGet(to - from);
+            if (listener != null) {
+                listener.progress(done, items.length);
+            }
+        }
+    }
+}
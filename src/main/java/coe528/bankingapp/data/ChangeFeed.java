@@ -0,0 +1,280 @@
+package coe528.bankingapp.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Overview: ChangeFeed is a mutable class that reports which accounts changed on disk without the application
+ * changing them, for example because another instance of the application wrote them.
+ * It watches the customer directory and its shard directories with a WatchService, so a customer file that is created,
+ * written or deleted is reported by the username it belongs to, and it watches the journal directory and reads the
+ * frames appended to its segments since the last read, so a journaled operation is reported with its record.
+ * Records appended by this instance's journal are recognized by the instance id of their frames and skipped.
+ * Events are debounced: a batch is delivered once no event arrived for 'debounceMillis', or at the latest ten times
+ * that long after its first event, and several events of the same account in a batch are coalesced into one change.
+ * The batches are delivered to the listener on the feed's own daemon thread.
+ *
+ * Abstraction Function:
+ * Represents a feed of the changes made to the customer files under 'customerDirectory' and to the segments of
+ * 'journal', where 'offsets' holds how far each segment has been read.
+ *
+ * Representation Invariant:
+ * The 'watcher', 'customerDirectory', 'listener', 'shardLevels' and 'offsets' fields must be non-null, every value in
+ * 'offsets' and 'shardLevels' must be non-negative and 'debounceMillis' must be positive.
+ */
+public class ChangeFeed implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ChangeFeed.class.getName());
+    // The extensions of customer files, in the binary and the text format
+    private static final String[] CUSTOMER_FILE_EXTENSIONS = {".rec", ".txt"};
+
+    // The watch service watching the customer and journal directories
+    private final WatchService watcher;
+    // The root of the customer directory
+    private final File customerDirectory;
+    // The journal whose segments are read, or null to watch only the customer files
+    private final TransactionJournal journal;
+    // How long a batch waits for further events before it is delivered
+    private final long debounceMillis;
+    // The listener the batches are delivered to
+    private final Listener listener;
+    // The number of shard levels below each watched customer directory, keyed by its watch key
+    private final Map<WatchKey, Integer> shardLevels = new HashMap<>();
+    // The offset each journal segment has been read up to, keyed by segment name
+    private final Map<String, Long> offsets = new HashMap<>();
+    // The thread waiting for events and delivering the batches
+    private final Thread feedThread;
+
+    /**
+     * Receives the batches of changed accounts.
+     */
+    public interface Listener {
+        /**
+         * Called with the accounts changed since the previous batch, keyed by username in the order they first changed.
+         * The value is the latest journal record of the account, which is a CLOSE record if the account was removed,
+         * or null if only the customer file of the account was created, written or deleted.
+         *
+         * @param changes the changed accounts
+         */
+        void accountsChanged(Map<String, JournalRecord> changes);
+    }
+
+    /**
+     * Constructs a new ChangeFeed and starts its thread.
+     * Only changes made after the feed is constructed are reported.
+     *
+     * @param customerDirectory the root of the customer directory
+     * @param levels the number of shard directory levels below the root
+     * @param journal the journal whose segments are read, or null to watch only the customer files
+     * @param debounceMillis how long a batch waits for further events before it is delivered
+     * @param listener the listener the batches are delivered to
+     * @throws IOException if the directories cannot be watched
+     * @requires customerDirectory != null && levels >= 0 && debounceMillis > 0 && listener != null
+     * @effects starts a daemon thread watching the customer directory and the journal
+     */
+    public ChangeFeed(File customerDirectory, int levels, TransactionJournal journal, long debounceMillis, Listener listener) throws IOException {
+        this.customerDirectory = customerDirectory;
+        this.journal = journal;
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        watcher = FileSystems.getDefault().newWatchService();
+        customerDirectory.mkdirs();
+        watchCustomerDirectory(customerDirectory, levels, null);
+        if (journal != null) {
+            for (File segment : journal.listSegments()) {
+                offsets.put(segment.getName(), segment.length());
+            }
+            journal.getDirectory().toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        feedThread = new Thread(this::run, "change-feed");
+        feedThread.setDaemon(true);
+        feedThread.start();
+    }
+
+    /**
+     * Waits for events, collecting them into batches and delivering each batch once it is due, until the feed is closed.
+     */
+    private void run() {
+        Map<String, JournalRecord> pending = new LinkedHashMap<>();
+        long deadline = 0;
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collect(key, pending);
+                    if (deadline == 0) {
+                        deadline = System.currentTimeMillis() + 10 * debounceMillis;
+                    }
+                }
+                if (!pending.isEmpty() && (key == null || System.currentTimeMillis() >= deadline)) {
+                    deliver(pending);
+                    pending = new LinkedHashMap<>();
+                    deadline = 0;
+                } else if (pending.isEmpty()) {
+                    deadline = 0;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The feed was closed
+        }
+    }
+
+    /**
+     * Adds the accounts changed by the events of a watch key to a batch and re-arms the key.
+     */
+    private void collect(WatchKey key, Map<String, JournalRecord> pending) {
+        Path directory = (Path) key.watchable();
+        Integer levels = shardLevels.get(key);
+        boolean journalChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || levels == null) {
+                journalChanged = true; // Events were lost or the journal changed, so read the segments again
+                continue;
+            }
+            File file = directory.resolve((Path) event.context()).toFile();
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && levels > 0 && file.isDirectory()) {
+                watchCustomerDirectory(file, levels - 1, pending); // A new shard directory
+                continue;
+            }
+            String username = usernameOf(file.getName());
+            if (username != null) {
+                pending.putIfAbsent(username, null); // A journal record of the account says more than the file
+            }
+        }
+        if (journalChanged) {
+            readJournal(pending);
+        }
+        if (!key.reset()) {
+            shardLevels.remove(key);
+        }
+    }
+
+    /**
+     * Reads the frames appended to the journal segments since the last read, adding the accounts of the records
+     * appended by others to a batch.
+     */
+    private void readJournal(Map<String, JournalRecord> pending) {
+        if (journal == null) {
+            return;
+        }
+        List<File> segments = journal.listSegments();
+        Map<String, Long> read = new HashMap<>();
+        for (File segment : segments) {
+            long from = offsets.getOrDefault(segment.getName(), 0L);
+            try {
+                if (segment.length() > from) {
+                    from = journal.scanOtherInstances(segment, from, record -> {
+                        pending.remove(record.getUsername()); // Keep the batch in the order of the latest changes
+                        pending.put(record.getUsername(), record);
+                    });
+                }
+            } catch (IOException e) {
+                e.printStackTrace(); // The segment was compacted away while it was read
+            }
+            read.put(segment.getName(), from);
+        }
+        offsets.clear();
+        offsets.putAll(read);
+    }
+
+    /**
+     * Starts watching a customer directory and the shard directories already in it, adding the accounts of the
+     * files already in a new directory to the batch, if there is one, since they may have been written before it was watched.
+     */
+    private void watchCustomerDirectory(File directory, int levels, Map<String, JournalRecord> pending) {
+        try {
+            WatchKey key = directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            shardLevels.put(key, levels);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (levels > 0 && file.isDirectory()) {
+                watchCustomerDirectory(file, levels - 1, pending);
+            } else if (pending != null && usernameOf(file.getName()) != null) {
+                pending.putIfAbsent(usernameOf(file.getName()), null);
+            }
+        }
+    }
+
+    /**
+     * Returns the username a customer file belongs to, or null if the file is not a customer file.
+     */
+    private static String usernameOf(String filename) {
+        for (String extension : CUSTOMER_FILE_EXTENSIONS) {
+            if (filename.endsWith(extension) && filename.length() > extension.length()) {
+                return filename.substring(0, filename.length() - extension.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delivers a batch to the listener, logging anything the listener throws so that the feed keeps running.
+     */
+    private void deliver(Map<String, JournalRecord> changes) {
+        try {
+            listener.accountsChanged(changes);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Change feed listener failed", e);
+        }
+    }
+
+    /**
+     * Stops watching the directories. A batch being delivered is finished, and pending events are dropped.
+     *
+     * @modifies this
+     * @effects closes the watch service, which ends the feed's thread
+     */
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns a string representation of the ChangeFeed.
+     *
+     * @return a string representation of the ChangeFeed
+     * @effects returns a string that represents the ChangeFeed
+     */
+    @Override
+    public String toString() {
+        return "ChangeFeed over " + customerDirectory + (journal != null ? " and " + journal.getDirectory() : "")
+                + ", debounced " + debounceMillis + " ms";
+    }
+
+    /**
+     * Checks the representation invariant of the ChangeFeed.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return watcher != null && customerDirectory != null && listener != null && shardLevels != null && offsets != null
+                && debounceMillis > 0;
+    }
+}
@@ -0,0 +1,418 @@
+package coe528.bankingapp.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Overview: CheckpointManager is a mutable class that keeps recovery time of the transaction journal bounded.
+ * A checkpoint rolls the journal to a new segment, folds the closed segments into a snapshot of every account's
+ * balance, and then deletes or archives those segments. Recovery loads the latest snapshot and replays only the
+ * segments written after it. Because the checkpoint only reads closed segments, transactions keep appending to the
+ * new segment while it runs.
+ *
+ * Snapshots are stored next to the segments as "snapshot-NNNNNNNN.dat", named after the first segment they do not
+ * cover, in the format [int magic][int version][long last sequence][long tail segment][int count], followed by count
+ * entries [boolean absolute][short username length][username UTF-8 bytes][double balance] and a CRC32 of everything
+ * before it. An absolute entry replaces the balance read from the customer file; any other entry is a change to it.
+ *
+ * Abstraction Function:
+ * Represents the checkpointing of 'journal', where 'latest' is the most recent snapshot and 'lastCheckpointMillis'
+ * is when it was taken.
+ *
+ * Representation Invariant:
+ * The 'journal' and 'latest' fields must be non-null.
+ */
+public class CheckpointManager implements Closeable {
+    // Logger for checkpoint and recovery reports
+    private static final Logger LOGGER = Logger.getLogger(CheckpointManager.class.getName());
+    // Marks a file as a snapshot
+    private static final int MAGIC = 0x534E4150;
+    // Version of the snapshot format
+    private static final int VERSION = 1;
+    // Prefix and suffix of snapshot file names
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    // Name of the directory compacted segments are moved to when archiving
+    private static final String ARCHIVE_DIRECTORY = "archive";
+
+    // The journal being checkpointed
+    private final TransactionJournal journal;
+    // Whether compacted segments are archived instead of deleted
+    private final boolean archive;
+    // The most recent snapshot
+    private Snapshot latest;
+    // When the most recent checkpoint was taken
+    private long lastCheckpointMillis;
+    // How long the most recent recovery took
+    private double lastRecoveryMillis;
+    // The thread checking the checkpoint triggers, or null if not started
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new CheckpointManager for the given journal and loads the latest snapshot.
+     * The journal's next sequence number is advanced past the snapshot, in case the segments after it are empty.
+     *
+     * @param journal the journal to checkpoint
+     * @param archive whether compacted segments are archived instead of deleted
+     * @throws IOException if a snapshot cannot be read
+     * @requires journal != null
+     * @effects loads the latest valid snapshot in the journal directory
+     */
+    public CheckpointManager(TransactionJournal journal, boolean archive) throws IOException {
+        this.journal = journal;
+        this.archive = archive;
+        latest = loadLatestSnapshot();
+        journal.advanceSequencePast(latest.lastSequence);
+        lastCheckpointMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts checking in the background whether a checkpoint is due.
+     * A checkpoint is taken when the journal written since the last one reaches the given size, or when the given
+     * interval has passed and something was written.
+     *
+     * @param maxJournalBytes the journal size that triggers a checkpoint
+     * @param intervalMillis the time that triggers a checkpoint
+     * @requires maxJournalBytes > 0 && intervalMillis > 0
+     * @modifies this
+     * @effects starts a daemon thread that takes checkpoints when they are due
+     */
+    public synchronized void start(long maxJournalBytes, long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.min(intervalMillis, 1000);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                long written = journal.sizeFrom(getTailSegment());
+                boolean sizeDue = written >= maxJournalBytes;
+                boolean timeDue = written > 0 && System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis;
+                if (sizeDue || timeDue) {
+                    checkpoint();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Checkpoint failed", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes a checkpoint: rolls the journal, writes a snapshot covering every closed segment and compacts them.
+     * Appends continue in the new segment while the snapshot is being built.
+     *
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if the journal is a follower, since only the owner of a journal starts segments
+     * @modifies this
+     * @effects writes a new snapshot and deletes or archives the segments and snapshots it supersedes
+     */
+    public synchronized void checkpoint() throws IOException {
+        long start = System.nanoTime();
+        Snapshot previous = latest;
+        long boundary = journal.rollSegment();
+        Snapshot next = previous.copy();
+        int[] records = {0};
+        journal.replay(previous.tailSegment, boundary, record -> {
+            next.apply(record);
+            records[0]++;
+        });
+        next.tailSegment = boundary;
+        writeSnapshot(next);
+        latest = next;
+        lastCheckpointMillis = System.currentTimeMillis();
+        compact(boundary);
+        LOGGER.info(String.format("Checkpoint of %d accounts at sequence %d folded %d journal records in %.1f ms",
+                next.balances.size(), next.lastSequence, records[0], (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * Rebuilds the current balances by loading the latest snapshot on top of the given base balances and replaying
+     * the journal written after it. The time taken and the number of accounts are logged as the cold-start report.
+     *
+     * @param base the balances read from the customer files, keyed by username
+     * @return the current balances keyed by username
+     * @throws IOException if the journal cannot be read
+     * @requires base != null
+     * @effects returns a new map with the recovered balances
+     */
+    public Map<String, Double> recover(Map<String, Double> base) throws IOException {
+        long start = System.nanoTime();
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = latest;
+        }
+        Map<String, Double> balances = new LinkedHashMap<>(base);
+        for (Map.Entry<String, Double> entry : snapshot.balances.entrySet()) {
+            if (snapshot.absolute.contains(entry.getKey())) {
+                balances.put(entry.getKey(), entry.getValue());
+            } else {
+                balances.merge(entry.getKey(), entry.getValue(), JournalRecord::addCents);
+            }
+        }
+        int[] records = {0};
+        journal.replay(snapshot.tailSegment, Long.MAX_VALUE, record -> {
+            TransactionJournal.applyTo(balances, record);
+            records[0]++;
+        });
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        synchronized (this) {
+            lastRecoveryMillis = elapsed;
+        }
+        LOGGER.info(String.format("Cold start recovered %d accounts in %.1f ms (snapshot of %d accounts, %d journal records replayed)",
+                balances.size(), elapsed, snapshot.balances.size(), records[0]));
+        return balances;
+    }
+
+    /**
+     * Returns how long the most recent recovery took.
+     *
+     * @return the duration of the most recent recovery in milliseconds, or 0 if there was none
+     */
+    public synchronized double getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    /**
+     * Returns the index of the first segment not covered by the latest snapshot.
+     *
+     * @return the index of the first segment replayed on recovery
+     */
+    public synchronized long getTailSegment() {
+        return latest.tailSegment;
+    }
+
+    /**
+     * Stops checking for due checkpoints.
+     *
+     * @modifies this
+     * @effects stops the background thread
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Deletes or archives the segments below the boundary and deletes the snapshots older than the latest.
+     */
+    private void compact(long boundary) throws IOException {
+        File directory = journal.getDirectory();
+        File archiveDirectory = new File(directory, ARCHIVE_DIRECTORY);
+        for (File segment : journal.listSegments()) {
+            if (TransactionJournal.indexOf(segment) >= boundary) {
+                continue;
+            }
+            if (archive) {
+                archiveDirectory.mkdirs();
+                Files.move(segment.toPath(), new File(archiveDirectory, segment.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else if (!segment.delete()) {
+                LOGGER.warning("Could not delete compacted segment " + segment);
+            }
+        }
+        for (File snapshot : listSnapshots()) {
+            if (snapshotIndexOf(snapshot) < boundary && !snapshot.delete()) {
+                LOGGER.warning("Could not delete old snapshot " + snapshot);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, syncs it and renames it into place.
+     */
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        File directory = journal.getDirectory();
+        String name = String.format("%s%08d", SNAPSHOT_PREFIX, snapshot.tailSegment);
+        File temporary = new File(directory, name + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.lastSequence);
+            out.writeLong(snapshot.tailSegment);
+            out.writeInt(snapshot.balances.size());
+            for (Map.Entry<String, Double> entry : snapshot.balances.entrySet()) {
+                byte[] username = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeBoolean(snapshot.absolute.contains(entry.getKey()));
+                out.writeShort(username.length);
+                out.write(username);
+                out.writeDouble(entry.getValue());
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary.toPath(), new File(directory, name + SNAPSHOT_SUFFIX).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the newest snapshot that passes its checksum, or an empty snapshot if there is none.
+     */
+    private Snapshot loadLatestSnapshot() throws IOException {
+        List<File> snapshots = listSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Snapshot snapshot = readSnapshot(snapshots.get(i));
+            if (snapshot != null) {
+                return snapshot;
+            }
+            LOGGER.warning("Ignoring corrupt snapshot " + snapshots.get(i));
+        }
+        return new Snapshot();
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @return the snapshot, or null if the file is corrupt
+     */
+    private static Snapshot readSnapshot(File file) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Snapshot snapshot = new Snapshot();
+            snapshot.lastSequence = in.readLong();
+            snapshot.tailSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                boolean absolute = in.readBoolean();
+                byte[] username = new byte[in.readShort()];
+                in.readFully(username);
+                String name = new String(username, StandardCharsets.UTF_8);
+                snapshot.balances.put(name, in.readDouble());
+                if (absolute) {
+                    snapshot.absolute.add(name);
+                }
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected ? snapshot : null;
+        } catch (java.io.EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lists the snapshot files in index order.
+     */
+    private List<File> listSnapshots() {
+        File[] files = journal.getDirectory().listFiles((dir, name) -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX));
+        List<File> snapshots = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                snapshots.add(file);
+            }
+            snapshots.sort((a, b) -> Long.compare(snapshotIndexOf(a), snapshotIndexOf(b)));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the tail segment index encoded in a snapshot file name.
+     */
+    private static long snapshotIndexOf(File snapshot) {
+        String name = snapshot.getName();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * The balances folded from the journal up to, but not including, 'tailSegment'.
+     */
+    private static final class Snapshot {
+        // The balance or balance change of every account
+        private final Map<String, Double> balances = new LinkedHashMap<>();
+        // The accounts whose entry replaces the balance in the customer file
+        private final Set<String> absolute = new HashSet<>();
+        // The highest sequence number folded into the snapshot
+        private long lastSequence;
+        // The first segment not folded into the snapshot
+        private long tailSegment;
+
+        /**
+         * Returns a copy of this snapshot.
+         */
+        private Snapshot copy() {
+            Snapshot copy = new Snapshot();
+            copy.balances.putAll(balances);
+            copy.absolute.addAll(absolute);
+            copy.lastSequence = lastSequence;
+            copy.tailSegment = tailSegment;
+            return copy;
+        }
+
+        /**
+         * Folds one journal record into the snapshot.
+         */
+        private void apply(JournalRecord record) {
+            switch (record.getOperation()) {
+                case OPEN:
+                case BALANCE:
+                    balances.put(record.getUsername(), record.getBalance());
+                    absolute.add(record.getUsername());
+                    break;
+                case CLOSE:
+                    balances.remove(record.getUsername());
+                    absolute.remove(record.getUsername());
+                    break;
+                default:
+                    balances.merge(record.getUsername(), record.getDelta(), JournalRecord::addCents);
+                    break;
+            }
+            lastSequence = Math.max(lastSequence, record.getSequence());
+        }
+    }
+
+    /**
+     * Returns a string representation of the CheckpointManager.
+     *
+     * @return a string representation of the CheckpointManager
+     * @effects returns a string that represents the CheckpointManager
+     */
+    @Override
+    public synchronized String toString() {
+        return "CheckpointManager with snapshot of " + latest.balances.size() + " accounts up to segment " + latest.tailSegment;
+    }
+
+    /**
+     * Checks the representation invariant of the CheckpointManager.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        return journal != null && latest != null;
+    }
+}
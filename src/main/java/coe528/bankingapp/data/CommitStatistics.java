@@ -0,0 +1,121 @@
+package coe528.bankingapp.data;
+
+/**
+ * Overview: CommitStatistics is a mutable class that accumulates statistics about the batches written by group commit.
+ * It records how many batches and records were committed, the largest batch, and how long records waited between
+ * being submitted and being durable.
+ *
+ * Abstraction Function:
+ * Represents the commit history summarised by 'batches' batches holding 'records' records in total, the largest of
+ * which held 'maxBatchSize' records, where 'totalLatencyNanos' and 'maxLatencyNanos' are the sum and maximum of the
+ * submit-to-durable latency of every record.
+ *
+ * Representation Invariant:
+ * All fields must be non-negative, 'records' must be at least 'batches', and 'maxBatchSize' must be at most 'records'.
+ */
+public class CommitStatistics {
+    // The number of batches committed
+    private long batches;
+    // The number of records committed
+    private long records;
+    // The largest number of records in one batch
+    private int maxBatchSize;
+    // The sum of the submit-to-durable latencies of all records
+    private long totalLatencyNanos;
+    // The largest submit-to-durable latency of a record
+    private long maxLatencyNanos;
+
+    /**
+     * Records one committed batch.
+     *
+     * @param batchSize the number of records in the batch
+     * @param latencySumNanos the sum of the latencies of the records in the batch
+     * @param latencyMaxNanos the largest latency of a record in the batch
+     * @requires batchSize > 0 && latencySumNanos >= 0 && latencyMaxNanos >= 0
+     * @modifies this
+     * @effects adds the batch to the statistics
+     */
+    synchronized void recordBatch(int batchSize, long latencySumNanos, long latencyMaxNanos) {
+        batches++;
+        records += batchSize;
+        maxBatchSize = Math.max(maxBatchSize, batchSize);
+        totalLatencyNanos += latencySumNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyMaxNanos);
+    }
+
+    /**
+     * Returns the number of batches committed.
+     *
+     * @return the number of batches committed
+     */
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * Returns the number of records committed.
+     *
+     * @return the number of records committed
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Returns the average number of records per batch.
+     *
+     * @return the average batch size, or 0 if nothing was committed
+     */
+    public synchronized double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) records / batches;
+    }
+
+    /**
+     * Returns the largest number of records committed in one batch.
+     *
+     * @return the largest batch size
+     */
+    public synchronized int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the average time between a record being submitted and being durable.
+     *
+     * @return the average commit latency in microseconds, or 0 if nothing was committed
+     */
+    public synchronized double getAverageLatencyMicros() {
+        return records == 0 ? 0 : totalLatencyNanos / 1000.0 / records;
+    }
+
+    /**
+     * Returns the longest time between a record being submitted and being durable.
+     *
+     * @return the largest commit latency in microseconds
+     */
+    public synchronized double getMaxLatencyMicros() {
+        return maxLatencyNanos / 1000.0;
+    }
+
+    /**
+     * Returns a string representation of the CommitStatistics.
+     *
+     * @return a string representation of the CommitStatistics
+     * @effects returns a string that represents the CommitStatistics
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%d records in %d batches (avg %.1f, max %d), latency avg %.1f us, max %.1f us",
+                records, batches, getAverageBatchSize(), maxBatchSize, getAverageLatencyMicros(), getMaxLatencyMicros());
+    }
+
+    /**
+     * Checks the representation invariant of the CommitStatistics.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        return batches >= 0 && records >= batches && maxBatchSize <= records && totalLatencyNanos >= 0 && maxLatencyNanos >= 0;
+    }
+}
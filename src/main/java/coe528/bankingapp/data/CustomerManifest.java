@@ -0,0 +1,416 @@
+package coe528.bankingapp.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Overview: CustomerManifest is a mutable class that represents a single index file summarising every customer record.
+ * It maps each username to the file holding the record, the customer number, the balances and the level, so that
+ * enumerating customers or looking one up reads one file instead of opening every customer file. If the manifest file
+ * is missing or fails its checksum, it is rebuilt from the customer files.
+ *
+ * The entries are kept in a concurrent map, so lookups and updates of different customers never wait for each other.
+ * No change writes the file by itself: changes only count as unsaved, and the file is rewritten by save, which the
+ * auto-save thread calls periodically and close calls last. A save copies the entries and writes the copy without
+ * blocking updates. The transaction journal remains the authoritative record of accounts, so the storage engine
+ * reconciles the manifest with the journal when it opens, recovering changes made after the last save.
+ *
+ * The file format is [int magic][int version][int count], followed by count entries
+ * [UTF username][UTF password][UTF file name][int customer number][double file balance][double balance][UTF level],
+ * and a CRC32 of everything before it.
+ *
+ * Abstraction Function:
+ * Represents the index stored in 'file' as the map 'entries' from username to ManifestEntry, where the map differs
+ * from the file unless 'changes' equals 'savedChanges'.
+ *
+ * Representation Invariant:
+ * The 'file', 'entries' and 'changes' fields must be non-null, every entry must be stored under its own username, and
+ * 'savedChanges' must be at most changes.get().
+ */
+public class CustomerManifest {
+    // Logger for rebuild reports
+    private static final Logger LOGGER = Logger.getLogger(CustomerManifest.class.getName());
+    // Marks a file as a manifest
+    private static final int MAGIC = 0x4D414E49;
+    // Version of the manifest format
+    private static final int VERSION = 1;
+
+    // The manifest file
+    private final File file;
+    // The entries keyed by username
+    private final Map<String, ManifestEntry> entries = new ConcurrentHashMap<>();
+    // The number of changes made to the entries
+    private final AtomicLong changes = new AtomicLong();
+    // The number of changes included in the file
+    private volatile long savedChanges;
+    // Serializes writers of the file
+    private final Object saveLock = new Object();
+    // The thread saving the manifest periodically, or null if not started
+    private ScheduledExecutorService autoSave;
+
+    /**
+     * Opens the manifest stored in the given file.
+     * If the file is missing or corrupt, the entries are rebuilt with the given supplier and saved.
+     *
+     * @param file the manifest file
+     * @param rebuild supplies the entries read from the customer files
+     * @requires file != null && rebuild != null
+     * @effects loads the manifest, rebuilding it from the customer files if necessary
+     */
+    public CustomerManifest(File file, Supplier<List<ManifestEntry>> rebuild) {
+        this.file = file;
+        if (!load()) {
+            LOGGER.info("Rebuilding customer manifest " + file + " from the customer files");
+            entries.clear();
+            for (ManifestEntry entry : rebuild.get()) {
+                entries.put(entry.getUsername(), entry);
+            }
+            changes.incrementAndGet();
+            saveQuietly();
+        }
+    }
+
+    /**
+     * Returns the entry of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the entry of the customer, or null if there is none
+     * @requires username != null
+     */
+    public ManifestEntry get(String username) {
+        return entries.get(username);
+    }
+
+    /**
+     * Checks if there is a customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return true if the manifest has an entry for the username, false otherwise
+     * @requires username != null
+     */
+    public boolean contains(String username) {
+        return entries.containsKey(username);
+    }
+
+    /**
+     * Returns every entry of the manifest in customer number order, which is the order the customers were added.
+     *
+     * @return a new list of the entries
+     */
+    public List<ManifestEntry> getEntries() {
+        List<ManifestEntry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparingInt(ManifestEntry::getCustomerNumber));
+        return list;
+    }
+
+    /**
+     * Returns the number of customers in the manifest.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Adds or replaces the entry of a customer.
+     *
+     * @param entry the entry to add
+     * @requires entry != null
+     * @modifies this
+     * @effects stores the entry under its username and counts an unsaved change
+     */
+    public void put(ManifestEntry entry) {
+        entries.put(entry.getUsername(), entry);
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Removes the entry of a customer.
+     *
+     * @param username the username of the customer
+     * @requires username != null
+     * @modifies this
+     * @effects removes the entry of the username and counts an unsaved change
+     */
+    public void remove(String username) {
+        if (entries.remove(username) != null) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the current balance of a customer in memory and sets the level of that balance.
+     *
+     * @param username the username of the customer
+     * @param balance the current balance of the account
+     * @requires username != null
+     * @modifies this
+     * @effects replaces the balance of the entry, if there is one, and its level with the level of the balance, and
+     *          counts an unsaved change
+     */
+    public void updateBalance(String username, double balance) {
+        if (entries.computeIfPresent(username, (name, entry) -> entry.withBalance(balance, AccountRecord.levelOf(balance))) != null) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Changes the current balance of a customer in memory, atomically with respect to every other change of the same
+     * customer, and sets the level of the new balance.
+     *
+     * @param username the username of the customer
+     * @param change computes the new balance from the current one
+     * @requires username != null && change != null
+     * @modifies this
+     * @effects replaces the balance of the entry, if there is one, with change applied to it and the level with the
+     *          level of that balance, and counts an unsaved change
+     */
+    public void changeBalance(String username, DoubleUnaryOperator change) {
+        if (entries.computeIfPresent(username, (name, entry) -> {
+            double balance = change.applyAsDouble(entry.getBalance());
+            return entry.withBalance(balance, AccountRecord.levelOf(balance));
+        }) != null) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Updates what a customer's file holds, keeping the current balance, level and customer number, atomically with
+     * respect to every balance change of the same customer.
+     *
+     * @param username the username of the customer
+     * @param password the password in the customer file
+     * @param fileName the name of the customer file
+     * @param fileBalance the balance recorded in the customer file
+     * @requires username != null && password != null && fileName != null
+     * @modifies this
+     * @effects replaces the password, file name and file balance of the entry, if there is one, and counts an unsaved
+     *          change
+     */
+    public void updateFile(String username, String password, String fileName, double fileBalance) {
+        if (entries.computeIfPresent(username, (name, entry) -> entry.withFile(password, fileName, fileBalance)) != null) {
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Updates the customer number of a customer in memory.
+     *
+     * @param username the username of the customer
+     * @param customerNumber the number of the customer
+     * @requires username != null && customerNumber >= 0
+     * @modifies this
+     * @effects replaces the customer number of the entry, if there is one, and counts an unsaved change
+     */
+    public void updateCustomerNumber(String username, int customerNumber) {
+        ManifestEntry entry = entries.get(username);
+        if (entry != null && entry.getCustomerNumber() != customerNumber) {
+            entries.computeIfPresent(username, (name, current) -> current.withCustomerNumber(customerNumber));
+            changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts saving the manifest in the background whenever it has unsaved changes.
+     *
+     * @param intervalMillis the time between checks for unsaved changes
+     * @requires intervalMillis > 0
+     * @modifies this
+     * @effects starts a daemon thread that saves the manifest every intervalMillis if it changed
+     */
+    public synchronized void startAutoSave(long intervalMillis) {
+        if (autoSave != null) {
+            return;
+        }
+        autoSave = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "manifest-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        autoSave.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Saving the customer manifest failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the auto-save thread and saves the unsaved changes.
+     *
+     * @modifies this
+     * @effects stops the background saves and writes the manifest file if it changed
+     */
+    public void close() {
+        synchronized (this) {
+            if (autoSave != null) {
+                autoSave.shutdownNow();
+                autoSave = null;
+            }
+        }
+        saveQuietly();
+    }
+
+    /**
+     * Checks if the entries have changed since the manifest file was last written.
+     *
+     * @return true if there are unsaved changes, false otherwise
+     */
+    public boolean isDirty() {
+        return changes.get() != savedChanges;
+    }
+
+    /**
+     * Writes the manifest file if the entries changed since it was last written.
+     * The entries are copied first and the copy is written, so updates continue while the file is written; changes
+     * made after the copy count as unsaved until the next save.
+     *
+     * @throws IOException if the file cannot be written
+     * @modifies this
+     * @effects writes the entries to a temporary file and renames it over the manifest file
+     */
+    public void save() throws IOException {
+        synchronized (saveLock) {
+            long saving = changes.get();
+            if (saving == savedChanges) {
+                return;
+            }
+            write(getEntries());
+            savedChanges = saving;
+        }
+    }
+
+    /**
+     * Writes entries to a temporary file and renames it over the manifest file.
+     */
+    private void write(List<ManifestEntry> snapshot) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (ManifestEntry entry : snapshot) {
+                out.writeUTF(entry.getUsername());
+                out.writeUTF(entry.getPassword());
+                out.writeUTF(entry.getFileName());
+                out.writeInt(entry.getCustomerNumber());
+                out.writeDouble(entry.getFileBalance());
+                out.writeDouble(entry.getBalance());
+                out.writeUTF(entry.getLevel());
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Saves the manifest, reporting a failure instead of throwing it.
+     */
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the manifest file into the entries.
+     *
+     * @return true if the file exists and passed its checksum, false otherwise
+     */
+    private boolean load() {
+        if (!file.isFile()) {
+            return false;
+        }
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            Map<String, ManifestEntry> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                ManifestEntry entry = new ManifestEntry(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(),
+                        in.readDouble(), in.readDouble(), in.readUTF());
+                loaded.put(entry.getUsername(), entry);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                return false;
+            }
+            entries.putAll(loaded);
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Returns a string representation of the CustomerManifest.
+     *
+     * @return a string representation of the CustomerManifest
+     * @effects returns a string that represents the CustomerManifest
+     */
+    @Override
+    public String toString() {
+        return "CustomerManifest in " + file + " with " + entries.size() + " customers" + (isDirty() ? " (unsaved changes)" : "");
+    }
+
+    /**
+     * Checks the representation invariant of the CustomerManifest.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        if (file == null || entries == null || changes == null || savedChanges > changes.get()) {
+            return false;
+        }
+        for (Map.Entry<String, ManifestEntry> entry : entries.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue().getUsername())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,12 +1,46 @@
 package coe528.bankingapp.data;
 
+import coe528.bankingapp.data.JournalRecord.Operation;
+
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Overview: FileManager is a mutable class that handles file operations such as reading, writing and deleting files.
- * It also provides a method to get all files in a directory.
+ * It also provides a method to get all files in a directory, the manifest that indexes every customer file in one
+ * file, and access to the transaction journal that records every balance change as a single append instead of a
+ * rewrite of the customer file.
+ * Customer records are written as "<username>.rec" files in the binary format of AccountRecordCodec; older
+ * "<username>.txt" files in the "Key: value" text format are still read.
+ * Customer files are placed according to a ShardedLayout: flat by default, or in "bankingapp.shards.levels" levels of
+ * hash-named subdirectories "bankingapp.shards.width" hex digits wide. Files still in the flat directory are found
+ * while ShardMigrator moves them, so the layout can be switched on a live directory.
+ * Setting the system property "bankingapp.journal.groupCommit" to true makes journal appends durable through group
+ * commit, with the window tuned by "bankingapp.journal.maxLatencyMillis" and "bankingapp.journal.maxBatchSize".
+ * Setting "bankingapp.writeBehind" to true moves balance writes to a write-behind queue, bounded by
+ * "bankingapp.writeBehind.capacity" dirty accounts and flushed "bankingapp.writeBehind.delayMillis" after the first update.
+ * The journal is checkpointed once "bankingapp.checkpoint.maxJournalBytes" have been written or
+ * "bankingapp.checkpoint.intervalMillis" have passed; "bankingapp.checkpoint.archive" keeps compacted segments.
+ * Scans that only look for a username use a RecordScanner, which parses records straight from pooled direct buffers;
+ * "bankingapp.scanner.measureAllocation" makes it count the bytes allocated per parsed record.
+ * Decoded records are kept in an LRU RecordCache of "bankingapp.cache.capacity" records (0 disables it), which the
+ * write paths invalidate; "bankingapp.cache.validateMtime" also checks each hit against the file's modification time.
+ * The manifest is saved in the background every "bankingapp.manifest.saveIntervalMillis" while it has unsaved changes.
+ * A ChangeFeed over the customer directory and the journal reports the accounts changed by other instances of the
+ * application unless "bankingapp.changeFeed" is false; its batches are debounced by "bankingapp.changeFeed.debounceMillis".
 
  * Abstraction Function:
  * Represents a file manager as a FileManager object that can perform operations on files such as reading, writing, and deleting.
@@ -18,13 +52,70 @@ import java.util.List;
  * https://codeahoy.com/learn/csfundamentals/ch5/#:~:text=File%20I%2FO%20in%20Java%201%20Reading%20characters%20from,to%20a%20text%20file%20...%204%20Summary%20
  */
 public class FileManager {
+    // Logger for scan reports
+    private static final Logger LOGGER = Logger.getLogger(FileManager.class.getName());
     // Directory paths for customer and admin data
     private static final String CUSTOMER_DIRECTORY = "src/main/java/coe528/bankingapp/data/customers/";
     private static final String ADMIN_DIRECTORY = "src/main/java/coe528/bankingapp/data/admin/";
+    private static final String JOURNAL_DIRECTORY = "src/main/java/coe528/bankingapp/data/journal/";
+    private static final String MANIFEST_FILE = "src/main/java/coe528/bankingapp/data/manifest.idx";
+    // File extension of binary customer records
+    private static final String RECORD_EXTENSION = ".rec";
+
+    // System properties configuring the sharded layout of the customer directory
+    private static final String SHARD_LEVELS_PROPERTY = "bankingapp.shards.levels";
+    private static final String SHARD_WIDTH_PROPERTY = "bankingapp.shards.width";
+    // System properties configuring group commit of the journal
+    private static final String GROUP_COMMIT_PROPERTY = "bankingapp.journal.groupCommit";
+    private static final String MAX_LATENCY_PROPERTY = "bankingapp.journal.maxLatencyMillis";
+    private static final String MAX_BATCH_PROPERTY = "bankingapp.journal.maxBatchSize";
+    // System properties configuring write-behind of balance changes
+    private static final String WRITE_BEHIND_PROPERTY = "bankingapp.writeBehind";
+    private static final String WRITE_BEHIND_CAPACITY_PROPERTY = "bankingapp.writeBehind.capacity";
+    private static final String WRITE_BEHIND_DELAY_PROPERTY = "bankingapp.writeBehind.delayMillis";
+    // System properties configuring checkpointing of the journal
+    private static final String CHECKPOINT_BYTES_PROPERTY = "bankingapp.checkpoint.maxJournalBytes";
+    private static final String CHECKPOINT_INTERVAL_PROPERTY = "bankingapp.checkpoint.intervalMillis";
+    private static final String CHECKPOINT_ARCHIVE_PROPERTY = "bankingapp.checkpoint.archive";
+    // System property enabling allocation measurement of record scans
+    private static final String MEASURE_ALLOCATION_PROPERTY = "bankingapp.scanner.measureAllocation";
+    // System properties configuring the record cache
+    private static final String CACHE_CAPACITY_PROPERTY = "bankingapp.cache.capacity";
+    private static final String CACHE_VALIDATE_PROPERTY = "bankingapp.cache.validateMtime";
+    // System property setting how often the manifest is saved
+    private static final String MANIFEST_SAVE_INTERVAL_PROPERTY = "bankingapp.manifest.saveIntervalMillis";
+    // System properties configuring the change feed
+    private static final String CHANGE_FEED_PROPERTY = "bankingapp.changeFeed";
+    private static final String CHANGE_FEED_DEBOUNCE_PROPERTY = "bankingapp.changeFeed.debounceMillis";
+
+    // The layout of the customer directory
+    private static final ShardedLayout LAYOUT = new ShardedLayout(Integer.getInteger(SHARD_LEVELS_PROPERTY, 0),
+            Integer.getInteger(SHARD_WIDTH_PROPERTY, 2));
+
+    // Reusable buffer each thread encodes customer records into
+    private static final ThreadLocal<ByteBuffer> RECORD_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(512));
+    // Scanner every customer file is read through, into direct buffers large enough for any record; it keeps a
+    // buffer idle for each bulk loader thread
+    private static final RecordScanner SCANNER = new RecordScanner(new BufferPool(64 * 1024,
+            Math.max(4, BulkLoader.getParallelism())), Boolean.getBoolean(MEASURE_ALLOCATION_PROPERTY));
+    // Cache of decoded customer records, keyed by file name
+    private static final RecordCache RECORD_CACHE = new RecordCache(Integer.getInteger(CACHE_CAPACITY_PROPERTY, 10000),
+            Boolean.getBoolean(CACHE_VALIDATE_PROPERTY));
+
+    // The transaction journal shared by every FileManager, opened on first use
+    private static TransactionJournal journal;
+    // The write-behind queue shared by every FileManager, or null when balance changes are written directly
+    private static WriteBehindQueue writeBehindQueue;
+    // Orders the write-behind queue's frames against changes journaled directly, which hold it for reading
+    private static final StampedLock WRITE_ORDER = new StampedLock();
+    // The checkpoint manager of the journal
+    private static CheckpointManager checkpointManager;
+    // The customer manifest shared by every FileManager, loaded on first use
+    private static CustomerManifest manifest;
 
     /**
      * Writes the given content to a file with the given filename.
-     * If the file does not exist, it will be created.
+     * If the file does not exist, it will be created in its shard directory.
      *
      * @param filename the name of the file
      * @param content the content to write to the file
@@ -33,16 +124,20 @@ public class FileManager {
      * @effects creates a new file or modifies an existing file with the given filename and writes the given content to it
      */
     public void writeToFile(String filename, String content) {
-        String directory = filename.equals("admin.txt") ? ADMIN_DIRECTORY : CUSTOMER_DIRECTORY;
-        File dir = new File(directory);
+        File file = filename.equals("admin.txt") ? new File(ADMIN_DIRECTORY, filename) : LAYOUT.locate(new File(CUSTOMER_DIRECTORY), filename);
+        File dir = file.getParentFile();
         if (!dir.exists()) {
             dir.mkdirs();
         }
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(directory + filename))) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
             writer.write(content);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (!LAYOUT.isFlat() && !filename.equals("admin.txt")) {
+            new File(CUSTOMER_DIRECTORY, filename).delete(); // Drop a copy left in the flat directory
+        }
+        RECORD_CACHE.invalidate(filename);
     }
 
     /**
@@ -55,7 +150,7 @@ public class FileManager {
      */
     public String readFromFile(String filename) {
         StringBuilder content = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(CUSTOMER_DIRECTORY + filename))) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(locateCustomerFile(filename)))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 content.append(line).append("\n");
@@ -66,6 +161,87 @@ public class FileManager {
         return content.toString();
     }
 
+    /**
+     * Returns the name of the file holding the binary record of a customer.
+     *
+     * @param username the username of the customer
+     * @return the name of the customer's record file
+     * @requires username != null
+     */
+    public static String recordFileName(String username) {
+        return username + RECORD_EXTENSION;
+    }
+
+    /**
+     * Writes a customer record in the binary format to the customer's record file.
+     *
+     * @param record the record to write
+     * @requires record != null
+     * @modifies this
+     * @effects creates or replaces the record file of the customer with the encoded record
+     */
+    public void writeRecord(AccountRecord record) {
+        String filename = recordFileName(record.getUsername());
+        ByteBuffer buffer = RECORD_BUFFER.get();
+        buffer.clear();
+        try {
+            AccountRecordCodec.encode(record, buffer);
+        } catch (BufferOverflowException e) {
+            buffer = ByteBuffer.allocate(AccountRecordCodec.MAX_RECORD_BYTES);
+            RECORD_BUFFER.set(buffer);
+            AccountRecordCodec.encode(record, buffer);
+        }
+        buffer.flip();
+        File file = LAYOUT.locate(new File(CUSTOMER_DIRECTORY), filename);
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (!LAYOUT.isFlat()) {
+            new File(CUSTOMER_DIRECTORY, filename).delete(); // Drop a copy left in the flat directory
+        }
+        RECORD_CACHE.invalidate(filename);
+    }
+
+    /**
+     * Reads a customer record from a file in either the binary or the "Key: value" text format.
+     * The record is served from the record cache if it was read before and the file has not been written since;
+     * a cached text record keeps the customer number it was first read with. Otherwise the file is read by the record
+     * scanner into a pooled direct buffer and decoded from it.
+     *
+     * @param filename the name of the file
+     * @param defaultCustomerNumber the customer number to use if the file has none
+     * @requires filename != null && defaultCustomerNumber >= 0
+     * @effects returns the record stored in the file
+     * @return the record read from the file, or null if the file cannot be read or parsed
+     */
+    public AccountRecord readRecord(String filename, int defaultCustomerNumber) {
+        File file = locateCustomerFile(filename);
+        AccountRecord cached = RECORD_CACHE.get(filename, file);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = RECORD_CACHE.getStamp();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            AccountRecord record = SCANNER.readRecord(file, defaultCustomerNumber);
+            if (record != null) {
+                RECORD_CACHE.put(filename, record, lastModified, length, stamp);
+            }
+            return record;
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            System.out.println("Skipping unreadable customer file: " + filename);
+        }
+        return null;
+    }
+
     /**
      * Deletes a file with the given filename.
      *
@@ -75,7 +251,8 @@ public class FileManager {
      * @effects deletes the file with the given filename
      */
     public void deleteFile(String filename) {
-        File file = new File(CUSTOMER_DIRECTORY + filename);
+        RECORD_CACHE.invalidate(filename);
+        File file = locateCustomerFile(filename);
         if (file.delete()) {
             System.out.println("Deleted the file: " + file.getName());
         } else {
@@ -84,25 +261,377 @@ public class FileManager {
     }
 
     /**
-     * Gets all files in the customer directory.
+     * Checks if a customer file exists, in its shard directory or in the flat directory.
      *
-     * @effects returns a list of filenames in the customer directory
+     * @param filename the name of the file
+     * @requires filename != null
+     * @return true if the file exists, false otherwise
+     */
+    public boolean hasCustomerFile(String filename) {
+        return locateCustomerFile(filename).isFile();
+    }
+
+    /**
+     * Gets all files in the customer directory, including those in shard directories.
+     *
+     * @effects returns a list of filenames in the customer directory and its shard directories
      * @return a list of filenames
      */
     public List<String> getAllFilesInDirectory() {
-        File directory = new File(CUSTOMER_DIRECTORY);
-        File[] files = directory.listFiles();
         List<String> fileNames = new ArrayList<>();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    fileNames.add(file.getName());
-                }
-            }
+        for (File file : collectCustomerFiles()) {
+            fileNames.add(file.getName());
         }
         return fileNames;
     }
 
+    /**
+     * Scans every customer file with the record scanner, without creating Strings for the records.
+     *
+     * @param visitor the visitor to pass the username and balance of each record to
+     * @requires visitor != null
+     * @effects reads the customer files until the visitor stops the scan
+     * @return the number of records passed to the visitor
+     */
+    public long scanRecords(RecordScanner.RecordVisitor visitor) {
+        return SCANNER.scan(collectCustomerFiles(), visitor);
+    }
+
+    /**
+     * Finds the customer file holding the record of a username by scanning every customer file.
+     * Records are compared byte by byte, so records of other customers are never turned into Strings.
+     *
+     * @param username the username to find
+     * @requires username != null
+     * @effects returns the name of the file holding the username's record
+     * @return the name of the customer's file, or null if no file holds the username
+     */
+    public String findCustomerFile(String username) {
+        File file = SCANNER.find(collectCustomerFiles(), username.getBytes(StandardCharsets.UTF_8));
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(SCANNER.toString());
+        }
+        return file == null ? null : file.getName();
+    }
+
+    /**
+     * Returns the cache of decoded customer records, whose counters show how many reads it served.
+     *
+     * @return the shared record cache
+     */
+    public static RecordCache getRecordCache() {
+        return RECORD_CACHE;
+    }
+
+    /**
+     * Returns the layout of the customer directory.
+     *
+     * @return the sharded layout in use
+     */
+    public static ShardedLayout getLayout() {
+        return LAYOUT;
+    }
+
+    /**
+     * Returns the customer directory.
+     *
+     * @return the root of the customer directory
+     */
+    public static File getCustomerDirectory() {
+        return new File(CUSTOMER_DIRECTORY);
+    }
+
+    /**
+     * Finds a customer file in its shard directory, falling back to the flat directory for files not migrated yet.
+     * The shard directory is checked again last in case the file was migrated in between.
+     */
+    private static File locateCustomerFile(String filename) {
+        File root = new File(CUSTOMER_DIRECTORY);
+        File sharded = LAYOUT.locate(root, filename);
+        if (LAYOUT.isFlat() || sharded.exists()) {
+            return sharded;
+        }
+        File flat = new File(root, filename);
+        return flat.exists() ? flat : sharded;
+    }
+
+    /**
+     * Returns every file in the customer directory and its shard directories.
+     */
+    private static List<File> collectCustomerFiles() {
+        List<File> files = new ArrayList<>();
+        collectFiles(new File(CUSTOMER_DIRECTORY), LAYOUT.getLevels(), files);
+        return files;
+    }
+
+    /**
+     * Adds the files in a directory, descending into at most the given number of shard levels.
+     */
+    private static void collectFiles(File directory, int levels, List<File> collected) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                collected.add(file);
+            } else if (levels > 0 && file.isDirectory()) {
+                collectFiles(file, levels - 1, collected);
+            }
+        }
+    }
+
+    /**
+     * Returns the customer manifest, loading it on first use and starting its background saves.
+     * If the manifest file is missing or corrupt it is rebuilt by reading every customer file.
+     *
+     * @return the shared customer manifest
+     * @effects loads or rebuilds the manifest if it is not loaded yet
+     */
+    public static synchronized CustomerManifest getManifest() {
+        if (manifest == null) {
+            manifest = new CustomerManifest(new File(MANIFEST_FILE), () -> new FileManager().scanCustomerFiles());
+            manifest.startAutoSave(Math.max(1, Long.getLong(MANIFEST_SAVE_INTERVAL_PROPERTY, 1000)));
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads and parses every file in the customer directory, several files at a time on the bulk loader.
+     * This is the slow path the manifest is rebuilt from; customer numbers follow the order of the files.
+     *
+     * @effects returns a manifest entry for every readable customer file
+     * @return the entries read from the customer files
+     */
+    public List<ManifestEntry> scanCustomerFiles() {
+        List<String> filenames = getAllFilesInDirectory();
+        List<ManifestEntry> entries = BulkLoader.load(filenames.size(), i -> readCustomerFile(filenames.get(i), i), null);
+        entries.removeIf(Objects::isNull);
+        return entries;
+    }
+
+    /**
+     * Reads and parses one customer file in either the binary or the "Key: value" text format.
+     *
+     * @param filename the name of the file
+     * @param customerNumber the customer number to give the entry if the file has none
+     * @requires filename != null && customerNumber >= 0
+     * @effects returns the entry described by the file
+     * @return the entry read from the file, or null if the file cannot be parsed
+     */
+    public ManifestEntry readCustomerFile(String filename, int customerNumber) {
+        AccountRecord record = readRecord(filename, customerNumber);
+        if (record == null) {
+            return null;
+        }
+        return new ManifestEntry(record.getUsername(), record.getPassword(), filename, record.getCustomerNumber(),
+                record.getBalance(), record.getBalance(), record.getLevel());
+    }
+
+    /**
+     * Returns the transaction journal, opening it on first use.
+     * Group commit is enabled on opening if the group commit system property is set, and checkpointing is started if
+     * no other instance of the application owns the journal.
+     *
+     * @return the shared transaction journal
+     * @throws IOException if the journal cannot be opened
+     * @effects opens the journal in the journal directory if it is not open yet
+     */
+    public static synchronized TransactionJournal getJournal() throws IOException {
+        if (journal == null) {
+            journal = new TransactionJournal(new File(JOURNAL_DIRECTORY), TransactionJournal.DEFAULT_MAX_SEGMENT_BYTES);
+            checkpointManager = new CheckpointManager(journal, Boolean.getBoolean(CHECKPOINT_ARCHIVE_PROPERTY));
+            if (journal.isOwner()) { // Followers leave checkpoints to the instance owning the journal
+                checkpointManager.start(Long.getLong(CHECKPOINT_BYTES_PROPERTY, 64L * 1024 * 1024),
+                        Long.getLong(CHECKPOINT_INTERVAL_PROPERTY, 10 * 60 * 1000));
+            }
+            if (Boolean.getBoolean(GROUP_COMMIT_PROPERTY)) {
+                journal.enableGroupCommit(Long.getLong(MAX_LATENCY_PROPERTY, 5), Integer.getInteger(MAX_BATCH_PROPERTY, 256));
+            }
+            if (Boolean.getBoolean(WRITE_BEHIND_PROPERTY)) {
+                writeBehindQueue = new WriteBehindQueue(journal, WRITE_ORDER, Integer.getInteger(WRITE_BEHIND_CAPACITY_PROPERTY, 10000),
+                        Long.getLong(WRITE_BEHIND_DELAY_PROPERTY, 50));
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Opens a change feed over the customer directory and the journal, unless the change feed system property is false.
+     *
+     * @param listener the listener the batches of changed accounts are delivered to
+     * @return the started change feed, or null if it is disabled or the directories cannot be watched
+     * @requires listener != null
+     * @effects opens the journal if it is not open yet and starts a thread watching the customer files and the journal
+     */
+    public static ChangeFeed openChangeFeed(ChangeFeed.Listener listener) {
+        if (!Boolean.parseBoolean(System.getProperty(CHANGE_FEED_PROPERTY, "true"))) {
+            return null;
+        }
+        try {
+            return new ChangeFeed(new File(CUSTOMER_DIRECTORY), LAYOUT.getLevels(), getJournal(),
+                    Math.max(1, Long.getLong(CHANGE_FEED_DEBOUNCE_PROPERTY, 200)), listener);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes out every pending balance change, saves the manifest and closes the transaction journal.
+     * This is meant to be called once when the application shuts down.
+     *
+     * @effects flushes the write-behind queue, stops the manifest's background saves and saves it, commits pending group commits and closes the journal
+     */
+    public static void shutdown() {
+        WriteBehindQueue queue;
+        synchronized (FileManager.class) {
+            queue = writeBehindQueue;
+            writeBehindQueue = null;
+        }
+        if (queue != null) {
+            queue.close(); // Without the lock, since its last frame may wait for a direct change that needs the journal
+        }
+        synchronized (FileManager.class) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Saves the manifest and closes the checkpoint manager and the transaction journal.
+     */
+    private static void closeJournal() {
+        if (manifest != null) {
+            manifest.close();
+        }
+        if (checkpointManager != null) {
+            checkpointManager.close();
+            checkpointManager = null;
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Returns the statistics of the journal's group commits.
+     *
+     * @return the commit statistics, or null if group commit is not enabled
+     * @effects returns the commit latency and batch size statistics of the journal
+     */
+    public CommitStatistics getCommitStatistics() {
+        try {
+            return getJournal().getCommitStatistics();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Records an operation on a customer's account in the transaction journal.
+     * With write-behind enabled, balance changes are only marked dirty here and the writer thread later journals the
+     * latest balance of the account; opening and closing an account, and setting its balance, is always journaled directly.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @requires username != null && operation != null && balance != null
+     * @modifies this
+     * @effects appends a record of the operation to the transaction journal, or queues the account's balance to be written
+     */
+    public void recordTransaction(String username, Operation operation, double amount, double fee, DoubleSupplier balance) {
+        try {
+            TransactionJournal transactionJournal = getJournal();
+            WriteBehindQueue queue = writeBehindQueue;
+            if (queue != null && operation != Operation.OPEN && operation != Operation.CLOSE && operation != Operation.BALANCE) {
+                queue.submit(username, balance);
+                return;
+            }
+            if (queue != null) {
+                queue.cancel(username);
+            }
+            transactionJournal.append(username, operation, amount, fee, balance.getAsDouble());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts a change to balances in memory that will be recorded with recordTransactions. With write-behind enabled,
+     * the write-behind queue does not read balances or place its frame until the change is ended, so that a balance it
+     * journals either precedes the change's frame or already includes the change and follows its frame.
+     *
+     * @return the stamp to pass to endDirectChange, or 0 if write-behind is disabled
+     * @effects opens the journal if it is not open yet, and blocks while the write-behind queue is placing a frame
+     */
+    public long beginDirectChange() {
+        try {
+            getJournal();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return writeBehindQueue != null ? WRITE_ORDER.readLock() : 0;
+    }
+
+    /**
+     * Ends a change started with beginDirectChange, on any thread, once recordTransactions has returned for it.
+     *
+     * @param stamp the stamp returned by beginDirectChange
+     * @requires stamp was returned by beginDirectChange and was not passed to endDirectChange yet
+     * @effects lets the write-behind queue place its next frame once no other change is in progress
+     */
+    public void endDirectChange(long stamp) {
+        if (stamp != 0) {
+            WRITE_ORDER.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Records several operations in the transaction journal as one frame, so that either all or none of them survive a
+     * crash. The frame is written directly even with write-behind enabled; balances still queued for the same accounts
+     * are written later with their latest values, which include these operations as long as the caller wrapped its
+     * changes in beginDirectChange and endDirectChange.
+     *
+     * @param records the operations applied, each with the balance of its account after it
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects appends the records to the transaction journal in one frame
+     */
+    public void recordTransactions(List<JournalRecord> records) {
+        try {
+            getJournal().appendAll(records);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rebuilds the current balances of the customers from the latest journal snapshot and the journal written after it,
+     * on top of the given balances.
+     *
+     * @param base the balances read from the customer files, keyed by username
+     * @return the current balances keyed by username
+     * @requires base != null
+     * @effects returns the balances after recovering the journal, or the given balances if the journal cannot be read
+     */
+    public Map<String, Double> rebuildBalances(Map<String, Double> base) {
+        try {
+            getJournal();
+            return checkpointManager.recover(base);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return base;
+        }
+    }
+
     /**
      * Returns a string representation of the FileManager.
      *
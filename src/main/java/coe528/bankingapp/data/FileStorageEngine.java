@@ -0,0 +1,380 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Overview: FileStorageEngine is a mutable class that stores accounts in the customer files managed by FileManager.
+ * Each account has its own record file and an entry in the customer manifest, and balance changes are appended to the
+ * transaction journal instead of rewriting the record file. Opening the engine recovers the current balances from the
+ * journal and writes them to the manifest, so load and forEach read current balances straight from the manifest.
+ * The manifest is saved in the background, so opening also reconciles it with the journal: accounts the journal
+ * closed are removed from it and accounts the journal opened are added to it from their record files.
+ * Saving an account that already exists journals its balance as an absolute BALANCE record, so the journal
+ * written before the save cannot change the saved balance on recovery.
+ * A ChangeFeed reports the customer files and journal records written by other instances of the application; the
+ * engine applies them to the manifest and passes the accounts that actually changed on to its change listeners.
+ * Changes of this instance are recognized, by journal sequence number or by the manifest already holding them, and
+ * are not reported. Two instances updating the same account at the same time may still each keep their own balance.
+ *
+ * Abstraction Function:
+ * Represents the set of accounts described by the entries of the customer manifest, with the balances in those entries.
+ *
+ * Representation Invariant:
+ * The 'fileManager' and 'manifest' fields must be non-null.
+ */
+public class FileStorageEngine implements StorageEngine {
+    // The file manager for the customer files and the journal
+    private final FileManager fileManager;
+    // The manifest indexing the customer files
+    private final CustomerManifest manifest;
+    // The feed of changes made by other instances, or null if it is disabled
+    private final ChangeFeed changeFeed;
+    // The listeners the accounts changed by other instances are reported to
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Opens the engine over the customer directory, recovering the balances written after the customer files.
+     *
+     * @effects loads the manifest, replays the journal on top of the balances in the customer files, brings the
+     * manifest's accounts and balances up to date with it and saves the manifest, and starts the change feed
+     */
+    public FileStorageEngine() {
+        fileManager = new FileManager();
+        manifest = FileManager.getManifest();
+        Map<String, Double> fileBalances = new LinkedHashMap<>();
+        for (ManifestEntry entry : manifest.getEntries()) {
+            fileBalances.put(entry.getUsername(), entry.getFileBalance());
+        }
+        Map<String, Double> balances = fileManager.rebuildBalances(fileBalances);
+        for (ManifestEntry entry : manifest.getEntries()) {
+            Double balance = balances.get(entry.getUsername());
+            if (balance != null) {
+                manifest.updateBalance(entry.getUsername(), balance);
+            } else {
+                manifest.remove(entry.getUsername()); // Closed after the manifest was last saved
+            }
+        }
+        for (Map.Entry<String, Double> balance : balances.entrySet()) {
+            String username = balance.getKey();
+            String filename = FileManager.recordFileName(username);
+            if (!manifest.contains(username) && fileManager.hasCustomerFile(filename)) { // Opened after the last save
+                AccountRecord record = fileManager.readRecord(filename, manifest.size());
+                if (record != null) {
+                    manifest.put(new ManifestEntry(username, record.getPassword(), filename, record.getCustomerNumber(),
+                            record.getBalance(), balance.getValue(), AccountRecord.levelOf(balance.getValue())));
+                }
+            }
+        }
+        try {
+            manifest.save(); // Save the recovered balances so the manifest starts out current
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        changeFeed = FileManager.openChangeFeed(this::applyChanges);
+    }
+
+    /**
+     * Loads an account from the manifest. The manifest is authoritative: it is rebuilt from the customer files when it
+     * is missing and reconciled with the journal when the engine opens, so an account it does not hold does not exist
+     * and no customer file is scanned for it.
+     *
+     * @param username the username of the customer
+     * @return the stored account with its current balance, or null if there is none
+     * @requires username != null
+     */
+    @Override
+    public AccountRecord load(String username) {
+        ManifestEntry entry = manifest.get(username);
+        return entry == null ? null : toRecord(entry);
+    }
+
+    /**
+     * Saves an account to its record file and the manifest, and journals its balance.
+     *
+     * @param record the account to save
+     * @requires record != null
+     * @modifies this
+     * @effects writes the record file, replaces the manifest entry and journals the account as opened, or as given a
+     * new balance if it already existed
+     */
+    @Override
+    public void save(AccountRecord record) {
+        boolean existed = manifest.contains(record.getUsername());
+        fileManager.writeRecord(record);
+        manifest.put(new ManifestEntry(record.getUsername(), record.getPassword(), FileManager.recordFileName(record.getUsername()),
+                record.getCustomerNumber(), record.getBalance(), record.getBalance(), record.getLevel()));
+        fileManager.recordTransaction(record.getUsername(), existed ? Operation.BALANCE : Operation.OPEN, 0, 0, record::getBalance);
+    }
+
+    /**
+     * Saves several accounts, one record file each.
+     *
+     * @param records the accounts to save
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects saves every account as save would
+     */
+    @Override
+    public void saveAll(List<AccountRecord> records) {
+        for (AccountRecord record : records) {
+            save(record);
+        }
+    }
+
+    /**
+     * Deletes an account's record file and manifest entry, and journals the removal.
+     *
+     * @param username the username of the customer
+     * @return true if the account was in the manifest, false otherwise
+     * @requires username != null
+     * @modifies this
+     * @effects journals the account as closed, removes its manifest entry and deletes its record file
+     */
+    @Override
+    public boolean delete(String username) {
+        fileManager.recordTransaction(username, Operation.CLOSE, 0, 0, () -> 0);
+        ManifestEntry entry = manifest.get(username);
+        manifest.remove(username);
+        fileManager.deleteFile(entry != null ? entry.getFileName() : username + ".txt");
+        return entry != null;
+    }
+
+    /**
+     * Passes every account in the manifest, in manifest order, to the given action.
+     *
+     * @param action the action to apply to each account
+     * @requires action != null
+     * @effects applies the action to every account in the manifest
+     */
+    @Override
+    public void forEach(Consumer<AccountRecord> action) {
+        for (ManifestEntry entry : manifest.getEntries()) {
+            action.accept(toRecord(entry));
+        }
+    }
+
+    /**
+     * Returns the number of accounts in the manifest.
+     *
+     * @return the number of stored accounts
+     */
+    @Override
+    public int size() {
+        return manifest.size();
+    }
+
+    /**
+     * Journals a balance change and applies it to the account's manifest entry.
+     * The manifest entry is changed by the operation's amount and fee rather than set to a balance read at some point,
+     * so concurrent operations on the same account leave the same balance in the manifest in any order, and the level
+     * is that of the stored balance.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @param level the level of the customer after the operation, which is not stored
+     * @requires username != null && operation != null && balance != null && AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects journals the operation, or queues it with write-behind enabled, and applies it to the manifest entry
+     */
+    @Override
+    public void updateBalance(String username, Operation operation, double amount, double fee, DoubleSupplier balance, String level) {
+        fileManager.recordTransaction(username, operation, amount, fee, balance);
+        manifest.changeBalance(username, previous -> JournalRecord.balanceAfter(operation, amount, fee, previous, balance.getAsDouble()));
+    }
+
+    /**
+     * Journals several balance changes in one frame and updates the accounts' manifest entries.
+     *
+     * @param changes the operations applied, each with the balance of its account after it
+     * @requires changes != null && changes does not contain null
+     * @modifies this
+     * @effects appends the changes to the journal in one frame, bypassing write-behind, and applies them to the
+     *          manifest entries
+     */
+    @Override
+    public void updateBalances(List<JournalRecord> changes) {
+        fileManager.recordTransactions(changes);
+        for (JournalRecord change : changes) {
+            manifest.changeBalance(change.getUsername(), change::balanceAfter);
+        }
+    }
+
+    /**
+     * Starts a change to balances in memory, holding back the write-behind queue's reads of balances until it ends.
+     *
+     * @return the stamp to pass to endChange
+     * @effects blocks while the write-behind queue is reading balances and placing its frame
+     */
+    @Override
+    public long beginChange() {
+        return fileManager.beginDirectChange();
+    }
+
+    /**
+     * Ends a change started with beginChange.
+     *
+     * @param stamp the stamp returned by beginChange
+     * @requires stamp was returned by beginChange and was not passed to endChange yet
+     */
+    @Override
+    public void endChange(long stamp) {
+        fileManager.endDirectChange(stamp);
+    }
+
+    /**
+     * Starts reporting the accounts changed by other instances of the application to a listener.
+     *
+     * @param listener the listener to add
+     * @requires listener != null
+     * @modifies this
+     * @effects makes the listener receive later batches of the change feed
+     */
+    @Override
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Stops reporting changes to a listener.
+     *
+     * @param listener the listener to remove
+     * @modifies this
+     * @effects makes the listener receive no further batches
+     */
+    @Override
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Stops the change feed, flushes pending balance changes, saves the manifest and closes the journal.
+     *
+     * @modifies this
+     * @effects shuts down the file manager's shared state
+     */
+    @Override
+    public void close() {
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        FileManager.shutdown();
+    }
+
+    /**
+     * Applies a batch of the change feed to the manifest and reports the accounts that changed to the listeners.
+     * A journal record gives the account's new balance, or removes it if it is a CLOSE record; an account with only a
+     * changed customer file is read again from its file, keeping the balance in the manifest for a known account, and
+     * removed if its file is gone.
+     */
+    private void applyChanges(Map<String, JournalRecord> changes) {
+        List<AccountChange> applied = new ArrayList<>();
+        for (Map.Entry<String, JournalRecord> change : changes.entrySet()) {
+            String username = change.getKey();
+            JournalRecord record = change.getValue();
+            ManifestEntry entry = manifest.get(username);
+            AccountRecord previous = entry == null ? null : toRecord(entry);
+            if (record != null && record.getOperation() == Operation.CLOSE) {
+                manifest.remove(username);
+            } else if (record != null && entry != null) {
+                manifest.updateBalance(username, record.getBalance());
+            } else {
+                rereadCustomerFile(username, entry, record);
+            }
+            ManifestEntry updated = manifest.get(username);
+            AccountRecord current = updated == null ? null : toRecord(updated);
+            if (!sameAccount(previous, current)) {
+                applied.add(new AccountChange(username, previous, current));
+            }
+        }
+        if (!applied.isEmpty()) {
+            for (ChangeListener listener : changeListeners) {
+                listener.accountsChanged(applied);
+            }
+        }
+    }
+
+    /**
+     * Reads the customer file of an account again into the manifest, or removes the account if the file is gone.
+     * A known account keeps its current balance, which is left to the manifest to update atomically so that balance
+     * changes made meanwhile are not lost; a new one takes the balance of its journal record if there is one, else of
+     * its file.
+     */
+    private void rereadCustomerFile(String username, ManifestEntry entry, JournalRecord record) {
+        String filename = entry != null ? entry.getFileName() : FileManager.recordFileName(username);
+        if (entry == null && !fileManager.hasCustomerFile(filename)) {
+            filename = username + ".txt";
+        }
+        if (!fileManager.hasCustomerFile(filename)) {
+            if (entry != null) {
+                manifest.remove(username);
+            }
+            return;
+        }
+        FileManager.getRecordCache().invalidate(filename);
+        AccountRecord file = fileManager.readRecord(filename, manifest.size());
+        if (file == null || !username.equals(file.getUsername())) {
+            return; // Still being written, or not this account's file
+        }
+        if (record == null && entry != null) {
+            // Keep the balance this instance may be changing meanwhile, rather than the one read with the entry
+            manifest.updateFile(username, file.getPassword(), filename, file.getBalance());
+            return;
+        }
+        double balance = record != null ? record.getBalance() : file.getBalance();
+        int customerNumber = entry != null ? entry.getCustomerNumber() : file.getCustomerNumber();
+        manifest.put(new ManifestEntry(username, file.getPassword(), filename, customerNumber, file.getBalance(), balance,
+                AccountRecord.levelOf(balance)));
+    }
+
+    /**
+     * Checks if two accounts, either of which may be null, hold the same values.
+     */
+    private static boolean sameAccount(AccountRecord a, AccountRecord b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getUsername().equals(b.getUsername()) && a.getPassword().equals(b.getPassword())
+                && Double.compare(a.getBalance(), b.getBalance()) == 0 && a.getLevel().equals(b.getLevel())
+                && a.getCustomerNumber() == b.getCustomerNumber();
+    }
+
+    /**
+     * Converts a manifest entry to the account it describes.
+     */
+    private static AccountRecord toRecord(ManifestEntry entry) {
+        return new AccountRecord(entry.getUsername(), entry.getPassword(), entry.getBalance(), entry.getLevel(), entry.getCustomerNumber());
+    }
+
+    /**
+     * Returns a string representation of the FileStorageEngine.
+     *
+     * @return a string representation of the FileStorageEngine
+     * @effects returns a string that represents the FileStorageEngine
+     */
+    @Override
+    public String toString() {
+        return "FileStorageEngine with " + manifest.size() + " accounts";
+    }
+
+    /**
+     * Checks the representation invariant of the FileStorageEngine.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return fileManager != null && manifest != null;
+    }
+}
@@ -0,0 +1,211 @@
+package coe528.bankingapp.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Overview: GroupCommitter is a mutable class that gathers journal frames submitted by many threads into batches and
+ * makes each batch durable with one buffered write and one FileChannel.force, made outside the journal's monitor so
+ * that threads keep appending to the next batch meanwhile.
+ * A batch is committed as soon as it holds 'maxBatchSize' frames or its oldest frame has waited 'maxLatencyNanos',
+ * whichever comes first. Each submitter receives a future that completes with its sequence number once its batch is durable.
+ *
+ * Abstraction Function:
+ * Represents the queue of frames in 'pending' waiting to be committed to 'journal' by the commit thread, where
+ * 'futures' and 'submitTimes' hold the future and submit time of each pending frame in order.
+ *
+ * Representation Invariant:
+ * The 'journal', 'pending', 'futures', 'submitTimes' and 'statistics' fields must be non-null, 'futures' and
+ * 'submitTimes' must have the same size, and 'maxLatencyNanos' and 'maxBatchSize' must be positive.
+ */
+class GroupCommitter implements Closeable {
+    // The journal the batches are written to
+    private final TransactionJournal journal;
+    // The longest time a frame waits before its batch is committed
+    private final long maxLatencyNanos;
+    // The largest number of frames in one batch
+    private final int maxBatchSize;
+    // The statistics of the committed batches
+    private final CommitStatistics statistics = new CommitStatistics();
+    // The thread committing the batches
+    private final Thread commitThread;
+
+    // The frames waiting to be committed
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    // The futures of the frames waiting to be committed
+    private List<CompletableFuture<Long>> futures = new ArrayList<>();
+    // The sequence numbers of the frames waiting to be committed
+    private List<Long> sequences = new ArrayList<>();
+    // The submit times of the frames waiting to be committed
+    private List<Long> submitTimes = new ArrayList<>();
+    // Whether close has been called
+    private boolean closed;
+
+    /**
+     * Constructs a new GroupCommitter and starts its commit thread.
+     *
+     * @param journal the journal the batches are written to
+     * @param maxLatencyNanos the longest time a frame waits before its batch is committed
+     * @param maxBatchSize the largest number of frames in one batch
+     * @requires journal != null && maxLatencyNanos > 0 && maxBatchSize > 0
+     * @effects starts a daemon thread that commits batches to the journal
+     */
+    GroupCommitter(TransactionJournal journal, long maxLatencyNanos, int maxBatchSize) {
+        this.journal = journal;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.maxBatchSize = maxBatchSize;
+        commitThread = new Thread(this::run, "journal-group-commit");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    /**
+     * Adds an encoded frame to the current batch.
+     *
+     * @param frame the encoded frame
+     * @param sequence the sequence number of the last record in the frame
+     * @return a future that completes with the sequence number once the frame is durable
+     * @requires frame != null
+     * @modifies this
+     * @effects queues the frame for the next batch and wakes the commit thread
+     */
+    synchronized CompletableFuture<Long> submit(ByteBuffer frame, long sequence) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("Journal is closed"));
+            return future;
+        }
+        if (pending.remaining() < frame.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + frame.remaining()));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put(frame);
+        futures.add(future);
+        sequences.add(sequence);
+        submitTimes.add(System.nanoTime());
+        notifyAll();
+        return future;
+    }
+
+    /**
+     * Returns the statistics of the committed batches.
+     *
+     * @return the commit statistics
+     */
+    CommitStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Commits the frames still pending and stops the commit thread.
+     *
+     * @modifies this
+     * @effects waits until every submitted frame is committed, then stops the commit thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            commitThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for batches to fill up or time out and commits them until closed.
+     */
+    private void run() {
+        ByteBuffer spare = ByteBuffer.allocate(pending.capacity());
+        while (true) {
+            ByteBuffer batch;
+            List<CompletableFuture<Long>> batchFutures;
+            List<Long> batchSequences;
+            List<Long> batchTimes;
+            synchronized (this) {
+                try {
+                    while (futures.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (futures.isEmpty()) {
+                        return;
+                    }
+                    long deadline = submitTimes.get(0) + maxLatencyNanos;
+                    long remaining;
+                    while (futures.size() < maxBatchSize && !closed && (remaining = deadline - System.nanoTime()) > 0) {
+                        wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                batch = pending;
+                batchFutures = futures;
+                batchSequences = sequences;
+                batchTimes = submitTimes;
+                spare.clear();
+                pending = spare.capacity() >= batch.capacity() ? spare : ByteBuffer.allocate(batch.capacity());
+                futures = new ArrayList<>();
+                sequences = new ArrayList<>();
+                submitTimes = new ArrayList<>();
+            }
+            commit(batch, batchFutures, batchSequences, batchTimes);
+            spare = batch;
+        }
+    }
+
+    /**
+     * Writes and forces one batch and completes the futures of its frames.
+     */
+    private void commit(ByteBuffer batch, List<CompletableFuture<Long>> batchFutures, List<Long> batchSequences, List<Long> batchTimes) {
+        batch.flip();
+        try {
+            journal.commitBatch(batch);
+        } catch (IOException e) {
+            for (CompletableFuture<Long> future : batchFutures) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        long latencySum = 0;
+        long latencyMax = 0;
+        for (int i = 0; i < batchFutures.size(); i++) {
+            long latency = now - batchTimes.get(i);
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            batchFutures.get(i).complete(batchSequences.get(i));
+        }
+        statistics.recordBatch(batchFutures.size(), latencySum, latencyMax);
+    }
+
+    /**
+     * Returns a string representation of the GroupCommitter.
+     *
+     * @return a string representation of the GroupCommitter
+     * @effects returns a string that represents the GroupCommitter
+     */
+    @Override
+    public String toString() {
+        return "GroupCommitter with max latency " + maxLatencyNanos / 1000 + " us, max batch " + maxBatchSize + ": " + statistics;
+    }
+
+    /**
+     * Checks the representation invariant of the GroupCommitter.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    synchronized boolean repOk() {
+        return journal != null && pending != null && futures != null && submitTimes != null && statistics != null
+                && futures.size() == submitTimes.size() && maxLatencyNanos > 0 && maxBatchSize > 0;
+    }
+}
@@ -0,0 +1,181 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Overview: InMemoryStorageEngine is a mutable class that keeps accounts in memory only.
+ * Nothing is written to disk, so it holds no accounts when opened and loses them when closed. It is meant for tests
+ * and benchmarks that want to measure the domain code without any I/O.
+ *
+ * Abstraction Function:
+ * Represents the set of accounts that are the values of 'accounts', in the order they were first saved.
+ *
+ * Representation Invariant:
+ * The 'accounts' field must be non-null, and every account must be stored under its own username.
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+    // The stored accounts, keyed by username
+    private final Map<String, AccountRecord> accounts = new LinkedHashMap<>();
+
+    /**
+     * Returns the stored account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the stored account, or null if there is none
+     * @requires username != null
+     */
+    @Override
+    public synchronized AccountRecord load(String username) {
+        return accounts.get(username);
+    }
+
+    /**
+     * Stores an account, replacing any account with the same username.
+     *
+     * @param record the account to save
+     * @requires record != null
+     * @modifies this
+     * @effects stores the account under its username
+     */
+    @Override
+    public synchronized void save(AccountRecord record) {
+        accounts.put(record.getUsername(), record);
+    }
+
+    /**
+     * Stores several accounts.
+     *
+     * @param records the accounts to save
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects stores every account under its username
+     */
+    @Override
+    public synchronized void saveAll(List<AccountRecord> records) {
+        for (AccountRecord record : records) {
+            accounts.put(record.getUsername(), record);
+        }
+    }
+
+    /**
+     * Removes the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return true if an account was removed, false otherwise
+     * @requires username != null
+     * @modifies this
+     * @effects removes the stored account
+     */
+    @Override
+    public synchronized boolean delete(String username) {
+        return accounts.remove(username) != null;
+    }
+
+    /**
+     * Passes every stored account to the given action, in the order the accounts were first saved.
+     * The action is applied to a copy, so it may save or delete accounts.
+     *
+     * @param action the action to apply to each account
+     * @requires action != null
+     * @effects applies the action to every stored account
+     */
+    @Override
+    public void forEach(Consumer<AccountRecord> action) {
+        List<AccountRecord> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(accounts.values());
+        }
+        snapshot.forEach(action);
+    }
+
+    /**
+     * Returns the number of stored accounts.
+     *
+     * @return the number of stored accounts
+     */
+    @Override
+    public synchronized int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Replaces the balance and level of a stored account.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @param level the level of the customer after the operation
+     * @requires username != null && operation != null && balance != null && AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects replaces the balance and level of the account, if it is stored
+     */
+    @Override
+    public synchronized void updateBalance(String username, Operation operation, double amount, double fee, DoubleSupplier balance, String level) {
+        AccountRecord record = accounts.get(username);
+        if (record != null) {
+            double stored = JournalRecord.balanceAfter(operation, amount, fee, record.getBalance(), balance.getAsDouble());
+            accounts.put(username, record.withBalance(stored, AccountRecord.levelOf(stored)));
+        }
+    }
+
+    /**
+     * Replaces the balances and levels of several accounts at once.
+     *
+     * @param changes the operations applied, each with the balance of its account after it
+     * @requires changes != null && changes does not contain null
+     * @modifies this
+     * @effects stores the new balance and level of every changed account, with no reader seeing only some of them
+     */
+    @Override
+    public synchronized void updateBalances(List<JournalRecord> changes) {
+        for (JournalRecord change : changes) {
+            AccountRecord record = accounts.get(change.getUsername());
+            if (record != null) {
+                double stored = change.balanceAfter(record.getBalance());
+                accounts.put(change.getUsername(), record.withBalance(stored, AccountRecord.levelOf(stored)));
+            }
+        }
+    }
+
+    /**
+     * Does nothing, as the engine holds no resources.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns a string representation of the InMemoryStorageEngine.
+     *
+     * @return a string representation of the InMemoryStorageEngine
+     * @effects returns a string that represents the InMemoryStorageEngine
+     */
+    @Override
+    public synchronized String toString() {
+        return "InMemoryStorageEngine with " + accounts.size() + " accounts";
+    }
+
+    /**
+     * Checks the representation invariant of the InMemoryStorageEngine.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        for (Map.Entry<String, AccountRecord> entry : accounts.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue().getUsername())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
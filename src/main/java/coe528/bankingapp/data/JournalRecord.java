@@ -0,0 +1,228 @@
+package coe528.bankingapp.data;
+
+/**
+ * Overview: JournalRecord is an immutable class that represents one operation appended to the transaction journal.
+ * A JournalRecord has a sequence number, the username of the account, the operation type, the amount, the fee and
+ * the balance of the account after the operation was applied.
+ *
+ * Abstraction Function:
+ * Represents the journal entry number 'sequence' which applied 'operation' with 'amount' and 'fee' to the account
+ * of 'username', leaving it with 'balance'.
+ *
+ * Representation Invariant:
+ * The 'username' and 'operation' fields must be non-null, 'sequence' must be positive and 'amount' and 'fee' must be non-negative.
+ */
+public final class JournalRecord {
+
+    /**
+     * The kinds of operation that can be recorded in the journal.
+     * The ordinal of each constant is its on-disk code, so new constants must only be appended.
+     */
+    public enum Operation {
+        // An account was created with 'balance' as its opening balance
+        OPEN,
+        // 'amount' was added to the account
+        DEPOSIT,
+        // 'amount' was removed from the account
+        WITHDRAW,
+        // 'amount' plus 'fee' was removed from the account
+        PURCHASE,
+        // The account was removed
+        CLOSE,
+        // The account was found to hold 'balance', replacing every earlier record of the account
+        BALANCE,
+        // 'amount' plus 'fee' was sent from the account to another account
+        TRANSFER_OUT,
+        // 'amount' was received by the account from another account
+        TRANSFER_IN
+    }
+
+    // The sequence number of the record in the journal
+    private final long sequence;
+    // The username of the account the record applies to
+    private final String username;
+    // The operation that was applied
+    private final Operation operation;
+    // The amount of the operation
+    private final double amount;
+    // The fee charged for the operation
+    private final double fee;
+    // The balance of the account after the operation
+    private final double balance;
+
+    /**
+     * Constructs a new JournalRecord.
+     *
+     * @param sequence the sequence number of the record
+     * @param username the username of the account
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance the balance of the account after the operation
+     * @requires username != null && operation != null
+     */
+    public JournalRecord(long sequence, String username, Operation operation, double amount, double fee, double balance) {
+        this.sequence = sequence;
+        this.username = username;
+        this.operation = operation;
+        this.amount = amount;
+        this.fee = fee;
+        this.balance = balance;
+    }
+
+    /**
+     * Returns the sequence number of the record.
+     *
+     * @return the sequence number of the record
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the username of the account the record applies to.
+     *
+     * @return the username of the account
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the operation that was applied.
+     *
+     * @return the operation that was applied
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the amount of the operation.
+     *
+     * @return the amount of the operation
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Returns the fee charged for the operation.
+     *
+     * @return the fee charged for the operation
+     */
+    public double getFee() {
+        return fee;
+    }
+
+    /**
+     * Returns the balance of the account after the operation.
+     *
+     * @return the balance of the account after the operation
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Returns the change the operation made to the balance of the account.
+     * OPEN, CLOSE and BALANCE records set the balance rather than change it, so they return 0.
+     *
+     * @return the signed change in balance caused by the operation
+     */
+    public double getDelta() {
+        return deltaOf(operation, amount, fee);
+    }
+
+    /**
+     * Returns the change an operation makes to the balance of an account.
+     *
+     * @param operation the operation applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @return the signed change in balance, or 0 for OPEN, CLOSE and BALANCE operations
+     * @requires operation != null
+     */
+    public static double deltaOf(Operation operation, double amount, double fee) {
+        switch (operation) {
+            case DEPOSIT:
+            case TRANSFER_IN:
+                return amount;
+            case WITHDRAW:
+                return -amount;
+            case PURCHASE:
+            case TRANSFER_OUT:
+                return -(amount + fee);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the balance of the account after the operation, given its balance before it.
+     *
+     * @param previous the balance of the account before the operation
+     * @return the balance after the operation, to the cent
+     * @effects returns the balance the record sets for OPEN and BALANCE records, the previous balance for CLOSE
+     *          records, and the previous balance plus the change of the operation otherwise
+     */
+    public double balanceAfter(double previous) {
+        return balanceAfter(operation, amount, fee, previous, balance);
+    }
+
+    /**
+     * Returns the balance of an account after an operation, given its balance before it. Changes are added in whole
+     * cents, so applying the same operations in any order gives the same balance.
+     *
+     * @param operation the operation applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param previous the balance of the account before the operation
+     * @param absolute the balance an OPEN or BALANCE operation sets
+     * @return the balance after the operation, to the cent
+     * @requires operation != null
+     */
+    public static double balanceAfter(Operation operation, double amount, double fee, double previous, double absolute) {
+        switch (operation) {
+            case OPEN:
+            case BALANCE:
+                return absolute;
+            case CLOSE:
+                return previous;
+            default:
+                return addCents(previous, deltaOf(operation, amount, fee));
+        }
+    }
+
+    /**
+     * Adds two amounts in whole cents, so sums of many amounts do not drift from the cent as sums of doubles do.
+     *
+     * @param a the first amount
+     * @param b the second amount
+     * @return the sum of the amounts, each rounded to the nearest cent
+     */
+    public static double addCents(double a, double b) {
+        return (Math.round(a * 100) + Math.round(b * 100)) / 100.0;
+    }
+
+    /**
+     * Returns a string representation of the JournalRecord.
+     *
+     * @return a string representation of the JournalRecord
+     * @effects returns a string that represents the JournalRecord
+     */
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + operation + " " + username + " amount: " + amount + ", fee: " + fee + ", balance: " + balance;
+    }
+
+    /**
+     * Checks the representation invariant of the JournalRecord.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return username != null && operation != null && sequence > 0 && amount >= 0 && fee >= 0;
+    }
+}
@@ -0,0 +1,243 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Overview: LsmStorageEngine is a mutable class that stores accounts in an LsmStore keyed by username.
+ * Each account is stored in the binary format of AccountRecordCodec, so saving an account or changing its balance is
+ * one append to the store's log and one memtable insert, however many accounts there are.
+ *
+ * Abstraction Function:
+ * Represents the set of accounts decoded from the values of 'store'.
+ *
+ * Representation Invariant:
+ * The 'store' field must be non-null, and every value in it must be an encoded AccountRecord stored under its username.
+ */
+public class LsmStorageEngine implements StorageEngine {
+    // The store holding the encoded accounts
+    private final LsmStore store;
+    // The buffer accounts are encoded in
+    private ByteBuffer buffer = ByteBuffer.allocate(512);
+
+    /**
+     * Opens the engine over a store in the given directory.
+     *
+     * @param directory the directory holding the store
+     * @param memtableBytes the memtable size at which it is flushed
+     * @param compactionThreshold the number of similar-sized tables that triggers a compaction
+     * @param syncWrites true to force the store's log to disk after every write
+     * @throws IOException if the store cannot be opened
+     * @requires directory != null && memtableBytes > 0 && compactionThreshold > 1
+     * @effects opens the store, recovering writes logged by an earlier run
+     */
+    public LsmStorageEngine(File directory, long memtableBytes, int compactionThreshold, boolean syncWrites) throws IOException {
+        store = new LsmStore(directory, memtableBytes, compactionThreshold, syncWrites);
+    }
+
+    /**
+     * Loads and decodes the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the stored account, or null if there is none
+     * @throws UncheckedIOException if the store cannot be read
+     * @requires username != null
+     */
+    @Override
+    public AccountRecord load(String username) {
+        try {
+            byte[] value = store.get(username);
+            return value == null ? null : AccountRecordCodec.decode(ByteBuffer.wrap(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes an account and writes it to the store.
+     *
+     * @param record the account to save
+     * @throws UncheckedIOException if the store's log cannot be written
+     * @requires record != null
+     * @modifies this
+     * @effects stores the encoded account under its username
+     */
+    @Override
+    public synchronized void save(AccountRecord record) {
+        try {
+            store.put(record.getUsername(), encode(record));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes several accounts and writes them to the store.
+     *
+     * @param records the accounts to save
+     * @throws UncheckedIOException if the store's log cannot be written
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects stores every encoded account under its username
+     */
+    @Override
+    public synchronized void saveAll(List<AccountRecord> records) {
+        for (AccountRecord record : records) {
+            save(record);
+        }
+    }
+
+    /**
+     * Deletes the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return true if an account was deleted, false otherwise
+     * @throws UncheckedIOException if the store cannot be read or its log cannot be written
+     * @requires username != null
+     * @modifies this
+     * @effects writes a tombstone for the username
+     */
+    @Override
+    public synchronized boolean delete(String username) {
+        try {
+            boolean existed = store.get(username) != null;
+            store.delete(username);
+            return existed;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Passes every stored account, in username order, to the given action.
+     *
+     * @param action the action to apply to each account
+     * @throws UncheckedIOException if the store cannot be read
+     * @requires action != null
+     * @effects applies the action to every stored account
+     */
+    @Override
+    public void forEach(Consumer<AccountRecord> action) {
+        try {
+            store.scan((username, value) -> action.accept(AccountRecordCodec.decode(ByteBuffer.wrap(value))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of stored accounts by scanning the store.
+     *
+     * @return the number of stored accounts
+     * @throws UncheckedIOException if the store cannot be read
+     */
+    @Override
+    public int size() {
+        int[] count = new int[1];
+        try {
+            store.scan((username, value) -> count[0]++);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count[0];
+    }
+
+    /**
+     * Writes the account with its new balance and level to the store.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @param level the level of the customer after the operation
+     * @throws UncheckedIOException if the store cannot be read or its log cannot be written
+     * @requires username != null && operation != null && balance != null && AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects stores the account with the new balance and level, if it is stored
+     */
+    @Override
+    public synchronized void updateBalance(String username, Operation operation, double amount, double fee, DoubleSupplier balance, String level) {
+        AccountRecord record = load(username);
+        if (record != null) {
+            double stored = JournalRecord.balanceAfter(operation, amount, fee, record.getBalance(), balance.getAsDouble());
+            save(record.withBalance(stored, AccountRecord.levelOf(stored)));
+        }
+    }
+
+    /**
+     * Rewrites several accounts with their new balances and levels, holding the engine's lock throughout.
+     * Each account is logged by the store separately, so a crash can keep only some of the changes.
+     *
+     * @param changes the operations applied, each with the balance of its account after it
+     * @throws UncheckedIOException if the store cannot be read or its log cannot be written
+     * @requires changes != null && changes does not contain null
+     * @modifies this
+     * @effects writes the changed accounts with their new balances and levels, with no reader seeing only some of them
+     */
+    @Override
+    public synchronized void updateBalances(List<JournalRecord> changes) {
+        for (JournalRecord change : changes) {
+            AccountRecord record = load(change.getUsername());
+            if (record != null) {
+                double stored = change.balanceAfter(record.getBalance());
+                save(record.withBalance(stored, AccountRecord.levelOf(stored)));
+            }
+        }
+    }
+
+    /**
+     * Closes the store.
+     *
+     * @modifies this
+     * @effects closes the store, leaving its unflushed writes in its log
+     */
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * Encodes an account into a new array, growing the shared buffer for unusually long records.
+     */
+    private byte[] encode(AccountRecord record) {
+        buffer.clear();
+        try {
+            AccountRecordCodec.encode(record, buffer);
+        } catch (BufferOverflowException e) {
+            buffer = ByteBuffer.allocate(AccountRecordCodec.MAX_RECORD_BYTES);
+            AccountRecordCodec.encode(record, buffer);
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Returns a string representation of the LsmStorageEngine.
+     *
+     * @return a string representation of the LsmStorageEngine
+     * @effects returns a string that represents the LsmStorageEngine
+     */
+    @Override
+    public String toString() {
+        return "LsmStorageEngine over " + store;
+    }
+
+    /**
+     * Checks the representation invariant of the LsmStorageEngine.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return store != null && store.repOk();
+    }
+}
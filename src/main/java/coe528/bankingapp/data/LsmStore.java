@@ -0,0 +1,782 @@
+package coe528.bankingapp.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Overview: LsmStore is a mutable class that implements an embedded log-structured merge store of byte values keyed by
+ * String. Writes go to a write-ahead log and an in-memory memtable sorted by key. A full memtable is frozen and
+ * flushed by a background thread into an immutable SSTable, and a second background thread merges runs of
+ * similar-sized tables into one (size-tiered compaction), so a write never rewrites existing data in place.
+ * A lookup checks the memtable, then the frozen memtable, then the tables from newest to oldest, skipping tables
+ * whose Bloom filter rules the key out. Deleting a key writes a tombstone, which compaction drops once it reaches the
+ * oldest table.
+ *
+ * The live tables are listed, oldest first, in a manifest file replaced atomically on every flush and compaction, so a
+ * crash leaves either the old or the new set of tables; table files not in the manifest are deleted on opening.
+ * Each memtable has its own log file "wal-%08d.log", deleted once the memtable's table is in the manifest, and the
+ * logs left by a crash are replayed and flushed on opening. A log frame is [int length][int CRC32][short key length]
+ * [key UTF-8 bytes][int value length][value bytes]; a torn frame at the end of a log is ignored.
+ *
+ * Abstraction Function:
+ * Represents the map from key to value obtained by applying, from oldest to newest, the entries of the tables in
+ * 'tables', then of 'flushing', then of 'active', where a tombstone removes its key.
+ *
+ * Representation Invariant:
+ * The 'directory', 'active', 'tables', 'flusher' and 'compactor' fields must be non-null, 'memtableBytes' and
+ * 'compactionThreshold' must be positive, and 'wal' must be open unless the store is closed.
+ */
+public class LsmStore implements Closeable {
+    // Logger for flush and compaction reports
+    private static final Logger LOGGER = Logger.getLogger(LsmStore.class.getName());
+    // Name of the manifest listing the live tables, and the marker at its start
+    private static final String MANIFEST_NAME = "tables.idx";
+    private static final int MANIFEST_MAGIC = 0x4C534D31;
+    // Largest number of tables merged by one compaction
+    private static final int MAX_COMPACTION_RUN = 32;
+    // Estimated memory used by a memtable entry besides its key and value
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * Overview: EntryConsumer is an interface for code that receives the entries of a scan.
+     */
+    public interface EntryConsumer {
+        /**
+         * Receives one entry.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry
+         * @throws IOException if the entry cannot be processed
+         */
+        void accept(String key, byte[] value) throws IOException;
+    }
+
+    // The directory holding the logs, tables and manifest
+    private final File directory;
+    // The memtable size at which it is flushed
+    private final long memtableBytes;
+    // The number of similar-sized tables that triggers a compaction
+    private final int compactionThreshold;
+    // True to force the log to disk after every write
+    private final boolean syncWrites;
+
+    // Guards the log and the swapping of memtables
+    private final Object writeLock = new Object();
+    // The memtable receiving writes
+    private volatile Memtable active;
+    // The memtable being flushed, or null
+    private volatile Memtable flushing;
+    // The log of the active memtable, and the buffer frames are built in
+    private FileChannel wal;
+    private ByteBuffer walBuffer = ByteBuffer.allocate(1024);
+    // The number of the next log file
+    private long nextWalId;
+    // Guards 'tables' and the manifest
+    private final ReentrantReadWriteLock tablesLock = new ReentrantReadWriteLock();
+    // The live tables, oldest first
+    private final List<SSTable> tables = new ArrayList<>();
+    // The number of the next table file
+    private final AtomicLong nextTableId = new AtomicLong();
+    // The background threads flushing memtables and compacting tables
+    private final ScheduledExecutorService flusher;
+    private final ScheduledExecutorService compactor;
+    // True once the store is closed
+    private volatile boolean closed;
+    // Statistics of the store
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist.
+     * Logs left by an earlier run are replayed and flushed into a table before the store is returned.
+     *
+     * @param directory the directory holding the store
+     * @param memtableBytes the memtable size at which it is flushed
+     * @param compactionThreshold the number of similar-sized tables that triggers a compaction
+     * @param syncWrites true to force the log to disk after every write
+     * @throws IOException if the store cannot be opened or its manifest is corrupt
+     * @requires directory != null && memtableBytes > 0 && compactionThreshold > 1
+     * @effects opens the store, deletes files left by interrupted flushes and compactions and recovers the logs
+     */
+    public LsmStore(File directory, long memtableBytes, int compactionThreshold, boolean syncWrites) throws IOException {
+        this.directory = directory;
+        this.memtableBytes = memtableBytes;
+        this.compactionThreshold = compactionThreshold;
+        this.syncWrites = syncWrites;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        List<Long> liveIds = readManifest();
+        long maxTableId = -1;
+        for (long id : liveIds) {
+            tables.add(new SSTable(tableFile(id)));
+            maxTableId = Math.max(maxTableId, id);
+        }
+        Set<String> live = new HashSet<>();
+        for (SSTable table : tables) {
+            live.add(table.getFile().getName());
+        }
+        List<Long> walIds = new ArrayList<>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (name.startsWith("table-") && !live.contains(name)) {
+                file.delete(); // Left by an interrupted flush or compaction
+            } else if (name.startsWith("wal-") && name.endsWith(".log")) {
+                walIds.add(Long.parseLong(name.substring(4, name.length() - 4)));
+            }
+        }
+        nextTableId.set(maxTableId + 1);
+        Collections.sort(walIds);
+        Memtable recovered = new Memtable(-1);
+        for (long id : walIds) {
+            replayWal(walFile(id), recovered);
+        }
+        nextWalId = walIds.isEmpty() ? 0 : walIds.get(walIds.size() - 1) + 1;
+        active = new Memtable(nextWalId);
+        wal = openWal(nextWalId++);
+        if (!recovered.entries.isEmpty()) {
+            installFlushed(writeTable(recovered.entries));
+            LOGGER.info("Recovered " + recovered.entries.size() + " keys from " + walIds.size() + " logs in " + directory);
+        }
+        for (long id : walIds) {
+            walFile(id).delete();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "lsm-flush"));
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "lsm-compaction"));
+        compactor.execute(this::compact);
+    }
+
+    /**
+     * Looks up the value of a key.
+     *
+     * @param key the key to look up
+     * @return the value of the key, or null if the key is absent or deleted
+     * @throws IOException if a table cannot be read
+     * @throws IllegalStateException if the store is closed
+     * @requires key != null
+     */
+    public byte[] get(String key) throws IOException {
+        ensureOpen();
+        byte[] value = active.entries.get(key);
+        if (value == null) {
+            Memtable frozen = flushing;
+            value = frozen == null ? null : frozen.entries.get(key);
+        }
+        if (value == null) {
+            tablesLock.readLock().lock();
+            try {
+                for (int i = tables.size() - 1; i >= 0 && value == null; i--) {
+                    value = tables.get(i).get(key);
+                }
+            } finally {
+                tablesLock.readLock().unlock();
+            }
+        }
+        return value == null || value.length == 0 ? null : value;
+    }
+
+    /**
+     * Stores the value of a key.
+     *
+     * @param key the key to store
+     * @param value the value of the key
+     * @throws IOException if the write-ahead log cannot be written
+     * @throws IllegalArgumentException if the value is empty
+     * @throws IllegalStateException if the store is closed
+     * @requires key != null && value != null
+     * @modifies this
+     * @effects logs the write and adds it to the memtable, freezing the memtable for flushing if it is full
+     */
+    public void put(String key, byte[] value) throws IOException {
+        if (value.length == 0) {
+            throw new IllegalArgumentException("Values must not be empty");
+        }
+        write(key, value);
+    }
+
+    /**
+     * Deletes a key.
+     *
+     * @param key the key to delete
+     * @throws IOException if the write-ahead log cannot be written
+     * @throws IllegalStateException if the store is closed
+     * @requires key != null
+     * @modifies this
+     * @effects logs a tombstone for the key and adds it to the memtable
+     */
+    public void delete(String key) throws IOException {
+        write(key, SSTable.TOMBSTONE);
+    }
+
+    /**
+     * Passes every live key and its value, in key order, to the given consumer.
+     * Flushes and compactions keep running during the scan, but cannot replace the tables until it ends.
+     *
+     * @param consumer the consumer of the entries
+     * @throws IOException if a table cannot be read or the consumer fails
+     * @throws IllegalStateException if the store is closed
+     * @requires consumer != null
+     */
+    public void scan(EntryConsumer consumer) throws IOException {
+        ensureOpen();
+        tablesLock.readLock().lock();
+        try {
+            List<Source> sources = new ArrayList<>();
+            sources.add(new MemtableSource(active));
+            Memtable frozen = flushing;
+            if (frozen != null) {
+                sources.add(new MemtableSource(frozen));
+            }
+            for (int i = tables.size() - 1; i >= 0; i--) {
+                sources.add(new TableSource(tables.get(i)));
+            }
+            merge(sources, false, consumer);
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of live tables.
+     *
+     * @return the number of tables
+     */
+    public int getTableCount() {
+        tablesLock.readLock().lock();
+        try {
+            return tables.size();
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for the background flushes and compactions to close, then closes the log and the tables.
+     * The active memtable is not flushed; its log is replayed when the store is opened again.
+     *
+     * @modifies this
+     * @effects closes the store
+     */
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        for (ScheduledExecutorService executor : new ScheduledExecutorService[] {flusher, compactor}) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            try {
+                wal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        tablesLock.writeLock().lock();
+        try {
+            for (SSTable table : tables) {
+                table.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Logs a write and applies it to the active memtable, freezing the memtable once it is full.
+     */
+    private void write(String key, byte[] value) throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            appendWal(key, value);
+            byte[] previous = active.entries.put(key, value);
+            long delta = previous == null ? key.length() * 2L + value.length + ENTRY_OVERHEAD : value.length - previous.length;
+            if (active.bytes.addAndGet(delta) >= memtableBytes) {
+                freeze();
+            }
+        }
+    }
+
+    /**
+     * Freezes the active memtable, starts a new one with its own log and schedules the flush of the frozen one.
+     * Waits while the previous frozen memtable is still being flushed, which slows writers down to the flush rate.
+     */
+    private void freeze() throws IOException {
+        boolean interrupted = false;
+        while (flushing != null) {
+            try {
+                writeLock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        Memtable full = active;
+        FileChannel fullWal = wal;
+        wal = openWal(nextWalId);
+        flushing = full;
+        active = new Memtable(nextWalId++);
+        fullWal.close();
+        flusher.execute(() -> flush(full));
+    }
+
+    /**
+     * Flushes a frozen memtable into a table, retrying after a second if the table cannot be written.
+     */
+    private void flush(Memtable memtable) {
+        try {
+            installFlushed(writeTable(memtable.entries));
+            walFile(memtable.walId).delete();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Flush of memtable " + memtable.walId + " failed; retrying", e);
+            try {
+                flusher.schedule(() -> flush(memtable), 1, TimeUnit.SECONDS);
+            } catch (RejectedExecutionException rejected) {
+                LOGGER.warning("Store closed with an unflushed memtable; its log is replayed on opening");
+            }
+            return;
+        }
+        synchronized (writeLock) {
+            flushing = null;
+            writeLock.notifyAll();
+        }
+        try {
+            compactor.execute(this::compact);
+        } catch (RejectedExecutionException e) {
+            // The store is closing
+        }
+    }
+
+    /**
+     * Adds a newly flushed table as the newest table and saves the manifest.
+     */
+    private void installFlushed(SSTable table) throws IOException {
+        tablesLock.writeLock().lock();
+        try {
+            tables.add(table);
+            writeManifest();
+        } finally {
+            tablesLock.writeLock().unlock();
+        }
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * Merges the first run of at least compactionThreshold consecutive tables of the same size tier into one table,
+     * and schedules itself again in case another run is ready.
+     */
+    private void compact() {
+        if (closed) {
+            return;
+        }
+        List<SSTable> run = null;
+        boolean oldest = false;
+        tablesLock.readLock().lock();
+        try {
+            int start = 0;
+            while (start < tables.size() && run == null) {
+                int tier = tierOf(tables.get(start));
+                int end = start + 1;
+                while (end < tables.size() && tierOf(tables.get(end)) == tier && end - start < MAX_COMPACTION_RUN) {
+                    end++;
+                }
+                if (end - start >= compactionThreshold) {
+                    run = new ArrayList<>(tables.subList(start, end));
+                    oldest = start == 0;
+                }
+                start = end;
+            }
+        } finally {
+            tablesLock.readLock().unlock();
+        }
+        if (run == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        long expected = 0;
+        List<Source> sources = new ArrayList<>();
+        for (int i = run.size() - 1; i >= 0; i--) {
+            expected += run.get(i).getEntryCount();
+            sources.add(new TableSource(run.get(i)));
+        }
+        SSTable.Writer writer = null;
+        try {
+            writer = new SSTable.Writer(tableFile(nextTableId.getAndIncrement()), (int) Math.min(expected, Integer.MAX_VALUE));
+            merge(sources, !oldest, writer::add); // Tombstones can only be dropped once nothing older is left
+            SSTable merged = writer.finish();
+            writer = null;
+            tablesLock.writeLock().lock();
+            try {
+                int position = tables.indexOf(run.get(0));
+                tables.subList(position, position + run.size()).clear();
+                tables.add(position, merged);
+                writeManifest();
+                for (SSTable table : run) {
+                    table.close();
+                    table.getFile().delete();
+                }
+            } finally {
+                tablesLock.writeLock().unlock();
+            }
+            compactions.incrementAndGet();
+            LOGGER.info(String.format("Compacted %d tables into %s in %.1f ms", run.size(), merged.getFile().getName(),
+                    (System.nanoTime() - started) / 1e6));
+        } catch (IOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            LOGGER.log(Level.WARNING, "Compaction failed", e);
+            return;
+        }
+        try {
+            compactor.execute(this::compact);
+        } catch (RejectedExecutionException e) {
+            // The store is closing
+        }
+    }
+
+    /**
+     * Returns the size tier of a table: tables within a factor of four of each other share a tier.
+     */
+    private int tierOf(SSTable table) {
+        long units = Math.max(1, table.getSize() / memtableBytes);
+        return (63 - Long.numberOfLeadingZeros(units)) / 2;
+    }
+
+    /**
+     * Writes the entries of a memtable into a new table.
+     */
+    private SSTable writeTable(Map<String, byte[]> entries) throws IOException {
+        SSTable.Writer writer = new SSTable.Writer(tableFile(nextTableId.getAndIncrement()), entries.size());
+        try {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes the entries of several sorted sources, newest source first, to the consumer in key order.
+     * For a key in several sources only the newest entry is passed, and tombstones are passed only if asked for.
+     */
+    private static void merge(List<Source> sources, boolean keepTombstones, EntryConsumer consumer) throws IOException {
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> {
+            int comparison = sources.get(a).key().compareTo(sources.get(b).key());
+            return comparison != 0 ? comparison : Integer.compare(a, b);
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).next()) {
+                heads.add(i);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int newest = heads.poll();
+            Source source = sources.get(newest);
+            String key = source.key();
+            byte[] value = source.value();
+            while (!heads.isEmpty() && sources.get(heads.peek()).key().equals(key)) {
+                int shadowed = heads.poll(); // An older entry for the same key
+                if (sources.get(shadowed).next()) {
+                    heads.add(shadowed);
+                }
+            }
+            if (keepTombstones || value.length > 0) {
+                consumer.accept(key, value);
+            }
+            if (source.next()) {
+                heads.add(newest);
+            }
+        }
+    }
+
+    /**
+     * Appends one frame to the active log.
+     */
+    private void appendWal(String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int payload = 2 + keyBytes.length + 4 + value.length;
+        if (walBuffer.capacity() < 8 + payload) {
+            walBuffer = ByteBuffer.allocate(Math.max(8 + payload, walBuffer.capacity() * 2));
+        }
+        walBuffer.clear();
+        walBuffer.position(8);
+        walBuffer.putShort((short) keyBytes.length).put(keyBytes).putInt(value.length).put(value);
+        CRC32 checksum = new CRC32();
+        checksum.update(walBuffer.array(), 8, payload);
+        walBuffer.putInt(0, payload).putInt(4, (int) checksum.getValue());
+        walBuffer.flip();
+        while (walBuffer.hasRemaining()) {
+            wal.write(walBuffer);
+        }
+        if (syncWrites) {
+            wal.force(false);
+        }
+    }
+
+    /**
+     * Replays the frames of a log into a memtable, stopping at the first torn or corrupt frame.
+     */
+    private static void replayWal(File file, Memtable memtable) throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        while (log.remaining() >= 8) {
+            int payload = log.getInt();
+            int crc = log.getInt();
+            if (payload < 6 || payload > log.remaining()) {
+                break;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(log.array(), log.position(), payload);
+            if ((int) checksum.getValue() != crc) {
+                break;
+            }
+            byte[] key = new byte[log.getShort() & 0xFFFF];
+            log.get(key);
+            byte[] value = new byte[log.getInt()];
+            log.get(value);
+            memtable.entries.put(new String(key, StandardCharsets.UTF_8), value.length == 0 ? SSTable.TOMBSTONE : value);
+        }
+        if (log.hasRemaining()) {
+            LOGGER.warning("Ignoring a torn tail of " + log.remaining() + " bytes in " + file);
+        }
+    }
+
+    /**
+     * Reads the ids of the live tables from the manifest, oldest first.
+     */
+    private List<Long> readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST_NAME);
+        List<Long> ids = new ArrayList<>();
+        if (!manifest.exists()) {
+            return ids;
+        }
+        byte[] bytes = Files.readAllBytes(manifest.toPath());
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes, 0, Math.max(0, bytes.length - 4));
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("Not an LSM manifest: " + manifest);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ids.add(in.readLong());
+            }
+            if (in.readInt() != (int) checksum.getValue()) {
+                throw new IOException("Corrupt LSM manifest: " + manifest);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated LSM manifest: " + manifest, e);
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces the manifest with the ids of the live tables, through a temporary file and an atomic move.
+     */
+    private void writeManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST_NAME);
+        File temporary = new File(directory, MANIFEST_NAME + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeInt(tables.size());
+        for (SSTable table : tables) {
+            String name = table.getFile().getName();
+            out.writeLong(Long.parseLong(name.substring(6, name.length() - 4)));
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+        out.writeInt((int) checksum.getValue());
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        }
+        Files.move(temporary.toPath(), manifest.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Opens a new log file for appending.
+     */
+    private FileChannel openWal(long id) throws IOException {
+        return FileChannel.open(walFile(id).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns the file of the log with the given id.
+     */
+    private File walFile(long id) {
+        return new File(directory, String.format("wal-%08d.log", id));
+    }
+
+    /**
+     * Returns the file of the table with the given id.
+     */
+    private File tableFile(long id) {
+        return new File(directory, String.format("table-%08d.sst", id));
+    }
+
+    /**
+     * Throws an IllegalStateException if the store is closed.
+     */
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("LSM store is closed");
+        }
+    }
+
+    /**
+     * Creates a daemon thread for a background executor.
+     */
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Overview: Memtable is a mutable class holding the recent writes of one log, sorted by key.
+     */
+    private static final class Memtable {
+        // The entries, with tombstones for deleted keys
+        final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+        // The estimated memory used by the entries
+        final AtomicLong bytes = new AtomicLong();
+        // The id of the memtable's log
+        final long walId;
+
+        Memtable(long walId) {
+            this.walId = walId;
+        }
+    }
+
+    /**
+     * Overview: Source is an interface for a sorted sequence of entries taking part in a merge.
+     */
+    private interface Source {
+        boolean next() throws IOException;
+
+        String key();
+
+        byte[] value();
+    }
+
+    /**
+     * Overview: MemtableSource is a mutable class walking the entries of a memtable in key order.
+     */
+    private static final class MemtableSource implements Source {
+        // The iterator over the memtable's entries, and the current entry
+        private final Iterator<Map.Entry<String, byte[]>> iterator;
+        private Map.Entry<String, byte[]> current;
+
+        MemtableSource(Memtable memtable) {
+            iterator = memtable.entries.entrySet().iterator();
+        }
+
+        public boolean next() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return current != null;
+        }
+
+        public String key() {
+            return current.getKey();
+        }
+
+        public byte[] value() {
+            return current.getValue();
+        }
+    }
+
+    /**
+     * Overview: TableSource is a mutable class walking the entries of a table in key order.
+     */
+    private static final class TableSource implements Source {
+        // The cursor over the table
+        private final SSTable.Cursor cursor;
+
+        TableSource(SSTable table) {
+            cursor = table.cursor();
+        }
+
+        public boolean next() throws IOException {
+            return cursor.next();
+        }
+
+        public String key() {
+            return cursor.getKey();
+        }
+
+        public byte[] value() {
+            return cursor.getValue();
+        }
+    }
+
+    /**
+     * Returns a string representation of the LsmStore.
+     *
+     * @return a string representation of the LsmStore
+     * @effects returns a string that represents the LsmStore
+     */
+    @Override
+    public String toString() {
+        return "LsmStore in " + directory + " with " + getTableCount() + " tables, " + flushes.get() + " flushes and "
+                + compactions.get() + " compactions";
+    }
+
+    /**
+     * Checks the representation invariant of the LsmStore.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return directory != null && active != null && flusher != null && compactor != null
+                && memtableBytes > 0 && compactionThreshold > 0 && (closed || wal.isOpen());
+    }
+}
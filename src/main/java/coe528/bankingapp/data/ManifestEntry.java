@@ -0,0 +1,172 @@
+package coe528.bankingapp.data;
+
+/**
+ * Overview: ManifestEntry is an immutable class that represents the manifest's summary of one customer record.
+ * A ManifestEntry has the username and password of the customer, the name of the file holding the customer record,
+ * the customer number, the balance written in that file, the current balance and the customer level.
+ *
+ * Abstraction Function:
+ * Represents the customer 'username' whose record is stored in 'fileName' with 'fileBalance' as its balance, and whose
+ * account currently holds 'balance' at level 'level' under 'customerNumber'.
+ *
+ * Representation Invariant:
+ * The 'username', 'password', 'fileName' and 'level' fields must be non-null and 'customerNumber' must be non-negative.
+ */
+public final class ManifestEntry {
+    // The username of the customer
+    private final String username;
+    // The password of the customer
+    private final String password;
+    // The name of the file holding the customer record
+    private final String fileName;
+    // The number of the customer
+    private final int customerNumber;
+    // The balance written in the customer file, which the journal is replayed on top of
+    private final double fileBalance;
+    // The current balance of the account
+    private final double balance;
+    // The level of the customer
+    private final String level;
+
+    /**
+     * Constructs a new ManifestEntry.
+     *
+     * @param username the username of the customer
+     * @param password the password of the customer
+     * @param fileName the name of the file holding the customer record
+     * @param customerNumber the number of the customer
+     * @param fileBalance the balance written in the customer file
+     * @param balance the current balance of the account
+     * @param level the level of the customer
+     * @requires username != null && password != null && fileName != null && level != null && customerNumber >= 0
+     */
+    public ManifestEntry(String username, String password, String fileName, int customerNumber, double fileBalance, double balance, String level) {
+        this.username = username;
+        this.password = password;
+        this.fileName = fileName;
+        this.customerNumber = customerNumber;
+        this.fileBalance = fileBalance;
+        this.balance = balance;
+        this.level = level;
+    }
+
+    /**
+     * Returns the username of the customer.
+     *
+     * @return the username of the customer
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Returns the password of the customer.
+     *
+     * @return the password of the customer
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Returns the name of the file holding the customer record.
+     *
+     * @return the name of the customer file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the number of the customer.
+     *
+     * @return the number of the customer
+     */
+    public int getCustomerNumber() {
+        return customerNumber;
+    }
+
+    /**
+     * Returns the balance written in the customer file.
+     *
+     * @return the balance written in the customer file
+     */
+    public double getFileBalance() {
+        return fileBalance;
+    }
+
+    /**
+     * Returns the current balance of the account.
+     *
+     * @return the current balance of the account
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Returns the level of the customer.
+     *
+     * @return the level of the customer
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns a copy of this entry with the given current balance and level.
+     *
+     * @param newBalance the new current balance
+     * @param newLevel the new level
+     * @return an entry that differs from this one only in current balance and level
+     * @requires newLevel != null
+     */
+    public ManifestEntry withBalance(double newBalance, String newLevel) {
+        return new ManifestEntry(username, password, fileName, customerNumber, fileBalance, newBalance, newLevel);
+    }
+
+    /**
+     * Returns a copy of this entry with the given password, customer file and balance in that file.
+     *
+     * @param newPassword the new password
+     * @param newFileName the new customer file name
+     * @param newFileBalance the new balance recorded in the customer file
+     * @return an entry that differs from this one only in password, file name and file balance
+     * @requires newPassword != null && newFileName != null
+     */
+    public ManifestEntry withFile(String newPassword, String newFileName, double newFileBalance) {
+        return new ManifestEntry(username, newPassword, newFileName, customerNumber, newFileBalance, balance, level);
+    }
+
+    /**
+     * Returns a copy of this entry with the given customer number.
+     *
+     * @param newCustomerNumber the new customer number
+     * @return an entry that differs from this one only in customer number
+     * @requires newCustomerNumber >= 0
+     */
+    public ManifestEntry withCustomerNumber(int newCustomerNumber) {
+        return new ManifestEntry(username, password, fileName, newCustomerNumber, fileBalance, balance, level);
+    }
+
+    /**
+     * Returns a string representation of the ManifestEntry.
+     *
+     * @return a string representation of the ManifestEntry
+     * @effects returns a string that represents the ManifestEntry
+     */
+    @Override
+    public String toString() {
+        return "Username: " + username + ", File: " + fileName + ", Customer Number: " + customerNumber + ", Balance: $" + balance + ", Level: " + level;
+    }
+
+    /**
+     * Checks the representation invariant of the ManifestEntry.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return username != null && password != null && fileName != null && level != null && customerNumber >= 0;
+    }
+}
@@ -0,0 +1,399 @@
+package coe528.bankingapp.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Overview: MappedAccountStore is a mutable class that stores every account in one memory-mapped file of fixed-width slots.
+ * The slot of an account is addressed by its customer number, so reading or updating a balance is a single in-place
+ * access to the mapping with no per-customer file handle and no string parsing. Slots freed by removing an account are
+ * kept on a free-slot list and handed out again by allocateSlot.
+ *
+ * The file starts with a header [int magic][int version][int slot size] padded to HEADER_BYTES, followed by the slots.
+ * Each slot is laid out as [byte state][byte level ordinal][int customer number][double balance]
+ * [byte username length][username UTF-8 bytes][byte password length][password UTF-8 bytes], padded to SLOT_BYTES.
+ *
+ * Abstraction Function:
+ * Represents the set of AccountRecords stored in the used slots of 'file', where 'slots' maps username to slot number
+ * and 'freeSlots' holds the unused slots below 'highWater'.
+ *
+ * Representation Invariant:
+ * The 'channel', 'mapping', 'slots' and 'freeSlots' fields must be non-null, every slot in 'slots' must be below 'highWater',
+ * and no slot may be both used and free.
+ */
+public class MappedAccountStore implements Closeable {
+    // Marks the file as an account store
+    private static final int MAGIC = 0x42414E4B;
+    // Version of the slot layout
+    private static final int VERSION = 1;
+    // Size of the file header
+    private static final int HEADER_BYTES = 64;
+    // Size of one slot
+    public static final int SLOT_BYTES = 128;
+    // Longest username or password, in UTF-8 bytes
+    public static final int MAX_STRING_BYTES = 55;
+    // Offsets of the fields inside a slot
+    private static final int STATE_OFFSET = 0;
+    private static final int LEVEL_OFFSET = 1;
+    private static final int NUMBER_OFFSET = 2;
+    private static final int BALANCE_OFFSET = 6;
+    private static final int USERNAME_OFFSET = 14;
+    private static final int PASSWORD_OFFSET = USERNAME_OFFSET + 1 + MAX_STRING_BYTES;
+    // Slot states
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+
+    // The file backing the store
+    private final File file;
+    // The channel of the file
+    private final FileChannel channel;
+    // The current mapping of the whole file
+    private MappedByteBuffer mapping;
+    // The number of slots in the current mapping
+    private int capacity;
+    // One more than the highest slot ever used
+    private int highWater;
+    // The slot of every stored account, keyed by username
+    private final Map<String, Integer> slots = new HashMap<>();
+    // The free slots below highWater, most recently freed first
+    private final Deque<Integer> freeList = new ArrayDeque<>();
+    // Membership of freeList, since slots taken directly by put stay in the deque until popped
+    private final BitSet freeSlots = new BitSet();
+
+    /**
+     * Opens the store in the given file, creating it with the given capacity if it does not exist.
+     *
+     * @param file the file backing the store
+     * @param initialCapacity the number of slots to map when the file is created
+     * @throws IOException if the file cannot be opened, is not an account store or has another slot layout version
+     * @requires file != null && initialCapacity > 0
+     * @effects opens the store and rebuilds the username index and the free-slot list from the used slots
+     */
+    public MappedAccountStore(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() < HEADER_BYTES;
+        int slotCount = created ? initialCapacity : (int) ((channel.size() - HEADER_BYTES) / SLOT_BYTES);
+        map(Math.max(slotCount, 1));
+        if (created) {
+            mapping.putInt(0, MAGIC);
+            mapping.putInt(4, VERSION);
+            mapping.putInt(8, SLOT_BYTES);
+        } else if (mapping.getInt(0) != MAGIC || mapping.getInt(8) != SLOT_BYTES) {
+            channel.close();
+            throw new IOException("Not an account store: " + file);
+        } else if (mapping.getInt(4) != VERSION) {
+            int version = mapping.getInt(4);
+            channel.close();
+            throw new IOException("Unsupported account store version " + version + " in " + file + ", expected " + VERSION);
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            if (mapping.get(offset(slot) + STATE_OFFSET) == USED) {
+                slots.put(readString(offset(slot) + USERNAME_OFFSET), slot);
+                highWater = slot + 1;
+            }
+        }
+        for (int slot = highWater - 1; slot >= 0; slot--) {
+            if (mapping.get(offset(slot) + STATE_OFFSET) == FREE) {
+                freeList.push(slot);
+                freeSlots.set(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns a slot that is not in use, preferring slots freed by removed accounts.
+     * The slot stays free until an account is put into it.
+     *
+     * @return the number of an unused slot
+     * @effects returns the most recently freed slot, or the first slot past the highest slot ever used
+     */
+    public synchronized int allocateSlot() {
+        while (!freeList.isEmpty()) {
+            int slot = freeList.peek();
+            if (freeSlots.get(slot)) {
+                return slot;
+            }
+            freeList.pop();
+        }
+        return highWater;
+    }
+
+    /**
+     * Stores the given account in the slot addressed by its customer number, replacing what was there.
+     *
+     * @param record the account to store
+     * @throws IOException if the file cannot be grown
+     * @throws IllegalArgumentException if the username or password is longer than MAX_STRING_BYTES
+     * @throws IllegalStateException if the slot is used by a different account
+     * @requires record != null && record.getCustomerNumber() >= 0
+     * @modifies this
+     * @effects writes the account into its slot, growing the file if the slot is past the end, and frees the slot the
+     *          account was in before if that was another one; if an exception is thrown the store is unchanged
+     */
+    public synchronized void put(AccountRecord record) throws IOException {
+        byte[] username = record.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] password = record.getPassword().getBytes(StandardCharsets.UTF_8);
+        if (username.length > MAX_STRING_BYTES || password.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Username and password must be at most " + MAX_STRING_BYTES + " bytes");
+        }
+        int slot = record.getCustomerNumber();
+        Integer previous = slots.get(record.getUsername());
+        boolean moving = previous == null || previous != slot;
+        if (moving && slot < capacity && mapping.get(offset(slot) + STATE_OFFSET) == USED) {
+            throw new IllegalStateException("Slot " + slot + " is used by " + readString(offset(slot) + USERNAME_OFFSET));
+        }
+        if (slot >= capacity) {
+            map(Math.max(slot + 1, capacity * 2));
+        }
+        if (previous != null && moving) {
+            clearSlot(previous);
+        }
+        int base = offset(slot);
+        mapping.put(base + LEVEL_OFFSET, (byte) record.getLevelOrdinal());
+        mapping.putInt(base + NUMBER_OFFSET, slot);
+        mapping.putDouble(base + BALANCE_OFFSET, record.getBalance());
+        writeString(base + USERNAME_OFFSET, username);
+        writeString(base + PASSWORD_OFFSET, password);
+        mapping.put(base + STATE_OFFSET, USED);
+        slots.put(record.getUsername(), slot);
+        freeSlots.clear(slot);
+        highWater = Math.max(highWater, slot + 1);
+    }
+
+    /**
+     * Returns the account stored in the given slot.
+     *
+     * @param customerNumber the slot of the account
+     * @return the stored account, or null if the slot is not used
+     */
+    public synchronized AccountRecord get(int customerNumber) {
+        if (customerNumber < 0 || customerNumber >= highWater) {
+            return null;
+        }
+        int base = offset(customerNumber);
+        if (mapping.get(base + STATE_OFFSET) != USED) {
+            return null;
+        }
+        return new AccountRecord(readString(base + USERNAME_OFFSET), readString(base + PASSWORD_OFFSET),
+                mapping.getDouble(base + BALANCE_OFFSET), AccountRecord.LEVELS.get(mapping.get(base + LEVEL_OFFSET)), customerNumber);
+    }
+
+    /**
+     * Returns the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the stored account, or null if there is none
+     * @requires username != null
+     */
+    public synchronized AccountRecord get(String username) {
+        Integer slot = slots.get(username);
+        return slot == null ? null : get(slot);
+    }
+
+    /**
+     * Returns the slot holding the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the slot of the account, or -1 if there is none
+     * @requires username != null
+     */
+    public synchronized int slotOf(String username) {
+        Integer slot = slots.get(username);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Returns the balance stored in the given slot.
+     *
+     * @param customerNumber the slot of the account
+     * @return the balance of the account
+     * @throws IllegalArgumentException if the slot is not used
+     */
+    public synchronized double getBalance(int customerNumber) {
+        return mapping.getDouble(usedOffset(customerNumber) + BALANCE_OFFSET);
+    }
+
+    /**
+     * Overwrites the balance and level stored in the given slot in place.
+     *
+     * @param customerNumber the slot of the account
+     * @param balance the new balance of the account
+     * @param level the new level of the customer
+     * @throws IllegalArgumentException if the slot is not used
+     * @requires AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects updates the balance and level of the account
+     */
+    public synchronized void updateBalance(int customerNumber, double balance, String level) {
+        int base = usedOffset(customerNumber);
+        mapping.putDouble(base + BALANCE_OFFSET, balance);
+        mapping.put(base + LEVEL_OFFSET, (byte) AccountRecord.LEVELS.indexOf(level));
+    }
+
+    /**
+     * Removes the account of the customer with the given username and puts its slot on the free-slot list.
+     *
+     * @param username the username of the customer
+     * @return true if an account was removed, false otherwise
+     * @requires username != null
+     * @modifies this
+     * @effects frees the slot of the account
+     */
+    public synchronized boolean remove(String username) {
+        Integer slot = slots.get(username);
+        if (slot == null) {
+            return false;
+        }
+        clearSlot(slot);
+        return true;
+    }
+
+    /**
+     * Passes every stored account to the given consumer in slot order.
+     *
+     * @param consumer the consumer of the accounts
+     * @requires consumer != null
+     * @effects passes every stored account to the consumer
+     */
+    public synchronized void forEach(Consumer<AccountRecord> consumer) {
+        for (int slot = 0; slot < highWater; slot++) {
+            AccountRecord record = get(slot);
+            if (record != null) {
+                consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stored accounts.
+     *
+     * @return the number of stored accounts
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Writes the changes made to the mapping through to the storage device.
+     *
+     * @effects forces the mapped pages to disk
+     */
+    public synchronized void force() {
+        mapping.force();
+    }
+
+    /**
+     * Forces the mapping to disk and closes the file.
+     *
+     * @throws IOException if the file cannot be closed
+     * @modifies this
+     * @effects closes the store
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mapping.force();
+        channel.close();
+    }
+
+    /**
+     * Marks a slot as free and forgets the account that was in it.
+     */
+    private void clearSlot(int slot) {
+        int base = offset(slot);
+        slots.remove(readString(base + USERNAME_OFFSET));
+        mapping.put(base + STATE_OFFSET, FREE);
+        freeList.push(slot);
+        freeSlots.set(slot);
+    }
+
+    /**
+     * Maps the file with room for the given number of slots.
+     */
+    private void map(int slotCount) throws IOException {
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+        capacity = slotCount;
+    }
+
+    /**
+     * Returns the offset of a slot in the mapping.
+     */
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * Returns the offset of a slot, checking that it is used.
+     */
+    private int usedOffset(int slot) {
+        if (slot < 0 || slot >= highWater || mapping.get(offset(slot) + STATE_OFFSET) != USED) {
+            throw new IllegalArgumentException("No account in slot " + slot);
+        }
+        return offset(slot);
+    }
+
+    /**
+     * Writes a length-prefixed string at the given offset.
+     */
+    private void writeString(int position, byte[] bytes) {
+        mapping.put(position, (byte) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            mapping.put(position + 1 + i, bytes[i]);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed string at the given offset.
+     */
+    private String readString(int position) {
+        byte[] bytes = new byte[mapping.get(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = mapping.get(position + 1 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a string representation of the MappedAccountStore.
+     *
+     * @return a string representation of the MappedAccountStore
+     * @effects returns a string that represents the MappedAccountStore
+     */
+    @Override
+    public synchronized String toString() {
+        return "MappedAccountStore in " + file + " with " + slots.size() + " accounts in " + capacity + " slots";
+    }
+
+    /**
+     * Checks the representation invariant of the MappedAccountStore.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        if (channel == null || mapping == null) {
+            return false;
+        }
+        for (int slot : slots.values()) {
+            if (slot >= highWater || freeSlots.get(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
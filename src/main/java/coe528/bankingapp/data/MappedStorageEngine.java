@@ -0,0 +1,215 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Overview: MappedStorageEngine is a mutable class that stores accounts in a MappedAccountStore.
+ * Every account lives in a fixed-width slot of one memory-mapped file, so a balance change is a single in-place
+ * write to the mapping. Changes reach the file when the operating system writes the mapped pages back, and are
+ * forced to disk when the engine is closed; there is no journal, so a crash of the machine may lose recent changes.
+ * An account keeps its customer number as its slot if that slot is free, and otherwise is renumbered to a free slot.
+ *
+ * Abstraction Function:
+ * Represents the set of accounts stored in 'store'.
+ *
+ * Representation Invariant:
+ * The 'store' field must be non-null.
+ */
+public class MappedStorageEngine implements StorageEngine {
+    // The number of slots mapped when the store file is created
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The store holding the accounts
+    private final MappedAccountStore store;
+
+    /**
+     * Opens the engine over the given store file, creating the file if it does not exist.
+     *
+     * @param file the file backing the store
+     * @throws IOException if the file cannot be opened or is not an account store
+     * @requires file != null
+     * @effects opens the store in the file
+     */
+    public MappedStorageEngine(File file) throws IOException {
+        store = new MappedAccountStore(file, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Reads the account of the customer with the given username from its slot.
+     *
+     * @param username the username of the customer
+     * @return the stored account, or null if there is none
+     * @requires username != null
+     */
+    @Override
+    public AccountRecord load(String username) {
+        return store.get(username);
+    }
+
+    /**
+     * Writes an account into its slot.
+     *
+     * @param record the account to save
+     * @throws IllegalArgumentException if the username or password is longer than MappedAccountStore.MAX_STRING_BYTES
+     * @throws UncheckedIOException if the store file cannot be grown
+     * @requires record != null
+     * @modifies this
+     * @effects writes the account into the slot it already has, its customer number's slot if free, or a free slot
+     */
+    @Override
+    public void save(AccountRecord record) {
+        synchronized (store) {
+            int slot = store.slotOf(record.getUsername());
+            if (slot < 0) {
+                slot = store.get(record.getCustomerNumber()) == null ? record.getCustomerNumber() : store.allocateSlot();
+            }
+            try {
+                store.put(new AccountRecord(record.getUsername(), record.getPassword(), record.getBalance(), record.getLevel(), slot));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes several accounts into their slots.
+     *
+     * @param records the accounts to save
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects saves every account as save would
+     */
+    @Override
+    public void saveAll(List<AccountRecord> records) {
+        synchronized (store) {
+            for (AccountRecord record : records) {
+                save(record);
+            }
+        }
+    }
+
+    /**
+     * Frees the slot of the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return true if an account was deleted, false otherwise
+     * @requires username != null
+     * @modifies this
+     * @effects removes the account from the store
+     */
+    @Override
+    public boolean delete(String username) {
+        return store.remove(username);
+    }
+
+    /**
+     * Passes every stored account, in slot order, to the given action.
+     *
+     * @param action the action to apply to each account
+     * @requires action != null && action does not modify this engine
+     * @effects applies the action to every stored account
+     */
+    @Override
+    public void forEach(Consumer<AccountRecord> action) {
+        store.forEach(action);
+    }
+
+    /**
+     * Returns the number of stored accounts.
+     *
+     * @return the number of stored accounts
+     */
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Overwrites the balance and level of an account in its slot.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @param level the level of the customer after the operation
+     * @requires username != null && operation != null && balance != null && AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects updates the balance and level of the account in place, if it is stored
+     */
+    @Override
+    public void updateBalance(String username, Operation operation, double amount, double fee, DoubleSupplier balance, String level) {
+        synchronized (store) {
+            int slot = store.slotOf(username);
+            if (slot >= 0) {
+                double stored = JournalRecord.balanceAfter(operation, amount, fee, store.getBalance(slot), balance.getAsDouble());
+                store.updateBalance(slot, stored, AccountRecord.levelOf(stored));
+            }
+        }
+    }
+
+    /**
+     * Writes the balances and levels of several accounts into their slots, holding the store's lock throughout.
+     * The slots are written in place one after another, so a crash can keep only some of the changes.
+     *
+     * @param changes the operations applied, each with the balance of its account after it
+     * @requires changes != null && changes does not contain null
+     * @modifies this
+     * @effects writes the new balance and level of every changed account, with no reader seeing only some of them
+     */
+    @Override
+    public void updateBalances(List<JournalRecord> changes) {
+        synchronized (store) {
+            for (JournalRecord change : changes) {
+                int slot = store.slotOf(change.getUsername());
+                if (slot >= 0) {
+                    double stored = change.balanceAfter(store.getBalance(slot));
+                    store.updateBalance(slot, stored, AccountRecord.levelOf(stored));
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the mapping to disk and closes the store file.
+     *
+     * @modifies this
+     * @effects closes the store
+     */
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns a string representation of the MappedStorageEngine.
+     *
+     * @return a string representation of the MappedStorageEngine
+     * @effects returns a string that represents the MappedStorageEngine
+     */
+    @Override
+    public String toString() {
+        return "MappedStorageEngine over " + store;
+    }
+
+    /**
+     * Checks the representation invariant of the MappedStorageEngine.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return store != null && store.repOk();
+    }
+}
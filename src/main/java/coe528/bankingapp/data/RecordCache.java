@@ -0,0 +1,195 @@
+package coe528.bankingapp.data;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Overview: RecordCache is a mutable class that keeps the most recently read AccountRecords, keyed by file name, so
+ * that reading a customer file again does not touch the disk. It holds at most 'capacity' records and evicts the least
+ * recently used one when full. The write paths invalidate the record of the file they change; optionally each hit is
+ * also checked against the file's modification time and length, which catches changes made outside FileManager.
+ * A record read while an invalidation happens is not cached, so a stale record cannot replace a newer write.
+ *
+ * Abstraction Function:
+ * Represents the map from file name to the record last read from that file, for the keys of 'entries', together with
+ * the counts of hits, misses and evictions so far.
+ *
+ * Representation Invariant:
+ * The 'entries' field must be non-null, its size must not exceed 'capacity', and the counters must be non-negative.
+ */
+public class RecordCache {
+    // The largest number of cached records
+    private final int capacity;
+    // True to check the file's modification time and length on every hit
+    private final boolean validate;
+    // The cached records in least recently used order
+    private final LinkedHashMap<String, CachedRecord> entries;
+    // Incremented by every invalidation, so that reads overlapping one are not cached
+    private long stamp;
+    // Counters of the cache's effectiveness
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructs an empty RecordCache.
+     *
+     * @param capacity the largest number of cached records, or 0 to disable the cache
+     * @param validate true to check the file's modification time and length on every hit
+     * @requires capacity >= 0
+     */
+    public RecordCache(int capacity, boolean validate) {
+        this.capacity = capacity;
+        this.validate = validate;
+        this.entries = new LinkedHashMap<String, CachedRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRecord> eldest) {
+                if (size() > RecordCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached record of a file.
+     *
+     * @param filename the name of the file
+     * @param file the file, used to validate the record if validation is enabled
+     * @return the cached record, or null if there is none or it is out of date
+     * @requires filename != null && file != null
+     * @modifies this
+     * @effects counts a hit or a miss, marks the record most recently used and drops it if it is out of date
+     */
+    public synchronized AccountRecord get(String filename, File file) {
+        CachedRecord entry = entries.get(filename);
+        if (entry != null && validate && (file.lastModified() != entry.lastModified || file.length() != entry.length)) {
+            entries.remove(filename);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.record;
+    }
+
+    /**
+     * Returns the stamp to pass to put for a read starting now.
+     *
+     * @return the current invalidation stamp
+     */
+    public synchronized long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * Caches the record read from a file, unless an invalidation happened since the read started.
+     *
+     * @param filename the name of the file
+     * @param record the record read from the file
+     * @param lastModified the modification time of the file before it was read
+     * @param length the length of the file before it was read
+     * @param readStamp the stamp returned by getStamp before the file was read
+     * @requires filename != null && record != null
+     * @modifies this
+     * @effects caches the record as most recently used, evicting the least recently used record if the cache is full
+     */
+    public synchronized void put(String filename, AccountRecord record, long lastModified, long length, long readStamp) {
+        if (capacity > 0 && readStamp == stamp) {
+            entries.put(filename, new CachedRecord(record, lastModified, length));
+        }
+    }
+
+    /**
+     * Drops the cached record of a file, for example because the file was written or deleted.
+     *
+     * @param filename the name of the file
+     * @requires filename != null
+     * @modifies this
+     * @effects removes the record of the file and prevents reads in progress from caching it
+     */
+    public synchronized void invalidate(String filename) {
+        entries.remove(filename);
+        stamp++;
+    }
+
+    /**
+     * Returns the number of reads served from the cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of reads that had to go to the disk.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of records evicted to make room for others.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of cached records.
+     *
+     * @return the number of cached records
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Overview: CachedRecord is an immutable class holding a cached record and the state of its file when it was read.
+     */
+    private static final class CachedRecord {
+        // The cached record
+        final AccountRecord record;
+        // The modification time and length of the file when the record was read
+        final long lastModified;
+        final long length;
+
+        CachedRecord(AccountRecord record, long lastModified, long length) {
+            this.record = record;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Returns a string representation of the RecordCache.
+     *
+     * @return a string representation of the RecordCache
+     * @effects returns a string that represents the RecordCache
+     */
+    @Override
+    public synchronized String toString() {
+        return "RecordCache with " + entries.size() + "/" + capacity + " records, " + hits + " hits, " + misses
+                + " misses and " + evictions + " evictions";
+    }
+
+    /**
+     * Checks the representation invariant of the RecordCache.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        return entries != null && entries.size() <= capacity && hits >= 0 && misses >= 0 && evictions >= 0;
+    }
+}
@@ -0,0 +1,388 @@
+package coe528.bankingapp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Overview: RecordScanner is a mutable class that scans customer files without turning them into Strings.
+ * Each file is read into a pooled direct ByteBuffer and its username and balance are parsed straight from the bytes,
+ * in both the binary format of AccountRecordCodec and the older "Key: value" text format. A visitor sees the username
+ * as a range of UTF-8 bytes in the buffer, which it can compare with a pre-encoded target using matches, so a scan
+ * that only looks for one username allocates nothing per record. Whole records are decoded from the same pooled
+ * buffers by readRecord, which the file storage engine and the manifest rebuild read every customer file through.
+ * If allocation measurement is enabled, the bytes allocated while parsing each record are counted with an
+ * AllocationProbe, so the parse step can be checked to stay allocation-free.
+ *
+ * Abstraction Function:
+ * Represents a scanner reading through buffers from 'pool', which has parsed 'recordsScanned' records, of which
+ * 'recordsMeasured' allocated 'bytesAllocated' bytes while being parsed.
+ *
+ * Representation Invariant:
+ * The 'pool' field must be non-null, the counters must be non-negative, and 'recordsMeasured' must not exceed
+ * 'recordsScanned'. 'probe' must be non-null if allocation measurement is enabled.
+ */
+public class RecordScanner {
+    // Logger instance
+    private static final Logger LOGGER = Logger.getLogger(RecordScanner.class.getName());
+    // The keys of the text format fields the scanner reads
+    private static final byte[] USERNAME_KEY = "Username: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BALANCE_KEY = "Balance: ".getBytes(StandardCharsets.US_ASCII);
+    // Offsets of the fields of a binary record
+    private static final int BALANCE_OFFSET = AccountRecordCodec.HEADER_BYTES + 4;
+    private static final int USERNAME_OFFSET = BALANCE_OFFSET + 8 + 1;
+    // Exact powers of ten, used to decode text balances without creating a String
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Overview: RecordVisitor is an interface for code that inspects the records found by a scan.
+     */
+    public interface RecordVisitor {
+        /**
+         * Inspects one record. The buffer is only valid during the call.
+         *
+         * @param file the file the record was read from
+         * @param buffer the buffer holding the record
+         * @param usernameOffset the index of the first byte of the UTF-8 username in the buffer
+         * @param usernameLength the number of bytes in the username
+         * @param balance the balance stored in the record
+         * @return true to continue the scan, false to stop it
+         */
+        boolean visit(File file, ByteBuffer buffer, int usernameOffset, int usernameLength, double balance);
+    }
+
+    // The pool the read buffers are taken from
+    private final BufferPool pool;
+    // The probe measuring allocations while parsing, or null if measurement is disabled
+    private final AllocationProbe probe;
+    // The number of records parsed
+    private long recordsScanned;
+    // The number of records whose allocations were measured, and the bytes they allocated
+    private long recordsMeasured;
+    private long bytesAllocated;
+
+    /**
+     * Constructs a new RecordScanner.
+     *
+     * @param pool the pool to take read buffers from
+     * @param measureAllocation true to measure the bytes allocated while parsing each record
+     * @requires pool != null
+     */
+    public RecordScanner(BufferPool pool, boolean measureAllocation) {
+        this.pool = pool;
+        AllocationProbe allocationProbe = measureAllocation ? new AllocationProbe() : null;
+        this.probe = allocationProbe != null && allocationProbe.isSupported() ? allocationProbe : null;
+    }
+
+    /**
+     * Scans the given files in order, passing the username and balance of every readable record to the visitor.
+     * Files that are not customer records are skipped.
+     *
+     * @param files the files to scan
+     * @param visitor the visitor to pass the records to
+     * @return the number of records passed to the visitor
+     * @requires files != null && visitor != null
+     * @modifies this
+     * @effects reads the files until the visitor stops the scan, and updates the scan counters
+     */
+    public synchronized long scan(List<File> files, RecordVisitor visitor) {
+        ByteBuffer buffer = pool.acquire();
+        long visited = 0;
+        try {
+            for (File file : files) {
+                buffer.clear();
+                if (!read(file, buffer)) {
+                    continue;
+                }
+                buffer.flip();
+                long start = probe == null ? 0 : probe.allocatedBytes();
+                int usernameOffset;
+                int usernameLength;
+                double balance;
+                if (AccountRecordCodec.isBinary(buffer)) {
+                    if (buffer.limit() < USERNAME_OFFSET + 2) {
+                        continue;
+                    }
+                    balance = buffer.getDouble(BALANCE_OFFSET);
+                    usernameLength = buffer.getShort(USERNAME_OFFSET) & 0xFFFF;
+                    usernameOffset = USERNAME_OFFSET + 2;
+                    if (usernameOffset + usernameLength > buffer.limit()) {
+                        continue;
+                    }
+                } else {
+                    int balanceStart = valueOffset(buffer, BALANCE_KEY);
+                    usernameOffset = valueOffset(buffer, USERNAME_KEY);
+                    if (usernameOffset < 0 || balanceStart < 0) {
+                        continue;
+                    }
+                    usernameLength = valueEnd(buffer, usernameOffset) - usernameOffset;
+                    balance = parseDouble(buffer, balanceStart, valueEnd(buffer, balanceStart));
+                    if (Double.isNaN(balance)) {
+                        continue;
+                    }
+                }
+                if (probe != null) {
+                    bytesAllocated += probe.allocatedBetween(start, probe.allocatedBytes());
+                    recordsMeasured++;
+                }
+                recordsScanned++;
+                visited++;
+                if (!visitor.visit(file, buffer, usernameOffset, usernameLength, balance)) {
+                    break;
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return visited;
+    }
+
+    /**
+     * Reads one file into a pooled buffer and decodes its whole record, in either format. Unlike scan, this may be
+     * called from several threads at once, each reading through its own buffer from the pool.
+     *
+     * @param file the file to read
+     * @param defaultCustomerNumber the customer number to use if a text record has none
+     * @return the record stored in the file, or null if the file cannot be read or does not fit in a buffer
+     * @throws IllegalArgumentException if the file does not hold a valid record
+     * @throws java.nio.BufferUnderflowException if the file holds a truncated binary record
+     * @requires file != null && defaultCustomerNumber >= 0
+     * @modifies this
+     * @effects reads the file and counts the record as scanned
+     */
+    public AccountRecord readRecord(File file, int defaultCustomerNumber) {
+        ByteBuffer buffer = pool.acquire();
+        try {
+            if (!read(file, buffer)) {
+                return null;
+            }
+            buffer.flip();
+            AccountRecord record = AccountRecordCodec.isBinary(buffer) ? AccountRecordCodec.decode(buffer)
+                    : AccountRecordCodec.fromText(StandardCharsets.UTF_8.decode(buffer).toString(), defaultCustomerNumber);
+            synchronized (this) {
+                recordsScanned++;
+            }
+            return record;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Finds the file holding the record of a username.
+     *
+     * @param files the files to search
+     * @param username the UTF-8 bytes of the username to find
+     * @return the first file whose record has the username, or null if there is none
+     * @requires files != null && username != null
+     * @modifies this
+     * @effects reads the files up to the one found, and updates the scan counters
+     */
+    public File find(List<File> files, byte[] username) {
+        File[] found = new File[1];
+        scan(files, (file, buffer, offset, length, balance) -> {
+            if (matches(buffer, offset, length, username)) {
+                found[0] = file;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Compares a range of bytes in a buffer with the given bytes.
+     *
+     * @param buffer the buffer holding the range
+     * @param offset the index of the first byte of the range
+     * @param length the number of bytes in the range
+     * @param expected the bytes to compare with
+     * @return true if the range holds exactly the expected bytes, false otherwise
+     * @requires buffer != null && expected != null && the range lies within the buffer's limit
+     */
+    public static boolean matches(ByteBuffer buffer, int offset, int length, byte[] expected) {
+        if (length != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of records parsed by this scanner.
+     *
+     * @return the number of records parsed
+     */
+    public synchronized long getRecordsScanned() {
+        return recordsScanned;
+    }
+
+    /**
+     * Returns the average number of bytes allocated while parsing one record.
+     *
+     * @return the bytes allocated per measured record, or -1 if no record has been measured
+     */
+    public synchronized double getAllocatedBytesPerRecord() {
+        return recordsMeasured == 0 ? -1 : (double) bytesAllocated / recordsMeasured;
+    }
+
+    /**
+     * Reads a whole file into the buffer. Returns false if the file cannot be read or does not fit.
+     */
+    private static boolean read(File file, ByteBuffer buffer) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > buffer.capacity()) {
+                LOGGER.warning("Skipping oversized customer file: " + file.getName());
+                return false;
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the file is exhausted
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read customer file " + file.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the index of the value of the text line starting with the key, or -1 if there is no such line.
+     */
+    private static int valueOffset(ByteBuffer buffer, byte[] key) {
+        int lineStart = 0;
+        while (lineStart < buffer.limit()) {
+            if (matches(buffer, lineStart, Math.min(key.length, buffer.limit() - lineStart), key)) {
+                return lineStart + key.length;
+            }
+            int next = lineStart;
+            while (next < buffer.limit() && buffer.get(next) != '\n') {
+                next++;
+            }
+            lineStart = next + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index just past a text value, excluding the line break and trailing whitespace.
+     */
+    private static int valueEnd(ByteBuffer buffer, int start) {
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Parses a decimal number, as written by Double.toString, from a range of bytes.
+     * Numbers with at most 15 significant digits and a small exponent are decoded exactly; others may differ in the
+     * last bit. Returns NaN if the range is not a number.
+     */
+    private static double parseDouble(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = i < end && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa < 100_000_000_000_000_000L) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    exponent -= fraction ? 1 : 0;
+                } else {
+                    exponent += fraction ? 0 : 1; // Digits past the precision of a long only scale the number
+                }
+                digits++;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else if (b == 'E' || b == 'e') {
+                break;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (i < end) {
+            i++;
+            boolean negativeExponent = i < end && buffer.get(i) == '-';
+            if (negativeExponent || (i < end && buffer.get(i) == '+')) {
+                i++;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+            int value = 0;
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    return Double.NaN;
+                }
+                value = Math.min(value * 10 + (b - '0'), 1000);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        double result = mantissa;
+        if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result *= POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result /= POWERS_OF_TEN[-exponent];
+        } else {
+            result *= Math.pow(10, exponent);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Returns a string representation of the RecordScanner.
+     *
+     * @return a string representation of the RecordScanner
+     * @effects returns a string that represents the RecordScanner
+     */
+    @Override
+    public synchronized String toString() {
+        String result = "RecordScanner with " + recordsScanned + " records scanned";
+        if (recordsMeasured > 0) {
+            result += ", " + getAllocatedBytesPerRecord() + " bytes allocated per record";
+        }
+        return result;
+    }
+
+    /**
+     * Checks the representation invariant of the RecordScanner.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        return pool != null && recordsScanned >= 0 && bytesAllocated >= 0
+                && recordsMeasured >= 0 && recordsMeasured <= recordsScanned;
+    }
+}
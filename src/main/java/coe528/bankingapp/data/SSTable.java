@@ -0,0 +1,461 @@
+package coe528.bankingapp.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Overview: SSTable is an immutable class that represents a sorted string table: a file of key-value entries sorted by
+ * key, used by LsmStore. A table is written once by a Writer and never changed; a lookup checks the table's Bloom filter,
+ * binary searches its sparse index for the block that may hold the key, and reads only that block.
+ *
+ * The file holds the data entries [short key length][key UTF-8 bytes][int value length][value bytes], where an empty
+ * value is a tombstone marking a deleted key, then the sparse index [int count]([short key length][key][long offset])*
+ * of every INDEX_INTERVAL-th entry, then the Bloom filter, then the footer [long index offset][long filter offset]
+ * [int entry count][int CRC32 of the index and filter][int MAGIC].
+ *
+ * Abstraction Function:
+ * Represents the sorted map from key to value (or tombstone) stored in 'file', whose blocks start at 'indexOffsets'
+ * with first keys 'indexKeys'.
+ *
+ * Representation Invariant:
+ * The 'file', 'channel', 'indexKeys', 'indexOffsets' and 'filter' fields must be non-null, 'indexKeys' must be sorted
+ * and as long as 'indexOffsets', and every offset must be below 'dataEnd'.
+ */
+public class SSTable implements Closeable {
+    // Marks the end of a complete table
+    private static final int MAGIC = 0x53535442;
+    // Size of the footer
+    private static final int FOOTER_BYTES = 28;
+    // Number of entries per index block
+    public static final int INDEX_INTERVAL = 16;
+    // The value of a deleted key
+    public static final byte[] TOMBSTONE = new byte[0];
+
+    // The file holding the table
+    private final File file;
+    // The channel blocks are read through
+    private final FileChannel channel;
+    // The first key of every block, and the offset of the block
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    // The offset just past the last data entry
+    private final long dataEnd;
+    // The number of entries, tombstones included
+    private final int entryCount;
+    // The size of the file
+    private final long size;
+    // The Bloom filter of the table's keys
+    private final BloomFilter filter;
+
+    /**
+     * Opens a table written by a Writer.
+     *
+     * @param file the file holding the table
+     * @throws IOException if the file cannot be read or is not a complete table
+     * @requires file != null
+     * @effects opens the file and loads the table's index and Bloom filter into memory
+     */
+    public SSTable(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            if (size < FOOTER_BYTES) {
+                throw new IOException("Truncated table: " + file);
+            }
+            ByteBuffer footer = readFully(size - FOOTER_BYTES, FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            long filterOffset = footer.getLong();
+            entryCount = footer.getInt();
+            int crc = footer.getInt();
+            if (footer.getInt() != MAGIC || indexOffset < 0 || indexOffset > filterOffset || filterOffset > size - FOOTER_BYTES) {
+                throw new IOException("Not a complete table: " + file);
+            }
+            ByteBuffer meta = readFully(indexOffset, (int) (size - FOOTER_BYTES - indexOffset));
+            CRC32 checksum = new CRC32();
+            checksum.update(meta.duplicate());
+            if ((int) checksum.getValue() != crc) {
+                throw new IOException("Corrupt table index: " + file);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta.array()));
+            int blocks = in.readInt();
+            indexKeys = new String[blocks];
+            indexOffsets = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                byte[] key = new byte[in.readUnsignedShort()];
+                in.readFully(key);
+                indexKeys[i] = new String(key, StandardCharsets.UTF_8);
+                indexOffsets[i] = in.readLong();
+            }
+            filter = BloomFilter.readFrom(in);
+            dataEnd = indexOffset;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupt table: " + file, e);
+        }
+    }
+
+    /**
+     * Looks up the value of a key.
+     *
+     * @param key the key to look up
+     * @return the value of the key, TOMBSTONE if the key was deleted, or null if the table does not hold the key
+     * @throws IOException if the table cannot be read
+     * @requires key != null
+     */
+    public byte[] get(String key) throws IOException {
+        if (!filter.mightContain(key)) {
+            return null;
+        }
+        int block = Arrays.binarySearch(indexKeys, key);
+        if (block < 0) {
+            block = -block - 2; // The block whose first key is the greatest key below the searched key
+            if (block < 0) {
+                return null;
+            }
+        }
+        long start = indexOffsets[block];
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : dataEnd;
+        ByteBuffer data = readFully(start, (int) (end - start));
+        byte[] target = key.getBytes(StandardCharsets.UTF_8);
+        while (data.hasRemaining()) {
+            int keyLength = data.getShort() & 0xFFFF;
+            boolean found = RecordScanner.matches(data, data.position(), keyLength, target);
+            data.position(data.position() + keyLength);
+            int valueLength = data.getInt();
+            if (found) {
+                byte[] value = valueLength == 0 ? TOMBSTONE : new byte[valueLength];
+                data.get(value);
+                return value;
+            }
+            data.position(data.position() + valueLength);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a cursor over the table's entries in key order.
+     *
+     * @return a cursor positioned before the first entry
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns the file holding the table.
+     *
+     * @return the table's file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of entries in the table, tombstones included.
+     *
+     * @return the number of entries
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the size of the table's file.
+     *
+     * @return the size of the file in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Closes the table's file.
+     *
+     * @throws IOException if the file cannot be closed
+     * @modifies this
+     * @effects closes the channel of the table
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a range of the file into a new heap buffer.
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of table: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Overview: Cursor is a mutable class that reads the entries of the table in key order through a reusable buffer.
+     */
+    public class Cursor {
+        // The buffer holding the entries read ahead
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        // The file offset of the end of the buffer's contents
+        private long filePosition;
+        // The current entry
+        private String key;
+        private byte[] value;
+
+        /**
+         * Constructs a cursor positioned before the first entry.
+         */
+        private Cursor() {
+            buffer.flip();
+        }
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return true if there is a next entry, false at the end of the table
+         * @throws IOException if the table cannot be read
+         * @modifies this
+         * @effects makes the next entry the current entry
+         */
+        public boolean next() throws IOException {
+            if (filePosition >= dataEnd && !buffer.hasRemaining()) {
+                key = null;
+                value = null;
+                return false;
+            }
+            ensure(2);
+            byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+            ensure(keyBytes.length + 4);
+            buffer.get(keyBytes);
+            int valueLength = buffer.getInt();
+            ensure(valueLength);
+            value = valueLength == 0 ? TOMBSTONE : new byte[valueLength];
+            buffer.get(value);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            return true;
+        }
+
+        /**
+         * Returns the key of the current entry.
+         *
+         * @return the current key
+         * @requires the last call to next returned true
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the value of the current entry.
+         *
+         * @return the current value, or TOMBSTONE if the key was deleted
+         * @requires the last call to next returned true
+         */
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * Reads ahead until the buffer holds at least the given number of bytes.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (buffer.capacity() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                int toRead = (int) Math.min(buffer.remaining(), dataEnd - filePosition);
+                if (toRead <= 0) {
+                    throw new EOFException("Truncated entry in table: " + file);
+                }
+                ByteBuffer window = buffer.duplicate();
+                window.limit(window.position() + toRead);
+                int read = channel.read(window, filePosition);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of table: " + file);
+                }
+                buffer.position(buffer.position() + read);
+                filePosition += read;
+            }
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Overview: Writer is a mutable class that writes a new table from entries added in increasing key order.
+     * The table is written to a temporary file and moved into place by finish, so a table file is always complete.
+     */
+    public static class Writer {
+        // The file the table is moved to by finish, and the temporary file it is written to
+        private final File file;
+        private final File temporary;
+        // The stream writing the temporary file, and the file stream under it
+        private final DataOutputStream out;
+        private final FileOutputStream fileStream;
+        // The Bloom filter of the keys written
+        private final BloomFilter filter;
+        // The first key of every block and the offset of the block
+        private final List<byte[]> indexKeys = new ArrayList<>();
+        private final List<Long> indexOffsets = new ArrayList<>();
+        // The offset of the next entry
+        private long offset;
+        // The number of entries written
+        private int entryCount;
+        // The last key written
+        private String lastKey;
+
+        /**
+         * Starts writing a table.
+         *
+         * @param file the file to write the table to
+         * @param expectedEntries the largest number of entries that will be added, used to size the Bloom filter
+         * @throws IOException if the temporary file cannot be created
+         * @requires file != null && expectedEntries >= 0
+         */
+        public Writer(File file, int expectedEntries) throws IOException {
+            this.file = file;
+            this.temporary = new File(file.getPath() + ".tmp");
+            this.fileStream = new FileOutputStream(temporary);
+            this.out = new DataOutputStream(new BufferedOutputStream(fileStream, 64 * 1024));
+            this.filter = new BloomFilter(expectedEntries);
+        }
+
+        /**
+         * Adds an entry to the table.
+         *
+         * @param key the key of the entry
+         * @param value the value of the entry, or TOMBSTONE for a deleted key
+         * @throws IOException if the entry cannot be written
+         * @throws IllegalArgumentException if the key is not greater than the last key added
+         * @requires key != null && value != null
+         * @modifies this
+         * @effects appends the entry to the table
+         */
+        public void add(String key, byte[] value) throws IOException {
+            if (lastKey != null && lastKey.compareTo(key) >= 0) {
+                throw new IllegalArgumentException("Keys must be added in increasing order: " + key);
+            }
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (entryCount % INDEX_INTERVAL == 0) {
+                indexKeys.add(keyBytes);
+                indexOffsets.add(offset);
+            }
+            out.writeShort(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(value.length);
+            out.write(value);
+            offset += 2 + keyBytes.length + 4 + value.length;
+            filter.add(key);
+            entryCount++;
+            lastKey = key;
+        }
+
+        /**
+         * Writes the index, Bloom filter and footer, forces the table to disk and moves it into place.
+         *
+         * @return the opened table
+         * @throws IOException if the table cannot be written or moved
+         * @modifies this
+         * @effects completes the table file
+         */
+        public SSTable finish() throws IOException {
+            ByteArrayOutputStream meta = new ByteArrayOutputStream();
+            DataOutputStream metaOut = new DataOutputStream(meta);
+            metaOut.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                metaOut.writeShort(indexKeys.get(i).length);
+                metaOut.write(indexKeys.get(i));
+                metaOut.writeLong(indexOffsets.get(i));
+            }
+            int filterOffset = metaOut.size();
+            filter.writeTo(metaOut);
+            CRC32 checksum = new CRC32();
+            checksum.update(meta.toByteArray());
+            meta.writeTo(out);
+            out.writeLong(offset);
+            out.writeLong(offset + filterOffset);
+            out.writeInt(entryCount);
+            out.writeInt((int) checksum.getValue());
+            out.writeInt(MAGIC);
+            out.flush();
+            fileStream.getFD().sync();
+            out.close();
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new SSTable(file);
+        }
+
+        /**
+         * Abandons the table and deletes its temporary file.
+         *
+         * @modifies this
+         * @effects closes and deletes the temporary file
+         */
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Returns a string representation of the SSTable.
+     *
+     * @return a string representation of the SSTable
+     * @effects returns a string that represents the SSTable
+     */
+    @Override
+    public String toString() {
+        return "SSTable " + file.getName() + " with " + entryCount + " entries in " + indexKeys.length + " blocks";
+    }
+
+    /**
+     * Checks the representation invariant of the SSTable.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        if (file == null || channel == null || indexKeys == null || indexOffsets == null || filter == null
+                || indexKeys.length != indexOffsets.length) {
+            return false;
+        }
+        for (int i = 0; i < indexKeys.length; i++) {
+            if ((i > 0 && indexKeys[i - 1].compareTo(indexKeys[i]) >= 0) || indexOffsets[i] >= dataEnd) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package coe528.bankingapp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Overview: ShardMigrator is a utility class that moves the files of a flat customer directory into a sharded layout.
+ * FileManager looks in both the shard directory and the flat directory, and writes a customer's shard copy before
+ * deleting its flat copy, so the migration can run while the application is using the directory: each file is
+ * hard-linked into its shard directory, which fails rather than replaces if the application has already written a
+ * shard copy, in which case the flat copy is older and is deleted instead; files deleted by the application after the
+ * directory is listed are skipped.
+ *
+ * Usage: run the main method with the same "bankingapp.shards.levels" and "bankingapp.shards.width" system properties
+ * the application uses, for example
+ * java -Dbankingapp.shards.levels=2 -cp target/classes coe528.bankingapp.data.ShardMigrator
+ *
+ * Abstraction Function:
+ * Not applicable, as ShardMigrator has no state.
+ *
+ * Representation Invariant:
+ * Not applicable, as ShardMigrator has no state.
+ */
+public final class ShardMigrator {
+    // Logger for migration progress
+    private static final Logger LOGGER = Logger.getLogger(ShardMigrator.class.getName());
+    // How many files are moved between progress reports
+    private static final int REPORT_INTERVAL = 10000;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private ShardMigrator() {
+    }
+
+    /**
+     * Moves every file directly inside the root directory into its shard directory.
+     *
+     * @param root the customer directory
+     * @param layout the layout to migrate to
+     * @return the number of files moved
+     * @throws IOException if a file cannot be moved
+     * @requires root != null && layout != null
+     * @effects moves each flat file in root to layout.locate(root, name), or deletes it if a file is already there
+     */
+    public static int migrate(File root, ShardedLayout layout) throws IOException {
+        if (layout.isFlat()) {
+            return 0;
+        }
+        File[] files = root.listFiles(File::isFile);
+        if (files == null) {
+            return 0;
+        }
+        int moved = 0;
+        int dropped = 0;
+        int skipped = 0;
+        for (File file : files) {
+            File target = layout.locate(root, file.getName());
+            File parent = target.getParentFile();
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
+            try {
+                moveWithoutReplacing(file.toPath(), target.toPath());
+                moved++;
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(file.toPath()); // The application wrote a newer shard copy
+                dropped++;
+            } catch (NoSuchFileException e) {
+                skipped++; // The application moved or deleted the file after the directory was listed
+            }
+            if ((moved + dropped + skipped) % REPORT_INTERVAL == 0) {
+                LOGGER.info("Migrated " + (moved + dropped + skipped) + " of " + files.length + " customer files");
+            }
+        }
+        LOGGER.info("Moved " + moved + " customer files into " + layout + ", dropped " + dropped
+                + " flat copies older than their shard copies and skipped " + skipped + " files deleted meanwhile");
+        return moved;
+    }
+
+    /**
+     * Moves a file to a path that must not exist, failing without replacing it if it does.
+     * The file is hard-linked at the target and then unlinked from the source, since a rename replaces an existing
+     * target; on file systems without hard links it is moved after checking the target, which leaves a short window.
+     */
+    private static void moveWithoutReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException e) {
+            Files.move(source, target);
+            return;
+        }
+        Files.deleteIfExists(source);
+    }
+
+    /**
+     * Migrates the application's customer directory to the configured layout.
+     *
+     * @param args the command-line arguments, which are ignored
+     * @throws IOException if a file cannot be moved
+     * @effects moves every flat customer file into its shard directory
+     */
+    public static void main(String[] args) throws IOException {
+        migrate(FileManager.getCustomerDirectory(), FileManager.getLayout());
+    }
+}
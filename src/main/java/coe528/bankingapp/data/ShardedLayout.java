@@ -0,0 +1,124 @@
+package coe528.bankingapp.data;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Overview: ShardedLayout is an immutable class that decides where a customer file lives below the customer directory.
+ * With zero levels every file sits flat in the customer directory. Otherwise the file is placed under 'levels' nested
+ * subdirectories named after successive hex digits of a hash of the file name, 'width' digits per level, so each
+ * directory holds at most 16^width entries.
+ *
+ * Abstraction Function:
+ * Represents the mapping from a file name f to the path h[0..width)/h[width..2*width)/.../f, where h is the CRC32 of f
+ * written as 8 hex digits and there are 'levels' directory components.
+ *
+ * Representation Invariant:
+ * 'levels' must be non-negative, 'width' must be positive, and levels * width must be at most 8.
+ */
+public final class ShardedLayout {
+    // The layout that keeps every file flat in the customer directory
+    public static final ShardedLayout FLAT = new ShardedLayout(0, 2);
+
+    // The number of nested shard directories
+    private final int levels;
+    // The number of hex digits naming a shard directory
+    private final int width;
+
+    /**
+     * Constructs a new ShardedLayout.
+     *
+     * @param levels the number of nested shard directories
+     * @param width the number of hex digits naming a shard directory
+     * @throws IllegalArgumentException if levels is negative, width is not positive or levels * width exceeds 8
+     */
+    public ShardedLayout(int levels, int width) {
+        if (levels < 0 || width <= 0 || levels * width > 8) {
+            throw new IllegalArgumentException("Shard levels times width must be between 0 and 8 hex digits");
+        }
+        this.levels = levels;
+        this.width = width;
+    }
+
+    /**
+     * Returns whether this layout keeps every file flat in the customer directory.
+     *
+     * @return true if there are no shard levels, false otherwise
+     */
+    public boolean isFlat() {
+        return levels == 0;
+    }
+
+    /**
+     * Returns the number of nested shard directories.
+     *
+     * @return the number of shard levels
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the number of hex digits naming a shard directory.
+     *
+     * @return the shard directory width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the path of a file relative to the customer directory.
+     *
+     * @param filename the name of the file
+     * @return the relative path of the file, using '/' as separator
+     * @requires filename != null
+     */
+    public String relativePath(String filename) {
+        if (levels == 0) {
+            return filename;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(filename.getBytes(StandardCharsets.UTF_8));
+        String hash = String.format("%08x", crc.getValue());
+        StringBuilder path = new StringBuilder(levels * (width + 1) + filename.length());
+        for (int level = 0; level < levels; level++) {
+            path.append(hash, level * width, (level + 1) * width).append('/');
+        }
+        return path.append(filename).toString();
+    }
+
+    /**
+     * Returns the location of a file below the given root directory.
+     *
+     * @param root the customer directory
+     * @param filename the name of the file
+     * @return the file in its shard directory
+     * @requires root != null && filename != null
+     */
+    public File locate(File root, String filename) {
+        return new File(root, relativePath(filename));
+    }
+
+    /**
+     * Returns a string representation of the ShardedLayout.
+     *
+     * @return a string representation of the ShardedLayout
+     * @effects returns a string that represents the ShardedLayout
+     */
+    @Override
+    public String toString() {
+        return levels == 0 ? "Flat layout" : "Sharded layout with " + levels + " levels of " + width + " hex digits";
+    }
+
+    /**
+     * Checks the representation invariant of the ShardedLayout.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return levels >= 0 && width > 0 && levels * width <= 8;
+    }
+}
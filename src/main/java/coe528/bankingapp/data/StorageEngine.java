@@ -0,0 +1,170 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * This interface represents the storage of customer accounts in the banking application.
+ * A storage engine loads, saves, deletes and iterates AccountRecords keyed by username, and records balance changes,
+ * so the domain code runs unchanged against any engine chosen through StorageEngines.
+ * Implementations must be safe to use from several threads.
+ */
+public interface StorageEngine extends Closeable {
+
+    /**
+     * Receives the accounts a storage engine found changed from outside the application, for example by another
+     * instance of the application. It is called from a thread of the engine.
+     */
+    interface ChangeListener {
+        /**
+         * Called with a batch of accounts changed from outside the application, at most one change per account.
+         *
+         * @param changes the changed accounts
+         */
+        void accountsChanged(List<AccountChange> changes);
+    }
+
+    /**
+     * Loads the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return the stored account with its current balance, or null if there is none
+     * @requires username != null
+     */
+    AccountRecord load(String username);
+
+    /**
+     * Saves an account, replacing any stored account with the same username.
+     *
+     * @param record the account to save
+     * @requires record != null
+     * @modifies this
+     * @effects stores the account so that load returns it
+     */
+    void save(AccountRecord record);
+
+    /**
+     * Saves several accounts at once.
+     *
+     * @param records the accounts to save
+     * @requires records != null && records does not contain null
+     * @modifies this
+     * @effects stores every account as save would
+     */
+    void saveAll(List<AccountRecord> records);
+
+    /**
+     * Deletes the account of the customer with the given username.
+     *
+     * @param username the username of the customer
+     * @return true if an account was deleted, false otherwise
+     * @requires username != null
+     * @modifies this
+     * @effects removes the stored account
+     */
+    boolean delete(String username);
+
+    /**
+     * Passes every stored account, with its current balance, to the given action.
+     *
+     * @param action the action to apply to each account
+     * @requires action != null
+     * @effects applies the action to every stored account
+     */
+    void forEach(Consumer<AccountRecord> action);
+
+    /**
+     * Returns the number of stored accounts.
+     *
+     * @return the number of stored accounts
+     */
+    int size();
+
+    /**
+     * Records an operation that changed the balance of a stored account.
+     * Engines apply the operation's change to the stored balance, so concurrent operations on the same account are
+     * stored correctly in any order, and store the level of the resulting balance. The supplier is only used for
+     * operations that set the balance, and by engines that journal the balance itself; an engine may read it later
+     * than the call, so it must keep returning the live balance.
+     *
+     * @param username the username of the customer
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance supplies the balance of the account after the operation
+     * @param level the level of the customer after the operation
+     * @requires username != null && operation != null && balance != null && AccountRecord.LEVELS.contains(level)
+     * @modifies this
+     * @effects applies the operation to the stored balance of the account and stores the level of the result
+     */
+    void updateBalance(String username, Operation operation, double amount, double fee, DoubleSupplier balance, String level);
+
+    /**
+     * Starts reporting the accounts changed from outside the application to a listener.
+     * Engines that cannot notice such changes never call the listener.
+     *
+     * @param listener the listener to add
+     * @requires listener != null
+     * @modifies this
+     * @effects makes the listener receive later changes made from outside the application
+     */
+    default void addChangeListener(ChangeListener listener) {
+    }
+
+    /**
+     * Stops reporting changes to a listener.
+     *
+     * @param listener the listener to remove
+     * @modifies this
+     * @effects makes the listener receive no further changes
+     */
+    default void removeChangeListener(ChangeListener listener) {
+    }
+
+    /**
+     * Records several balance changes of stored accounts as one unit, such as the two sides of a transfer, so that a
+     * reader of the engine never sees only some of them. Engines that keep a journal write the changes in one journal
+     * frame, so that after a crash either all of them or none are recovered; the others store them one at a time.
+     *
+     * @param changes the operations applied, each with the balance of its account after it; sequence numbers are ignored
+     * @requires changes != null && changes does not contain null
+     * @modifies this
+     * @effects applies every operation to the stored balance of its account, as updateBalance does
+     */
+    void updateBalances(List<JournalRecord> changes);
+
+    /**
+     * Starts a change to balances in memory that the caller will record with updateBalances, so that an engine reading
+     * balances in the background through the suppliers of updateBalance does not read one between the change and its
+     * record, which would make the change count twice on recovery. The change must be ended with endChange, on any
+     * thread, once updateBalances has returned; engines that read no balances in the background do nothing.
+     *
+     * @return the stamp to pass to endChange
+     * @effects may block while the engine reads balances in the background
+     */
+    default long beginChange() {
+        return 0;
+    }
+
+    /**
+     * Ends a change started with beginChange.
+     *
+     * @param stamp the stamp returned by beginChange
+     * @requires stamp was returned by beginChange of this engine and was not passed to endChange yet
+     */
+    default void endChange(long stamp) {
+    }
+
+    /**
+     * Writes everything still pending to disk and releases the engine's resources.
+     *
+     * @modifies this
+     * @effects closes the engine
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,101 @@
+package coe528.bankingapp.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Overview: StorageEngines is a utility class that opens the storage engine chosen at startup and shares it.
+ * The system property "bankingapp.storage" selects the engine: "file" (the default) for the customer files,
+ * "memory" for an engine that keeps accounts in memory only, "mmap" for a memory-mapped store file, and "lsm" for a
+ * log-structured merge store, tuned by "bankingapp.lsm.memtableBytes", "bankingapp.lsm.compactionThreshold" and
+ * "bankingapp.lsm.syncWrites".
+ * Each engine keeps its own accounts, so switching engines does not carry accounts over.
+ *
+ * Abstraction Function:
+ * Represents the storage engine of the application, which is 'engine' once opened.
+ *
+ * Representation Invariant:
+ * 'engine' is either null or the open engine of the kind named by the system property.
+ */
+public final class StorageEngines {
+    // System property choosing the storage engine
+    private static final String STORAGE_PROPERTY = "bankingapp.storage";
+    // System properties configuring the log-structured merge engine
+    private static final String MEMTABLE_BYTES_PROPERTY = "bankingapp.lsm.memtableBytes";
+    private static final String COMPACTION_THRESHOLD_PROPERTY = "bankingapp.lsm.compactionThreshold";
+    private static final String SYNC_WRITES_PROPERTY = "bankingapp.lsm.syncWrites";
+    // File backing the memory-mapped engine
+    private static final String MAPPED_FILE = "src/main/java/coe528/bankingapp/data/accounts.map";
+    // Directory holding the log-structured merge engine
+    private static final String LSM_DIRECTORY = "src/main/java/coe528/bankingapp/data/lsm/";
+
+    // The shared storage engine, opened on first use
+    private static StorageEngine engine;
+
+    /**
+     * Prevents instantiation of the utility class.
+     */
+    private StorageEngines() {
+    }
+
+    /**
+     * Returns the storage engine, opening the configured engine on first use.
+     *
+     * @return the shared storage engine
+     * @throws IllegalArgumentException if the system property names an unknown engine
+     * @throws UncheckedIOException if the engine cannot be opened
+     * @effects opens the engine named by the system property if no engine is open yet
+     */
+    public static synchronized StorageEngine get() {
+        if (engine == null) {
+            engine = open(System.getProperty(STORAGE_PROPERTY, "file"));
+        }
+        return engine;
+    }
+
+    /**
+     * Opens a new storage engine of the given kind.
+     *
+     * @param kind "file", "memory", "mmap" or "lsm"
+     * @return the opened engine
+     * @throws IllegalArgumentException if the kind is unknown
+     * @throws UncheckedIOException if the engine cannot be opened
+     * @requires kind != null
+     */
+    public static StorageEngine open(String kind) {
+        switch (kind) {
+            case "file":
+                return new FileStorageEngine();
+            case "memory":
+                return new InMemoryStorageEngine();
+            case "mmap":
+                try {
+                    return new MappedStorageEngine(new File(MAPPED_FILE));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            case "lsm":
+                try {
+                    return new LsmStorageEngine(new File(LSM_DIRECTORY), Long.getLong(MEMTABLE_BYTES_PROPERTY, 4L * 1024 * 1024),
+                            Integer.getInteger(COMPACTION_THRESHOLD_PROPERTY, 4), Boolean.getBoolean(SYNC_WRITES_PROPERTY));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown storage engine: " + kind);
+        }
+    }
+
+    /**
+     * Closes the storage engine if it is open.
+     *
+     * @effects closes the shared engine, so that the next call to get opens a new one
+     */
+    public static synchronized void shutdown() {
+        if (engine != null) {
+            engine.close();
+            engine = null;
+        }
+    }
+}
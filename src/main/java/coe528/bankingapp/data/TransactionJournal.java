@@ -0,0 +1,761 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Overview: TransactionJournal is a mutable class that represents an append-only write-ahead journal of account operations.
+ * Every operation is appended as one compact binary record to the current segment file, so a balance change costs a
+ * single sequential append instead of rewriting the customer file. Current balances are rebuilt by replaying the segments.
+ *
+ * On disk the journal is a directory of segment files named "segment-NNNNNNNN.log". Each segment is a sequence of frames:
+ * [int payload length][int CRC32 of payload][payload], where the payload holds the long id of the journal instance
+ * that appended the frame, followed by one or more records of the form
+ * [long sequence][byte operation][double amount][double fee][double balance][short username length][username UTF-8 bytes].
+ * The top bit of the payload length marks a frame with an instance id; frames written before instance ids have none.
+ * A frame is only considered written if its checksum matches, so a torn write at the end of a segment is discarded
+ * as a whole on recovery.
+ *
+ * Several instances of the application may append to the same directory. The first to open it takes an exclusive lock
+ * on the first byte of "journal.lock" and becomes its owner: only the owner truncates a torn frame on opening and
+ * starts new segments, which checkpoints rely on before compacting. The others open it as followers, which append to
+ * the newest segment while holding a shared lock on the second byte, which the owner locks exclusively to start a
+ * segment. A follower stays a follower until it is reopened.
+ *
+ * By default every append is written straight to the segment without forcing it to disk. In group-commit mode, appends
+ * are handed to a GroupCommitter that writes the frames of many concurrent callers with one write and one force, and
+ * callers are only released once their frame is durable. The write and the force are made without holding the
+ * journal's monitor, which only orders the frames and switches segments, so appends are not held up by a force.
+ *
+ * Abstraction Function:
+ * Represents the ordered list of JournalRecords stored in the segment files of 'directory', where 'nextSequence' is the
+ * sequence number the next appended record receives, 'channel' is open on the segment currently being appended to and
+ * 'instanceId' marks the frames this journal appends; the journal owns the directory if 'ownerLock' is non-null.
+ *
+ * Representation Invariant:
+ * The 'directory', 'channel' and 'lockChannel' fields must be non-null, 'instanceId' must be non-zero, 'nextSequence'
+ * must be positive and 'maxSegmentBytes' must be positive.
+ */
+public class TransactionJournal implements Closeable {
+    // Prefix and suffix of segment file names
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Name of the file locked by the owner of the directory and by followers while they append
+    private static final String LOCK_FILE = "journal.lock";
+    // Size of the frame header: payload length and checksum
+    private static final int FRAME_HEADER_BYTES = 8;
+    // Size of the instance id at the start of a frame's payload
+    private static final int INSTANCE_BYTES = 8;
+    // The bit of the payload length marking a frame that starts with an instance id
+    private static final int INSTANCE_FLAG = 0x80000000;
+    // Size of a record without its username bytes
+    private static final int RECORD_FIXED_BYTES = 8 + 1 + 8 + 8 + 8 + 2;
+    // Default size after which a new segment is started
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    // The directory holding the segment files
+    private final File directory;
+    // The size after which a new segment is started
+    private final long maxSegmentBytes;
+    // The channel of the segment currently appended to
+    private FileChannel channel;
+    // The index of the segment currently appended to
+    private long segmentIndex;
+    // The sequence number of the next appended record
+    private long nextSequence;
+    // The id written in every frame this journal appends
+    private final long instanceId;
+    // The channel of the lock file
+    private final FileChannel lockChannel;
+    // The lock held on the first byte of the lock file while this journal owns the directory, or null for a follower
+    private final FileLock ownerLock;
+    // Reusable buffer used to encode frames
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    // Reusable checksum
+    private final CRC32 crc = new CRC32();
+    // The group committer, or null when appends are written directly
+    private GroupCommitter committer;
+    // Whether the group committer is writing a batch to 'channel' outside the monitor
+    private boolean batchInFlight;
+
+    /**
+     * Opens the journal stored in the given directory, creating the directory if it does not exist.
+     * If no other instance has the directory open, this journal becomes its owner and truncates a torn frame at the end
+     * of the last segment away; otherwise it opens the directory as a follower and leaves the segments as they are.
+     *
+     * @param directory the directory holding the segment files
+     * @param maxSegmentBytes the size after which the owner starts a new segment
+     * @throws IOException if the journal cannot be opened
+     * @requires directory != null && maxSegmentBytes > 0 && no other journal of this JVM has the directory open
+     * @effects opens the journal for appending after the last valid record
+     */
+    public TransactionJournal(File directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        instanceId = id;
+        lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock(0, 1, false);
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        ownerLock = lock;
+        nextSequence = 1;
+        List<File> segments = listSegments();
+        if (segments.isEmpty()) {
+            segmentIndex = 1;
+        } else {
+            File last = segments.get(segments.size() - 1);
+            segmentIndex = indexOf(last);
+            // Find the last written sequence number, walking back over empty segments
+            for (int i = segments.size() - 1; i >= 0 && nextSequence == 1; i--) {
+                long[] lastSequence = {0};
+                long validEnd = scanSegment(segments.get(i), record -> lastSequence[0] = record.getSequence());
+                if (i == segments.size() - 1 && ownerLock != null) {
+                    truncate(last, validEnd); // A follower's torn frame may be another instance's frame being written
+                }
+                nextSequence = lastSequence[0] + 1;
+            }
+        }
+        channel = openSegment(segmentIndex);
+    }
+
+    /**
+     * Appends one record to the journal.
+     * In group-commit mode this blocks until the batch holding the record is durable.
+     *
+     * @param username the username of the account
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance the balance of the account after the operation
+     * @return the sequence number assigned to the record
+     * @throws IOException if the record cannot be written
+     * @requires username != null && operation != null
+     * @modifies this
+     * @effects appends a record for the operation to the current segment
+     */
+    public long append(String username, Operation operation, double amount, double fee, double balance) throws IOException {
+        try {
+            return appendAsync(username, operation, amount, fee, balance).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends one record to the journal without waiting for it to become durable.
+     * Outside group-commit mode the record is written before this returns and the future is already complete.
+     *
+     * @param username the username of the account
+     * @param operation the operation that was applied
+     * @param amount the amount of the operation
+     * @param fee the fee charged for the operation
+     * @param balance the balance of the account after the operation
+     * @return a future that completes with the sequence number of the record once it is written
+     * @requires username != null && operation != null
+     * @modifies this
+     * @effects appends a record for the operation to the current segment, or queues it for the next group commit
+     */
+    public synchronized CompletableFuture<Long> appendAsync(String username, Operation operation, double amount, double fee, double balance) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        beginFrame(RECORD_FIXED_BYTES + name.length);
+        long sequence = nextSequence++;
+        putRecord(sequence, name, operation, amount, fee, balance);
+        sealFrame();
+        return submitFrame(sequence);
+    }
+
+    /**
+     * Appends the given records to the journal as one frame, so that either all or none of them survive a crash.
+     * The sequence numbers of the given records are ignored; the records are assigned consecutive new ones.
+     * In group-commit mode this blocks until the frame is durable.
+     *
+     * @param records the records to append
+     * @return the sequence number assigned to the last record, or 0 if there were no records
+     * @throws IOException if the records cannot be written
+     * @requires records != null && records contains no null elements
+     * @modifies this
+     * @effects appends the records to the current segment in one frame
+     */
+    public long appendAll(List<JournalRecord> records) throws IOException {
+        try {
+            return appendAllAsync(records).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the given records to the journal as one frame without waiting for it to become durable.
+     * The frame's place in the journal is fixed before this returns, so a frame appended later lands after it.
+     * Outside group-commit mode the frame is written before this returns and the future is already complete.
+     *
+     * @param records the records to append
+     * @return a future that completes with the sequence number assigned to the last record, or 0 if there were no
+     *         records, once the frame is written
+     * @requires records != null && records contains no null elements
+     * @modifies this
+     * @effects appends the records to the current segment in one frame, or queues the frame for the next group commit
+     */
+    public synchronized CompletableFuture<Long> appendAllAsync(List<JournalRecord> records) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        List<byte[]> names = new ArrayList<>(records.size());
+        int payloadBytes = 0;
+        for (JournalRecord record : records) {
+            byte[] name = record.getUsername().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            payloadBytes += RECORD_FIXED_BYTES + name.length;
+        }
+        beginFrame(payloadBytes);
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            putRecord(nextSequence++, names.get(i), record.getOperation(), record.getAmount(), record.getFee(), record.getBalance());
+        }
+        sealFrame();
+        return submitFrame(nextSequence - 1);
+    }
+
+    /**
+     * Switches the journal to group-commit mode.
+     *
+     * @param maxLatencyMillis the longest time a record waits before its batch is committed
+     * @param maxBatchSize the largest number of records in one batch
+     * @requires maxLatencyMillis > 0 && maxBatchSize > 0
+     * @modifies this
+     * @effects starts a group committer that makes appended records durable in batches
+     */
+    public synchronized void enableGroupCommit(long maxLatencyMillis, int maxBatchSize) {
+        if (committer == null) {
+            committer = new GroupCommitter(this, maxLatencyMillis * 1_000_000, maxBatchSize);
+        }
+    }
+
+    /**
+     * Returns the statistics of the batches committed in group-commit mode.
+     *
+     * @return the commit statistics, or null if the journal is not in group-commit mode
+     */
+    public synchronized CommitStatistics getCommitStatistics() {
+        return committer == null ? null : committer.getStatistics();
+    }
+
+    /**
+     * Writes a buffer of complete frames to the current segment, outside group-commit mode.
+     *
+     * @param frames the frames to write
+     * @throws IOException if the frames cannot be written
+     * @requires frames != null
+     * @modifies this
+     * @effects appends the frames to the current segment
+     */
+    synchronized void writeBatch(ByteBuffer frames) throws IOException {
+        FileLock appendLock = prepareWrite();
+        try {
+            while (frames.hasRemaining()) {
+                channel.write(frames);
+            }
+        } finally {
+            if (appendLock != null) {
+                appendLock.release();
+            }
+        }
+    }
+
+    /**
+     * Writes a buffer of complete frames to the current segment and forces it to disk, for the group committer.
+     * The monitor is only held to choose the segment, so appends and appendAll keep encoding and queueing frames
+     * while the batch is written and forced; a segment is not switched until the batch is written.
+     *
+     * @param frames the frames to write
+     * @throws IOException if the frames cannot be written
+     * @requires frames != null && no other batch is being committed
+     * @modifies this
+     * @effects appends the frames to the current segment and forces it to disk
+     */
+    void commitBatch(ByteBuffer frames) throws IOException {
+        FileLock appendLock;
+        FileChannel target;
+        synchronized (this) {
+            appendLock = prepareWrite();
+            target = channel;
+            batchInFlight = true;
+        }
+        try {
+            while (frames.hasRemaining()) {
+                target.write(frames);
+            }
+            target.force(false);
+        } finally {
+            if (appendLock != null) {
+                appendLock.release();
+            }
+            synchronized (this) {
+                batchInFlight = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Chooses the segment to write to: the owner starts a new segment if the current one is full, and a follower moves
+     * to the newest segment, holding the shared append lock so that the owner cannot start another one until the
+     * frames are written.
+     *
+     * @return the shared append lock for a follower to release once the frames are written, or null for the owner
+     */
+    private FileLock prepareWrite() throws IOException {
+        if (ownerLock != null) {
+            if (channel.size() >= maxSegmentBytes) {
+                rollSegment();
+            }
+            return null;
+        }
+        FileLock appendLock = lockChannel.lock(1, 1, true);
+        try {
+            followNewestSegment();
+        } catch (IOException e) {
+            appendLock.release();
+            throw e;
+        }
+        return appendLock;
+    }
+
+    /**
+     * Moves a follower to the newest segment the owner has started.
+     */
+    private void followNewestSegment() throws IOException {
+        while (segmentFile(segmentIndex + 1).exists()) {
+            channel.close();
+            segmentIndex++;
+            channel = openSegment(segmentIndex);
+        }
+    }
+
+    /**
+     * Reads every valid record of the journal in order and passes it to the given consumer.
+     *
+     * @param consumer the consumer of the records
+     * @throws IOException if a segment cannot be read
+     * @requires consumer != null
+     * @effects passes every record of the journal to the consumer in sequence order
+     */
+    public void replay(Consumer<JournalRecord> consumer) throws IOException {
+        replay(0, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Reads every valid record in the segments with an index in the given range and passes it to the given consumer.
+     *
+     * @param fromSegment the index of the first segment to read
+     * @param toSegment the index of the first segment not to read
+     * @param consumer the consumer of the records
+     * @throws IOException if a segment cannot be read
+     * @requires consumer != null
+     * @effects passes every record of those segments to the consumer in sequence order
+     */
+    public void replay(long fromSegment, long toSegment, Consumer<JournalRecord> consumer) throws IOException {
+        for (File segment : listSegments()) {
+            long index = indexOf(segment);
+            if (index >= fromSegment && index < toSegment) {
+                scanSegment(segment, consumer);
+            }
+        }
+    }
+
+    /**
+     * Applies one record to a map of balances.
+     * OPEN and BALANCE records set the balance, DEPOSIT, WITHDRAW, PURCHASE and transfer records apply their change
+     * to it and CLOSE records remove the account.
+     *
+     * @param balances the balances keyed by username
+     * @param record the record to apply
+     * @requires balances != null && record != null
+     * @modifies balances
+     * @effects updates the balance of the record's account according to its operation
+     */
+    static void applyTo(Map<String, Double> balances, JournalRecord record) {
+        switch (record.getOperation()) {
+            case OPEN:
+            case BALANCE:
+                balances.put(record.getUsername(), record.getBalance());
+                break;
+            case CLOSE:
+                balances.remove(record.getUsername());
+                break;
+            default:
+                balances.merge(record.getUsername(), record.getDelta(), JournalRecord::addCents);
+                break;
+        }
+    }
+
+    /**
+     * Closes the current segment and starts appending to a new one.
+     * Every record written before this call, by this journal or by a follower, is in a segment with a lower index than
+     * the returned one, so those segments can be read while appends continue.
+     *
+     * @return the index of the new segment
+     * @throws IOException if the new segment cannot be opened
+     * @throws IllegalStateException if this journal is a follower
+     * @modifies this
+     * @effects starts a new segment once the group committer has written its batch and no follower is appending
+     */
+    public synchronized long rollSegment() throws IOException {
+        if (ownerLock == null) {
+            throw new IllegalStateException("Only the owner of the journal starts segments");
+        }
+        while (batchInFlight) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a group commit");
+            }
+        }
+        try (FileLock appendLock = lockChannel.lock(1, 1, false)) {
+            channel.close();
+            segmentIndex++;
+            channel = openSegment(segmentIndex);
+        }
+        return segmentIndex;
+    }
+
+    /**
+     * Checks if this journal owns its directory, that is, it was the first instance to open it. Only the owner starts
+     * new segments, so only the owner may checkpoint the journal.
+     *
+     * @return true if this journal owns its directory, false if it is a follower
+     */
+    public boolean isOwner() {
+        return ownerLock != null;
+    }
+
+    /**
+     * Makes sure the next appended record receives a sequence number greater than the given one.
+     * This is used after recovery when the segments holding the latest sequence numbers were compacted away.
+     *
+     * @param sequence a sequence number that has already been used
+     * @modifies this
+     * @effects raises the next sequence number above the given one if necessary
+     */
+    public synchronized void advanceSequencePast(long sequence) {
+        nextSequence = Math.max(nextSequence, sequence + 1);
+    }
+
+    /**
+     * Returns the total size of the segments with an index of at least the given one.
+     *
+     * @param fromSegment the index of the first segment to count
+     * @return the size of those segments in bytes
+     */
+    public long sizeFrom(long fromSegment) {
+        long size = 0;
+        for (File segment : listSegments()) {
+            if (indexOf(segment) >= fromSegment) {
+                size += segment.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the directory holding the segment files.
+     *
+     * @return the journal directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Reads the valid frames of a segment from the given offset, which must be the start of a frame, and passes the
+     * records of the frames appended by other instances to the consumer, so that a change feed can tell them from the
+     * records of this journal. A frame still being written at the end is left for the next read.
+     *
+     * @param segment the segment to read
+     * @param from the offset to read from
+     * @param consumer the consumer of the records
+     * @return the offset just after the last valid frame
+     * @throws IOException if the segment cannot be read
+     * @requires segment != null && from >= 0 && consumer != null
+     * @effects passes the records appended by other instances to the consumer in order
+     */
+    public long scanOtherInstances(File segment, long from, Consumer<JournalRecord> consumer) throws IOException {
+        return scanSegment(segment, from, instanceId, consumer);
+    }
+
+    /**
+     * Returns the sequence number that the next appended record will receive.
+     *
+     * @return the next sequence number
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Commits any records still waiting for a group commit and closes the segment currently appended to.
+     *
+     * @throws IOException if the segment cannot be closed
+     * @modifies this
+     * @effects closes the journal and gives up the ownership of its directory if it had it
+     */
+    @Override
+    public void close() throws IOException {
+        GroupCommitter pendingCommitter;
+        synchronized (this) {
+            pendingCommitter = committer;
+        }
+        if (pendingCommitter != null) {
+            pendingCommitter.close();
+        }
+        synchronized (this) {
+            channel.close();
+            lockChannel.close(); // Releases the owner lock
+        }
+    }
+
+    /**
+     * Makes sure the buffer can hold a frame with records of the given size, and writes the frame header placeholder
+     * and the instance id.
+     */
+    private void beginFrame(int payloadBytes) {
+        int required = FRAME_HEADER_BYTES + INSTANCE_BYTES + payloadBytes;
+        if (buffer.capacity() < required) {
+            buffer = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.position(FRAME_HEADER_BYTES);
+        buffer.putLong(instanceId);
+    }
+
+    /**
+     * Encodes one record into the buffer.
+     */
+    private void putRecord(long sequence, byte[] name, Operation operation, double amount, double fee, double balance) {
+        buffer.putLong(sequence);
+        buffer.put((byte) operation.ordinal());
+        buffer.putDouble(amount);
+        buffer.putDouble(fee);
+        buffer.putDouble(balance);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+    }
+
+    /**
+     * Fills in the frame header and flips the buffer for writing.
+     */
+    private void sealFrame() {
+        int payloadBytes = buffer.position() - FRAME_HEADER_BYTES;
+        crc.reset();
+        crc.update(buffer.array(), FRAME_HEADER_BYTES, payloadBytes);
+        buffer.putInt(0, payloadBytes | INSTANCE_FLAG);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+    }
+
+    /**
+     * Writes the sealed frame in the buffer directly, or hands it to the group committer.
+     */
+    private CompletableFuture<Long> submitFrame(long sequence) {
+        if (committer != null) {
+            return committer.submit(buffer, sequence);
+        }
+        try {
+            writeBatch(buffer);
+            return CompletableFuture.completedFuture(sequence);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Reads the valid frames of a segment and passes their records to the consumer.
+     *
+     * @return the offset just after the last valid frame
+     */
+    static long scanSegment(File segment, Consumer<JournalRecord> consumer) throws IOException {
+        return scanSegment(segment, 0, consumer);
+    }
+
+    /**
+     * Reads the valid frames of a segment from the given offset, which must be the start of a frame, and passes their
+     * records to the consumer. A frame still being written at the end is left for the next read.
+     *
+     * @return the offset just after the last valid frame
+     */
+    static long scanSegment(File segment, long from, Consumer<JournalRecord> consumer) throws IOException {
+        return scanSegment(segment, from, 0, consumer);
+    }
+
+    /**
+     * Reads the valid frames of a segment from the given offset as scanSegment does, skipping the frames appended by
+     * the instance with the given id, or none if it is 0.
+     *
+     * @return the offset just after the last valid frame
+     */
+    private static long scanSegment(File segment, long from, long skippedInstance, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = from;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+            CRC32 checksum = new CRC32();
+            while (position + FRAME_HEADER_BYTES <= size) {
+                header.clear();
+                readFully(in, header, position);
+                int length = header.getInt(0);
+                int payloadBytes = length & ~INSTANCE_FLAG;
+                int expectedCrc = header.getInt(4);
+                if (payloadBytes <= 0 || position + FRAME_HEADER_BYTES + payloadBytes > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+                readFully(in, payload, position + FRAME_HEADER_BYTES);
+                checksum.reset();
+                checksum.update(payload.array(), 0, payloadBytes);
+                if ((int) checksum.getValue() != expectedCrc) {
+                    break;
+                }
+                payload.flip();
+                long instance = (length & INSTANCE_FLAG) != 0 ? payload.getLong() : 0;
+                while (payload.hasRemaining() && (skippedInstance == 0 || instance != skippedInstance)) {
+                    consumer.accept(readRecord(payload));
+                }
+                position += FRAME_HEADER_BYTES + payloadBytes;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Decodes one record from the buffer.
+     */
+    private static JournalRecord readRecord(ByteBuffer payload) {
+        long sequence = payload.getLong();
+        Operation operation = Operation.values()[payload.get()];
+        double amount = payload.getDouble();
+        double fee = payload.getDouble();
+        double balance = payload.getDouble();
+        byte[] name = new byte[payload.getShort()];
+        payload.get(name);
+        return new JournalRecord(sequence, new String(name, StandardCharsets.UTF_8), operation, amount, fee, balance);
+    }
+
+    /**
+     * Reads from the channel at the given position until the buffer is full.
+     */
+    private static void readFully(FileChannel in, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = in.read(target, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Cuts a segment back to the given size if it is longer.
+     */
+    private static void truncate(File segment, long size) throws IOException {
+        try (FileChannel out = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+            if (out.size() > size) {
+                out.truncate(size);
+            }
+        }
+    }
+
+    /**
+     * Opens the segment with the given index for appending.
+     */
+    private FileChannel openSegment(long index) throws IOException {
+        return FileChannel.open(segmentFile(index).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns the file of the segment with the given index.
+     */
+    private File segmentFile(long index) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the segment files of the journal in index order.
+     *
+     * @return the segment files sorted by index
+     */
+    List<File> listSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            segments.addAll(Arrays.asList(files));
+            segments.sort((a, b) -> Long.compare(indexOf(a), indexOf(b)));
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the index encoded in a segment file name.
+     */
+    static long indexOf(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Returns a string representation of the TransactionJournal.
+     *
+     * @return a string representation of the TransactionJournal
+     * @effects returns a string that represents the TransactionJournal
+     */
+    @Override
+    public String toString() {
+        return "TransactionJournal in " + directory + " at segment " + segmentIndex + ", next sequence: " + nextSequence;
+    }
+
+    /**
+     * Checks the representation invariant of the TransactionJournal.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return directory != null && channel != null && nextSequence > 0 && maxSegmentBytes > 0;
+    }
+}
@@ -0,0 +1,249 @@
+package coe528.bankingapp.data;
+
+import coe528.bankingapp.data.JournalRecord.Operation;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Overview: WriteBehindQueue is a mutable class that moves balance persistence off the calling thread.
+ * Callers update their in-memory state and mark the account dirty; a dedicated writer thread later reads the latest
+ * balance of every dirty account and appends one BALANCE record per account to the journal in a single frame.
+ * Repeated updates to the same account before a flush are coalesced into one record. The number of dirty accounts is
+ * bounded, and callers block when the backlog is full until the writer catches up.
+ * Operations journaled directly as changes, such as transfers, must not land between the writer reading a balance and
+ * its frame: the balance would include the change and replay would apply it again. Such writers hold a read lock of
+ * 'order' from before they change a balance until their frame is placed in the journal, and the writer holds its
+ * write lock while it reads the balances and places its frame.
+ *
+ * Abstraction Function:
+ * Represents the set of accounts whose latest balance, read through the suppliers in 'dirty', still has to be
+ * written to 'journal' by the writer thread.
+ *
+ * Representation Invariant:
+ * The 'journal', 'order' and 'dirty' fields must be non-null, 'dirty' must hold at most 'capacity' accounts, 'capacity' must be
+ * positive and 'delayMillis' must be non-negative.
+ */
+public class WriteBehindQueue implements Closeable {
+    // The journal the balances are written to
+    private final TransactionJournal journal;
+    // The lock ordering the writer's frames against changes journaled directly
+    private final StampedLock order;
+    // The largest number of dirty accounts before callers block
+    private final int capacity;
+    // How long the writer waits after the first update so that later updates can be coalesced
+    private final long delayMillis;
+    // The thread writing the balances
+    private final Thread writerThread;
+
+    // The balance supplier of every dirty account, in the order the accounts became dirty
+    private Map<String, DoubleSupplier> dirty = new LinkedHashMap<>();
+    // Whether the writer is writing a drained batch
+    private boolean writing;
+    // Whether a caller is waiting in flush, so the writer should not delay
+    private boolean flushRequested;
+    // Whether close has been called
+    private boolean closed;
+
+    /**
+     * Constructs a new WriteBehindQueue and starts its writer thread.
+     *
+     * @param journal the journal the balances are written to
+     * @param order the lock that writers journaling changes directly hold for reading while they change a balance and
+     *              place their frame
+     * @param capacity the largest number of dirty accounts before callers block
+     * @param delayMillis how long the writer waits after the first update before flushing
+     * @requires journal != null && order != null && capacity > 0 && delayMillis >= 0
+     * @effects starts a daemon thread that writes dirty balances to the journal
+     */
+    public WriteBehindQueue(TransactionJournal journal, StampedLock order, int capacity, long delayMillis) {
+        this.journal = journal;
+        this.order = order;
+        this.capacity = capacity;
+        this.delayMillis = delayMillis;
+        writerThread = new Thread(this::run, "write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Marks an account as dirty so that its latest balance is written by the next flush.
+     * If the account is already dirty the update is coalesced with the pending one.
+     * Blocks while the backlog is full.
+     *
+     * @param username the username of the account
+     * @param balance supplies the current balance of the account when the writer flushes it
+     * @throws IllegalStateException if the queue is closed
+     * @requires username != null && balance != null
+     * @modifies this
+     * @effects adds the account to the dirty set, waiting for room if necessary
+     */
+    public synchronized void submit(String username, DoubleSupplier balance) {
+        boolean interrupted = false;
+        while (!closed && dirty.size() >= capacity && !dirty.containsKey(username)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-behind queue is closed");
+        }
+        dirty.put(username, balance);
+        notifyAll();
+    }
+
+    /**
+     * Drops the pending update of an account, for example because the account is being removed.
+     *
+     * @param username the username of the account
+     * @requires username != null
+     * @modifies this
+     * @effects removes the account from the dirty set
+     */
+    public synchronized void cancel(String username) {
+        if (dirty.remove(username) != null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until every account marked dirty before this call has been written.
+     *
+     * @effects waits until the dirty set is empty and the writer is idle
+     */
+    public synchronized void flush() {
+        boolean interrupted = false;
+        while (!dirty.isEmpty() || writing) {
+            flushRequested = true;
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of accounts waiting to be written.
+     *
+     * @return the number of dirty accounts
+     */
+    public synchronized int getBacklog() {
+        return dirty.size();
+    }
+
+    /**
+     * Writes every dirty account and stops the writer thread.
+     *
+     * @modifies this
+     * @effects flushes the queue and stops the writer thread
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for dirty accounts and writes them until closed.
+     */
+    private void run() {
+        while (true) {
+            Map<String, DoubleSupplier> batch;
+            synchronized (this) {
+                try {
+                    while (dirty.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (dirty.isEmpty()) {
+                        return;
+                    }
+                    long deadline = System.currentTimeMillis() + delayMillis;
+                    long remaining;
+                    while (!closed && !flushRequested && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                        wait(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                batch = dirty;
+                dirty = new LinkedHashMap<>();
+                writing = true;
+                flushRequested = false;
+                notifyAll();
+            }
+            write(batch);
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Appends the current balance of every account of a batch to the journal in one frame, reading the balances and
+     * placing the frame while no change journaled directly is in progress, then waits for the frame to be written.
+     */
+    private void write(Map<String, DoubleSupplier> batch) {
+        List<JournalRecord> records = new ArrayList<>(batch.size());
+        CompletableFuture<Long> written;
+        long stamp = order.writeLock();
+        try {
+            for (Map.Entry<String, DoubleSupplier> entry : batch.entrySet()) {
+                records.add(new JournalRecord(0, entry.getKey(), Operation.BALANCE, 0, 0, entry.getValue().getAsDouble()));
+            }
+            written = journal.appendAllAsync(records);
+        } finally {
+            order.unlockWrite(stamp);
+        }
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    /**
+     * Returns a string representation of the WriteBehindQueue.
+     *
+     * @return a string representation of the WriteBehindQueue
+     * @effects returns a string that represents the WriteBehindQueue
+     */
+    @Override
+    public synchronized String toString() {
+        return "WriteBehindQueue with " + dirty.size() + " of " + capacity + " dirty accounts, delay " + delayMillis + " ms";
+    }
+
+    /**
+     * Checks the representation invariant of the WriteBehindQueue.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public synchronized boolean repOk() {
+        return journal != null && order != null && dirty != null && dirty.size() <= capacity && capacity > 0 && delayMillis >= 0;
+    }
+}
@@ -78,7 +78,6 @@ public class AddNewCustomerController {
     public void handleAddButton() throws IOException {
         String username = usernameField.getText();
         String password = passwordField.getText();
-        double balance = Double.parseDouble(balanceField.getText());
         // Check if the username already exists
         if (manager.getCustomer(username) != null) {
             errorMessage.setText("Username already exists. Please choose a different username.");
@@ -86,6 +85,7 @@ public class AddNewCustomerController {
         }
         // Add the new customer to the database
         try {
+            double balance = Double.parseDouble(balanceField.getText());
             Customer newCustomer = new Customer(username, password, balance);
             if (newCustomer.repOk()) {
                 manager.addCustomer(newCustomer);
@@ -94,6 +94,10 @@ public class AddNewCustomerController {
             }
         } catch (NumberFormatException e) {
             new Alert(AlertType.ERROR, "Invalid balance. Please enter a numeric value.").showAndWait();
+        } catch (IllegalArgumentException e) {
+            // The balance is out of range, the storage engine rejected the account, or the username was just taken
+            errorMessage.setText(e.getMessage());
+            return;
         }
         App.setRoot("managerView");
     }
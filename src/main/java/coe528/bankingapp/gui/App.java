@@ -1,5 +1,7 @@
 package coe528.bankingapp.gui;
 
+import coe528.bankingapp.data.StorageEngines;
+import coe528.bankingapp.server.TransactionServer;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -7,6 +9,7 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * This class represents the main application in the banking application.
@@ -39,6 +42,17 @@ public class App extends Application {
     }
 
 
+    /**
+     * Stops the application.
+     * The storage engine is closed before the application exits, which writes every pending balance change to disk.
+     *
+     * @effects writes every pending balance change to disk and closes the storage engine
+     */
+    @Override
+    public void stop() {
+        StorageEngines.shutdown();
+    }
+
     /**
      * Sets the root scene of the application to the scene specified by the FXML file.
      *
@@ -67,12 +81,23 @@ public class App extends Application {
 
     /**
      * The main method of the application.
-     * It is the entry point of the application and is responsible for launching the JavaFX application.
+     * It is the entry point of the application and is responsible for launching the JavaFX application, or with the
+     * --headless argument for starting the transaction server instead.
+     * The JavaFX application turns write-behind on unless "bankingapp.writeBehind" is set, so that deposits, withdrawals
+     * and purchases made on the JavaFX application thread do not wait for the journal.
      *
      * @param args the command-line arguments
-     * @effects launches the JavaFX application
+     * @throws IOException if the transaction server's address cannot be bound
+     * @effects launches the JavaFX application, or the transaction server if args contains --headless
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (Arrays.asList(args).contains("--headless")) {
+            TransactionServer.main(args);
+            return;
+        }
+        if (System.getProperty("bankingapp.writeBehind") == null) {
+            System.setProperty("bankingapp.writeBehind", "true");
+        }
         launch();
     }
 
@@ -2,13 +2,13 @@ package coe528.bankingapp.gui;
 
 import coe528.bankingapp.customer.Customer;
 import coe528.bankingapp.manager.Manager;
-import coe528.bankingapp.data.FileManager;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * This class is the controller for the authentication view of the banking application.
@@ -24,8 +24,8 @@ import java.util.List;
 public class AuthenticateController {
     // The manager of the banking application
     private static final Manager manager;
-    // The FileManager for the banking application
-    private static final FileManager fileManager;
+    // The storage engine holding the customers' accounts
+    private static final StorageEngine storage;
 
     // The TextField for the username input in the authentication view.
     @FXML
@@ -41,7 +41,7 @@ public class AuthenticateController {
 
     static {
         manager = new Manager("admin", "admin"); // Create a new manager with the default username and password
-        fileManager = new FileManager(); // Create a new FileManager
+        storage = StorageEngines.get(); // Get the configured storage engine
     }
 
     /**
@@ -79,31 +79,20 @@ public class AuthenticateController {
             loginErrorLabel.setText("Unable to log in. Please check your username and password.");
         }
 
-        // Get all the customer files
-        List<String> customerFiles = fileManager.getAllFilesInDirectory();
-        for (String filename : customerFiles) { // For each customer file
-            String customerData = fileManager.readFromFile(filename); // Read the customer data from the file
-            String[] data = customerData.split("\n"); // Split the data by newline
-            String usernameFromFile = data[0].split(": ")[1]; // Get the username from the file
-
-            // Check if the entered username matches a customer's username
-            if (username.equals(usernameFromFile)) {
-                Customer customer = manager.getCustomer(usernameFromFile); // Get the customer from the manager
-                if (customer == null) { // If the customer does not exist
-                    throw new IllegalStateException("Customer does not exist"); // Throw an IllegalStateException
-                }
-                customer.login(username, password); // Login as the customer
-                if (customer.isLoggedIn()) { // If the customer is logged in
-                    CustomerController.setCustomer(customer); // Set the customer
-                    switchToCustomerView(); // Switch to the customer view
-                    return;
-                }
-                // If the customer is not logged in
-                if (!customer.isLoggedIn()) {
-                    loginErrorLabel.setText("Unable to log in. Please check your username and password.");
-                    return;
-                }
+        // Check if the entered username belongs to a stored customer account
+        if (storage.load(username) != null) {
+            Customer customer = manager.getCustomer(username); // Get the customer from the manager
+            if (customer == null) { // If the customer does not exist
+                throw new IllegalStateException("Customer does not exist"); // Throw an IllegalStateException
             }
+            customer.login(username, password); // Login as the customer
+            if (customer.isLoggedIn()) { // If the customer is logged in
+                CustomerController.setCustomer(customer); // Set the customer
+                switchToCustomerView(); // Switch to the customer view
+                return;
+            }
+            // If the customer is not logged in
+            loginErrorLabel.setText("Unable to log in. Please check your username and password.");
         }
     }
 
@@ -1,19 +1,27 @@
 package coe528.bankingapp.gui;
 
 import coe528.bankingapp.customer.Customer;
-import coe528.bankingapp.data.FileManager;
+import coe528.bankingapp.data.AccountChange;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.manager.CustomerOrder;
 import coe528.bankingapp.manager.Manager;
-import javafx.collections.FXCollections;
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Pane;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -30,6 +38,10 @@ import java.util.Optional;
 public class ManagerController {
     // The manager of the banking application
     private static Manager manager;
+    // The number of customers on a page of the customer table
+    private static final int PAGE_SIZE = 25;
+    // The choice of the level filter that shows every level
+    private static final String ALL_LEVELS = "All levels";
 
     // The FXML annotated UI components
     @FXML
@@ -46,6 +58,22 @@ public class ManagerController {
     private TableColumn<Customer, String> passwordColumn;
     @FXML
     private TableColumn<Customer, Double> balanceColumn;
+    @FXML
+    private ProgressBar loadProgressBar;
+    @FXML
+    private Pagination customerPagination;
+    @FXML
+    private ChoiceBox<String> levelChoiceBox;
+
+    // The task loading the page last asked for, or null
+    private Task<List<Customer>> pageLoad;
+    // The order the manager sorted the customer table in
+    private CustomerOrder order = CustomerOrder.NUMBER;
+    private boolean descending;
+    // The balance each row showed when it was last drawn, to find the rows whose balance changed
+    private final Map<Customer, Double> shownBalances = new HashMap<>();
+    // Receives the accounts changed by other instances of the application while the view is shown
+    private final StorageEngine.ChangeListener changeListener = this::accountsChanged;
 
     /**
      * Default constructor for the ManagerController class.
@@ -55,7 +83,8 @@ public class ManagerController {
     /**
      * Initializes the Manager GUI.
      *
-     * @effects sets up the customer table and refreshes the customer list
+     * @effects sets up the customer table, its level filter, its username search and its pages, subscribes to the accounts changed by other
+     *          instances of the application and refreshes the customer list
      */
     @FXML
     public void initialize() {
@@ -77,7 +106,43 @@ public class ManagerController {
             }
 
         });
+        passwordColumn.setSortable(false);
+        actionColumn.setSortable(false);
+        customerTable.setSortPolicy(table -> { // Sort in the manager's indexes instead of in the table
+            CustomerOrder newOrder = CustomerOrder.NUMBER;
+            boolean newDescending = false;
+            if (!table.getSortOrder().isEmpty()) {
+                TableColumn<Customer, ?> column = table.getSortOrder().get(0);
+                newOrder = column == usernameColumn ? CustomerOrder.USERNAME
+                        : column == balanceColumn ? CustomerOrder.BALANCE : CustomerOrder.NUMBER;
+                newDescending = column.getSortType() == TableColumn.SortType.DESCENDING;
+            }
+            if (newOrder != order || newDescending != descending) {
+                order = newOrder;
+                descending = newDescending;
+                refreshCustomerList();
+            }
+            return true;
+        });
+
+        // Set up the level filter and the pages
+        levelChoiceBox.getItems().add(ALL_LEVELS);
+        levelChoiceBox.getItems().addAll(AccountRecord.LEVELS);
+        levelChoiceBox.setValue(ALL_LEVELS);
+        levelChoiceBox.valueProperty().addListener((observable, oldLevel, newLevel) -> {
+            customerPagination.setCurrentPageIndex(0);
+            refreshCustomerList();
+        });
+        usernameField.textProperty().addListener((observable, oldText, newText) -> { // Search as the manager types
+            customerPagination.setCurrentPageIndex(0);
+            refreshCustomerList();
+        });
+        customerPagination.setPageFactory(page -> { // The table shows the page, so the pagination only switches pages
+            refreshCustomerList();
+            return new Pane();
+        });
 
+        manager.addChangeListener(changeListener); // Reload the page when another instance changes an account on it
         refreshCustomerList(); // Refresh the customer list
     }
 
@@ -95,30 +160,109 @@ public class ManagerController {
 
     /**
      * Refreshes the list of customers in the Manager GUI.
+     * The balances come from the manager's customers, which are kept up to date by the transaction journal,
+     * since the customer files only hold the opening balance.
+     * Only the current page of customers is counted and loaded, in the order and at the level chosen, on a background
+     * thread while an indeterminate progress bar is shown, since a page is too small a load to report progress for.
+     * The rows of the table are then changed only where the page differs, and an error is shown if the page cannot be
+     * loaded.
+     * While a username prefix is typed in the search field, the pages hold the customers whose usernames start with it,
+     * in username order at every level, so the level filter is disabled.
      * Idea: https://stackoverflow.com/questions/37559584/how-to-add-dynamic-columns-and-rows-to-tableview-in-java-fxml
      * @modifies this
-     * @effects updates the list of customers in the Manager GUI
+     * @effects starts loading the current page of customers and updates the rows of the Manager GUI once it is loaded
      */
     @FXML
     public void refreshCustomerList() {
-        ObservableList<Customer> customerList = FXCollections.observableArrayList(); // The list of customers to be displayed
-        FileManager fileManager = new FileManager();
-        List<String> customerFiles = fileManager.getAllFilesInDirectory(); // The list of customer files in the directory
-
-        for (String filename : customerFiles) { // Iterate through the customer files
-            String customerData = fileManager.readFromFile(filename); // Read the customer data from the file
-            String[] data = customerData.split("\n"); // Split the data into an array
-            String username = data[0].split(": ")[1]; // Get the username
-            String password = data[1].split(": ")[1]; // Get the password
-            double balance = Double.parseDouble(data[2].split(": ")[1]); // Get the balance
+        String level = ALL_LEVELS.equals(levelChoiceBox.getValue()) ? null : levelChoiceBox.getValue();
+        String prefix = usernameField.getText() == null ? "" : usernameField.getText().trim();
+        boolean searching = !prefix.isEmpty();
+        levelChoiceBox.setDisable(searching);
+        int pageIndex = customerPagination.getCurrentPageIndex();
+        CustomerOrder pageOrder = order;
+        boolean pageDescending = descending;
 
-            Customer customer = new Customer(username, password, balance); // Create a new customer
-            customer.getCustomerLevel(); // Get the customer level
+        if (pageLoad != null) {
+            pageLoad.cancel(); // Only the page asked for last is shown
+        }
+        int[] pageCount = new int[1];
+        Task<List<Customer>> load = new Task<>() { // The task counting the customers and loading the page to be displayed
+            @Override
+            protected List<Customer> call() {
+                int count = searching ? manager.countCustomersByPrefix(prefix) : manager.getCustomerCount(level);
+                pageCount[0] = Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE);
+                int offset = Math.min(pageIndex, pageCount[0] - 1) * PAGE_SIZE;
+                return searching ? manager.findCustomersByPrefix(prefix, offset, PAGE_SIZE)
+                        : manager.getCustomerPage(pageOrder, pageDescending, level, offset, PAGE_SIZE);
+            }
+        };
+        pageLoad = load;
+        loadProgressBar.setProgress(ProgressBar.INDETERMINATE_PROGRESS); // Show that the page is loading
+        loadProgressBar.visibleProperty().bind(load.runningProperty());
+        load.setOnSucceeded(event -> {
+            if (pageLoad == load) {
+                showPage(load.getValue());
+                customerPagination.setPageCount(pageCount[0]);
+            }
+        });
+        load.setOnFailed(event -> {
+            if (pageLoad == load) {
+                new Alert(Alert.AlertType.ERROR, "Could not load the customers: " + load.getException().getMessage()).show();
+            }
+        });
+        Thread loader = new Thread(load, "customer-page-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
 
-            customerList.add(customer); // Add the customer to the list
+    /**
+     * Makes the rows of the customer table the customers on a page, in order.
+     * Rows already showing a customer of the page are kept or moved, rows of customers no longer on the page are
+     * removed, and a kept row is redrawn only if its balance changed since it was last drawn.
+     *
+     * @param page the customers on the page
+     * @modifies this
+     * @effects changes the rows of the customer table to the customers of the page
+     */
+    private void showPage(List<Customer> page) {
+        ObservableList<Customer> rows = customerTable.getItems();
+        for (int i = 0; i < page.size(); i++) {
+            Customer customer = page.get(i);
+            int found = rows.subList(i, rows.size()).indexOf(customer);
+            if (found > 0) {
+                rows.remove(i + found); // Move the row up to its place
+            }
+            if (found != 0) {
+                rows.add(i, customer);
+            } else if (!Objects.equals(shownBalances.get(customer), customer.getBalance())) {
+                rows.set(i, customer); // Redraw the row with its new balance
+            }
+            shownBalances.put(customer, customer.getBalance());
         }
+        rows.remove(page.size(), rows.size());
+        shownBalances.keySet().retainAll(page);
+    }
 
-        customerTable.setItems(customerList); // Set the items in the customer table
+    /**
+     * Reloads the current page if accounts changed by another instance of the application may be on it, which is the
+     * case if a change adds or removes an account, changes a row shown, or may move an account onto the page because
+     * the table is sorted by balance or filtered by level.
+     *
+     * @param changes the changed accounts, already applied by the manager
+     * @effects refreshes the customer list on the JavaFX application thread if the changes may affect the current page
+     */
+    private void accountsChanged(List<AccountChange> changes) {
+        Platform.runLater(() -> {
+            boolean affected = order == CustomerOrder.BALANCE || !ALL_LEVELS.equals(levelChoiceBox.getValue());
+            for (int i = 0; i < changes.size() && !affected; i++) {
+                AccountChange change = changes.get(i);
+                affected = change.isAdded() || change.isRemoved() || customerTable.getItems().stream()
+                        .anyMatch(customer -> customer.getUsername().equals(change.getUsername()));
+            }
+            if (affected) {
+                refreshCustomerList();
+            }
+        });
     }
 
     /**
@@ -129,6 +273,7 @@ public class ManagerController {
      * @effects opens a dialog for the manager to enter the new customer's information
      */
     public void handleAddCustomerButtonClick() throws IOException {
+        manager.removeChangeListener(changeListener); // The view is left
         AddNewCustomerController.setManager(manager); // Set the manager for the add customer controller
         App.setRoot("addNewCustomer"); // Set the root to the add customer view
     }
@@ -138,11 +283,23 @@ public class ManagerController {
      *
      * @param customer the customer to be deleted
      * @modifies this
-     * @effects removes the customer from the manager's list of customers and refreshes the customer list
+     * @effects removes the customer from the manager's list of customers on a background thread, since it deletes the
+     *          customer's file and journals the closing, and then refreshes the customer list
      */
     private void deleteCustomer(Customer customer) {
-        manager.removeCustomer(customer.getUsername()); // Remove the customer from the manager's list of customers
-        refreshCustomerList(); // Refresh the customer list
+        Task<Void> delete = new Task<>() { // The task removing the customer from the manager's list of customers
+            @Override
+            protected Void call() {
+                manager.removeCustomer(customer.getUsername());
+                return null;
+            }
+        };
+        delete.setOnSucceeded(event -> refreshCustomerList()); // Refresh the customer list
+        delete.setOnFailed(event -> new Alert(Alert.AlertType.ERROR,
+                "Could not delete " + customer.getUsername() + ": " + delete.getException().getMessage()).show());
+        Thread deleter = new Thread(delete, "customer-deleter");
+        deleter.setDaemon(true);
+        deleter.start();
     }
 
     /**
@@ -153,6 +310,7 @@ public class ManagerController {
      * @effects logs out the manager and switches the view to the login view
      */
     public void handleLogoutButtonClick() throws IOException {
+        manager.removeChangeListener(changeListener); // The view is left
         manager.logout(); // Log out the manager
         App.setRoot("login"); // Set the root to the login view
     }
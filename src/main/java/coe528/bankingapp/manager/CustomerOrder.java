@@ -0,0 +1,14 @@
+package coe528.bankingapp.manager;
+
+/**
+ * This enum represents the orders the Manager can page through its customers in.
+ * Each order is served by one of the Manager's sorted indexes, so a page is read without sorting the customers.
+ */
+public enum CustomerOrder {
+    // By customer number
+    NUMBER,
+    // By username
+    USERNAME,
+    // By balance, then by customer number
+    BALANCE
+}
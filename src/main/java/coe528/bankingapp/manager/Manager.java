@@ -1,96 +1,309 @@
 package coe528.bankingapp.manager;
 
+import coe528.bankingapp.data.AccountChange;
+import coe528.bankingapp.data.AccountRecord;
+import coe528.bankingapp.data.BulkLoader;
 import coe528.bankingapp.data.FileManager;
+import coe528.bankingapp.data.StorageEngine;
+import coe528.bankingapp.data.StorageEngines;
 import coe528.bankingapp.templates.AbstractUser;
+import coe528.bankingapp.customer.BalanceListener;
+import coe528.bankingapp.customer.BatchExecutor;
+import coe528.bankingapp.customer.BatchOperation;
+import coe528.bankingapp.customer.BatchResult;
 import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.customer.CustomerLevel;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 /**
  * Overview: Manager is a mutable class that represents a manager in the banking application.
- * A Manager has a list of customers and can add or remove customers.
+ * A Manager has a set of customers and can add or remove customers.
+ * The customers are indexed by username in a concurrent hash map, by customer number in a concurrent sorted map, and
+ * by level in one concurrent set per level, by (balance, customer number) in a concurrent sorted map, and by username
+ * in a concurrent sorted set, so lookups never scan the customers, range and top-N queries by balance take
+ * O(log n + k) time, and pages of customers in any of these orders are read straight from an index. The customers
+ * whose usernames start with a prefix are a contiguous range of the sorted usernames, so a page of a prefix search
+ * is also read in O(log n + k) time. The level and balance indexes
+ * are kept up to date by listening to every customer's balance changes; each customer's index entries are updated
+ * under that customer's lock only, so there is no global lock.
+ * In lazy mode, selected with the system property bankingapp.manager.lazy, the Manager loads only the customer numbers
+ * and usernames at startup and creates a Customer from its stored account the first time it is asked for. Created
+ * customers are held through soft references, so the garbage collector evicts those not in use when memory runs low.
+ * The indexes above are then empty, except for the sorted usernames, which lazy mode keeps for prefix searches; the
+ * queries by level and balance scan the stored accounts instead and create only
+ * the customers they return, and getCustomers creates every customer.
+ * In both modes the number of customers and the sum of their balances at each level are kept in LongAdders, updated on
+ * every balance change without serializing writers, so getTierStatistics reads them in O(1). The sums are kept in
+ * cents so that they do not drift. The lowest and highest balance of a level come from the balance index in O(log n).
+ * In lazy mode, which has no balance index, each level instead keeps how many accounts hold each balance in a
+ * concurrent sorted map keyed by cents, updated with the aggregates; it costs an entry per distinct balance rather than
+ * per customer, and gives the lowest and highest balance in O(log n) too.
+ * The accounts the storage engine reports as changed by other instances of the application are applied to the
+ * customers and indexes as they arrive, and then passed on to the Manager's own change listeners, such as its view.
  *
  * Abstraction Function:
- * Represents a manager in the banking application as a Manager object where the list of customers is represented by the 'customers' field.
+ * Represents a manager in the banking application as a Manager object whose customers are the values of 'customersByUsername',
+ * or in lazy mode the stored accounts whose numbers and usernames are in 'usernamesByNumber'.
 
  * Representation Invariant:
- * The 'customers' field must always be non-null (customers != null).
+ * The index fields must be non-null. Every customer in 'customersByUsername' must be stored under its username, must be
+ * in 'customersByNumber' under its customer number, must be in exactly the level set of its current level, and must be
+ * in 'customersByBalance' under exactly one key, which is the key of its current balance and is its entry in 'balanceKeys',
+ * and its username must be in 'sortedUsernames'.
+ * In lazy mode the indexes other than 'sortedUsernames' must be empty, every customer in 'residentCustomers' must be
+ * stored under its username and have its number mapped to its username in 'usernamesByNumber', and 'sortedUsernames'
+ * must hold the usernames of the stored accounts.
+ * 'tierCounts' and 'tierCents' must have an entry for every level; when no update is in progress the count of a level
+ * must be its number of customers and its cents the sum of their balances in cents.
+ * In lazy mode 'tierBalances' must have an entry for every level, mapping each balance in cents at that level to the
+ * positive number of customers holding it when no update is in progress; otherwise it must be empty.
  */
-public class Manager extends AbstractUser {
+public class Manager extends AbstractUser implements BalanceListener {
     // The FileManager instance for handling file operations related to the manager
     private final FileManager fileManager;
+    // The storage engine holding the customers' accounts
+    private final StorageEngine storage;
 
     // The role of the user
     private static final String ROLE = "manager";
-    // The list of customers of the manager
-    private final List<Customer> customers;
+    // Orders stored accounts by balance and then customer number, like the balance index
+    private static final Comparator<AccountRecord> BY_BALANCE =
+            Comparator.comparingDouble(AccountRecord::getBalance).thenComparingInt(AccountRecord::getCustomerNumber);
+    // The customers of the manager, keyed by username
+    private final Map<String, Customer> customersByUsername = new ConcurrentHashMap<>();
+    // The customers of the manager, keyed and ordered by customer number
+    private final ConcurrentSkipListMap<Integer, Customer> customersByNumber = new ConcurrentSkipListMap<>();
+    // The customers of the manager at each level
+    private final Map<String, Set<Customer>> customersByLevel = new ConcurrentHashMap<>();
+    // The customers of the manager, ordered by balance and then customer number
+    private final ConcurrentSkipListMap<BalanceKey, Customer> customersByBalance = new ConcurrentSkipListMap<>();
+    // The key each customer is stored under in 'customersByBalance'
+    private final Map<Customer, BalanceKey> balanceKeys = new ConcurrentHashMap<>();
+    // The usernames of the customers in alphabetical order, also kept in lazy mode
+    private final ConcurrentSkipListSet<String> sortedUsernames = new ConcurrentSkipListSet<>();
+    // True to create customers only when they are asked for
+    private final boolean lazy;
+    // In lazy mode, the usernames of the stored accounts keyed and ordered by customer number
+    private final ConcurrentSkipListMap<Integer, String> usernamesByNumber = new ConcurrentSkipListMap<>();
+    // The usernames of the customers being added, reserved while their accounts are saved
+    private final Set<String> addingUsernames = ConcurrentHashMap.newKeySet();
+    // In lazy mode, the customers created so far, which the garbage collector may evict when they are not in use
+    private final Map<String, CustomerReference> residentCustomers = new ConcurrentHashMap<>();
+    // In lazy mode, the number of accounts changed by other instances, so a customer loaded meanwhile is loaded again
+    private final AtomicLong lazyChanges = new AtomicLong();
+    // The queue the references of evicted customers are put on
+    private final ReferenceQueue<Customer> evicted = new ReferenceQueue<>();
+    // The number of customers at each level
+    private final Map<String, LongAdder> tierCounts = new ConcurrentHashMap<>();
+    // The sum of the balances of the customers at each level, in cents
+    private final Map<String, LongAdder> tierCents = new ConcurrentHashMap<>();
+    // In lazy mode, the number of customers holding each balance at each level, keyed and ordered by cents
+    private final Map<String, ConcurrentSkipListMap<Long, Long>> tierBalances = new ConcurrentHashMap<>();
+    // The listeners the accounts changed by other instances are reported to once they are applied
+    private final List<StorageEngine.ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a new Manager with the specified username and password.
-     * It also writes the manager's details to a file and loads all customers from the customer directory.
+     * It also writes the manager's details to a file and loads every customer account from the storage engine,
+     * several customers at a time on the bulk loader.
+     * A loaded customer whose stored number is already taken is given a new number, which is saved to its account.
+     * In lazy mode only the numbers and usernames of the accounts are loaded, and accounts are renumbered the same way.
      *
      * @param username the username of the manager
      * @param password the password of the manager
      * @requires username != null && password != null
      * @modifies this
-     * @effects creates a new Manager object with the specified username and password, writes the manager's details to a file, and loads all customers from the customer directory
+     * @effects creates a new Manager object with the specified username and password, writes the manager's details to a file, and loads all customers from the storage engine
      */
     public Manager(String username, String password) {
+        this(username, password, null);
+    }
+
+    /**
+     * Constructs a new Manager with the specified username and password, reporting the progress of loading the
+     * customers. In lazy mode only the index is loaded, and the progress is reported as complete once it is.
+     *
+     * @param username the username of the manager
+     * @param password the password of the manager
+     * @param listener the listener receiving the progress, which may be called from other threads, or null
+     * @requires username != null && password != null
+     * @modifies this
+     * @effects creates a new Manager object as Manager(username, password) does, reporting to the listener how many
+     *          customers are loaded as they are
+     */
+    public Manager(String username, String password, BulkLoader.ProgressListener listener) {
         super(username, password);
         fileManager = new FileManager(); // Create a new FileManager instance
-        customers = new ArrayList<>(); // Create a new list of customers
+        storage = StorageEngines.get(); // Open the configured storage engine
+        for (String level : AccountRecord.LEVELS) {
+            customersByLevel.put(level, ConcurrentHashMap.newKeySet());
+            tierCounts.put(level, new LongAdder());
+            tierCents.put(level, new LongAdder());
+        }
 
         // Write the manager's details to a file
         fileManager.writeToFile("admin.txt", "Username: " + username + "\nPassword: " + password + "\nRole: " + ROLE);
 
-        // Load all customers from the customer directory
-        List<String> customerFiles = fileManager.getAllFilesInDirectory();
-        for (String filename : customerFiles) { // For each customer file
-            String customerData = fileManager.readFromFile(filename); // Read the customer data from the file
-            String[] data = customerData.split("\n"); // Split the data by newline
-            String usernameFromFile = data[0].split(": ")[1]; // Get the username from the file
-            String passwordFromFile = data[1].split(": ")[1];  // Get the password from the file
-            double balance = Double.parseDouble(data[2].split(": ")[1]); // Get the balance from the file
-            Customer customer = new Customer(usernameFromFile, passwordFromFile, balance); // Create a new customer
-            customers.add(customer); // Add the customer to the list
+        lazy = Boolean.getBoolean("bankingapp.manager.lazy");
+        if (lazy) {
+            for (String level : AccountRecord.LEVELS) {
+                tierBalances.put(level, new ConcurrentSkipListMap<>());
+            }
+            // Load only the index of usernames, and keep new customer numbers clear of the stored ones
+            List<AccountRecord> duplicates = new ArrayList<>();
+            storage.forEach(record -> {
+                if (usernamesByNumber.putIfAbsent(record.getCustomerNumber(), record.getUsername()) == null) {
+                    Customer.reserveCustomerNumber(record.getCustomerNumber());
+                } else {
+                    duplicates.add(record);
+                }
+                sortedUsernames.add(record.getUsername());
+                addToTier(record.getBalance(), 1);
+            });
+            for (AccountRecord record : duplicates) {
+                // Give the account a new number past every stored one and store it, as the eager load does
+                Customer customer = new Customer(record.getUsername(), record.getPassword(), record.getBalance());
+                storage.save(new AccountRecord(record.getUsername(), record.getPassword(), record.getBalance(),
+                        customer.getCustomerLevel(), customer.getCustomerNumber()));
+                usernamesByNumber.put(customer.getCustomerNumber(), record.getUsername());
+            }
+            if (listener != null) {
+                listener.progress(sortedUsernames.size(), sortedUsernames.size());
+            }
+        } else {
+            // Load all customers from the storage engine, several at a time
+            List<AccountRecord> records = new ArrayList<>();
+            storage.forEach(records::add);
+            Set<Integer> numbers = new HashSet<>();
+            boolean[] renumber = new boolean[records.size()];
+            for (int i = 0; i < records.size(); i++) {
+                renumber[i] = !numbers.add(records.get(i).getCustomerNumber());
+                Customer.reserveCustomerNumber(records.get(i).getCustomerNumber()); // New numbers must be past every stored one
+            }
+            BulkLoader.load(records.size(), i -> {
+                AccountRecord record = records.get(i);
+                Customer customer = renumber[i]
+                        ? new Customer(record.getUsername(), record.getPassword(), record.getBalance())
+                        : new Customer(record.getUsername(), record.getPassword(), record.getBalance(), record.getCustomerNumber());
+                if (renumber[i]) {
+                    // Store the new number, so the account keeps it rather than clashing again on the next start
+                    storage.save(new AccountRecord(record.getUsername(), record.getPassword(), customer.getBalance(),
+                            customer.getCustomerLevel(), customer.getCustomerNumber()));
+                }
+                index(customer);
+                return null;
+            }, listener);
         }
+        storage.addChangeListener(this::accountsChanged); // Follow the accounts changed by other instances
     }
 
     /**
-     * Adds the specified customer to the manager's list of customers.
-     * It also writes the customer's details to a file.
+     * Adds the specified customer to the manager's customers.
+     * It also saves the customer's account in the storage engine. The account is saved before the customer is
+     * indexed, with the username reserved meanwhile, so a customer whose account cannot be saved is never added.
      *
      * @param customer the customer to add
+     * @throws IllegalArgumentException if a customer with the same username already exists, or the storage engine
+     *         rejects the account, for example because the username is too long for it
      * @requires customer != null
      * @modifies this
-     * @effects adds a new customer to the list of customers and writes the customer's details to a file
+     * @effects saves the customer's account and adds the customer to the customers
      */
     public void addCustomer(Customer customer) {
-        customers.add(customer);
-        String customerData = "Username: " + customer.getUsername() + "\n" +
-                "Password: " + customer.getPassword() + "\n" +
-                "Balance: " + customer.getBalance() + "\n" +
-                "Level: " + customer.getCustomerLevel();
-        fileManager.writeToFile(customer.getUsername() + ".txt", customerData);
+        String username = customer.getUsername();
+        if (!addingUsernames.add(username)) {
+            throw new IllegalArgumentException("Username already exists: " + username);
+        }
+        try {
+            if (lazy ? sortedUsernames.contains(username) : customersByUsername.containsKey(username)) {
+                throw new IllegalArgumentException("Username already exists: " + username);
+            }
+            storage.save(new AccountRecord(username, customer.getPassword(), customer.getBalance(),
+                    customer.getCustomerLevel(), customer.getCustomerNumber()));
+            if (lazy) {
+                residentCustomers.compute(username, (key, reference) -> {
+                    usernamesByNumber.put(customer.getCustomerNumber(), key);
+                    sortedUsernames.add(key);
+                    addToTier(customer.getBalance(), 1);
+                    return makeResident(customer);
+                });
+            } else if (!index(customer)) {
+                throw new IllegalArgumentException("Username already exists: " + username);
+            }
+        } finally {
+            addingUsernames.remove(username);
+        }
+    }
+
+    /**
+     * Checks if a customer has the specified username or one is being added with it, in which case addCustomer
+     * refuses the username. Unlike getCustomer, this never creates a customer in lazy mode.
+     *
+     * @param username the username to check
+     * @requires username != null
+     * @effects returns true if the username belongs to a customer or to a customer being added, false otherwise
+     * @return whether the username is taken
+     */
+    public boolean isUsernameTaken(String username) {
+        return addingUsernames.contains(username)
+                || (lazy ? sortedUsernames.contains(username) : customersByUsername.containsKey(username));
     }
 
     /**
-     * Removes the customer with the specified username from the manager's list of customers.
-     * It also deletes the file containing the customer's details.
+     * Removes the customer with the specified username from the manager's customers.
+     * It also deletes the customer's account from the storage engine.
      *
      * @param usernameToRemove the username of the customer to remove
      * @requires usernameToRemove != null
      * @modifies this
-     * @effects removes the customer with the specified username from the list of customers and deletes the file containing the customer's details
+     * @effects removes the customer with the specified username from the customers and deletes the customer's account
      */
     public void removeCustomer(String usernameToRemove) {
-        for (Customer customer : customers) {
-            if (customer.getUsername().equals(usernameToRemove)) {
-                customers.remove(customer);
-                break;
-            }
+        if (lazy) {
+            AccountRecord record = storage.load(usernameToRemove);
+            storage.delete(usernameToRemove);
+            residentCustomers.compute(usernameToRemove, (username, reference) -> {
+                Customer resident = reference == null ? null : reference.get();
+                if (resident != null) {
+                    synchronized (resident) {
+                        resident.setBalanceListener(null);
+                        usernamesByNumber.remove(resident.getCustomerNumber(), username);
+                        addToTier(reference.accountedBalance, -1);
+                    }
+                } else if (record != null && usernamesByNumber.remove(record.getCustomerNumber(), username)) {
+                    addToTier(record.getBalance(), -1);
+                }
+                sortedUsernames.remove(username);
+                return null;
+            });
+            return;
         }
-        fileManager.deleteFile(usernameToRemove + ".txt");
+        Customer customer = customersByUsername.get(usernameToRemove);
+        if (customer != null) {
+            unindex(customer);
+        }
+        storage.delete(usernameToRemove);
     }
     /**
      * Returns the customer with the specified username.
@@ -101,12 +314,742 @@ public class Manager extends AbstractUser {
      * @return the customer with the specified username, or null if no such customer exists
      */
     public Customer getCustomer(String username) {
-        for (Customer customer : customers) {
-            if (customer.getUsername().equals(username)) {
-                return customer;
+        if (lazy) {
+            return materialize(username);
+        }
+        return customersByUsername.get(username);
+    }
+    /**
+     * Returns the customer with the specified customer number.
+     *
+     * @param customerNumber the number of the customer
+     * @effects returns the customer with the specified number, or null if no such customer exists
+     * @return the customer with the specified number, or null if no such customer exists
+     */
+    public Customer getCustomer(int customerNumber) {
+        if (lazy) {
+            String username = usernamesByNumber.get(customerNumber);
+            return username == null ? null : materialize(username);
+        }
+        return customersByNumber.get(customerNumber);
+    }
+    /**
+     * Returns the customers of the manager in customer number order.
+     * In lazy mode this creates every customer that is not resident.
+     *
+     * @effects returns an unmodifiable copy of the customers
+     * @return the customers of the manager
+     */
+    public List<Customer> getCustomers() {
+        return loadCustomers(null);
+    }
+    /**
+     * Returns the customers of the manager in customer number order, reporting the progress of loading them.
+     * In lazy mode the customers that are not resident are created several at a time on the bulk loader; otherwise
+     * every customer is already loaded and the progress is reported as complete at once.
+     *
+     * @param listener the listener receiving the progress, which may be called from other threads, or null
+     * @effects creates every customer that is not resident and returns an unmodifiable copy of the customers
+     * @return the customers of the manager
+     */
+    public List<Customer> loadCustomers(BulkLoader.ProgressListener listener) {
+        if (lazy) {
+            List<String> usernames = new ArrayList<>(usernamesByNumber.values());
+            List<Customer> customers = BulkLoader.load(usernames.size(), i -> materialize(usernames.get(i)), listener);
+            customers.removeIf(Objects::isNull); // Deleted in the meantime
+            return Collections.unmodifiableList(customers);
+        }
+        List<Customer> customers = new ArrayList<>(customersByNumber.values());
+        if (listener != null) {
+            listener.progress(customers.size(), customers.size());
+        }
+        return Collections.unmodifiableList(customers);
+    }
+    /**
+     * Returns the customers at the specified level.
+     *
+     * @param level the level of the customers
+     * @requires level is "Silver", "Gold" or "Platinum"
+     * @effects returns an unmodifiable view of the customers at the level, which follows later changes, or in lazy
+     *          mode an unmodifiable copy
+     * @return the customers at the level
+     */
+    public Set<Customer> getCustomersByLevel(String level) {
+        if (lazy) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(
+                    scanStorage(record -> AccountRecord.levelOf(record.getBalance()).equals(level))));
+        }
+        Set<Customer> customers = customersByLevel.get(level);
+        return customers == null ? Collections.emptySet() : Collections.unmodifiableSet(customers);
+    }
+    /**
+     * Returns the customers whose balance is between the specified bounds, in increasing balance order.
+     *
+     * @param minBalance the lowest balance, inclusive
+     * @param maxBalance the highest balance, inclusive
+     * @effects returns the customers with minBalance <= balance <= maxBalance, ordered by balance and then customer number
+     * @return the customers with a balance in the range
+     */
+    public List<Customer> getCustomersByBalance(double minBalance, double maxBalance) {
+        if (minBalance > maxBalance) {
+            return Collections.emptyList();
+        }
+        if (lazy) {
+            return scanStorage(record -> record.getBalance() >= minBalance && record.getBalance() <= maxBalance);
+        }
+        return new ArrayList<>(customersByBalance.subMap(new BalanceKey(minBalance, Integer.MIN_VALUE), true,
+                new BalanceKey(maxBalance, Integer.MAX_VALUE), true).values());
+    }
+    /**
+     * Returns the customers with the highest balances, in decreasing balance order.
+     *
+     * @param count the largest number of customers to return
+     * @requires count >= 0
+     * @effects returns the first count customers ordered by decreasing balance, or all customers if there are fewer
+     * @return the customers with the highest balances
+     */
+    public List<Customer> getTopCustomers(int count) {
+        if (lazy) {
+            return topStoredCustomers(count);
+        }
+        List<Customer> top = new ArrayList<>(Math.min(count, 1024));
+        for (Customer customer : customersByBalance.descendingMap().values()) {
+            if (top.size() >= count) {
+                break;
+            }
+            top.add(customer);
+        }
+        return top;
+    }
+    /**
+     * Returns the customers whose balance is within the specified amount below the threshold of the next level.
+     *
+     * @param within the largest distance below the threshold
+     * @requires within >= 0
+     * @effects returns the customers with threshold - within <= balance < threshold for the Gold or Platinum threshold,
+     *          in increasing balance order
+     * @return the customers close to the next level
+     */
+    public List<Customer> getCustomersNearNextLevel(double within) {
+        if (lazy) {
+            return scanStorage(record -> (record.getBalance() < CustomerLevel.GOLD_THRESHOLD
+                    && record.getBalance() >= CustomerLevel.GOLD_THRESHOLD - within)
+                    || (record.getBalance() >= CustomerLevel.GOLD_THRESHOLD && record.getBalance() < CustomerLevel.PLATINUM_THRESHOLD
+                    && record.getBalance() >= CustomerLevel.PLATINUM_THRESHOLD - within));
+        }
+        List<Customer> near = new ArrayList<>();
+        double previous = Double.NEGATIVE_INFINITY;
+        for (double threshold : new double[] {CustomerLevel.GOLD_THRESHOLD, CustomerLevel.PLATINUM_THRESHOLD}) {
+            double from = Math.max(threshold - within, previous); // Do not repeat customers if the ranges overlap
+            near.addAll(customersByBalance.subMap(new BalanceKey(from, Integer.MIN_VALUE), true,
+                    new BalanceKey(threshold, Integer.MIN_VALUE), false).values());
+            previous = threshold;
+        }
+        return near;
+    }
+    /**
+     * Returns the number of customers of the manager.
+     *
+     * @return the number of customers
+     */
+    public int getCustomerCount() {
+        return lazy ? usernamesByNumber.size() : customersByUsername.size();
+    }
+    /**
+     * Returns the number of customers at the specified level, or of all customers, in O(1).
+     *
+     * @param level the level of the customers, or null for all customers
+     * @requires level is null, "Silver", "Gold" or "Platinum"
+     * @return the number of customers at the level
+     */
+    public int getCustomerCount(String level) {
+        return level == null ? getCustomerCount() : (int) tierCounts.get(level).sum();
+    }
+    /**
+     * Returns one page of the customers, optionally only those at one level, in the specified order.
+     * The page is read from the index of the order, so only the customers up to the end of the page are visited;
+     * a page of a single level in balance order starts at that level's first balance. In lazy mode the pages in
+     * customer number order of all levels are read the same way, and the others by sorting the stored accounts, but
+     * in every case only the customers on the page are created.
+     *
+     * @param order the order of the customers
+     * @param descending true for the reverse of the order
+     * @param level the level of the customers, or null for all customers
+     * @param offset the number of customers before the page
+     * @param limit the largest number of customers on the page
+     * @requires order != null && level is null, "Silver", "Gold" or "Platinum" && offset >= 0 && limit >= 0
+     * @effects returns the customers at positions offset to offset + limit - 1 of the ordered and filtered customers
+     * @return the customers on the page
+     */
+    public List<Customer> getCustomerPage(CustomerOrder order, boolean descending, String level, int offset, int limit) {
+        if (lazy) {
+            return lazyCustomerPage(order, descending, level, offset, limit);
+        }
+        Iterator<Customer> customers;
+        switch (order) {
+            case USERNAME:
+                customers = (descending ? sortedUsernames.descendingSet() : sortedUsernames).stream()
+                        .map(customersByUsername::get).filter(Objects::nonNull).iterator();
+                break;
+            case BALANCE:
+                NavigableMap<BalanceKey, Customer> byBalance = level == null ? customersByBalance : tierByBalance(level);
+                customers = (descending ? byBalance.descendingMap() : byBalance).values().iterator();
+                break;
+            default:
+                customers = (descending ? customersByNumber.descendingMap() : customersByNumber).values().iterator();
+                break;
+        }
+        List<Customer> page = new ArrayList<>(Math.min(limit, 1024));
+        int skipped = 0;
+        while (customers.hasNext() && page.size() < limit) {
+            Customer customer = customers.next();
+            if (level != null && !level.equals(customer.getCustomerLevel())) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(customer);
+            }
+        }
+        return page;
+    }
+    /**
+     * Returns one page of the customers whose usernames start with a prefix, in username order.
+     * The matches are a contiguous range of the sorted usernames, so only the usernames up to the end of the page are
+     * visited and the search takes O(log n + offset + limit) time however many customers there are.
+     * In lazy mode only the customers on the page are created.
+     *
+     * @param prefix the start of the usernames to find, which may be empty to match every customer
+     * @param offset the number of matching customers before the page
+     * @param limit the largest number of customers on the page
+     * @requires prefix != null && offset >= 0 && limit >= 0
+     * @effects returns the customers at positions offset to offset + limit - 1 of the customers whose usernames start
+     *          with the prefix, in username order
+     * @return the customers on the page
+     */
+    public List<Customer> findCustomersByPrefix(String prefix, int offset, int limit) {
+        List<Customer> page = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<String> usernames = usernamesWithPrefix(prefix).iterator();
+        for (int skipped = 0; usernames.hasNext() && skipped < offset; skipped++) {
+            usernames.next();
+        }
+        while (usernames.hasNext() && page.size() < limit) {
+            Customer customer = getCustomer(usernames.next());
+            if (customer != null) { // Removed in the meantime
+                page.add(customer);
+            }
+        }
+        return page;
+    }
+    /**
+     * Returns the number of customers whose usernames start with a prefix, counting the matching usernames without
+     * visiting any other.
+     *
+     * @param prefix the start of the usernames to count
+     * @requires prefix != null
+     * @return the number of customers whose usernames start with the prefix
+     */
+    public int countCustomersByPrefix(String prefix) {
+        return usernamesWithPrefix(prefix).size();
+    }
+    /**
+     * Applies a batch of deposits, withdrawals and purchases to the manager's customers, in parallel by account.
+     * In lazy mode the customers of the batch that are not resident are created.
+     *
+     * @param operations the operations to apply
+     * @requires operations != null && no operation is null
+     * @modifies the customers of the operations
+     * @effects applies every operation that is valid, names a customer of the manager and is covered by its balance,
+     *          keeping the order of each customer's operations, and stores the changes of each customer as one unit
+     * @return the result of each operation, in the order of the operations
+     */
+    public List<BatchResult> executeBatch(List<BatchOperation> operations) {
+        return BatchExecutor.execute(operations, this::getCustomer);
+    }
+    /**
+     * Starts reporting the accounts changed by other instances of the application to a listener, after the manager
+     * has applied them to its customers. The listener is called from the storage engine's thread.
+     *
+     * @param listener the listener to add
+     * @requires listener != null
+     * @modifies this
+     * @effects makes the listener receive later changes made by other instances
+     */
+    public void addChangeListener(StorageEngine.ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+    /**
+     * Stops reporting changes to a listener.
+     *
+     * @param listener the listener to remove
+     * @modifies this
+     * @effects makes the listener receive no further changes
+     */
+    public void removeChangeListener(StorageEngine.ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+    /**
+     * Checks if the manager creates customers only when they are asked for.
+     *
+     * @return true in lazy mode, false otherwise
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+    /**
+     * Returns the number of customers currently held in memory.
+     *
+     * @return the number of resident customers
+     * @effects drops the customers the garbage collector has evicted, then returns the number of those left
+     */
+    public int getResidentCustomerCount() {
+        if (!lazy) {
+            return customersByUsername.size();
+        }
+        purgeEvicted();
+        return residentCustomers.size();
+    }
+    /**
+     * Returns the aggregates of the customers at the specified level.
+     * The count and total are read in O(1); the lowest and highest balance in O(log n).
+     *
+     * @param level the level of the customers
+     * @requires level is "Silver", "Gold" or "Platinum"
+     * @effects returns the number of customers at the level, the sum of their balances and their lowest and highest balance
+     * @return the statistics of the level
+     */
+    public TierStatistics getTierStatistics(String level) {
+        long count = tierCounts.get(level).sum();
+        double total = tierCents.get(level).sum() / 100.0;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        if (lazy) {
+            ConcurrentSkipListMap<Long, Long> balances = tierBalances.get(level);
+            Map.Entry<Long, Long> first = balances.firstEntry();
+            Map.Entry<Long, Long> last = balances.lastEntry();
+            if (first != null && last != null) {
+                min = first.getKey() / 100.0;
+                max = last.getKey() / 100.0;
+            }
+        } else {
+            NavigableMap<BalanceKey, Customer> tier = tierByBalance(level);
+            Map.Entry<BalanceKey, Customer> first = tier.firstEntry();
+            Map.Entry<BalanceKey, Customer> last = tier.lastEntry();
+            if (first != null && last != null) {
+                min = first.getKey().balance;
+                max = last.getKey().balance;
+            }
+        }
+        return new TierStatistics(level, count, total, count == 0 ? Double.NaN : min, count == 0 ? Double.NaN : max);
+    }
+    /**
+     * Returns the aggregates of the customers at every level, from Silver to Platinum.
+     *
+     * @effects returns the statistics of every level
+     * @return the statistics of the levels
+     */
+    public List<TierStatistics> getTierStatistics() {
+        List<TierStatistics> statistics = new ArrayList<>();
+        for (String level : AccountRecord.LEVELS) {
+            statistics.add(getTierStatistics(level));
+        }
+        return statistics;
+    }
+    /**
+     * Moves a customer to the level set of its new level and to the key of its new balance after a balance change.
+     *
+     * @param customer the customer whose balance changed
+     * @param oldBalance the balance before the change
+     * @param oldLevel the level of the customer before the change
+     * @requires customer != null && oldLevel != null
+     * @modifies this
+     * @effects makes the customer a member of exactly the level set of its current level, indexes it under its
+     *          current balance and moves its balance in the level aggregates, if it is still a customer
+     */
+    @Override
+    public void balanceChanged(Customer customer, double oldBalance, String oldLevel) {
+        synchronized (customer) {
+            if (lazy) {
+                CustomerReference reference = residentCustomers.get(customer.getUsername());
+                if (reference != null && reference.get() == customer) {
+                    double balance = customer.getBalance(); // Read again under the lock, so the latest change wins
+                    addToTier(reference.accountedBalance, -1);
+                    addToTier(balance, 1);
+                    reference.accountedBalance = balance;
+                }
+                return;
+            }
+            if (customersByUsername.get(customer.getUsername()) != customer) {
+                return; // Removed concurrently
+            }
+            String level = customer.getCustomerLevel(); // Read again under the lock, so the latest change wins
+            if (!level.equals(oldLevel)) {
+                customersByLevel.get(oldLevel).remove(customer);
+            }
+            for (Map.Entry<String, Set<Customer>> entry : customersByLevel.entrySet()) {
+                if (entry.getKey().equals(level)) {
+                    entry.getValue().add(customer);
+                } else {
+                    entry.getValue().remove(customer);
+                }
+            }
+            indexBalance(customer);
+        }
+    }
+    /**
+     * Adds a customer to every index and starts listening to its balance changes.
+     * Returns false, changing nothing, if the username is already taken.
+     */
+    private boolean index(Customer customer) {
+        synchronized (customer) {
+            if (customersByUsername.putIfAbsent(customer.getUsername(), customer) != null) {
+                return false;
+            }
+            sortedUsernames.add(customer.getUsername());
+            customersByNumber.put(customer.getCustomerNumber(), customer);
+            customersByLevel.get(customer.getCustomerLevel()).add(customer);
+            indexBalance(customer);
+            customer.setBalanceListener(this);
+            return true;
+        }
+    }
+    /**
+     * Removes a customer from every index and stops listening to its balance changes.
+     */
+    private void unindex(Customer customer) {
+        synchronized (customer) {
+            customersByUsername.remove(customer.getUsername(), customer);
+            sortedUsernames.remove(customer.getUsername());
+            customersByNumber.remove(customer.getCustomerNumber(), customer);
+            for (Set<Customer> level : customersByLevel.values()) {
+                level.remove(customer);
+            }
+            BalanceKey key = balanceKeys.remove(customer);
+            if (key != null) {
+                customersByBalance.remove(key, customer);
+                addToTier(key.balance, -1);
             }
+            customer.setBalanceListener(null);
+        }
+    }
+    /**
+     * Applies the accounts changed by other instances of the application to the customers and their indexes, and
+     * then reports the changes to the manager's change listeners.
+     * A removed account is removed from the indexes, an added account is indexed, with a new number if its number is
+     * taken, and a changed balance is set on the customer, which moves it in the indexes. In lazy mode only resident
+     * customers are changed; for the other accounts the number index and the level aggregates are adjusted.
+     */
+    private void accountsChanged(List<AccountChange> changes) {
+        for (AccountChange change : changes) {
+            if (lazy) {
+                applyLazyChange(change);
+                continue;
+            }
+            AccountRecord current = change.getCurrent();
+            Customer customer = customersByUsername.get(change.getUsername());
+            if (current == null) {
+                if (customer != null) {
+                    unindex(customer);
+                }
+            } else if (customer != null) {
+                synchronized (customer) {
+                    if (customer.getBalance() != current.getBalance()) {
+                        customer.applyStoredBalance(current.getBalance());
+                    }
+                }
+            } else {
+                Customer.reserveCustomerNumber(current.getCustomerNumber());
+                index(customersByNumber.containsKey(current.getCustomerNumber())
+                        ? new Customer(current.getUsername(), current.getPassword(), current.getBalance())
+                        : new Customer(current.getUsername(), current.getPassword(), current.getBalance(), current.getCustomerNumber()));
+            }
+        }
+        for (StorageEngine.ChangeListener listener : changeListeners) {
+            listener.accountsChanged(changes);
+        }
+    }
+    /**
+     * Applies an account changed by another instance of the application in lazy mode.
+     */
+    private void applyLazyChange(AccountChange change) {
+        AccountRecord previous = change.getPrevious();
+        AccountRecord current = change.getCurrent();
+        residentCustomers.compute(change.getUsername(), (username, reference) -> {
+            lazyChanges.incrementAndGet();
+            Customer resident = reference == null ? null : reference.get();
+            if (resident != null) {
+                synchronized (resident) {
+                    if (current == null) {
+                        resident.setBalanceListener(null);
+                        usernamesByNumber.remove(resident.getCustomerNumber(), username);
+                        sortedUsernames.remove(username);
+                        addToTier(reference.accountedBalance, -1);
+                        return null;
+                    }
+                    if (resident.getBalance() != current.getBalance()) {
+                        resident.applyStoredBalance(current.getBalance());
+                    }
+                    return reference;
+                }
+            }
+            if (previous != null) {
+                usernamesByNumber.remove(previous.getCustomerNumber(), username);
+                sortedUsernames.remove(username);
+                addToTier(previous.getBalance(), -1);
+            }
+            if (current != null) {
+                if (usernamesByNumber.putIfAbsent(current.getCustomerNumber(), username) == null) {
+                    Customer.reserveCustomerNumber(current.getCustomerNumber());
+                }
+                sortedUsernames.add(username);
+                addToTier(current.getBalance(), 1);
+            }
+            return null;
+        });
+    }
+    /**
+     * Returns the resident customer with the specified username, creating it from its stored account if it is not
+     * resident. Two threads asking for the same customer get the same Customer. The account is loaded before the
+     * customer is made resident, outside the lock of the resident map; it is loaded again if another instance changed
+     * an account meanwhile, and the customer is not made resident if its account was removed meanwhile.
+     */
+    private Customer materialize(String username) {
+        purgeEvicted();
+        CustomerReference reference = residentCustomers.get(username);
+        Customer customer = reference == null ? null : reference.get();
+        if (customer != null) {
+            return customer;
+        }
+        Customer[] created = new Customer[1];
+        boolean[] stale = new boolean[1];
+        do {
+            long changes = lazyChanges.get();
+            AccountRecord record = storage.load(username);
+            if (record == null) {
+                return null;
+            }
+            Customer loaded = new Customer(record.getUsername(), record.getPassword(), record.getBalance(), record.getCustomerNumber());
+            created[0] = null;
+            stale[0] = false;
+            residentCustomers.compute(username, (key, current) -> {
+                Customer resident = current == null ? null : current.get();
+                if (resident != null) {
+                    created[0] = resident;
+                    return current;
+                }
+                if (lazyChanges.get() != changes) {
+                    stale[0] = true; // The account may have changed since it was loaded
+                    return current;
+                }
+                if (!key.equals(usernamesByNumber.get(record.getCustomerNumber()))) {
+                    return null; // Removed since it was loaded
+                }
+                created[0] = loaded;
+                return makeResident(loaded);
+            });
+        } while (stale[0]);
+        return created[0];
+    }
+    /**
+     * Returns the reference holding a customer that is becoming resident, and starts listening to its balance changes.
+     * The customer's balance must already be counted in the level aggregates.
+     */
+    private CustomerReference makeResident(Customer customer) {
+        synchronized (customer) {
+            CustomerReference reference = new CustomerReference(customer, evicted);
+            reference.accountedBalance = customer.getBalance();
+            customer.setBalanceListener(this);
+            return reference;
+        }
+    }
+    /**
+     * Removes the entries of the customers the garbage collector has evicted.
+     */
+    private void purgeEvicted() {
+        CustomerReference reference;
+        while ((reference = (CustomerReference) evicted.poll()) != null) {
+            residentCustomers.remove(reference.username, reference);
+        }
+    }
+    /**
+     * Returns the customers whose stored accounts satisfy the filter, ordered by balance and then customer number,
+     * creating only those customers.
+     */
+    private List<Customer> scanStorage(Predicate<AccountRecord> filter) {
+        return materializeAll(scanRecords(filter, BY_BALANCE));
+    }
+    /**
+     * Returns the stored accounts that satisfy the filter, in the specified order.
+     */
+    private List<AccountRecord> scanRecords(Predicate<AccountRecord> filter, Comparator<AccountRecord> order) {
+        List<AccountRecord> matches = new ArrayList<>();
+        storage.forEach(record -> {
+            if (filter.test(record)) {
+                matches.add(record);
+            }
+        });
+        matches.sort(order);
+        return matches;
+    }
+    /**
+     * Returns a page of customers in lazy mode, creating only the customers on the page.
+     */
+    private List<Customer> lazyCustomerPage(CustomerOrder order, boolean descending, String level, int offset, int limit) {
+        if (order == CustomerOrder.NUMBER && level == null) {
+            List<Customer> page = new ArrayList<>(Math.min(limit, 1024));
+            Iterator<String> usernames = (descending ? usernamesByNumber.descendingMap() : usernamesByNumber).values().iterator();
+            for (int skipped = 0; usernames.hasNext() && skipped < offset; skipped++) {
+                usernames.next();
+            }
+            while (usernames.hasNext() && page.size() < limit) {
+                Customer customer = materialize(usernames.next());
+                if (customer != null) {
+                    page.add(customer);
+                }
+            }
+            return page;
+        }
+        Comparator<AccountRecord> comparator = order == CustomerOrder.BALANCE ? BY_BALANCE
+                : order == CustomerOrder.USERNAME ? Comparator.comparing(AccountRecord::getUsername)
+                : Comparator.comparingInt(AccountRecord::getCustomerNumber);
+        List<AccountRecord> records = scanRecords(record -> level == null || level.equals(AccountRecord.levelOf(record.getBalance())),
+                descending ? comparator.reversed() : comparator);
+        return materializeAll(records.subList(Math.min(offset, records.size()), (int) Math.min((long) offset + limit, records.size())));
+    }
+    /**
+     * Returns the customers with the highest stored balances in decreasing balance order, keeping only the best count
+     * accounts in memory during the scan and creating only those customers.
+     */
+    private List<Customer> topStoredCustomers(int count) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+        Comparator<AccountRecord> order = BY_BALANCE;
+        PriorityQueue<AccountRecord> best = new PriorityQueue<>(order); // The lowest of the best is at the head
+        storage.forEach(record -> {
+            if (best.size() < count) {
+                best.add(record);
+            } else if (order.compare(record, best.peek()) > 0) {
+                best.poll();
+                best.add(record);
+            }
+        });
+        List<AccountRecord> top = new ArrayList<>(best);
+        top.sort(order.reversed());
+        return materializeAll(top);
+    }
+    /**
+     * Returns the customers of the specified accounts in the same order, skipping accounts deleted in the meantime.
+     */
+    private List<Customer> materializeAll(List<AccountRecord> records) {
+        List<Customer> customers = new ArrayList<>(records.size());
+        for (AccountRecord record : records) {
+            Customer customer = materialize(record.getUsername());
+            if (customer != null) {
+                customers.add(customer);
+            }
+        }
+        return customers;
+    }
+    /**
+     * Stores a customer in the balance index under its current balance, replacing its previous key, and moves its
+     * balance in the level aggregates.
+     * The new key is added before the old one is removed, so that concurrent range queries never miss the customer.
+     *
+     * @requires the caller holds the customer's lock
+     */
+    private void indexBalance(Customer customer) {
+        BalanceKey key = new BalanceKey(customer.getBalance(), customer.getCustomerNumber());
+        BalanceKey old = balanceKeys.put(customer, key);
+        if (old != null && old.compareTo(key) == 0) {
+            return;
+        }
+        if (old != null) {
+            addToTier(old.balance, -1);
+        }
+        addToTier(key.balance, 1);
+        customersByBalance.put(key, customer);
+        if (old != null) {
+            customersByBalance.remove(old, customer);
+        }
+    }
+    /**
+     * Returns the part of the sorted usernames that start with a prefix, which are those from the prefix up to, but not
+     * including, the prefix with its last character incremented.
+     */
+    private NavigableSet<String> usernamesWithPrefix(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return sortedUsernames.tailSet(prefix, true);
+        }
+        String bound = prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+        return sortedUsernames.subSet(prefix, true, bound, false);
+    }
+    /**
+     * Returns the part of the balance index holding the customers at the specified level, which is a range of balances.
+     */
+    private NavigableMap<BalanceKey, Customer> tierByBalance(String level) {
+        int ordinal = AccountRecord.LEVELS.indexOf(level);
+        double low = ordinal == 0 ? Double.NEGATIVE_INFINITY : ordinal == 1 ? CustomerLevel.GOLD_THRESHOLD : CustomerLevel.PLATINUM_THRESHOLD;
+        double high = ordinal == 0 ? CustomerLevel.GOLD_THRESHOLD : ordinal == 1 ? CustomerLevel.PLATINUM_THRESHOLD : Double.POSITIVE_INFINITY;
+        return customersByBalance.subMap(new BalanceKey(low, Integer.MIN_VALUE), true, new BalanceKey(high, Integer.MIN_VALUE), false);
+    }
+    /**
+     * Adds a balance to, or with sign -1 removes it from, the aggregates of the level of that balance, and in lazy mode
+     * from the level's counts of each balance.
+     */
+    private void addToTier(double balance, int sign) {
+        String level = AccountRecord.levelOf(balance);
+        long cents = Math.round(balance * 100);
+        tierCounts.get(level).add(sign);
+        tierCents.get(level).add(sign * cents);
+        if (lazy) {
+            if (sign > 0) {
+                tierBalances.get(level).merge(cents, 1L, Long::sum);
+            } else {
+                tierBalances.get(level).computeIfPresent(cents, (key, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+    /**
+     * Overview: CustomerReference is a soft reference to a resident customer that remembers the customer's username,
+     * so that its entry can be removed after the customer is evicted, and the balance counted for it in the level
+     * aggregates.
+     */
+    private static final class CustomerReference extends SoftReference<Customer> {
+        // The username of the customer
+        final String username;
+        // The balance of the customer counted in the level aggregates, guarded by the customer's lock
+        double accountedBalance;
+
+        CustomerReference(Customer customer, ReferenceQueue<Customer> queue) {
+            super(customer, queue);
+            this.username = customer.getUsername();
+        }
+    }
+    /**
+     * Overview: BalanceKey is an immutable class that orders customers by balance and then by customer number.
+     */
+    private static final class BalanceKey implements Comparable<BalanceKey> {
+        // The balance of the customer
+        final double balance;
+        // The number of the customer, which makes keys of equal balances distinct
+        final int customerNumber;
+
+        BalanceKey(double balance, int customerNumber) {
+            this.balance = balance;
+            this.customerNumber = customerNumber;
+        }
+
+        @Override
+        public int compareTo(BalanceKey other) {
+            int byBalance = Double.compare(balance, other.balance);
+            return byBalance != 0 ? byBalance : Integer.compare(customerNumber, other.customerNumber);
         }
-        return null;
     }
     /**
      * Returns a string representation of the Manager.
@@ -116,15 +1059,61 @@ public class Manager extends AbstractUser {
      */
     @Override
     public String toString() {
-        return "Manager with " + customers.size() + " customers.";
+        if (lazy) {
+            return "Manager with " + usernamesByNumber.size() + " customers, " + residentCustomers.size() + " resident.";
+        }
+        return "Manager with " + customersByUsername.size() + " customers.";
     }
     /**
-     * Checks if the 'customers' field is non-null.
+     * Checks if the indexes are non-null and agree with each other.
      *
-     * @return true if the 'customers' field is non-null, false otherwise
-     * @effects returns a boolean indicating if the 'customers' field is non-null
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the indexes are non-null and agree with each other
      */
     public boolean repOk() {
-        return customers != null;
+        if (lazy) {
+            if (!customersByUsername.isEmpty() || !customersByNumber.isEmpty() || !customersByBalance.isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<String, CustomerReference> entry : residentCustomers.entrySet()) {
+                Customer customer = entry.getValue().get();
+                if (customer != null && (!entry.getKey().equals(customer.getUsername())
+                        || !entry.getKey().equals(usernamesByNumber.get(customer.getCustomerNumber()))
+                        || !sortedUsernames.contains(entry.getKey()))) {
+                    return false;
+                }
+            }
+            for (String level : AccountRecord.LEVELS) {
+                long customers = 0;
+                for (long count : tierBalances.get(level).values()) {
+                    customers += count;
+                }
+                if (customers != tierCounts.get(level).sum()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (customersByUsername.size() != customersByNumber.size() || customersByUsername.size() != customersByBalance.size()
+                || customersByUsername.size() != sortedUsernames.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Customer> entry : customersByUsername.entrySet()) {
+            Customer customer = entry.getValue();
+            if (!entry.getKey().equals(customer.getUsername()) || customersByNumber.get(customer.getCustomerNumber()) != customer
+                    || !customersByLevel.get(customer.getCustomerLevel()).contains(customer)) {
+                return false;
+            }
+            BalanceKey key = balanceKeys.get(customer);
+            if (key == null || key.balance != customer.getBalance() || customersByBalance.get(key) != customer) {
+                return false;
+            }
+        }
+        for (String level : AccountRecord.LEVELS) {
+            if (tierCounts.get(level).sum() != customersByLevel.get(level).size()) {
+                return false;
+            }
+        }
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package coe528.bankingapp.manager;
+
+/**
+ * Overview: TierStatistics is an immutable class that holds the aggregates of the customers at one level: how many
+ * there are, the sum of their balances and the lowest and highest balance.
+ * The figures are read from live counters one after another, so under concurrent updates they are each current but
+ * not necessarily from the same instant.
+ *
+ * Abstraction Function:
+ * Represents the statistics of the customers at 'level' as the fields 'customerCount', 'totalBalance', 'minBalance'
+ * and 'maxBalance'.
+ *
+ * Representation Invariant:
+ * The 'level' field must be non-null and 'customerCount' must be non-negative. If 'customerCount' is 0, 'minBalance'
+ * and 'maxBalance' are NaN.
+ */
+public final class TierStatistics {
+    // The level the statistics are of
+    private final String level;
+    // The number of customers at the level
+    private final long customerCount;
+    // The sum of the balances of the customers at the level
+    private final double totalBalance;
+    // The lowest and highest balance of the customers at the level, or NaN if there are none
+    private final double minBalance;
+    private final double maxBalance;
+
+    /**
+     * Constructs the statistics of a level.
+     *
+     * @param level the level the statistics are of
+     * @param customerCount the number of customers at the level
+     * @param totalBalance the sum of their balances
+     * @param minBalance the lowest balance, or NaN if there are no customers
+     * @param maxBalance the highest balance, or NaN if there are no customers
+     * @requires level != null && customerCount >= 0
+     */
+    public TierStatistics(String level, long customerCount, double totalBalance, double minBalance, double maxBalance) {
+        this.level = level;
+        this.customerCount = customerCount;
+        this.totalBalance = totalBalance;
+        this.minBalance = minBalance;
+        this.maxBalance = maxBalance;
+    }
+
+    /**
+     * Returns the level the statistics are of.
+     *
+     * @return the level
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the number of customers at the level.
+     *
+     * @return the number of customers
+     */
+    public long getCustomerCount() {
+        return customerCount;
+    }
+
+    /**
+     * Returns the sum of the balances of the customers at the level.
+     *
+     * @return the total balance
+     */
+    public double getTotalBalance() {
+        return totalBalance;
+    }
+
+    /**
+     * Returns the average balance of the customers at the level.
+     *
+     * @return the average balance, or NaN if there are no customers
+     */
+    public double getAverageBalance() {
+        return customerCount == 0 ? Double.NaN : totalBalance / customerCount;
+    }
+
+    /**
+     * Returns the lowest balance of the customers at the level.
+     *
+     * @return the lowest balance, or NaN if there are no customers
+     */
+    public double getMinBalance() {
+        return minBalance;
+    }
+
+    /**
+     * Returns the highest balance of the customers at the level.
+     *
+     * @return the highest balance, or NaN if there are no customers
+     */
+    public double getMaxBalance() {
+        return maxBalance;
+    }
+
+    /**
+     * Returns a string representation of the TierStatistics.
+     *
+     * @return a string representation of the TierStatistics
+     * @effects returns a string that represents the TierStatistics
+     */
+    @Override
+    public String toString() {
+        return level + ": " + customerCount + " customers, total $" + totalBalance + ", min $" + minBalance + ", max $" + maxBalance;
+    }
+
+    /**
+     * Checks the representation invariant of the TierStatistics.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        return level != null && customerCount >= 0
+                && (customerCount > 0 || (Double.isNaN(minBalance) && Double.isNaN(maxBalance)));
+    }
+}
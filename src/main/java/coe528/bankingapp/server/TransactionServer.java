@@ -0,0 +1,613 @@
+package coe528.bankingapp.server;
+
+import coe528.bankingapp.customer.Customer;
+import coe528.bankingapp.data.StorageEngines;
+import coe528.bankingapp.manager.CustomerOrder;
+import coe528.bankingapp.manager.Manager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Overview: TransactionServer is a mutable class that serves the banking application without its JavaFX views, over a
+ * local HTTP API built on the JDK's com.sun.net.httpserver, so other processes can drive it and put load on it.
+ * It is backed by a Manager and its customers, exactly like the views. A client logs in with POST /login and sends
+ * the returned token in an "Authorization: Bearer" header with every other request. Parameters are read from the
+ * query string and from a form-encoded body, and every response is a JSON object.
+ * <ul>
+ *     <li>POST /login (username, password) and POST /logout</li>
+ *     <li>GET /balance, POST /deposit, /withdraw and /purchase (amount), for a customer</li>
+ *     <li>GET /customers (offset, limit, prefix), POST /customers (username, password, balance) and
+ *     DELETE /customers/{username}, for the manager</li>
+ * </ul>
+ * Amounts and balances must be finite numbers.
+ * Open connections wait on the server's selector thread and cost no request thread, so thousands of connections can
+ * be open at once. Requests run on a fixed pool of bankingapp.server.threads threads (default 64) with a queue of
+ * bankingapp.server.queue requests (default 1024); when both are full, the selector thread runs the request itself,
+ * which stops it accepting more until the load drops. A session ends after bankingapp.server.sessionTimeoutSeconds
+ * (default 1800) without a request, and a user keeps at most bankingapp.server.maxSessionsPerUser sessions (default
+ * 16), logging in again ending the least recent one. The server listens on bankingapp.server.host (default 127.0.0.1)
+ * and bankingapp.server.port (default 8080), with a connection backlog of bankingapp.server.backlog (default 4096).
+ *
+ * Abstraction Function:
+ * Represents an HTTP server 'server' serving the customers of 'manager', where 'sessions' maps the token of every
+ * logged-in client to its session and 'tokensByUser' lists the tokens of every user's sessions, oldest first.
+ *
+ * Representation Invariant:
+ * The 'manager', 'server', 'executor', 'sweeper', 'sessions' and 'tokensByUser' fields must be non-null, and no user
+ * may have more than 'maxSessionsPerUser' tokens. Sessions are never null, since a ConcurrentHashMap holds no nulls.
+ */
+public class TransactionServer implements Closeable {
+    // Logger instance
+    private static final Logger LOGGER = Logger.getLogger(TransactionServer.class.getName());
+    // The largest request body read, in bytes
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // The largest page of customers returned
+    private static final int MAX_PAGE_SIZE = 1000;
+    // The usernames a new customer may have: letters, digits, '_', '-' and '.', not starting with '.', since storage
+    // engines make file names of them
+    private static final Pattern USERNAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,63}");
+    // The source of session tokens
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // How long a session lasts without a request, in nanoseconds
+    private static final long SESSION_TIMEOUT_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong("bankingapp.server.sessionTimeoutSeconds", 1800));
+
+    // The manager whose customers are served
+    private final Manager manager;
+    // The HTTP server
+    private final HttpServer server;
+    // The pool running the requests
+    private final ThreadPoolExecutor executor;
+    // The thread ending the expired sessions
+    private final ScheduledExecutorService sweeper;
+    // The sessions of the logged-in clients, by token
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // The tokens of every user's sessions, oldest first
+    private final Map<String, Deque<String>> tokensByUser = new ConcurrentHashMap<>();
+    // The largest number of sessions of one user
+    private final int maxSessionsPerUser = Math.max(1, Integer.getInteger("bankingapp.server.maxSessionsPerUser", 16));
+
+    /**
+     * Constructs a new TransactionServer, which serves nothing until it is started.
+     *
+     * @param manager the manager whose customers are served
+     * @param address the address to listen on
+     * @param backlog the largest number of connections waiting to be accepted
+     * @throws IOException if the address cannot be bound
+     * @requires manager != null && address != null && backlog > 0
+     */
+    public TransactionServer(Manager manager, InetSocketAddress address, int backlog) throws IOException {
+        this.manager = manager;
+        server = HttpServer.create(address, backlog);
+        AtomicInteger threads = new AtomicInteger();
+        int poolSize = Math.max(1, Integer.getInteger("bankingapp.server.threads", 64));
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger("bankingapp.server.queue", 1024))),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bankingapp-server-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        server.setExecutor(executor);
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bankingapp-server-sessions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/login", exchange -> handle(exchange, "POST", this::login));
+        server.createContext("/logout", exchange -> handle(exchange, "POST", this::logout));
+        server.createContext("/balance", exchange -> handle(exchange, "GET", this::balance));
+        server.createContext("/deposit", exchange -> handle(exchange, "POST", this::deposit));
+        server.createContext("/withdraw", exchange -> handle(exchange, "POST", this::withdraw));
+        server.createContext("/purchase", exchange -> handle(exchange, "POST", this::purchase));
+        server.createContext("/customers", exchange -> handle(exchange, null, this::customers));
+    }
+
+    /**
+     * Starts serving requests.
+     *
+     * @modifies this
+     * @effects starts accepting connections on the server's address
+     */
+    public void start() {
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(SESSION_TIMEOUT_NANOS) / 4);
+        sweeper.scheduleAtFixedRate(this::endExpiredSessions, period, period, TimeUnit.SECONDS);
+        server.start();
+        LOGGER.info("Serving on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the bound address, with the actual port if port 0 was asked for
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops serving requests, letting the requests in progress finish for up to a second.
+     *
+     * @modifies this
+     * @effects closes the server's connections and ends its request threads
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        sweeper.shutdown();
+        sessions.clear();
+        tokensByUser.clear();
+    }
+
+    /**
+     * Handles POST /login.
+     */
+    private String login(HttpExchange exchange, Map<String, String> params) {
+        String username = required(params, "username");
+        String password = required(params, "password");
+        boolean isManager = manager.getUsername().equals(username);
+        if (isManager ? !manager.matchesCredentials(username, password) : !matchesCustomer(username, password)) {
+            throw new HttpError(401, "Invalid username or password");
+        }
+        byte[] bytes = new byte[24];
+        RANDOM.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        startSession(token.toString(), new Session(username, isManager));
+        return "{\"token\":" + quote(token.toString()) + ",\"role\":" + quote(isManager ? "manager" : "customer") + "}";
+    }
+
+    /**
+     * Checks if a customer with the username exists and has the password.
+     */
+    private boolean matchesCustomer(String username, String password) {
+        Customer customer = manager.getCustomer(username);
+        return customer != null && customer.matchesCredentials(username, password);
+    }
+
+    /**
+     * Adds a session, ending the least recent session of its user if the user already has the most sessions allowed.
+     */
+    private void startSession(String token, Session session) {
+        sessions.put(token, session);
+        tokensByUser.compute(session.username, (username, tokens) -> {
+            if (tokens == null) {
+                tokens = new ArrayDeque<>();
+            }
+            tokens.addLast(token);
+            while (tokens.size() > maxSessionsPerUser) {
+                sessions.remove(tokens.removeFirst());
+            }
+            return tokens;
+        });
+    }
+
+    /**
+     * Ends a session, if it has not ended already.
+     */
+    private void endSession(String token) {
+        Session session = token == null ? null : sessions.remove(token);
+        if (session != null) {
+            tokensByUser.computeIfPresent(session.username, (username, tokens) -> {
+                tokens.remove(token);
+                return tokens.isEmpty() ? null : tokens;
+            });
+        }
+    }
+
+    /**
+     * Ends every session that has had no request for longer than the session timeout.
+     */
+    private void endExpiredSessions() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                endSession(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Handles POST /logout.
+     */
+    private String logout(HttpExchange exchange, Map<String, String> params) {
+        endSession(token(exchange));
+        return "{}";
+    }
+
+    /**
+     * Handles GET /balance.
+     */
+    private String balance(HttpExchange exchange, Map<String, String> params) {
+        return customerJson(loggedInCustomer(exchange));
+    }
+
+    /**
+     * Handles POST /deposit.
+     */
+    private String deposit(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = loggedInCustomer(exchange);
+        customer.deposit(amount(params, "amount"));
+        return customerJson(customer);
+    }
+
+    /**
+     * Handles POST /withdraw.
+     */
+    private String withdraw(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = loggedInCustomer(exchange);
+        customer.withdraw(amount(params, "amount"));
+        return customerJson(customer);
+    }
+
+    /**
+     * Handles POST /purchase.
+     */
+    private String purchase(HttpExchange exchange, Map<String, String> params) {
+        Customer customer = loggedInCustomer(exchange);
+        customer.purchase(amount(params, "amount"));
+        return customerJson(customer);
+    }
+
+    /**
+     * Handles GET, POST and DELETE on /customers. A new customer's username must match USERNAME, since it becomes a
+     * file name, and a username that is taken, even by a concurrent request, is refused with 409.
+     */
+    private String customers(HttpExchange exchange, Map<String, String> params) {
+        Session session = session(exchange);
+        if (!session.manager) {
+            throw new HttpError(403, "Only the manager can manage customers");
+        }
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if (path.startsWith("/customers/") && "DELETE".equals(method)) {
+            String username = path.substring("/customers/".length());
+            if (manager.getCustomer(username) == null) {
+                throw new HttpError(404, "No customer " + username);
+            }
+            manager.removeCustomer(username);
+            return "{}";
+        }
+        if (!"/customers".equals(path) && !"/customers/".equals(path)) {
+            throw new HttpError(404, "Not found");
+        }
+        if ("GET".equals(method)) {
+            int offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+            int limit = Math.min(Integer.parseInt(params.getOrDefault("limit", "100")), MAX_PAGE_SIZE);
+            if (offset < 0 || limit < 0) {
+                throw new IllegalArgumentException("Offset and limit must not be negative");
+            }
+            String prefix = params.get("prefix");
+            List<Customer> page = prefix == null
+                    ? manager.getCustomerPage(CustomerOrder.USERNAME, false, null, offset, limit)
+                    : manager.findCustomersByPrefix(prefix, offset, limit);
+            int total = prefix == null ? manager.getCustomerCount() : manager.countCustomersByPrefix(prefix);
+            StringBuilder json = new StringBuilder("{\"total\":").append(total).append(",\"customers\":[");
+            for (int i = 0; i < page.size(); i++) {
+                json.append(i == 0 ? "" : ",").append(customerJson(page.get(i)));
+            }
+            return json.append("]}").toString();
+        }
+        if ("POST".equals(method)) {
+            String username = required(params, "username");
+            String password = required(params, "password");
+            double balance = params.containsKey("balance") ? amount(params, "balance") : 0;
+            if (balance < 0) {
+                throw new IllegalArgumentException("Balance must not be negative");
+            }
+            if (!USERNAME.matcher(username).matches() || manager.getUsername().equals(username)) {
+                throw new IllegalArgumentException("Invalid username: it must be 1 to 64 letters, digits, '_', '-' or"
+                        + " '.' and not start with '.'");
+            }
+            if (manager.isUsernameTaken(username)) {
+                throw new HttpError(409, "Username already exists: " + username);
+            }
+            Customer customer = new Customer(username, password, balance);
+            try {
+                manager.addCustomer(customer);
+            } catch (IllegalArgumentException e) {
+                if (manager.isUsernameTaken(username)) {
+                    throw new HttpError(409, "Username already exists: " + username); // Added by a concurrent request
+                }
+                throw e;
+            }
+            return customerJson(customer);
+        }
+        throw new HttpError(405, "Method not allowed");
+    }
+
+    /**
+     * Runs an endpoint and sends its response, turning its exceptions into error responses: 400 for an invalid
+     * parameter, 409 for an operation the account does not allow, such as one without sufficient funds.
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            if (method != null && !method.equals(exchange.getRequestMethod())) {
+                throw new HttpError(405, "Method not allowed");
+            }
+            body = endpoint.handle(exchange, params(exchange));
+        } catch (HttpError e) {
+            status = e.status;
+            body = errorJson(e.getMessage());
+        } catch (IllegalArgumentException e) { // Including NumberFormatException
+            status = 400;
+            body = errorJson(e.getMessage());
+        } catch (IllegalStateException e) {
+            status = 409;
+            body = errorJson(e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Request " + exchange.getRequestURI() + " failed", e);
+            status = 500;
+            body = errorJson("Internal error");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads the parameters of a request from its query string and its form-encoded body.
+     */
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new HttpError(413, "Request body too large");
+            }
+            parseForm(new String(body, StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    /**
+     * Adds the name=value pairs of a form-encoded string to the parameters.
+     */
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Returns a required parameter.
+     */
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a required parameter that is an amount of money.
+     */
+    private static double amount(Map<String, String> params, String name) {
+        double amount = Double.parseDouble(required(params, name));
+        if (!Double.isFinite(amount)) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + params.get(name));
+        }
+        return amount;
+    }
+
+    /**
+     * Returns the session token of a request, or null if it has none.
+     */
+    private static String token(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : null;
+    }
+
+    /**
+     * Returns the session of a request.
+     */
+    private Session session(HttpExchange exchange) {
+        String token = token(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        long now = System.nanoTime();
+        if (session != null && session.isExpired(now)) {
+            endSession(token);
+            session = null;
+        }
+        if (session == null) {
+            throw new HttpError(401, "Not logged in");
+        }
+        session.lastUsedNanos = now;
+        return session;
+    }
+
+    /**
+     * Returns the customer logged in with a request.
+     */
+    private Customer loggedInCustomer(HttpExchange exchange) {
+        Session session = session(exchange);
+        if (session.manager) {
+            throw new HttpError(403, "Only a customer has an account");
+        }
+        Customer customer = manager.getCustomer(session.username);
+        if (customer == null) {
+            throw new HttpError(404, "No customer " + session.username);
+        }
+        return customer;
+    }
+
+    /**
+     * Returns a customer as a JSON object.
+     */
+    private static String customerJson(Customer customer) {
+        return "{\"username\":" + quote(customer.getUsername()) + ",\"customerNumber\":" + customer.getCustomerNumber()
+                + ",\"balance\":" + customer.getBalance() + ",\"level\":" + quote(customer.getCustomerLevel()) + "}";
+    }
+
+    /**
+     * Returns an error message as a JSON object.
+     */
+    private static String errorJson(String message) {
+        return "{\"error\":" + quote(message == null ? "Invalid request" : message) + "}";
+    }
+
+    /**
+     * Returns a string as a JSON string literal.
+     */
+    private static String quote(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Starts a headless server over the configured storage engine, which runs until the process is stopped.
+     * The progress of loading the customers is logged every tenth of the way, since a large bank takes a while to load.
+     *
+     * @param args the command-line arguments, which are ignored
+     * @throws IOException if the server's address cannot be bound
+     * @effects serves the customers of the storage engine and closes the engine when the process is stopped
+     */
+    public static void main(String[] args) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(System.getProperty("bankingapp.server.host", "127.0.0.1"),
+                Integer.getInteger("bankingapp.server.port", 8080));
+        AtomicInteger reportedTenths = new AtomicInteger(-1);
+        Manager manager = new Manager("admin", "admin", (loaded, total) -> {
+            int tenths = total == 0 ? 10 : (int) (10L * loaded / total);
+            int reported = reportedTenths.get();
+            if (tenths > reported && reportedTenths.compareAndSet(reported, tenths)) {
+                LOGGER.info("Loaded " + loaded + " of " + total + " customers");
+            }
+        });
+        TransactionServer server = new TransactionServer(manager, address,
+                Integer.getInteger("bankingapp.server.backlog", 4096));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            StorageEngines.shutdown();
+        }, "bankingapp-server-shutdown"));
+        server.start();
+    }
+
+    /**
+     * Overview: Endpoint handles the requests to one path of the server, returning the JSON body of the response.
+     */
+    private interface Endpoint {
+        String handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    /**
+     * Overview: Session is a mutable class that represents a logged-in client, the manager or a customer, and when it
+     * last made a request.
+     */
+    private static final class Session {
+        // The username the client logged in with
+        final String username;
+        // True if the client is the manager
+        final boolean manager;
+        // The System.nanoTime of the client's last request
+        volatile long lastUsedNanos = System.nanoTime();
+
+        Session(String username, boolean manager) {
+            this.username = username;
+            this.manager = manager;
+        }
+
+        /**
+         * Checks if the session has had no request for longer than the session timeout.
+         */
+        boolean isExpired(long now) {
+            return now - lastUsedNanos > SESSION_TIMEOUT_NANOS;
+        }
+    }
+
+    /**
+     * Overview: HttpError is an exception that ends a request with an HTTP error status.
+     */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // The status of the response
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Returns a string representation of the TransactionServer.
+     *
+     * @return a string representation of the TransactionServer
+     * @effects returns a string that represents the TransactionServer
+     */
+    @Override
+    public String toString() {
+        return "TransactionServer on " + server.getAddress() + " with " + sessions.size() + " sessions";
+    }
+
+    /**
+     * Checks the representation invariant of the TransactionServer.
+     *
+     * @return true if the representation invariant holds, false otherwise
+     * @effects returns a boolean indicating if the representation invariant holds
+     */
+    public boolean repOk() {
+        if (manager == null || server == null || executor == null || sweeper == null || sessions == null
+                || tokensByUser == null) {
+            return false;
+        }
+        for (Deque<String> tokens : tokensByUser.values()) {
+            if (tokens.size() > maxSessionsPerUser) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
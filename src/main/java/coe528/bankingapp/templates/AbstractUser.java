@@ -17,8 +17,8 @@ public abstract class AbstractUser implements User{
 
     // The login status of the user
     protected boolean isLoggedin = false;
-    // The scanner to read user input
-    protected final Scanner scanner;
+    // The scanner to read user input, shared because every user reads the same System.in
+    protected static final Scanner scanner = new Scanner(System.in);
 
     /**
      * Constructs a new AbstractUser with the specified username and password.
@@ -29,7 +29,6 @@ public abstract class AbstractUser implements User{
     public AbstractUser(String username, String password) {
         this.username = username;
         this.password = password;
-        this.scanner = new Scanner(System.in);
     }
 
     /**
@@ -42,7 +41,7 @@ public abstract class AbstractUser implements User{
      */
     @Override
     public void login(String enteredUsername, String enteredPassword){
-        if (enteredUsername.equals(username) && enteredPassword.equals(password)) {
+        if (matchesCredentials(enteredUsername, enteredPassword)) {
             System.out.println("Logged in");
             isLoggedin = true;
         } else {
@@ -50,6 +49,18 @@ public abstract class AbstractUser implements User{
         }
     }
 
+    /**
+     * Checks if the entered username and password match the user's, without logging the user in, for callers such as
+     * the transaction server that keep their own sessions.
+     *
+     * @param enteredUsername the entered username
+     * @param enteredPassword the entered password
+     * @return true if both match the user's username and password, false otherwise
+     */
+    public boolean matchesCredentials(String enteredUsername, String enteredPassword) {
+        return username.equals(enteredUsername) && password.equals(enteredPassword);
+    }
+
     /**
      * Logs out the user.
      * The user's login status is set to false and a message is printed to the console.
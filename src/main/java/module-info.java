@@ -2,6 +2,8 @@ module coe528.bankingapp {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.logging;
+    requires jdk.management;
+    requires jdk.httpserver;
 
     opens coe528.bankingapp to javafx.fxml;
     opens coe528.bankingapp.templates to javafx.base;